@@ -0,0 +1,207 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openam.audit;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.forgerock.audit.events.AuditEvent;
+import org.forgerock.openam.shared.monitoring.metrics.Counter;
+import org.forgerock.openam.shared.monitoring.metrics.Gauge;
+import org.forgerock.openam.shared.monitoring.metrics.MetricsRegistry;
+
+import com.sun.identity.shared.debug.Debug;
+
+/**
+ * Publishes audit events from a background thread per topic, so that slow audit event handlers do not hold up the
+ * threads creating the events.
+ * <p>
+ * Each topic has a bounded queue, drained by its publishing thread in batches of up to the configured batch size.
+ * When the queue of a topic is full, the event is either dropped or the creating thread waits for room, according
+ * to the {@link OverflowPolicy}. The depth of each queue and the number of dropped events are exposed as metrics.
+ *
+ * @since 14.0.0
+ */
+final class AuditEventDispatcher {
+
+    private static final Debug debug = Debug.getInstance("amAudit");
+    private static final long POLL_TIMEOUT = TimeUnit.SECONDS.toMillis(1);
+    private static final long SHUTDOWN_TIMEOUT = TimeUnit.SECONDS.toMillis(10);
+
+    /**
+     * What to do with an audit event when the queue of its topic is full.
+     */
+    enum OverflowPolicy {
+        /** Wait for room in the queue. */
+        BLOCK,
+        /** Discard the event. */
+        DROP
+    }
+
+    /**
+     * Publishes audit events on behalf of the dispatcher.
+     */
+    interface EventSink {
+
+        /**
+         * Publishes the audit event to the audit service. Must not throw.
+         *
+         * @param topic The topic of the event.
+         * @param auditEvent The event.
+         */
+        void publish(String topic, AuditEvent auditEvent);
+    }
+
+    private final ConcurrentMap<String, TopicQueue> queues = new ConcurrentHashMap<>();
+    private final EventSink sink;
+    private final MetricsRegistry metricsRegistry;
+    private final int queueSize;
+    private final int batchSize;
+    private final OverflowPolicy overflowPolicy;
+    private volatile boolean shutdown;
+
+    AuditEventDispatcher(EventSink sink, MetricsRegistry metricsRegistry, int queueSize, int batchSize,
+            OverflowPolicy overflowPolicy) {
+        this.sink = sink;
+        this.metricsRegistry = metricsRegistry;
+        this.queueSize = Math.max(1, queueSize);
+        this.batchSize = Math.max(1, batchSize);
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * Queues an audit event for publishing.
+     *
+     * @param topic The topic of the event.
+     * @param auditEvent The event.
+     * @return {@code false} if the dispatcher has shut down and the caller must publish the event itself.
+     */
+    boolean dispatch(String topic, AuditEvent auditEvent) {
+        if (shutdown) {
+            return false;
+        }
+        TopicQueue queue = getQueue(topic);
+        if (overflowPolicy == OverflowPolicy.BLOCK) {
+            try {
+                queue.events.put(auditEvent);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        } else if (!queue.events.offer(auditEvent)) {
+            queue.dropped.increment();
+            if (debug.warningEnabled()) {
+                debug.warning("AuditEventDispatcher: queue of topic {} is full, dropped audit event", topic);
+            }
+            return true;
+        }
+        // The event may have been queued after the queue was drained by shutdown
+        return !(shutdown && queue.events.remove(auditEvent));
+    }
+
+    /**
+     * Stops the publishing threads, then publishes the events left in the queues on the calling thread.
+     */
+    void shutdown() {
+        shutdown = true;
+        for (TopicQueue queue : queues.values()) {
+            try {
+                queue.thread.join(SHUTDOWN_TIMEOUT);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        for (TopicQueue queue : queues.values()) {
+            AuditEvent auditEvent;
+            while ((auditEvent = queue.events.poll()) != null) {
+                sink.publish(queue.topic, auditEvent);
+            }
+        }
+    }
+
+    private TopicQueue getQueue(String topic) {
+        TopicQueue queue = queues.get(topic);
+        if (queue == null) {
+            TopicQueue created = new TopicQueue(topic);
+            queue = queues.putIfAbsent(topic, created);
+            if (queue == null) {
+                queue = created;
+                queue.start();
+            }
+        }
+        return queue;
+    }
+
+    /**
+     * The queue of a single topic, and the thread publishing its events.
+     */
+    private final class TopicQueue implements Runnable {
+
+        private final String topic;
+        private final BlockingQueue<AuditEvent> events;
+        private final Counter dropped;
+        private final Thread thread;
+
+        private TopicQueue(String topic) {
+            this.topic = topic;
+            this.events = new ArrayBlockingQueue<>(queueSize);
+            this.dropped = metricsRegistry.counter("am_audit_events_dropped_total",
+                    "Audit events dropped as the queue of their topic was full", "topic", topic);
+            this.thread = new Thread(this, "AuditEventDispatcher-" + topic);
+            this.thread.setDaemon(true);
+        }
+
+        private void start() {
+            metricsRegistry.gauge("am_audit_queued_events", "Audit events waiting to be published", new Gauge() {
+                @Override
+                public double getValue() {
+                    return events.size();
+                }
+            }, "topic", topic);
+            thread.start();
+        }
+
+        @Override
+        public void run() {
+            List<AuditEvent> batch = new ArrayList<>(batchSize);
+            while (!shutdown) {
+                try {
+                    AuditEvent first = events.poll(POLL_TIMEOUT, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+                    events.drainTo(batch, batchSize - 1);
+                    for (AuditEvent auditEvent : batch) {
+                        sink.publish(topic, auditEvent);
+                    }
+                } catch (InterruptedException e) {
+                    // The events left are published on shutdown
+                    return;
+                } catch (RuntimeException e) {
+                    debug.error("AuditEventDispatcher: failed to publish {} audit events", topic, e);
+                } finally {
+                    batch.clear();
+                }
+            }
+        }
+    }
+}
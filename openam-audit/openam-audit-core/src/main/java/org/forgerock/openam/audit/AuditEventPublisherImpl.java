@@ -21,6 +21,8 @@ import static org.forgerock.json.resource.Resources.newInternalConnection;
 import static org.forgerock.openam.audit.AuditConstants.EVENT_REALM;
 import static org.forgerock.openam.utils.StringUtils.isBlank;
 
+import com.sun.identity.shared.Constants;
+import com.sun.identity.shared.configuration.SystemPropertiesManager;
 import com.sun.identity.shared.debug.Debug;
 import org.forgerock.audit.events.AuditEvent;
 import org.forgerock.json.JsonValue;
@@ -29,13 +31,22 @@ import org.forgerock.json.resource.CreateRequest;
 import org.forgerock.json.resource.ResourceException;
 import org.forgerock.json.resource.ServiceUnavailableException;
 import org.forgerock.openam.audit.AuditConstants.EventName;
+import org.forgerock.openam.audit.AuditEventDispatcher.OverflowPolicy;
+import org.forgerock.openam.shared.monitoring.metrics.MetricsRegistry;
 import org.forgerock.services.context.RootContext;
+import org.forgerock.util.thread.listener.ShutdownListener;
+import org.forgerock.util.thread.listener.ShutdownManager;
+import org.forgerock.util.thread.listener.ShutdownPriority;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
 /**
  * Responsible for publishing locally created audit events to the AuditService.
+ * <p>
+ * When {@link Constants#AUDIT_ASYNC_ENABLED} is set, events are handed over to an {@link AuditEventDispatcher} and
+ * published from background threads, so that the latency of the audit event handlers is not added to the requests
+ * creating the events.
  *
  * @since 13.0.0
  */
@@ -44,20 +55,65 @@ public class AuditEventPublisherImpl implements AuditEventPublisher {
 
     private static Debug debug = Debug.getInstance("amAudit");
 
+    private static final int DEFAULT_QUEUE_SIZE = 10000;
+    private static final int DEFAULT_BATCH_SIZE = 100;
+
     private final AuditServiceProvider auditServiceProvider;
+    private final AuditEventDispatcher dispatcher;
 
     /**
-     * Constructs a new {@code AuditEventPublisher}.
+     * Constructs a new {@code AuditEventPublisher} which publishes events on the calling thread.
      *
      * @param auditServiceProvider A {@code AuditServiceProvider} instance.
      */
-    @Inject
     public AuditEventPublisherImpl(AuditServiceProvider auditServiceProvider) {
         this.auditServiceProvider = auditServiceProvider;
+        this.dispatcher = null;
+    }
+
+    /**
+     * Constructs a new {@code AuditEventPublisher}, which publishes events asynchronously if configured to.
+     *
+     * @param auditServiceProvider A {@code AuditServiceProvider} instance.
+     * @param metricsRegistry The registry of the audit queue metrics.
+     * @param shutdownManager The shutdown manager to register the shutdown listener to.
+     */
+    @Inject
+    public AuditEventPublisherImpl(AuditServiceProvider auditServiceProvider, MetricsRegistry metricsRegistry,
+            ShutdownManager shutdownManager) {
+        this.auditServiceProvider = auditServiceProvider;
+        if (SystemPropertiesManager.getAsBoolean(Constants.AUDIT_ASYNC_ENABLED, false)) {
+            final AuditEventDispatcher asyncDispatcher = new AuditEventDispatcher(
+                    new AuditEventDispatcher.EventSink() {
+                        @Override
+                        public void publish(String topic, AuditEvent auditEvent) {
+                            publishNow(topic, auditEvent);
+                        }
+                    }, metricsRegistry,
+                    SystemPropertiesManager.getAsInt(Constants.AUDIT_ASYNC_QUEUE_SIZE, DEFAULT_QUEUE_SIZE),
+                    SystemPropertiesManager.getAsInt(Constants.AUDIT_ASYNC_BATCH_SIZE, DEFAULT_BATCH_SIZE),
+                    getOverflowPolicy());
+            // Publish the queued events before the audit services are shut down
+            shutdownManager.addShutdownListener(new ShutdownListener() {
+                @Override
+                public void shutdown() {
+                    asyncDispatcher.shutdown();
+                }
+            }, ShutdownPriority.HIGHEST);
+            this.dispatcher = asyncDispatcher;
+        } else {
+            this.dispatcher = null;
+        }
     }
 
     @Override
     public void tryPublish(String topic, AuditEvent auditEvent) {
+        if (dispatcher == null || !dispatcher.dispatch(topic, auditEvent)) {
+            publishNow(topic, auditEvent);
+        }
+    }
+
+    private void publishNow(String topic, AuditEvent auditEvent) {
         try {
             String realm = getValue(auditEvent.getValue(), EVENT_REALM, null);
             if (isBlank(realm)) {
@@ -112,6 +168,16 @@ public class AuditEventPublisherImpl implements AuditEventPublisher {
         }
     }
 
+    private OverflowPolicy getOverflowPolicy() {
+        String policy = SystemPropertiesManager.get(Constants.AUDIT_ASYNC_OVERFLOW_POLICY, OverflowPolicy.BLOCK.name());
+        try {
+            return OverflowPolicy.valueOf(policy.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            debug.error("Invalid audit overflow policy {}, defaulting to {}", policy, OverflowPolicy.BLOCK);
+            return OverflowPolicy.BLOCK;
+        }
+    }
+
     private String getValue(JsonValue jsonValue, String key, String defaultValue) {
         return jsonValue.isDefined(key) ? jsonValue.get(key).asString() : defaultValue;
     }
@@ -0,0 +1,126 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openam.audit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.forgerock.audit.events.AuditEvent;
+import org.forgerock.openam.audit.AuditEventDispatcher.OverflowPolicy;
+import org.forgerock.openam.shared.monitoring.metrics.MetricsRegistry;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class AuditEventDispatcherTest {
+
+    private List<AuditEvent> published;
+    private CountDownLatch publishing;
+    private CountDownLatch release;
+    private AuditEventDispatcher dispatcher;
+
+    @BeforeMethod
+    public void setUp() {
+        published = new CopyOnWriteArrayList<>();
+        publishing = new CountDownLatch(1);
+        release = new CountDownLatch(0);
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        while (release.getCount() > 0) {
+            release.countDown();
+        }
+        dispatcher.shutdown();
+    }
+
+    @Test
+    public void shouldPublishEventsFromBackgroundThread() throws Exception {
+        dispatcher = newDispatcher(10, OverflowPolicy.BLOCK);
+        AuditEvent event = event();
+
+        assertThat(dispatcher.dispatch("access", event)).isTrue();
+
+        assertThat(publishing.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(published).containsExactly(event);
+    }
+
+    @Test
+    public void shouldDropEventsWhenQueueIsFull() throws Exception {
+        release = new CountDownLatch(1);
+        dispatcher = newDispatcher(1, OverflowPolicy.DROP);
+        AuditEvent first = event();
+        AuditEvent queued = event();
+
+        dispatcher.dispatch("access", first);
+        assertThat(publishing.await(5, TimeUnit.SECONDS)).isTrue();
+        dispatcher.dispatch("access", queued);
+        assertThat(dispatcher.dispatch("access", event())).isTrue();
+        release.countDown();
+        dispatcher.shutdown();
+
+        assertThat(published).containsExactly(first, queued);
+    }
+
+    @Test
+    public void shouldPublishQueuedEventsOnShutdown() throws Exception {
+        release = new CountDownLatch(1);
+        dispatcher = newDispatcher(10, OverflowPolicy.BLOCK);
+        AuditEvent first = event();
+        AuditEvent queued = event();
+
+        dispatcher.dispatch("access", first);
+        assertThat(publishing.await(5, TimeUnit.SECONDS)).isTrue();
+        dispatcher.dispatch("access", queued);
+        release.countDown();
+        dispatcher.shutdown();
+
+        assertThat(published).containsExactly(first, queued);
+    }
+
+    @Test
+    public void shouldLetCallerPublishAfterShutdown() {
+        dispatcher = newDispatcher(10, OverflowPolicy.BLOCK);
+        dispatcher.shutdown();
+
+        assertThat(dispatcher.dispatch("access", event())).isFalse();
+        assertThat(published).isEmpty();
+    }
+
+    private AuditEventDispatcher newDispatcher(int queueSize, OverflowPolicy overflowPolicy) {
+        return new AuditEventDispatcher(new AuditEventDispatcher.EventSink() {
+            @Override
+            public void publish(String topic, AuditEvent auditEvent) {
+                published.add(auditEvent);
+                publishing.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, new MetricsRegistry(), queueSize, 1, overflowPolicy);
+    }
+
+    private static AuditEvent event() {
+        return mock(AuditEvent.class);
+    }
+}
@@ -2959,6 +2959,7 @@ public class AccessManager {
                   "create-xacml-not-supported-in-legacy-policy-mode=add-xacml not supported in legacy policy mode",
                   "subcmd-create-policies-__web__-xmlfile=Policy XML",
                   "create-policy-in-realm-succeed=Policies were created under realm, {0}.",
+                  "create-policy-in-realm-progress=Imported {0} of {1} applications, resource types and policies.",
                   "no-policies-provided=No policies provided"})
   private String create_xacml;
 
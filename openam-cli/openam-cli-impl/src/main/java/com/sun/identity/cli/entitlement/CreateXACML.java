@@ -63,6 +63,7 @@ import com.sun.identity.entitlement.PrivilegeManager;
 import com.sun.identity.entitlement.opensso.SubjectUtils;
 import com.sun.identity.entitlement.xacml3.SearchFilterFactory;
 import com.sun.identity.entitlement.xacml3.XACMLExportImport;
+import org.forgerock.openam.xacml.v3.ImportProgressListener;
 import org.forgerock.openam.xacml.v3.ImportStep;
 import com.sun.identity.entitlement.xacml3.XACMLReaderWriter;
 import com.sun.identity.entitlement.xacml3.validation.PrivilegeValidator;
@@ -76,6 +77,8 @@ import com.sun.identity.sm.SMSException;
  */
 public class CreateXACML extends AuthenticatedCommand {
 
+    private static final int PROGRESS_INTERVAL = 1000;
+
     /**
      * Services the command line request to import XACML.
      *
@@ -127,7 +130,16 @@ public class CreateXACML extends AuthenticatedCommand {
                     factory,
                     service);
 
-            importSteps = xacmlExportImport.importXacml(realm, xacmlInputStream, adminSubject, isDryRun());
+            importSteps = xacmlExportImport.importXacml(realm, xacmlInputStream, adminSubject, isDryRun(),
+                    new ImportProgressListener() {
+                        @Override
+                        public void stepApplied(ImportStep step, int applied, int total) {
+                            if (applied % PROGRESS_INTERVAL == 0 || applied == total) {
+                                getOutputWriter().printlnMessage(MessageFormat.format(
+                                        getResourceString("create-policy-in-realm-progress"), applied, total));
+                            }
+                        }
+                    });
         } catch (EntitlementException e) {
             debugError("CreateXACML.handleRequest", e);
             logException(realm, e);
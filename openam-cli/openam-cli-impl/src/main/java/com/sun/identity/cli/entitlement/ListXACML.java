@@ -30,6 +30,7 @@ package com.sun.identity.cli.entitlement;
 
 import static org.forgerock.openam.entitlement.utils.EntitlementUtils.getEntitlementConfiguration;
 
+import java.io.BufferedOutputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -264,12 +265,10 @@ public class ListXACML extends AuthenticatedCommand {
      */
     private void getPolicies() throws CLIException {
         FileOutputStream fout = null;
-        PrintWriter pwout = null;
 
         if (outfile != null) {
             try {
                 fout = new FileOutputStream(outfile, true);
-                pwout = new PrintWriter(fout, true);
             } catch (FileNotFoundException e) {
                 debugError("ListXACML.handleXACMLPolicyRequest", e);
                 try {
@@ -294,6 +293,7 @@ public class ListXACML extends AuthenticatedCommand {
         }
 
         PolicySet policySet = null;
+        int exported;
         try {
             PrivilegeValidator privilegeValidator = new PrivilegeValidator(
                     new RealmValidator(new OrganizationConfigManager(adminSSOToken, "/")));
@@ -308,7 +308,18 @@ public class ListXACML extends AuthenticatedCommand {
                     factory,
                     service);
 
-            policySet = importExport.exportXACML(realm, adminSubject, filters);
+            if (fout != null) {
+                // Policies are written to the file as they are read, rather than all being held in memory first
+                BufferedOutputStream out = new BufferedOutputStream(fout);
+                exported = importExport.exportXACML(realm, adminSubject, filters, out);
+                out.flush();
+            } else {
+                policySet = importExport.exportXACML(realm, adminSubject, filters);
+                exported = policySet == null ? 0 : policySet.getPolicySetOrPolicyOrPolicySetIdReference().size();
+            }
+        } catch (IOException e) {
+            debugError("ListXACML.handleRequest", e);
+            throw new CLIException(e, ExitCodes.IO_EXCEPTION);
         } catch (EntitlementException e) {
             String[] args = {realm, e.getMessage()};
             debugError("ListXACML.handleRequest", e);
@@ -321,20 +332,18 @@ public class ListXACML extends AuthenticatedCommand {
             throw new CLIException(e, ExitCodes.REQUEST_CANNOT_BE_PROCESSED);
         }
 
-        if (policySet == null || policySet.getPolicySetOrPolicyOrPolicySetIdReference().isEmpty()) {
+        if (exported == 0) {
             String[] arg = {realm};
             outputWriter.printlnMessage(MessageFormat.format(
                     getResourceString("get-policy-in-realm-no-policies"),
                     (Object[])arg));
         } else {
-            try {
-                if (pwout != null) {
-                    pwout.write(XACMLPrivilegeUtils.toXML(policySet));
-                } else {
+            if (policySet != null) {
+                try {
                     outputWriter.printlnMessage(XACMLPrivilegeUtils.toXML(policySet));
+                } catch (EntitlementException e) {
+                    throw new CLIException(e, ExitCodes.IO_EXCEPTION);
                 }
-            } catch (EntitlementException e) {
-                throw new CLIException(e, ExitCodes.IO_EXCEPTION);
             }
 
             writeLog(LogWriter.LOG_ACCESS, Level.INFO,
@@ -345,9 +354,8 @@ public class ListXACML extends AuthenticatedCommand {
                     getResourceString("get-policy-in-realm-succeed"),
                     (Object[])arg));
 
-            if (pwout != null) {
+            if (fout != null) {
                 try {
-                    pwout.close();
                     fout.close();
                 } catch (IOException e) {
                     //do nothing
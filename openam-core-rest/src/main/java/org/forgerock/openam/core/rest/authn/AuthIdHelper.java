@@ -25,14 +25,16 @@ import com.sun.identity.shared.encode.Base64;
 import com.sun.identity.sm.SMSException;
 import com.sun.identity.sm.ServiceConfig;
 import com.sun.identity.sm.ServiceConfigManager;
+import com.sun.identity.sm.ServiceListener;
 
 import java.math.BigInteger;
 import java.security.SecureRandom;
 import java.security.SignatureException;
 import java.util.HashMap;
 import java.util.Map;
-import javax.crypto.SecretKey;
-import javax.crypto.spec.SecretKeySpec;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
@@ -50,6 +52,7 @@ import org.forgerock.openam.core.rest.authn.core.AuthenticationContext;
 import org.forgerock.openam.core.rest.authn.core.LoginConfiguration;
 import org.forgerock.openam.core.rest.authn.exceptions.RestAuthException;
 import org.forgerock.openam.utils.AMKeyProvider;
+import org.forgerock.util.annotations.VisibleForTesting;
 
 /**
  * Helper class to create and verify authentication JWTs.
@@ -64,6 +67,9 @@ public class AuthIdHelper {
     private final CoreServicesWrapper coreServicesWrapper;
     private final JwtBuilderFactory jwtBuilderFactory;
     private final SigningManager signingManager;
+    private final ConcurrentMap<String, SigningHandler> signingHandlers;
+    private final AtomicInteger generation = new AtomicInteger();
+    private volatile boolean listening;
 
     /**
      * Constructs an instance of the AuthIdHelper.
@@ -75,9 +81,16 @@ public class AuthIdHelper {
     @Inject
     public AuthIdHelper(CoreServicesWrapper coreServicesWrapper,
             JwtBuilderFactory jwtBuilderFactory, SigningManager signingManager) {
+        this(coreServicesWrapper, jwtBuilderFactory, signingManager, new ConcurrentHashMap<String, SigningHandler>());
+    }
+
+    @VisibleForTesting
+    AuthIdHelper(CoreServicesWrapper coreServicesWrapper, JwtBuilderFactory jwtBuilderFactory,
+            SigningManager signingManager, ConcurrentMap<String, SigningHandler> signingHandlers) {
         this.coreServicesWrapper = coreServicesWrapper;
         this.jwtBuilderFactory = jwtBuilderFactory;
         this.signingManager = signingManager;
+        this.signingHandlers = signingHandlers;
     }
 
     /**
@@ -91,7 +104,7 @@ public class AuthIdHelper {
     public String createAuthId(LoginConfiguration loginConfiguration, AuthenticationContext authContext)
             throws SignatureException, RestAuthException {
 
-        final SecretKey key = getSigningKey(authContext.getOrgDN());
+        final SigningHandler signingHandler = getSigningHandler(authContext.getOrgDN());
 
         Map<String, Object> jwtValues = new HashMap<String, Object>();
         if (loginConfiguration.getIndexType().getIndexType() != null && loginConfiguration.getIndexValue() != null) {
@@ -102,7 +115,7 @@ public class AuthIdHelper {
         jwtValues.put("realm", authContext.getOrgDN());
         jwtValues.put(SESSION_ID, authContext.getSessionID().toString());
 
-        return generateAuthId(key, jwtValues);
+        return generateAuthId(signingHandler, jwtValues);
     }
 
     /**
@@ -116,25 +129,57 @@ public class AuthIdHelper {
     }
 
     /**
-     * Retrieves the secret key to use to sign and verify the JWT.
+     * Retrieves the signing handler to use to sign and verify the JWT.
+     *
+     * The handlers are cached per organisation, until the authentication service configuration changes.
      *
      * @param orgName The organisation name for the realm being authenticated against.
-     * @return The signing key.
+     * @return The signing handler.
      */
-    private SecretKey getSigningKey(String orgName) throws RestAuthException {
+    private SigningHandler getSigningHandler(String orgName) throws RestAuthException {
+
+        SigningHandler signingHandler = signingHandlers.get(orgName);
+        if (signingHandler != null) {
+            return signingHandler;
+        }
 
         SSOToken token = coreServicesWrapper.getAdminToken();
 
         try {
             ServiceConfigManager scm = coreServicesWrapper.getServiceConfigManager(AUTH_SERVICE_NAME, token);
+            listenForChanges(scm);
+            int configGeneration = generation.get();
             ServiceConfig orgConfig = scm.getOrganizationConfig(orgName, null);
             byte[] key = Base64.decode(CollectionHelper.getMapAttr(orgConfig.getAttributes(), SHARED_SECRET_ATTR));
-            return new SecretKeySpec(key, "RAW");
+            signingHandler = signingManager.newHmacSigningHandler(key);
+            // Do not cache a handler built from configuration which changed while it was being read
+            if (configGeneration == generation.get()) {
+                signingHandlers.putIfAbsent(orgName, signingHandler);
+                // The configuration may have changed, and the handlers been cleared, just before the handler was added
+                if (configGeneration != generation.get()) {
+                    signingHandlers.remove(orgName, signingHandler);
+                }
+            }
+            return signingHandler;
         } catch (SMSException | SSOException | NullPointerException e) {
             throw new RestAuthException(ResourceException.INTERNAL_ERROR, e);
         }
     }
 
+    /**
+     * The listener is registered before the first signing handler is cached, so that no change can be missed.
+     */
+    private void listenForChanges(ServiceConfigManager scm) {
+        if (!listening) {
+            synchronized (signingHandlers) {
+                if (!listening) {
+                    scm.addListener(new AuthServiceListener());
+                    listening = true;
+                }
+            }
+        }
+    }
+
     /**
      * Generates the authentication id JWT.
      *
@@ -142,8 +187,8 @@ public class AuthIdHelper {
      * @return The authentication id JWT.
      * @throws SignatureException If there is a problem signing the JWT.
      */
-    private String generateAuthId(SecretKey key, Map<String, Object> jwtValues) throws SignatureException,
-                                                                                       RestAuthException {
+    private String generateAuthId(SigningHandler signingHandler, Map<String, Object> jwtValues)
+            throws SignatureException, RestAuthException {
         String otk = new BigInteger(130, RANDOM).toString(32);
 
         JwtClaimsSet claimsSet = jwtBuilderFactory.claims()
@@ -151,7 +196,6 @@ public class AuthIdHelper {
                 .claims(jwtValues)
                 .build();
 
-        final SigningHandler signingHandler = signingManager.newHmacSigningHandler(key.getEncoded());
         String jwt = jwtBuilderFactory.jws(signingHandler)
                 .headers()
                 .alg(JwsAlgorithm.HS256)
@@ -185,10 +229,9 @@ public class AuthIdHelper {
      */
     public void verifyAuthId(String realmDN, String authId) throws RestAuthException {
 
-        SecretKey key = getSigningKey(realmDN);
+        SigningHandler signingHandler = getSigningHandler(realmDN);
 
         try {
-            final SigningHandler signingHandler = signingManager.newHmacSigningHandler(key.getEncoded());
             boolean verified = jwtBuilderFactory.reconstruct(authId, SignedJwt.class).verify(signingHandler);
             if (!verified) {
                 throw new RestAuthException(ResourceException.BAD_REQUEST, "AuthId JWT Signature not valid");
@@ -198,4 +241,32 @@ public class AuthIdHelper {
                     + e.getLocalizedMessage(), e);
         }
     }
+
+    /**
+     * Discards the cached signing handlers whenever the authentication service configuration changes.
+     */
+    private final class AuthServiceListener implements ServiceListener {
+
+        @Override
+        public void schemaChanged(String serviceName, String version) {
+            clear();
+        }
+
+        @Override
+        public void globalConfigChanged(String serviceName, String version, String groupName,
+                String serviceComponent, int type) {
+            clear();
+        }
+
+        @Override
+        public void organizationConfigChanged(String serviceName, String version, String orgName, String groupName,
+                String serviceComponent, int type) {
+            clear();
+        }
+
+        private void clear() {
+            generation.incrementAndGet();
+            signingHandlers.clear();
+        }
+    }
 }
@@ -18,13 +18,17 @@ package org.forgerock.openam.core.rest.session;
 
 import javax.inject.Inject;
 import javax.inject.Named;
+import javax.inject.Singleton;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 
 import com.google.inject.AbstractModule;
 import com.google.inject.Provides;
 import com.iplanet.sso.SSOTokenManager;
 import org.forgerock.authz.filter.crest.api.CrestAuthorizationModule;
+import org.forgerock.openam.audit.context.AMExecutorServiceFactory;
+import org.forgerock.openam.core.rest.session.query.SessionQueryManager;
 import org.forgerock.openam.rest.authz.AdminOnlyAuthzModule;
 import org.forgerock.openam.rest.authz.CrestPrivilegeAuthzModule;
 
@@ -50,6 +54,14 @@ public class CoreRestSessionGuiceModule extends AbstractModule {
         return new AnyOfAuthzModule(authzList);
     }
 
+    @Provides
+    @Singleton
+    @Inject
+    @Named(SessionQueryManager.EXECUTOR_BINDING_NAME)
+    public ExecutorService getSessionQueryExecutorService(AMExecutorServiceFactory esf) {
+        return esf.createCachedThreadPool("SessionQuery");
+    }
+
     private List<CrestAuthorizationModule> initializeAuthzList(CrestPrivilegeAuthzModule privilegeAuthzModule,
             AdminOnlyAuthzModule adminOnlyAuthzModule) {
         List<CrestAuthorizationModule> authzList = new ArrayList<>(3);
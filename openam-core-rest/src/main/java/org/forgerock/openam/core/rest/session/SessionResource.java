@@ -80,6 +80,7 @@ import org.forgerock.openam.core.rest.session.action.IsActiveActionHandler;
 import org.forgerock.openam.core.rest.session.action.LogoutActionHandler;
 import org.forgerock.openam.core.rest.session.action.SetPropertyActionHandler;
 import org.forgerock.openam.core.rest.session.action.ValidateActionHandler;
+import org.forgerock.openam.core.rest.session.query.SessionQueryHandler;
 import org.forgerock.openam.rest.RestUtils;
 import org.forgerock.openam.session.SessionConstants;
 import org.forgerock.openam.session.SessionPropertyWhitelist;
@@ -735,23 +736,27 @@ public class SessionResource implements CollectionResourceProvider {
             handler.handleResource(newResourceResponse(KEYWORD_LIST, String.valueOf(currentTimeMillis()),
                     new JsonValue(servers)));
         } else {
-            Collection<SessionInfo> sessions;
+            final QueryResourceHandler resourceHandler = handler;
+            SessionQueryHandler sessionHandler = new SessionQueryHandler() {
+                @Override
+                public void handleSessions(String serverId, Collection<SessionInfo> sessions) {
+                    for (SessionInfo session : sessions) {
+                        resourceHandler.handleResource(newResourceResponse("Sessions",
+                                String.valueOf(currentTimeMillis()), sessionResourceUtil.jsonValueOf(session)));
+                    }
+                }
+            };
 
             if (KEYWORD_ALL.equals(id)) {
-                sessions = sessionResourceUtil.generateAllSessions();
+                sessionResourceUtil.generateAllSessions(sessionHandler);
                 LOGGER.message("SessionResource.queryCollection() :: Retrieved list of sessions for query.");
             } else {
                 if (SERVER_QUERY_ID.equals(id)) {
                     id = request.getAdditionalParameter(KEYWORD_SERVER_ID);
                 }
-                sessions = sessionResourceUtil.generateNamedServerSession(id);
+                sessionResourceUtil.generateNamedServerSession(id, sessionHandler);
                 LOGGER.message("SessionResource.queryCollection() :: Retrieved list of specified servers for query.");
             }
-
-            for (SessionInfo session : sessions) {
-                handler.handleResource(newResourceResponse("Sessions", String.valueOf(currentTimeMillis()),
-                        sessionResourceUtil.jsonValueOf(session)));
-            }
         }
         return newResultPromise(newQueryResponse());
     }
@@ -34,6 +34,7 @@ import com.sun.identity.idm.IdRepoException;
 import com.sun.identity.shared.debug.Debug;
 import com.sun.identity.sm.DNMapper;
 import org.forgerock.json.JsonValue;
+import org.forgerock.openam.core.rest.session.query.SessionQueryHandler;
 import org.forgerock.openam.core.rest.session.query.SessionQueryManager;
 import org.forgerock.openam.session.SessionConstants;
 import org.forgerock.openam.utils.StringUtils;
@@ -144,6 +145,26 @@ public class SessionResourceUtil {
         return sessions;
     }
 
+    /**
+     * Queries the named server, passing its Sessions to the handler once it has responded.
+     *
+     * @param serverId Server to query.
+     * @param handler Non null handler for the Sessions of the server.
+     */
+    public void generateNamedServerSession(String serverId, SessionQueryHandler handler) {
+        queryManager.getAllSessions(Arrays.asList(serverId), handler);
+    }
+
+    /**
+     * Queries all servers in parallel, passing the Sessions of each server to the handler as soon as that server has
+     * responded.
+     *
+     * @param handler Non null handler for the Sessions of each server.
+     */
+    public void generateAllSessions(SessionQueryHandler handler) {
+        queryManager.getAllSessions(getAllServerIds(), handler);
+    }
+
     /**
      * Creates the JsonValue representing the single sign on token
      *
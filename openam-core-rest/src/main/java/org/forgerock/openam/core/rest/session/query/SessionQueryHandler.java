@@ -0,0 +1,38 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openam.core.rest.session.query;
+
+import java.util.Collection;
+
+import com.iplanet.dpro.session.share.SessionInfo;
+
+/**
+ * Receives the Sessions of each server as the {@link SessionQueryManager} obtains them.
+ *
+ * @since 14.0.0
+ */
+public interface SessionQueryHandler {
+
+    /**
+     * Called once for each server which responded to the query in time, in the order the servers responded. Always
+     * called on the thread which started the query.
+     *
+     * @param serverId The id of the server that was queried.
+     * @param sessions Non null but possibly empty collection of the Sessions of that server.
+     */
+    void handleSessions(String serverId, Collection<SessionInfo> sessions);
+}
@@ -11,43 +11,100 @@
  * Header, with the fields enclosed by brackets [] replaced by your own identifying
  * information: "Portions copyright [year] [name of copyright owner]".
  *
- * Copyright 2013-2015 ForgeRock AS.
+ * Copyright 2013-2016 ForgeRock AS.
  */
 
 package org.forgerock.openam.core.rest.session.query;
 
+import com.iplanet.am.util.SystemProperties;
 import com.iplanet.dpro.session.share.SessionInfo;
+import com.sun.identity.session.util.RestrictedTokenAction;
+import com.sun.identity.session.util.RestrictedTokenContext;
 import com.sun.identity.shared.debug.Debug;
+import org.forgerock.openam.shared.monitoring.metrics.Gauge;
+import org.forgerock.openam.shared.monitoring.metrics.MetricsRegistry;
+import org.forgerock.util.annotations.VisibleForTesting;
 
 import javax.inject.Inject;
+import javax.inject.Named;
 import java.text.MessageFormat;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Provides the ability to query a collection of OpenAM servers for Session information. Uses the
  * SessionQueryFactory to determine the most appropriate mechanism for performing the query and handles any
  * complexity around querying Sessions.
  *
+ * Servers are queried in parallel. Each server's Sessions are handed back as soon as that server responds, and
+ * servers which do not respond within the configured timeout are left out of the results rather than failing the
+ * whole query. The number of Sessions taken from each server can also be capped.
+ *
  * This manager should easily be expanded to support new functions like 'Session Count' or 'Get Sessions for User'.
  *
  * @author robert.wapshott@forgerock.com
  */
 public class SessionQueryManager {
 
+    /** Name of the {@link ExecutorService} binding used to query servers. */
+    public static final String EXECUTOR_BINDING_NAME = "SessionQueryExecutorService";
+
+    private static final String SERVER_TIMEOUT_PROPERTY = "org.forgerock.openam.session.query.serverTimeoutMillis";
+    private static final String MAX_RESULTS_PROPERTY = "org.forgerock.openam.session.query.maxResultsPerServer";
+    private static final String LATENCY_METRIC = "am_session_query_server_latency_seconds";
+
     private static Debug debug = Debug.getInstance("frRest");
 
-    private SessionQueryFactory queryFactory;
+    private final SessionQueryFactory queryFactory;
+    private final ExecutorService executorService;
+    private final long serverTimeoutMillis;
+    private final int maxResultsPerServer;
+    private final MetricsRegistry metricsRegistry;
+    private final Map<String, Long> serverLatencies = new ConcurrentHashMap<>();
 
     /**
      * Intialise the SessionQueryManager and provide the OpenAM server ids that it should apply to.
      *
      * @param queryFactory Non null instance.
+     * @param executorService Non null executor used to query the servers in parallel.
+     * @param metricsRegistry Non null registry the server latencies are reported to.
      */
     @Inject
-    public SessionQueryManager(SessionQueryFactory queryFactory) {
+    public SessionQueryManager(SessionQueryFactory queryFactory,
+            @Named(EXECUTOR_BINDING_NAME) ExecutorService executorService, MetricsRegistry metricsRegistry) {
+        this(queryFactory, executorService, metricsRegistry, SystemProperties.getAsLong(SERVER_TIMEOUT_PROPERTY,
+                10000L), SystemProperties.getAsInt(MAX_RESULTS_PROPERTY, 0));
+    }
+
+    /**
+     * Intialise the SessionQueryManager with explicit limits.
+     *
+     * @param queryFactory Non null instance.
+     * @param executorService Non null executor used to query the servers in parallel.
+     * @param metricsRegistry Non null registry the server latencies are reported to.
+     * @param serverTimeoutMillis How long to wait for the servers to respond.
+     * @param maxResultsPerServer The maximum number of Sessions taken from each server, zero for no limit.
+     */
+    @VisibleForTesting
+    SessionQueryManager(SessionQueryFactory queryFactory, ExecutorService executorService,
+            MetricsRegistry metricsRegistry, long serverTimeoutMillis, int maxResultsPerServer) {
         this.queryFactory = queryFactory;
+        this.executorService = executorService;
+        this.metricsRegistry = metricsRegistry;
+        this.serverTimeoutMillis = serverTimeoutMillis;
+        this.maxResultsPerServer = maxResultsPerServer;
     }
 
     /**
@@ -57,28 +114,167 @@ public class SessionQueryManager {
      *                  {@link com.iplanet.services.naming.WebtopNaming#getAllServerIDs()} which will provide all
      *                  server id's known to OpenAM.
      *
-     * @return Returns all sessions across all servers.
+     * @return Returns all sessions across all servers which responded in time.
      */
     public Collection<SessionInfo> getAllSessions(Collection<String> serverIds) {
-        // impl note, this could be a Map of Server -> Sessions
+        final List<SessionInfo> sessions = new LinkedList<SessionInfo>();
+        getAllSessions(serverIds, new SessionQueryHandler() {
+            @Override
+            public void handleSessions(String serverId, Collection<SessionInfo> serverSessions) {
+                sessions.addAll(serverSessions);
+            }
+        });
+        return sessions;
+    }
 
-        List<SessionInfo> sessions = new LinkedList<SessionInfo>();
+    /**
+     * Query all servers allocated to this SessionQueryManager for their Sessions, passing the Sessions of each
+     * server to the handler as soon as that server has responded.
+     *
+     * @param serverIds One or more server id's.
+     * @param handler Non null handler for the Sessions of each server.
+     */
+    public void getAllSessions(Collection<String> serverIds, SessionQueryHandler handler) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(serverTimeoutMillis);
 
+        ExecutorCompletionService<ServerSessions> completionService =
+                new ExecutorCompletionService<>(executorService);
+        Map<Future<ServerSessions>, String> pending = new HashMap<>();
+        Object restrictedTokenContext = RestrictedTokenContext.getCurrent();
         for (String server : serverIds) {
-            SessionQueryType queryType = queryFactory.getSessionQueryType(server);
+            pending.put(completionService.submit(new ServerQuery(server, restrictedTokenContext)), server);
+        }
+
+        try {
+            while (!pending.isEmpty()) {
+                Future<ServerSessions> future =
+                        completionService.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                if (future == null) {
+                    break;
+                }
+                String server = pending.remove(future);
+                try {
+                    ServerSessions result = future.get();
+                    recordLatency(server, result.latency);
+                    handler.handleSessions(server, limit(result.sessions, maxResultsPerServer, server));
+                } catch (ExecutionException e) {
+                    forgetLatency(server);
+                    debug.warning("SessionQueryManager#getAllSessions() :: Failed to query " + server, e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            for (Map.Entry<Future<ServerSessions>, String> timedOut : pending.entrySet()) {
+                timedOut.getKey().cancel(true);
+                forgetLatency(timedOut.getValue());
+                debug.warning(MessageFormat.format(
+                        "SessionQueryManager#getAllSessions() :: No response from {0} within {1}ms, "
+                                + "returning partial results", timedOut.getValue(), serverTimeoutMillis));
+            }
+        }
+    }
+
+    /**
+     * Returns the time taken by the most recent query of each server, for monitoring purposes. Servers whose most
+     * recent query timed out or failed are not included. The latencies are also reported to the
+     * {@link MetricsRegistry} as {@value #LATENCY_METRIC}, labelled with the server id.
+     *
+     * @return Non null map of server id to the latency of its most recent query in milliseconds.
+     */
+    public Map<String, Long> getServerLatencies() {
+        return Collections.unmodifiableMap(serverLatencies);
+    }
 
-            Collection<SessionInfo> queriedSessions = queryType.getAllSessions();
+    /**
+     * The latency is recorded once the server's response has been received, so that a query which timed out cannot
+     * record its latency after it has been forgotten.
+     */
+    private void recordLatency(final String server, long latency) {
+        serverLatencies.put(server, latency);
+        metricsRegistry.gauge(LATENCY_METRIC, "The time the most recent session query of a server took.",
+                new Gauge() {
+                    @Override
+                    public double getValue() {
+                        Long current = serverLatencies.get(server);
+                        return current == null ? Double.NaN : current / 1000d;
+                    }
+                }, "server_id", server);
+    }
+
+    private void forgetLatency(String server) {
+        if (serverLatencies.remove(server) != null) {
+            metricsRegistry.remove(LATENCY_METRIC, "server_id", server);
+        }
+    }
+
+    private Collection<SessionInfo> limit(Collection<SessionInfo> sessions, int maxResults, String server) {
+        if (maxResults <= 0 || sessions.size() <= maxResults) {
+            return sessions;
+        }
+        if (debug.messageEnabled()) {
+            debug.message(MessageFormat.format(
+                    "SessionQueryManager#getAllSessions() :: Limiting {0} Sessions from {1} to {2}",
+                    sessions.size(), server, maxResults));
+        }
+        List<SessionInfo> limited = new ArrayList<>(maxResults);
+        for (SessionInfo session : sessions) {
+            if (limited.size() == maxResults) {
+                break;
+            }
+            limited.add(session);
+        }
+        return limited;
+    }
+
+    /**
+     * Queries a single server on a thread of the executor.
+     */
+    private final class ServerQuery implements Callable<ServerSessions> {
 
+        private final String server;
+        private final Object restrictedTokenContext;
+
+        private ServerQuery(String server, Object restrictedTokenContext) {
+            this.server = server;
+            this.restrictedTokenContext = restrictedTokenContext;
+        }
+
+        @Override
+        public ServerSessions call() throws Exception {
+            final SessionQueryType queryType = queryFactory.getSessionQueryType(server);
+            long start = System.currentTimeMillis();
+            Collection<SessionInfo> queriedSessions = RestrictedTokenContext.doUsing(restrictedTokenContext,
+                    new RestrictedTokenAction<Collection<SessionInfo>>() {
+                        @Override
+                        public Collection<SessionInfo> run() {
+                            return queryType.getAllSessions();
+                        }
+                    });
+            long latency = System.currentTimeMillis() - start;
+
+            if (queriedSessions == null) {
+                queriedSessions = Collections.emptyList();
+            }
             if (debug.messageEnabled()) {
                 debug.message(MessageFormat.format(
-                        "SessionQueryManager#getAllSessions() :: Queried {0} from: {1}",
+                        "SessionQueryManager#getAllSessions() :: Queried {0} from: {1} in {2}ms",
                         queriedSessions.size(),
-                        server));
+                        server,
+                        latency));
             }
-
-            sessions.addAll(queriedSessions);
+            return new ServerSessions(queriedSessions, latency);
         }
+    }
 
-        return sessions;
+    private static final class ServerSessions {
+
+        private final Collection<SessionInfo> sessions;
+        private final long latency;
+
+        private ServerSessions(Collection<SessionInfo> sessions, long latency) {
+            this.sessions = sessions;
+            this.latency = latency;
+        }
     }
 }
@@ -27,6 +27,7 @@ import com.sun.identity.shared.encode.Base64;
 import com.sun.identity.sm.SMSException;
 import com.sun.identity.sm.ServiceConfig;
 import com.sun.identity.sm.ServiceConfigManager;
+import com.sun.identity.sm.ServiceListener;
 
 import java.security.PublicKey;
 import java.security.SignatureException;
@@ -34,6 +35,8 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.forgerock.json.jose.builders.JwsHeaderBuilder;
 import org.forgerock.json.jose.builders.JwtBuilderFactory;
@@ -69,6 +72,7 @@ public class AuthIdHelperTest {
 
     private JwsHeaderBuilder jwsHeaderBuilder;
     private JwtClaimsSetBuilder claimsSetBuilder;
+    private ServiceConfigManager serviceConfigManager;
 
     @BeforeMethod
     public void setUp() {
@@ -78,6 +82,7 @@ public class AuthIdHelperTest {
         signingManager = mock(SigningManager.class);
 
         authIdHelper = new AuthIdHelper(coreServicesWrapper, jwtBuilderFactory, signingManager);
+        given(signingManager.newHmacSigningHandler(any(byte[].class))).willReturn(mock(SigningHandler.class));
 
         jwsHeaderBuilder = mock(JwsHeaderBuilder.class);
         claimsSetBuilder = mock(JwtClaimsSetBuilder.class);
@@ -99,7 +104,8 @@ public class AuthIdHelperTest {
         given(signedJwtBuilder.build()).willReturn("JWT_STRING");
     }
 
-    private void mockGetSigningKey(String orgName, boolean nullKeyAlias) throws SMSException, SSOException {
+    private ServiceConfigManager mockGetSigningKey(String orgName, boolean nullKeyAlias)
+            throws SMSException, SSOException {
         SSOToken adminToken = mock(SSOToken.class);
         ServiceConfigManager serviceConfigManager = mock(ServiceConfigManager.class);
         ServiceConfig serviceConfig = mock(ServiceConfig.class);
@@ -114,6 +120,7 @@ public class AuthIdHelperTest {
                 .willReturn(serviceConfigManager);
         given(serviceConfigManager.getOrganizationConfig(orgName, null)).willReturn(serviceConfig);
         given(serviceConfig.getAttributes()).willReturn(orgConfigAttributes);
+        return serviceConfigManager;
     }
 
     @Test
@@ -317,6 +324,61 @@ public class AuthIdHelperTest {
         verify(signedJwt).verify(Matchers.<SigningHandler>anyObject());
     }
 
+    @Test
+    public void shouldReuseSigningHandlerUntilConfigurationChanges() throws Exception {
+
+        //Given
+        SignedJwt signedJwt = mock(SignedJwt.class);
+        given(jwtBuilderFactory.reconstruct("AUTH_ID", SignedJwt.class)).willReturn(signedJwt);
+        given(signedJwt.verify(Matchers.<SigningHandler>anyObject())).willReturn(true);
+        ServiceConfigManager serviceConfigManager = mockGetSigningKey("REALM_DN", false);
+
+        //When
+        authIdHelper.verifyAuthId("REALM_DN", "AUTH_ID");
+        authIdHelper.verifyAuthId("REALM_DN", "AUTH_ID");
+        ArgumentCaptor<ServiceListener> listener = ArgumentCaptor.forClass(ServiceListener.class);
+        verify(serviceConfigManager).addListener(listener.capture());
+        listener.getValue().organizationConfigChanged("iPlanetAMAuthService", "1.0", "REALM_DN", null, null,
+                ServiceListener.MODIFIED);
+        authIdHelper.verifyAuthId("REALM_DN", "AUTH_ID");
+
+        //Then
+        verify(serviceConfigManager, times(2)).getOrganizationConfig("REALM_DN", null);
+        verify(signingManager, times(2)).newHmacSigningHandler(any(byte[].class));
+    }
+
+    @Test
+    public void shouldNotKeepSigningHandlerAddedAsConfigurationChanged() throws Exception {
+
+        //Given
+        final ConcurrentMap<String, SigningHandler> signingHandlers = new ConcurrentHashMap<String, SigningHandler>() {
+            @Override
+            public SigningHandler putIfAbsent(String orgName, SigningHandler signingHandler) {
+                // The configuration changes after the handler was built, just before it is added
+                organizationConfigChanged();
+                return super.putIfAbsent(orgName, signingHandler);
+            }
+        };
+        authIdHelper = new AuthIdHelper(coreServicesWrapper, jwtBuilderFactory, signingManager, signingHandlers);
+        SignedJwt signedJwt = mock(SignedJwt.class);
+        given(jwtBuilderFactory.reconstruct("AUTH_ID", SignedJwt.class)).willReturn(signedJwt);
+        given(signedJwt.verify(Matchers.<SigningHandler>anyObject())).willReturn(true);
+        serviceConfigManager = mockGetSigningKey("REALM_DN", false);
+
+        //When
+        authIdHelper.verifyAuthId("REALM_DN", "AUTH_ID");
+
+        //Then
+        assertTrue(signingHandlers.isEmpty());
+    }
+
+    private void organizationConfigChanged() {
+        ArgumentCaptor<ServiceListener> listener = ArgumentCaptor.forClass(ServiceListener.class);
+        verify(serviceConfigManager).addListener(listener.capture());
+        listener.getValue().organizationConfigChanged("iPlanetAMAuthService", "1.0", "REALM_DN", null, null,
+                ServiceListener.MODIFIED);
+    }
+
     @Test
     public void shouldVerifyAuthIdAndFail() throws SignatureException, SSOException, SMSException {
 
@@ -11,7 +11,7 @@
  * Header, with the fields enclosed by brackets [] replaced by your own identifying
  * information: "Portions copyright [year] [name of copyright owner]".
  *
- * Copyright 2013-2015 ForgeRock AS.
+ * Copyright 2013-2016 ForgeRock AS.
  */
 
 package org.forgerock.openam.core.rest.session;
@@ -66,6 +66,7 @@ import org.forgerock.json.resource.ResourceException;
 import org.forgerock.openam.authentication.service.AuthUtilsWrapper;
 import org.forgerock.openam.core.realms.Realm;
 import org.forgerock.openam.core.realms.RealmTestHelper;
+import org.forgerock.openam.core.rest.session.query.SessionQueryHandler;
 import org.forgerock.openam.core.rest.session.query.SessionQueryManager;
 import org.forgerock.openam.rest.RealmContext;
 import org.forgerock.openam.rest.resource.SSOTokenContext;
@@ -204,7 +205,7 @@ public class SessionResourceTest {
 
         // Then
         List<String> result = Arrays.asList(badger, weasel);
-        verify(mockManager, times(1)).getAllSessions(result);
+        verify(mockManager, times(1)).getAllSessions(eq(result), any(SessionQueryHandler.class));
     }
 
     @Test
@@ -228,7 +229,7 @@ public class SessionResourceTest {
         verify(sessionResourceUtil, times(0)).getAllServerIds();
 
         List<String> result = Collections.singletonList(badger);
-        verify(mockManager, times(1)).getAllSessions(result);
+        verify(mockManager, times(1)).getAllSessions(eq(result), any(SessionQueryHandler.class));
     }
 
     @Test
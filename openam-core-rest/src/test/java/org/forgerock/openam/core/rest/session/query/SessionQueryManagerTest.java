@@ -11,19 +11,31 @@
  * Header, with the fields enclosed by brackets [] replaced by your own identifying
  * information: "Portions copyright [year] [name of copyright owner]".
  *
- * Copyright 2013-2015 ForgeRock AS.
+ * Copyright 2013-2016 ForgeRock AS.
  */
 
 package org.forgerock.openam.core.rest.session.query;
 
 import com.iplanet.dpro.session.share.SessionInfo;
+import org.forgerock.openam.shared.monitoring.metrics.MetricsRegistry;
+import org.forgerock.openam.shared.monitoring.metrics.PrometheusTextFormat;
 import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import java.io.IOException;
+import java.io.StringWriter;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.mockito.BDDMockito.given;
 import static org.mockito.BDDMockito.mock;
@@ -31,12 +43,28 @@ import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertTrue;
 
 /**
  * @author robert.wapshott@forgerock.com
  */
 public class SessionQueryManagerTest {
+
+    private ExecutorService executorService;
+    private MetricsRegistry metricsRegistry;
+
+    @BeforeMethod
+    public void setUp() {
+        executorService = Executors.newCachedThreadPool();
+        metricsRegistry = new MetricsRegistry();
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        executorService.shutdownNow();
+    }
+
     @Test
     public void shouldRetrieveQueryTypeForAllServerIds() {
         // Given
@@ -49,7 +77,7 @@ public class SessionQueryManagerTest {
 
         SessionQueryFactory mockFactory = mock(SessionQueryFactory.class);
         given(mockFactory.getSessionQueryType(anyString())).willReturn(mock(SessionQueryType.class));
-        SessionQueryManager manager = new SessionQueryManager(mockFactory);
+        SessionQueryManager manager = new SessionQueryManager(mockFactory, executorService, metricsRegistry, 10000L, 0);
 
         // When
         manager.getAllSessions(ids);
@@ -70,7 +98,7 @@ public class SessionQueryManagerTest {
         SessionQueryFactory mockFactory = mock(SessionQueryFactory.class);
         given(mockFactory.getSessionQueryType(anyString())).willReturn(mockQueryType);
 
-        SessionQueryManager manager = new SessionQueryManager(mockFactory);
+        SessionQueryManager manager = new SessionQueryManager(mockFactory, executorService, metricsRegistry, 10000L, 0);
 
         // When
         manager.getAllSessions(Arrays.asList(new String[]{"badger"}));
@@ -97,7 +125,7 @@ public class SessionQueryManagerTest {
         given(mockFactory.getSessionQueryType(badger)).willReturn(typeOne);
         given(mockFactory.getSessionQueryType(weasel)).willReturn(typeTwo);
 
-        SessionQueryManager manager = new SessionQueryManager(mockFactory);
+        SessionQueryManager manager = new SessionQueryManager(mockFactory, executorService, metricsRegistry, 10000L, 0);
 
         // When
         Collection<SessionInfo> sessions = manager.getAllSessions(Arrays.asList(new String[]{badger, weasel}));
@@ -107,4 +135,101 @@ public class SessionQueryManagerTest {
         assertTrue(sessions.contains(one));
         assertTrue(sessions.contains(two));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void shouldReturnPartialResultsWhenServerDoesNotRespondInTime() {
+        // Given
+        final CountDownLatch release = new CountDownLatch(1);
+        SessionInfo one = mock(SessionInfo.class);
+
+        SessionQueryType fast = mock(SessionQueryType.class);
+        given(fast.getAllSessions()).willReturn(Arrays.asList(new SessionInfo[]{one}));
+        SessionQueryType slow = mock(SessionQueryType.class);
+        given(slow.getAllSessions()).willAnswer(new Answer<Collection<SessionInfo>>() {
+            @Override
+            public Collection<SessionInfo> answer(InvocationOnMock invocation) throws Throwable {
+                release.await();
+                return Arrays.asList(new SessionInfo[]{mock(SessionInfo.class)});
+            }
+        });
+
+        SessionQueryFactory mockFactory = mock(SessionQueryFactory.class);
+        given(mockFactory.getSessionQueryType("fast")).willReturn(fast);
+        given(mockFactory.getSessionQueryType("slow")).willReturn(slow);
+
+        SessionQueryManager manager = new SessionQueryManager(mockFactory, executorService, metricsRegistry, 200L, 0);
+
+        // When
+        Collection<SessionInfo> sessions;
+        try {
+            sessions = manager.getAllSessions(Arrays.asList(new String[]{"fast", "slow"}));
+        } finally {
+            release.countDown();
+        }
+
+        // Then
+        assertEquals(1, sessions.size());
+        assertTrue(sessions.contains(one));
+        assertTrue(manager.getServerLatencies().containsKey("fast"));
+    }
+
+    @Test
+    public void shouldForgetLatencyOfServerWhichStopsResponding() throws Exception {
+        // Given
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicBoolean responding = new AtomicBoolean(true);
+        SessionQueryType queryType = mock(SessionQueryType.class);
+        given(queryType.getAllSessions()).willAnswer(new Answer<Collection<SessionInfo>>() {
+            @Override
+            public Collection<SessionInfo> answer(InvocationOnMock invocation) throws Throwable {
+                if (!responding.get()) {
+                    release.await();
+                }
+                return Arrays.asList(new SessionInfo[]{mock(SessionInfo.class)});
+            }
+        });
+        SessionQueryFactory mockFactory = mock(SessionQueryFactory.class);
+        given(mockFactory.getSessionQueryType("badger")).willReturn(queryType);
+
+        SessionQueryManager manager = new SessionQueryManager(mockFactory, executorService, metricsRegistry, 200L, 0);
+        manager.getAllSessions(Arrays.asList(new String[]{"badger"}));
+        assertTrue(manager.getServerLatencies().containsKey("badger"));
+        assertTrue(metrics().contains("am_session_query_server_latency_seconds{server_id=\"badger\"}"));
+
+        // When
+        responding.set(false);
+        try {
+            manager.getAllSessions(Arrays.asList(new String[]{"badger"}));
+        } finally {
+            release.countDown();
+        }
+
+        // Then
+        assertFalse(manager.getServerLatencies().containsKey("badger"));
+        assertFalse(metrics().contains("am_session_query_server_latency_seconds"));
+    }
+
+    private String metrics() throws IOException {
+        StringWriter writer = new StringWriter();
+        PrometheusTextFormat.write(metricsRegistry, writer);
+        return writer.toString();
+    }
+
+    @Test
+    public void shouldLimitSessionsReturnedByEachServer() {
+        // Given
+        SessionQueryType queryType = mock(SessionQueryType.class);
+        given(queryType.getAllSessions()).willReturn(Arrays.asList(new SessionInfo[]{
+                mock(SessionInfo.class), mock(SessionInfo.class), mock(SessionInfo.class)}));
+        SessionQueryFactory mockFactory = mock(SessionQueryFactory.class);
+        given(mockFactory.getSessionQueryType(anyString())).willReturn(queryType);
+
+        SessionQueryManager manager = new SessionQueryManager(mockFactory, executorService, metricsRegistry, 10000L, 2);
+
+        // When
+        Collection<SessionInfo> sessions = manager.getAllSessions(Arrays.asList(new String[]{"badger", "weasel"}));
+
+        // Then
+        assertEquals(4, sessions.size());
+    }
+}
@@ -11,16 +11,22 @@
 * Header, with the fields enclosed by brackets [] replaced by your own identifying
 * information: "Portions copyright [year] [name of copyright owner]".
 *
-* Copyright 2014 ForgeRock AS.
+* Copyright 2014-2016 ForgeRock AS.
 */
 package com.iplanet.dpro.session.monitoring;
 
+import java.util.EnumMap;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
 
+import org.forgerock.openam.shared.monitoring.metrics.Histogram;
+import org.forgerock.openam.shared.monitoring.metrics.MetricsRegistry;
+
 /**
  * The store for session monitoring information. Each of the operations which can be applied to sessions
  * (refresh, setProperty, destroy and logout) have their own store, which maps the session type (e.g. REMOTE or LOCAL)
@@ -28,7 +34,8 @@ import javax.inject.Singleton;
  * {@link SessionTimingEntry} samples, which can be used to calculate e.g. the slowest, or average speed of a given
  * operation.
  *
- * Uses an ExecutorService to perform writes out to the store (which may block).
+ * Uses an ExecutorService to perform writes out to the store (which may block). The durations are also recorded in
+ * the {@link MetricsRegistry}, which keeps track of all of them, rather than of a sample.
  */
 @Singleton
 public class SessionMonitoringStore {
@@ -39,6 +46,10 @@ public class SessionMonitoringStore {
     private final ConcurrentHashMap<SessionMonitorType, SessionMonitoringTimingStore> logoutStore;
 
     private final SessionMonitoringTimingStoreFactory sessionMonitoringTimingStoreFactory;
+    private final Map<SessionMonitorType, Histogram> refreshDurations;
+    private final Map<SessionMonitorType, Histogram> propertyDurations;
+    private final Map<SessionMonitorType, Histogram> destroyDurations;
+    private final Map<SessionMonitorType, Histogram> logoutDurations;
 
     //for pushing off our monitoring writes to another thread
     private final ExecutorService executorService;
@@ -50,12 +61,19 @@ public class SessionMonitoringStore {
      * to be pushed in.
      *
      * @param executorService the service to which to offload out writes
+     * @param sessionMonitoringTimingStoreFactory Factory for generating timing stores
+     * @param metricsRegistry the registry the durations are also recorded in
      */
     @Inject
     public SessionMonitoringStore(@Named(EXECUTOR_BINDING_NAME) ExecutorService executorService,
-                                  SessionMonitoringTimingStoreFactory sessionMonitoringTimingStoreFactory) {
+                                  SessionMonitoringTimingStoreFactory sessionMonitoringTimingStoreFactory,
+                                  MetricsRegistry metricsRegistry) {
         this.executorService = executorService;
         this.sessionMonitoringTimingStoreFactory = sessionMonitoringTimingStoreFactory;
+        this.refreshDurations = getDurationHistograms(metricsRegistry, "refresh");
+        this.propertyDurations = getDurationHistograms(metricsRegistry, "setProperty");
+        this.destroyDurations = getDurationHistograms(metricsRegistry, "destroy");
+        this.logoutDurations = getDurationHistograms(metricsRegistry, "logout");
 
         this.refreshStore = new ConcurrentHashMap<SessionMonitorType, SessionMonitoringTimingStore>();
         this.propertyStore= new ConcurrentHashMap<SessionMonitorType, SessionMonitoringTimingStore>();
@@ -68,6 +86,7 @@ public class SessionMonitoringStore {
      *
      * @param executorService Service to perform writes with
      * @param sessionMonitoringTimingStoreFactory Factory for generating timing stores
+     * @param metricsRegistry Registry the durations are also recorded in
      * @param refreshStore Refresh store
      * @param propertyStore Property store
      * @param destroyStore Destroy store
@@ -75,12 +94,17 @@ public class SessionMonitoringStore {
      */
     SessionMonitoringStore(ExecutorService executorService,
                                   SessionMonitoringTimingStoreFactory sessionMonitoringTimingStoreFactory,
+                                  MetricsRegistry metricsRegistry,
                                   ConcurrentHashMap<SessionMonitorType, SessionMonitoringTimingStore> refreshStore,
                                   ConcurrentHashMap<SessionMonitorType, SessionMonitoringTimingStore> propertyStore,
                                   ConcurrentHashMap<SessionMonitorType, SessionMonitoringTimingStore> destroyStore,
                                   ConcurrentHashMap<SessionMonitorType, SessionMonitoringTimingStore> logoutStore) {
         this.executorService = executorService;
         this.sessionMonitoringTimingStoreFactory = sessionMonitoringTimingStoreFactory;
+        this.refreshDurations = getDurationHistograms(metricsRegistry, "refresh");
+        this.propertyDurations = getDurationHistograms(metricsRegistry, "setProperty");
+        this.destroyDurations = getDurationHistograms(metricsRegistry, "destroy");
+        this.logoutDurations = getDurationHistograms(metricsRegistry, "logout");
 
         this.refreshStore = refreshStore;
         this.propertyStore = propertyStore;
@@ -95,6 +119,7 @@ public class SessionMonitoringStore {
      * @param type the type of session to which this entry pertains
      */
     public void storeRefreshTime(final long duration, final SessionMonitorType type) {
+        recordDuration(refreshDurations, duration, type);
         executorService.submit(new Runnable() {
             @Override
             public void run() {
@@ -129,6 +154,7 @@ public class SessionMonitoringStore {
      * @param type the type of session to which this entry pertains
      */
     public void storeSetPropertyTime(final long duration, final SessionMonitorType type) {
+        recordDuration(propertyDurations, duration, type);
         executorService.submit(new Runnable() {
             @Override
             public void run() {
@@ -163,6 +189,7 @@ public class SessionMonitoringStore {
      * @param type the type of session to which this entry pertains
      */
     public void storeDestroyTime(final long duration, final SessionMonitorType type) {
+        recordDuration(destroyDurations, duration, type);
         executorService.submit(new Runnable() {
             @Override
             public void run() {
@@ -198,6 +225,7 @@ public class SessionMonitoringStore {
      * @param type the type of session to which this entry pertains
      */
     public void storeLogoutTime(final long duration, final SessionMonitorType type) {
+        recordDuration(logoutDurations, duration, type);
         executorService.submit(new Runnable() {
             @Override
             public void run() {
@@ -225,4 +253,22 @@ public class SessionMonitoringStore {
         return logoutStore.get(type).getDurationAverage();
     }
 
+    private void recordDuration(Map<SessionMonitorType, Histogram> durations, long duration,
+            SessionMonitorType type) {
+        durations.get(type).record(duration, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Looks up the histograms of an operation for every session type once, so that recording a duration does not
+     * have to look them up in the registry.
+     */
+    private static Map<SessionMonitorType, Histogram> getDurationHistograms(MetricsRegistry metricsRegistry,
+            String operation) {
+        Map<SessionMonitorType, Histogram> durations = new EnumMap<>(SessionMonitorType.class);
+        for (SessionMonitorType type : SessionMonitorType.values()) {
+            durations.put(type, metricsRegistry.histogram("am_session_operation_duration_seconds",
+                    "The time session operations took.", "operation", operation, "session_type", type.name()));
+        }
+        return durations;
+    }
 }
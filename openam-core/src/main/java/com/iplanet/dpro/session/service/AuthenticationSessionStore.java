@@ -16,15 +16,30 @@
 
 package com.iplanet.dpro.session.service;
 
+import static org.forgerock.openam.utils.Time.*;
+
+import java.util.PriorityQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import javax.inject.Inject;
+import javax.inject.Named;
 import javax.inject.Singleton;
 
+import org.forgerock.openam.audit.context.AMExecutorServiceFactory;
+import org.forgerock.openam.session.SessionConstants;
 import org.forgerock.openam.session.service.SessionAccessManager;
+import org.forgerock.openam.shared.monitoring.metrics.Counter;
+import org.forgerock.openam.shared.monitoring.metrics.Gauge;
+import org.forgerock.openam.shared.monitoring.metrics.MetricsRegistry;
 import org.forgerock.util.Reject;
+import org.forgerock.util.annotations.VisibleForTesting;
 
+import com.iplanet.am.util.SystemProperties;
 import com.iplanet.dpro.session.SessionID;
+import com.sun.identity.shared.Constants;
+import com.sun.identity.shared.debug.Debug;
 
 /**
  * Stores sessions used for authentication which must not yet be written to the store.
@@ -33,18 +48,100 @@ import com.iplanet.dpro.session.SessionID;
  *
  * Authentication sessions will be stored for the duration of their {@link InternalSession#getTimeLeft()}
  * value, after which they will be removed from this store.
+ *
+ * Sessions are indexed by the time they are due to expire, so that culling only ever visits the sessions
+ * which are due, both when a session is added and periodically in the background. An indexed session is
+ * checked again when it falls due, and re-indexed if its time left has been extended in the meantime.
+ *
+ * The store can be bounded with {@link Constants#AUTHENTICATION_SESSION_STORE_MAX_SIZE}, in which case the
+ * {@link RejectionPolicy} decides what happens to new sessions once it is full.
  */
 @Singleton
 public class AuthenticationSessionStore {
+
+    private static final int DEFAULT_CULL_PERIOD = 10;
+
+    /**
+     * What to do with a new session when the store is full.
+     */
+    public enum RejectionPolicy {
+        /** The new session is rejected with an {@link IllegalStateException}. */
+        REJECT,
+        /** The session which is next to expire is evicted to make room for the new session. */
+        EVICT_NEXT_TO_EXPIRE
+    }
+
     private final ConcurrentHashMap<SessionID, InternalSession> store = new ConcurrentHashMap<>();
 
+    /**
+     * Guarded by itself. Entries are not removed when their session leaves the store early, they are
+     * discarded once they fall due instead.
+     */
+    private final PriorityQueue<Expiry> expiries = new PriorityQueue<>();
+
     private final SessionAccessManager sessionAccessManager;
+    private final Debug debug;
+    private final int maxSize;
+    private final RejectionPolicy rejectionPolicy;
+    private final Counter expiredCounter;
+    private final Counter evictedCounter;
+    private final Counter rejectedCounter;
 
     @Inject
-    public AuthenticationSessionStore(SessionAccessManager sessionAccessManager) {
+    public AuthenticationSessionStore(SessionAccessManager sessionAccessManager, AMExecutorServiceFactory esf,
+            MetricsRegistry metricsRegistry, @Named(SessionConstants.SESSION_DEBUG) Debug debug) {
+        this(sessionAccessManager, metricsRegistry, debug,
+                SystemProperties.getAsInt(Constants.AUTHENTICATION_SESSION_STORE_MAX_SIZE, 0),
+                getRejectionPolicy(debug));
+
+        int cullPeriod = Math.max(1,
+                SystemProperties.getAsInt(Constants.AUTHENTICATION_SESSION_STORE_CULL_PERIOD, DEFAULT_CULL_PERIOD));
+        ScheduledExecutorService scheduledService = esf.createScheduledService(1, "AuthenticationSessionCuller");
+        scheduledService.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    cullExpiredSessions();
+                } catch (RuntimeException e) {
+                    AuthenticationSessionStore.this.debug.error("Failed to cull expired authentication sessions", e);
+                }
+            }
+        }, cullPeriod, cullPeriod, TimeUnit.SECONDS);
+    }
+
+    @VisibleForTesting
+    AuthenticationSessionStore(SessionAccessManager sessionAccessManager, MetricsRegistry metricsRegistry,
+            Debug debug, int maxSize, RejectionPolicy rejectionPolicy) {
         this.sessionAccessManager = sessionAccessManager;
+        this.debug = debug;
+        this.maxSize = maxSize;
+        this.rejectionPolicy = rejectionPolicy;
+
+        metricsRegistry.gauge("am_authentication_sessions_in_flight", "In-flight authentication sessions",
+                new Gauge() {
+                    @Override
+                    public double getValue() {
+                        return store.size();
+                    }
+                });
+        String culledHelp = "Authentication sessions removed before completing";
+        expiredCounter = metricsRegistry.counter("am_authentication_sessions_culled_total", culledHelp,
+                "reason", "expired");
+        evictedCounter = metricsRegistry.counter("am_authentication_sessions_culled_total", culledHelp,
+                "reason", "evicted");
+        rejectedCounter = metricsRegistry.counter("am_authentication_sessions_rejected_total",
+                "Authentication sessions rejected because the store was full");
     }
 
+    /**
+     * Adds a new authentication session to the store.
+     *
+     * Side effect: Calling this method will cull any Sessions from this store which are due to expire.
+     *
+     * @param session Non null session to add.
+     * @throws IllegalStateException If the session is already stored, or if the store is full and the
+     * {@link RejectionPolicy#REJECT} policy is in place.
+     */
     public void addSession(InternalSession session) {
         cullExpiredSessions();
 
@@ -56,13 +153,18 @@ public class AuthenticationSessionStore {
             throw new IllegalStateException("Session was added to temporary store twice.");
         }
 
+        if (maxSize > 0 && store.size() >= maxSize) {
+            makeRoom();
+        }
+
         store.put(session.getSessionID(), session);
+        schedule(session);
     }
 
     /**
      * Lookup the Session based on its Session ID.
      *
-     * Side effect: Calling this method will cull any expired Sessions from this store.
+     * Side effect: Calling this method will cull the Session if it has expired.
      *
      * @param sessionID Looks up the InternalSession by its SessionID.
      * @return Null if no Session was found otherwise a non null Session.
@@ -95,15 +197,61 @@ public class AuthenticationSessionStore {
         sessionAccessManager.persistInternalSession(session);
     }
 
-    private void cullExpiredSessions() {
-        for (InternalSession session : store.values()) {
-            cullSessionIfNecessary(session);
+    /**
+     * Removes the sessions which are due to expire, re-indexing those whose time left has since been extended.
+     */
+    @VisibleForTesting
+    void cullExpiredSessions() {
+        long now = currentTimeMillis();
+        synchronized (expiries) {
+            Expiry expiry;
+            while ((expiry = expiries.peek()) != null && expiry.dueTime <= now) {
+                expiries.poll();
+                if (!expiry.isCurrent()) {
+                    continue;
+                }
+                long timeLeft = expiry.session.getTimeLeft();
+                if (timeLeft == 0) {
+                    if (store.remove(expiry.sessionID, expiry.session)) {
+                        expiredCounter.increment();
+                    }
+                } else {
+                    expiries.add(new Expiry(expiry.session, now + TimeUnit.SECONDS.toMillis(timeLeft)));
+                }
+            }
+        }
+    }
+
+    private void makeRoom() {
+        if (rejectionPolicy == RejectionPolicy.EVICT_NEXT_TO_EXPIRE) {
+            synchronized (expiries) {
+                Expiry expiry;
+                while ((expiry = expiries.poll()) != null) {
+                    if (expiry.isCurrent() && store.remove(expiry.sessionID, expiry.session)) {
+                        evictedCounter.increment();
+                        if (debug.messageEnabled()) {
+                            debug.message("AuthenticationSessionStore: store full, evicted " + expiry.sessionID);
+                        }
+                        return;
+                    }
+                }
+            }
+        }
+        rejectedCounter.increment();
+        debug.warning("AuthenticationSessionStore: store full with {} sessions, rejecting new session", maxSize);
+        throw new IllegalStateException("Authentication session store is full.");
+    }
+
+    private void schedule(InternalSession session) {
+        Expiry expiry = new Expiry(session, currentTimeMillis() + TimeUnit.SECONDS.toMillis(session.getTimeLeft()));
+        synchronized (expiries) {
+            expiries.add(expiry);
         }
     }
 
     private boolean cullSessionIfNecessary(InternalSession session) {
         if (shouldRemove(session)) {
-            removeSession(session.getSessionID());
+            store.remove(session.getSessionID(), session);
             return true;
         } else {
             return false;
@@ -126,4 +274,44 @@ public class AuthenticationSessionStore {
         Reject.ifNull(sessionID);
         return store.remove(sessionID);
     }
+
+    private static RejectionPolicy getRejectionPolicy(Debug debug) {
+        String policy = SystemProperties.get(Constants.AUTHENTICATION_SESSION_STORE_REJECTION_POLICY,
+                RejectionPolicy.REJECT.name());
+        try {
+            return RejectionPolicy.valueOf(policy.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            debug.warning("AuthenticationSessionStore: unknown rejection policy {}, using {}", policy,
+                    RejectionPolicy.REJECT);
+            return RejectionPolicy.REJECT;
+        }
+    }
+
+    /**
+     * The time at which a session is due to be checked for expiry.
+     */
+    private final class Expiry implements Comparable<Expiry> {
+
+        private final InternalSession session;
+        private final SessionID sessionID;
+        private final long dueTime;
+
+        private Expiry(InternalSession session, long dueTime) {
+            this.session = session;
+            this.sessionID = session.getSessionID();
+            this.dueTime = dueTime;
+        }
+
+        /**
+         * An expiry is stale once its session has left the store.
+         */
+        private boolean isCurrent() {
+            return store.get(sessionID) == session;
+        }
+
+        @Override
+        public int compareTo(Expiry other) {
+            return Long.compare(dueTime, other.dueTime);
+        }
+    }
 }
@@ -37,7 +37,6 @@ import java.util.Set;
 
 import org.forgerock.guice.core.InjectorHolder;
 import org.forgerock.openam.session.service.DestroyOldestAction;
-import org.forgerock.openam.session.service.access.SessionQueryManager;
 
 import com.iplanet.sso.SSOToken;
 import com.sun.identity.authentication.util.ISAuthConstants;
@@ -128,10 +127,11 @@ public class SessionConstraint {
 
         // Step 2: get the information (session id and expiration
         // time) of all sessions for the given user from all
-        // AM servers and/or session repository
+        // AM servers and/or session repository, unless the sessions
+        // tracked by this server show the quota cannot be exhausted
         Map sessions = null;
         try {
-            sessions = InjectorHolder.getInstance(SessionQueryManager.class).getAllSessionsByUUID(internalSession.getUUID());
+            sessions = InjectorHolder.getInstance(SessionQuotaTracker.class).getSessions(internalSession.getUUID(), quota);
         } catch (Exception e) {
             if (InjectorHolder.getInstance(SessionServiceConfig.class).isDenyLoginIfDBIsDown()) {
                 if (debug.messageEnabled()) {
@@ -0,0 +1,257 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package com.iplanet.dpro.session.service;
+
+import static org.forgerock.openam.utils.Time.*;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.forgerock.openam.session.SessionConstants;
+import org.forgerock.openam.session.service.access.SessionQueryManager;
+import org.forgerock.openam.shared.monitoring.metrics.Counter;
+import org.forgerock.openam.shared.monitoring.metrics.MetricsRegistry;
+import org.forgerock.util.annotations.VisibleForTesting;
+
+import com.iplanet.am.util.SystemProperties;
+import com.iplanet.dpro.session.SessionException;
+import com.sun.identity.shared.Constants;
+import com.sun.identity.shared.debug.Debug;
+
+/**
+ * Tracks the sessions of each user, so that session quota checks do not have to query the session repository for
+ * every login.
+ * <p>
+ * The sessions of a user are first read from the session repository, then kept up to date with the session events
+ * of this server. As sessions created through other servers are not seen, the tracked sessions are reconciled with
+ * the session repository once they are older than {@link Constants#SESSION_QUOTA_TRACKING_RECONCILE_PERIOD}, and
+ * whenever the user appears to have reached their quota, so that a quota is never enforced on tracked sessions
+ * alone. Tracked sessions are considered alive until their maximum session time, which may overcount them, but
+ * never undercount them.
+ * <p>
+ * A user stops being tracked once their last session created through this server ends, unless sessions read from
+ * the session repository are still known for them, so that users no longer logged in through this server are not
+ * tracked forever.
+ * <p>
+ * Tracking is disabled unless {@link Constants#SESSION_QUOTA_TRACKING_ENABLED} is set, in which case every check
+ * queries the session repository.
+ *
+ * @since 14.0.0
+ */
+@Singleton
+public class SessionQuotaTracker implements InternalSessionListener {
+
+    private static final int DEFAULT_RECONCILE_PERIOD = 60;
+
+    private final ConcurrentMap<String, UserSessions> users = new ConcurrentHashMap<>();
+    private final Provider<SessionQueryManager> queryManager;
+    private final Debug debug;
+    private final boolean enabled;
+    private final boolean caseSensitiveUUID;
+    private final long reconcilePeriod;
+    private final Counter trackedCounter;
+    private final Counter queriedCounter;
+
+    @Inject
+    public SessionQuotaTracker(Provider<SessionQueryManager> queryManager, MetricsRegistry metricsRegistry,
+            @Named(SessionConstants.SESSION_DEBUG) Debug debug) {
+        this(queryManager, metricsRegistry, debug,
+                SystemProperties.getAsBoolean(Constants.SESSION_QUOTA_TRACKING_ENABLED, false),
+                SystemProperties.getAsBoolean(Constants.CASE_SENSITIVE_UUID),
+                TimeUnit.SECONDS.toMillis(SystemProperties.getAsInt(
+                        Constants.SESSION_QUOTA_TRACKING_RECONCILE_PERIOD, DEFAULT_RECONCILE_PERIOD)));
+    }
+
+    @VisibleForTesting
+    SessionQuotaTracker(Provider<SessionQueryManager> queryManager, MetricsRegistry metricsRegistry, Debug debug,
+            boolean enabled, boolean caseSensitiveUUID, long reconcilePeriod) {
+        this.queryManager = queryManager;
+        this.debug = debug;
+        this.enabled = enabled;
+        this.caseSensitiveUUID = caseSensitiveUUID;
+        this.reconcilePeriod = reconcilePeriod;
+
+        String help = "Session quota checks, by where the sessions of the user were read from";
+        trackedCounter = metricsRegistry.counter("am_session_quota_checks_total", help, "source", "tracked");
+        queriedCounter = metricsRegistry.counter("am_session_quota_checks_total", help, "source", "repository");
+    }
+
+    /**
+     * Returns the sessions of a user, for checking their session quota.
+     * <p>
+     * The returned sessions are only guaranteed to be complete if there are at least as many as the quota, which is
+     * when the {@link QuotaExhaustionAction} is invoked.
+     *
+     * @param uuid The universal ID of the user.
+     * @param quota The session quota of the user.
+     * @return The sessions of the user, as a map of session ID to expiration time in seconds.
+     * @throws SessionException If the session repository could not be queried.
+     */
+    public Map<String, Long> getSessions(String uuid, int quota) throws SessionException {
+        if (!enabled || uuid == null) {
+            return query(uuid);
+        }
+
+        String key = getKey(uuid);
+        UserSessions tracked = users.get(key);
+        if (tracked != null) {
+            Map<String, Long> sessions = tracked.getSessions(currentTimeMillis() - reconcilePeriod);
+            if (sessions != null && sessions.size() < quota) {
+                trackedCounter.increment();
+                return sessions;
+            }
+        }
+
+        Map<String, Long> sessions = query(uuid);
+        // A concurrent login of the same user may have reconciled its sessions too, either result will do
+        UserSessions reconciled = new UserSessions(sessions);
+        if (tracked == null) {
+            users.putIfAbsent(key, reconciled);
+        } else {
+            users.replace(key, tracked, reconciled);
+        }
+        if (debug.messageEnabled()) {
+            debug.message("SessionQuotaTracker: read {} sessions of {} from the session repository",
+                    sessions.size(), uuid);
+        }
+        return sessions;
+    }
+
+    @Override
+    public void onEvent(InternalSessionEvent event) {
+        if (!enabled) {
+            return;
+        }
+        InternalSession session = event.getInternalSession();
+        String uuid = session.getUUID();
+        if (uuid == null || session.getSessionID() == null) {
+            return;
+        }
+        String key = getKey(uuid);
+        UserSessions tracked = users.get(key);
+        if (tracked == null) {
+            // The sessions of this user are read from the session repository on their next login
+            return;
+        }
+        String sessionId = session.getSessionID().toString();
+
+        switch (event.getType()) {
+        case SESSION_CREATION:
+            tracked.add(sessionId, session.getMaxSessionExpirationTime(TimeUnit.SECONDS));
+            break;
+        case IDLE_TIMEOUT:
+        case MAX_TIMEOUT:
+        case LOGOUT:
+        case DESTROY:
+            if (tracked.remove(sessionId, currentTimeMillis() - reconcilePeriod)) {
+                users.remove(key, tracked);
+            }
+            break;
+        default:
+            break;
+        }
+    }
+
+    /**
+     * Returns the number of users whose sessions are tracked.
+     *
+     * @return The number of users.
+     */
+    @VisibleForTesting
+    int getTrackedUserCount() {
+        return users.size();
+    }
+
+    private Map<String, Long> query(String uuid) throws SessionException {
+        queriedCounter.increment();
+        return queryManager.get().getAllSessionsByUUID(uuid);
+    }
+
+    private String getKey(String uuid) {
+        return caseSensitiveUUID ? uuid : uuid.toLowerCase();
+    }
+
+    /**
+     * The sessions of a single user, as of their last reconciliation with the session repository.
+     */
+    private static final class UserSessions {
+
+        private final Map<String, Long> sessions;
+        // The sessions created through this server since the last reconciliation
+        private final Set<String> localSessions = new HashSet<>();
+        private final long reconciledAt;
+
+        private UserSessions(Map<String, Long> sessions) {
+            this.sessions = new HashMap<>(sessions);
+            this.reconciledAt = currentTimeMillis();
+        }
+
+        /**
+         * Returns a copy of the sessions which have not expired, or null if they must be reconciled.
+         */
+        private synchronized Map<String, Long> getSessions(long reconcileBefore) {
+            if (reconciledAt < reconcileBefore) {
+                return null;
+            }
+            removeExpired();
+            return new HashMap<>(sessions);
+        }
+
+        private synchronized void add(String sessionId, long expirationTime) {
+            sessions.put(sessionId, expirationTime);
+            localSessions.add(sessionId);
+        }
+
+        /**
+         * Returns whether the user can stop being tracked, which is when they have no session created through this
+         * server left, and no session read from the session repository is known either, as they have all ended or
+         * must be reconciled.
+         */
+        private synchronized boolean remove(String sessionId, long reconcileBefore) {
+            sessions.remove(sessionId);
+            localSessions.remove(sessionId);
+            if (!localSessions.isEmpty()) {
+                return false;
+            }
+            if (reconciledAt < reconcileBefore) {
+                return true;
+            }
+            removeExpired();
+            return sessions.isEmpty();
+        }
+
+        private void removeExpired() {
+            long now = TimeUnit.MILLISECONDS.toSeconds(currentTimeMillis());
+            for (Iterator<Long> i = sessions.values().iterator(); i.hasNext();) {
+                if (i.next() <= now) {
+                    i.remove();
+                }
+            }
+        }
+    }
+}
@@ -226,6 +226,33 @@ public abstract class LDAPv3PersistentSearch<T, H> {
         futureResult = conn.searchAsync(searchRequest, null, new PersistentSearchResultHandler());
     }
 
+    /**
+     * Returns the base DN of the persistent search.
+     *
+     * @return The base DN.
+     */
+    protected DN getSearchBaseDN() {
+        return searchBaseDN;
+    }
+
+    /**
+     * Returns the filter of the persistent search.
+     *
+     * @return The filter.
+     */
+    protected Filter getSearchFilter() {
+        return searchFilter;
+    }
+
+    /**
+     * Returns the scope of the persistent search.
+     *
+     * @return The scope.
+     */
+    protected SearchScope getSearchScope() {
+        return searchScope;
+    }
+
     /**
      * Stops the persistent search request, and terminates the LDAP connection. The caller must ensure that calls made
      * to startPSearch and stopPsearch are properly synchronized.
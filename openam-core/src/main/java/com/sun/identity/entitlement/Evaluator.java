@@ -35,11 +35,14 @@ import static org.forgerock.openam.utils.Time.*;
 import com.sun.identity.shared.Constants;
 import com.sun.identity.shared.configuration.SystemPropertiesManager;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import javax.security.auth.Subject;
 import org.forgerock.guice.core.InjectorHolder;
+import org.forgerock.openam.entitlement.PolicyDecisionCache;
 import org.forgerock.openam.entitlement.monitoring.EntitlementConfigurationWrapper;
 import org.forgerock.openam.entitlement.monitoring.PolicyMonitor;
 import org.forgerock.openam.entitlement.monitoring.PolicyMonitoringType;
@@ -69,6 +72,7 @@ public class Evaluator {
     private final String applicationName;
     private final PolicyMonitor policyMonitor;
     private final EntitlementConfigurationWrapper configWrapper;
+    private final PolicyDecisionCache decisionCache = PolicyDecisionCache.getInstance();
 
     /**
      * Constructor to create an evaluator the default service type.
@@ -151,14 +155,67 @@ public class Evaluator {
             throw new EntitlementException(424);
         }
 
+        // Answer the resources whose decision is cached first, and only evaluate the others.
+        decisionCache.listenForChanges(realm);
+        long changes = decisionCache.getChanges();
+        Map<String, List<Entitlement>> cachedResults = new LinkedHashMap<String, List<Entitlement>>();
+        Map<String, PolicyDecisionCache.Key> keys = new LinkedHashMap<String, PolicyDecisionCache.Key>();
+        for (String resourceName : resourceNames) {
+            PolicyDecisionCache.Key key = decisionCache.getKey(realm, applicationName, subject, resourceName,
+                    environment, false);
+            List<Entitlement> cached = decisionCache.get(key);
+            if (cached != null) {
+                cachedResults.put(resourceName, cached);
+            } else {
+                keys.put(resourceName, key);
+            }
+        }
+
         List<Entitlement> results = new ArrayList<Entitlement>();
+        if (keys.isEmpty()) {
+            for (List<Entitlement> cached : cachedResults.values()) {
+                results.addAll(cached);
+            }
+            return results;
+        }
+
+        // Delegation to applications is currently not configurable, passing super admin (see AME-4959)
+        Application application = getApplicationService(SUPER_ADMIN_SUBJECT, realm).getApplication(applicationName);
+
+        if (application == null) {
+            // App retrieval error.
+            throw new EntitlementException(EntitlementException.APP_RETRIEVAL_ERROR, new String[] {realm});
+        }
+
+        // Normalise the incoming resource URLs, and search for the policies of all of them at once.
+        Map<String, String> normalisedResourceNames = new LinkedHashMap<String, String>(keys.size() * 2);
+        for (String resourceName : keys.keySet()) {
+            normalisedResourceNames.put(resourceName, application.getResourceComparator().canonicalize(resourceName));
+        }
+        PrivilegeEvaluator.BatchSearch batch = PrivilegeEvaluator.BatchSearch.search(realm, adminSubject, subject,
+                application, new HashSet<String>(normalisedResourceNames.values()));
+
+        for (String resourceName : resourceNames) {
+            List<Entitlement> cached = cachedResults.get(resourceName);
+            if (cached != null) {
+                results.addAll(cached);
+                continue;
+            }
 
-        for (String res : resourceNames) {
-            List<Entitlement> r = evaluate(realm, subject, res, environment,
-                false);
+            long startTime = currentTimeMillis();
+
+            PrivilegeEvaluator evaluator = new PrivilegeEvaluator();
+            List<Entitlement> r = evaluator.evaluate(realm, adminSubject, subject, applicationName,
+                    normalisedResourceNames.get(resourceName), resourceName, environment, batch);
             if ((r != null) && !r.isEmpty()) {
                 results.addAll(r);
             }
+            decisionCache.put(keys.get(resourceName), r, changes);
+
+            if (configWrapper.isMonitoringRunning()) {
+                policyMonitor.addEvaluation(currentTimeMillis() - startTime, realm, applicationName,
+                        resourceName, subject, PolicyMonitoringType.SELF);
+            }
         }
         return results;
     }
@@ -187,6 +244,15 @@ public class Evaluator {
 
         long startTime = currentTimeMillis();
 
+        decisionCache.listenForChanges(realm);
+        long changes = decisionCache.getChanges();
+        PolicyDecisionCache.Key key = decisionCache.getKey(realm, applicationName, subject, resourceName,
+                environment, recursive);
+        List<Entitlement> cached = decisionCache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+
         // Delegation to applications is currently not configurable, passing super admin (see AME-4959)
         Application application = getApplicationService(SUPER_ADMIN_SUBJECT, realm).getApplication(applicationName);
 
@@ -201,6 +267,7 @@ public class Evaluator {
         PrivilegeEvaluator evaluator = new PrivilegeEvaluator();
         List<Entitlement> results = evaluator.evaluate(realm, adminSubject, subject,
                 applicationName, normalisedResourceName, resourceName, environment, recursive);
+        decisionCache.put(key, results, changes);
 
         if (configWrapper.isMonitoringRunning()) {
             policyMonitor.addEvaluation(currentTimeMillis() - startTime, realm, applicationName, resourceName,
@@ -46,6 +46,7 @@ import java.util.Set;
 import javax.security.auth.Subject;
 
 import org.forgerock.openam.entitlement.PolicyConstants;
+import org.forgerock.openam.entitlement.PolicyDecisionCache;
 import org.json.JSONException;
 import org.json.JSONObject;
 
@@ -111,6 +112,7 @@ public class PrivilegeChangeNotifier {
         String applicationName,
         String privilegeName,
         Set<String> resources) {
+        PolicyDecisionCache.getInstance().policyChanged(realm, applicationName);
         try {
             Set<EntitlementListener> listeners =
                 ListenerManager.getInstance().getListeners(adminSubject);
@@ -33,6 +33,8 @@ import static org.forgerock.openam.entitlement.utils.EntitlementUtils.getApplica
 import static org.forgerock.openam.entitlement.utils.EntitlementUtils.getEntitlementConfiguration;
 
 import java.security.Principal;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -49,6 +51,7 @@ import org.forgerock.openam.entitlement.PolicyConstants;
 import org.forgerock.openam.entitlement.PrivilegeEvaluatorContext;
 import org.forgerock.openam.session.util.AppTokenHandler;
 import org.forgerock.openam.utils.CollectionUtils;
+import org.forgerock.util.annotations.VisibleForTesting;
 
 import com.sun.identity.entitlement.interfaces.IThreadPool;
 import com.sun.identity.shared.debug.Debug;
@@ -253,6 +256,43 @@ class PrivilegeEvaluator {
 
     }
 
+    /**
+     * Returns list of entitlements which is entitled to a subject, evaluating only the policies of a batch search
+     * which are relevant to the resource.
+     *
+     * @param adminSubject Administrator subject which is used for evaluation.
+     * @param subject Subject to be evaluated.
+     * @param applicationName Application Name.
+     * @param normalisedResourceName The normalised resource name, which must be one of the batch resources.
+     * @param requestedResourceName The requested resource name.
+     * @param envParameters Environment parameters.
+     * @param batch The policies found for all the resources of the batch.
+     * @return the entitlements of the subject for the resource.
+     * @throws com.sun.identity.entitlement.EntitlementException if
+     * evaluation fails.
+     */
+    public List<Entitlement> evaluate(
+        String realm,
+        Subject adminSubject,
+        Subject subject,
+        String applicationName,
+        String normalisedResourceName,
+        String requestedResourceName,
+        Map<String, Set<String>> envParameters,
+        BatchSearch batch
+    ) throws EntitlementException {
+        init(adminSubject, subject, realm, applicationName,
+            normalisedResourceName, requestedResourceName, null, envParameters, false);
+        if (!batch.covers(normalisedResourceName)) {
+            // The batch search cannot stand for the search of this resource alone
+            indexes = getApplication().getResourceSearchIndex(normalisedResourceName, realm);
+            return evaluate(realm);
+        }
+        indexes = batch.getIndexes(normalisedResourceName);
+
+        return evaluate(realm, batch.getPolicies(normalisedResourceName));
+    }
+
     /**
      * Responsible for the core evaluation of policies associated with the request resource.
      *
@@ -264,13 +304,28 @@ class PrivilegeEvaluator {
      * @throws EntitlementException
      */
     private List<Entitlement> evaluate(String realm) throws EntitlementException {
-        final Debug debug = PolicyConstants.DEBUG;
-
         // Search for relevant policies.
         final SubjectAttributesManager sam = SubjectAttributesManager.getInstance(adminSubject, realm);
         final Set<String> subjectIndexes = sam.getSubjectSearchFilter(subject, applicationName);
         final PrivilegeIndexStore indexStore = PrivilegeIndexStore.getInstance(adminSubject, realm);
-        final Iterator<IPrivilege> policyIterator = indexStore.search(realm, indexes, subjectIndexes, recursive);
+        return evaluate(realm, indexStore.search(realm, indexes, subjectIndexes, recursive));
+    }
+
+    /**
+     * Evaluates the given policies against the request resource.
+     *
+     * @param realm
+     *         the evaluation realm
+     * @param policyIterator
+     *         the policies relevant to the request resource
+     *
+     * @return a list of applicable entitlements
+     *
+     * @throws EntitlementException
+     */
+    private List<Entitlement> evaluate(String realm, Iterator<IPrivilege> policyIterator)
+            throws EntitlementException {
+        final Debug debug = PolicyConstants.DEBUG;
 
         int totalCount = 0;
         IPrivilege policy;
@@ -457,4 +512,150 @@ class PrivilegeEvaluator {
             }
         }
     }
+
+    /**
+     * The policies relevant to a batch of resources, found with a single index search for all of them.
+     * <p>
+     * The subject indexes are computed once for the batch, and the search is made with the union of the resource
+     * indexes. Each policy found is then matched against the indexes of every resource the same way the index store
+     * matches them, so that a resource is only evaluated against the policies a search for that resource alone
+     * would have found.
+     * <p>
+     * The index store does not filter on the host or path of a resource without host or path indexes, which a search
+     * with the union of the indexes cannot reproduce, so such resources are left out of the batch and must be
+     * searched for on their own, see {@link #covers}.
+     */
+    static final class BatchSearch {
+
+        private final Map<String, ResourceSearchIndexes> resourceIndexes;
+        private final List<IPrivilege> policies = new ArrayList<IPrivilege>();
+        private final List<ResourceSaveIndexes> policyIndexes = new ArrayList<ResourceSaveIndexes>();
+
+        private BatchSearch(Map<String, ResourceSearchIndexes> resourceIndexes) {
+            this.resourceIndexes = resourceIndexes;
+        }
+
+        /**
+         * Searches for the policies relevant to the given resources.
+         *
+         * @param realm The evaluation realm.
+         * @param adminSubject Administrator subject which is used for evaluation.
+         * @param subject Subject to be evaluated.
+         * @param application The application the resources belong to.
+         * @param normalisedResourceNames The normalised names of the resources.
+         * @return The policies relevant to the resources.
+         * @throws EntitlementException If the search fails.
+         */
+        static BatchSearch search(String realm, Subject adminSubject, Subject subject, Application application,
+                Set<String> normalisedResourceNames) throws EntitlementException {
+            Map<String, ResourceSearchIndexes> resourceIndexes =
+                    new HashMap<String, ResourceSearchIndexes>(normalisedResourceNames.size() * 2);
+            ResourceSearchIndexes union = new ResourceSearchIndexes(null, null, null);
+            for (String resourceName : normalisedResourceNames) {
+                ResourceSearchIndexes indexes = application.getResourceSearchIndex(resourceName, realm);
+                if (!indexes.getHostIndexes().isEmpty() && !indexes.getPathIndexes().isEmpty()) {
+                    resourceIndexes.put(resourceName, indexes);
+                    union.addAll(indexes);
+                }
+            }
+            if (resourceIndexes.isEmpty()) {
+                return new BatchSearch(resourceIndexes);
+            }
+
+            SubjectAttributesManager sam = SubjectAttributesManager.getInstance(adminSubject, realm);
+            Set<String> subjectIndexes = sam.getSubjectSearchFilter(subject, application.getName());
+            Iterator<IPrivilege> policyIterator = PrivilegeIndexStore.getInstance(adminSubject, realm)
+                    .search(realm, union, subjectIndexes, false);
+            return of(adminSubject, realm, resourceIndexes, policyIterator);
+        }
+
+        /**
+         * Creates the batch of resources from the policies found by a search with the union of their indexes.
+         *
+         * @param adminSubject Administrator subject which is used for evaluation.
+         * @param realm The evaluation realm.
+         * @param resourceIndexes The search indexes of the resources, by normalised resource name.
+         * @param policyIterator The policies found.
+         * @return The policies relevant to the resources.
+         * @throws EntitlementException If the indexes of a policy cannot be computed.
+         */
+        @VisibleForTesting
+        static BatchSearch of(Subject adminSubject, String realm, Map<String, ResourceSearchIndexes> resourceIndexes,
+                Iterator<IPrivilege> policyIterator) throws EntitlementException {
+            BatchSearch batch = new BatchSearch(resourceIndexes);
+            while (policyIterator.hasNext()) {
+                IPrivilege policy = policyIterator.next();
+                if (policy instanceof ReferralPrivilege) {
+                    // We want to ignore referrals - deprecated.
+                    continue;
+                }
+                batch.policies.add(policy);
+                batch.policyIndexes.add(policy instanceof Privilege
+                        ? ((Privilege) policy).getResourceSaveIndexes(adminSubject, realm) : null);
+            }
+
+            if (PolicyConstants.DEBUG.messageEnabled()) {
+                PolicyConstants.DEBUG.message("[PolicyEval] PrivilegeEvaluator.BatchSearch: "
+                        + batch.policies.size() + " policies found for " + resourceIndexes.size() + " resources");
+            }
+            return batch;
+        }
+
+        /**
+         * Tells whether the policies of a resource were searched for by the batch.
+         *
+         * @param normalisedResourceName The normalised resource name.
+         * @return Whether the batch can be used to evaluate the resource.
+         */
+        boolean covers(String normalisedResourceName) {
+            return resourceIndexes.containsKey(normalisedResourceName);
+        }
+
+        private ResourceSearchIndexes getIndexes(String normalisedResourceName) {
+            return resourceIndexes.get(normalisedResourceName);
+        }
+
+        /**
+         * Returns the policies relevant to a resource.
+         *
+         * @param normalisedResourceName The normalised resource name.
+         * @return The policies, none if the resource is not covered by the batch.
+         */
+        @VisibleForTesting
+        Iterator<IPrivilege> getPolicies(String normalisedResourceName) {
+            ResourceSearchIndexes indexes = resourceIndexes.get(normalisedResourceName);
+            List<IPrivilege> result = new ArrayList<IPrivilege>();
+            if (indexes == null) {
+                return result.iterator();
+            }
+            Set<String> hostIndexes = toLowerCase(indexes.getHostIndexes());
+            Set<String> pathIndexes = toLowerCase(indexes.getPathIndexes());
+            for (int i = 0; i < policies.size(); i++) {
+                ResourceSaveIndexes saveIndexes = policyIndexes.get(i);
+                // Policies which cannot tell their indexes are evaluated against every resource
+                if (saveIndexes == null || (intersects(saveIndexes.getHostIndexes(), hostIndexes)
+                        && intersects(saveIndexes.getPathIndexes(), pathIndexes))) {
+                    result.add(policies.get(i));
+                }
+            }
+            return result.iterator();
+        }
+
+        private static Set<String> toLowerCase(Set<String> indexes) {
+            Set<String> result = new HashSet<String>(indexes.size() * 2);
+            for (String index : indexes) {
+                result.add(index.toLowerCase());
+            }
+            return result;
+        }
+
+        private static boolean intersects(Set<String> saveIndexes, Set<String> searchIndexes) {
+            for (String index : saveIndexes) {
+                if (searchIndexes.contains(index.toLowerCase())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
 }
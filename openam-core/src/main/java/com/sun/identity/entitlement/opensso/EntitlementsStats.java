@@ -26,7 +26,7 @@
  */
 
 /*
- * Portions Copyrighted [2011] [ForgeRock AS]
+ * Portions Copyrighted 2011-2016 ForgeRock AS.
  */
 package com.sun.identity.entitlement.opensso;
 
@@ -67,6 +67,11 @@ public class EntitlementsStats implements StatsListener {
 		sb.append(DataStore.getNumberOfPolicies());
 		sb.append("\nTotal referrals: ");
 		sb.append(DataStore.getNumberOfReferrals());
+		for (String realm : OpenSSOIndexStore.getIndexCacheRealms()) {
+			sb.append("\nIndexCache ").append(realm).append(": ");
+			sb.append(OpenSSOIndexStore.getIndexCacheSize(realm)).append(" indexes, hit ratio ");
+			sb.append(OpenSSOIndexStore.getIndexCacheHitRatio(realm));
+		}
 
         sb.append("\n-----------------------------\n");
 		stats.record(sb.toString());
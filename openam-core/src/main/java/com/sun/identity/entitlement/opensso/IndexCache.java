@@ -24,7 +24,7 @@
  *
  * $Id: IndexCache.java,v 1.3 2009/12/12 00:03:13 veiming Exp $
  *
- * Portions copyright 2013 ForgeRock, Inc.
+ * Portions copyright 2013-2016 ForgeRock AS.
  */
 package com.sun.identity.entitlement.opensso;
 
@@ -32,6 +32,7 @@ import com.sun.identity.entitlement.ResourceSaveIndexes;
 import com.sun.identity.entitlement.ResourceSearchIndexes;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
@@ -53,6 +54,8 @@ public class IndexCache {
     private Cache pathIndexCache;
     private Cache parentPathIndexCache;
     private ReadWriteLock rwlock = new ReentrantReadWriteLock();
+    private final AtomicLong lookups = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
 
     /**
      * Constructs
@@ -190,12 +193,41 @@ public class IndexCache {
                 results.retainAll(getPathIndexes(indexes));
             }
 
+            lookups.incrementAndGet();
+            if (!results.isEmpty()) {
+                hits.incrementAndGet();
+            }
             return results;
         } finally {
             rwlock.readLock().unlock();
         }
     }
 
+    /**
+     * Returns the number of distinct indexes cached.
+     *
+     * @return The number of indexes.
+     */
+    public int getIndexCount() {
+        rwlock.readLock().lock();
+        try {
+            return subjectIndexCache.size() + hostIndexCache.size() + pathIndexCache.size()
+                    + parentPathIndexCache.size();
+        } finally {
+            rwlock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the proportion of calls to {@link #getMatchingEntries} which matched at least one entry.
+     *
+     * @return The hit ratio, between 0 and 1, or 0 if the cache has not been searched yet.
+     */
+    public double getHitRatio() {
+        long count = lookups.get();
+        return count == 0 ? 0 : (double) hits.get() / count;
+    }
+
     private Set<String> getPathParentIndexes(ResourceSearchIndexes indexes) {
         Set<String> parentPathIndexes = indexes.getParentPathIndexes();
         Set<String> results = new HashSet<String>();
@@ -33,10 +33,11 @@ import static java.util.Collections.singleton;
 import static org.forgerock.openam.entitlement.PolicyConstants.SUPER_ADMIN_SUBJECT;
 import static org.forgerock.openam.entitlement.utils.EntitlementUtils.getApplicationService;
 import static org.forgerock.openam.entitlement.utils.EntitlementUtils.getEntitlementConfiguration;
+import static org.forgerock.openam.utils.Time.currentTimeMillis;
 
+import com.iplanet.am.util.SystemProperties;
 import com.iplanet.sso.SSOException;
 import com.iplanet.sso.SSOToken;
-import com.sun.identity.common.CaseInsensitiveHashMap;
 import com.sun.identity.entitlement.Application;
 import com.sun.identity.entitlement.ApplicationTypeManager;
 import com.sun.identity.entitlement.EntitlementConfiguration;
@@ -79,16 +80,25 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 public class OpenSSOIndexStore extends PrivilegeIndexStore {
     private static final int DEFAULT_CACHE_SIZE = 100000;
     private static final int DEFAULT_THREAD_SIZE = 1;
     private static final int DEFAULT_IDX_CACHE_SIZE = 100000;
+    private static final String WARM_UP_ENABLED = "org.forgerock.openam.entitlement.indexCache.warmUp.enabled";
+    private static final String WARM_UP_THREADS = "org.forgerock.openam.entitlement.indexCache.warmUp.threads";
+    private static final int DEFAULT_WARM_UP_THREADS = 4;
     private static final PolicyCache policyCache;
     private static final PolicyCache referralCache;
     private static final int policyCacheSize;
-    private static final Map indexCaches;
-    private static final Map referralIndexCaches;
+    private static final ConcurrentMap<String, IndexCache> indexCaches;
+    private static final ConcurrentMap<String, IndexCache> referralIndexCaches;
     private static final int indexCacheSize;
     private static final DataStore dataStore = DataStore.getInstance();
     private static IThreadPool threadPool;
@@ -114,8 +124,8 @@ public class OpenSSOIndexStore extends PrivilegeIndexStore {
         indexCacheSize = getInteger(ec,
             EntitlementConfiguration.INDEX_CACHE_SIZE, DEFAULT_IDX_CACHE_SIZE);
         if (indexCacheSize > 0) {
-            indexCaches = new CaseInsensitiveHashMap();
-            referralIndexCaches = new CaseInsensitiveHashMap();
+            indexCaches = new ConcurrentHashMap<>();
+            referralIndexCaches = new ConcurrentHashMap<>();
         } else {
             indexCaches = null;
             referralIndexCaches = null;
@@ -139,6 +149,10 @@ public class OpenSSOIndexStore extends PrivilegeIndexStore {
             PolicyConstants.DEBUG.error("OpenSSOIndexStore.init " +
                 "Unable to register for SMS notifications", e);
         }
+
+        if (indexCacheSize > 0 && policyCacheSize > 0 && SystemProperties.getAsBoolean(WARM_UP_ENABLED, false)) {
+            startWarmUp(SystemProperties.getAsInt(WARM_UP_THREADS, DEFAULT_WARM_UP_THREADS));
+        }
     }
 
     private static int getInteger(EntitlementConfiguration ec, String key,
@@ -170,22 +184,94 @@ public class OpenSSOIndexStore extends PrivilegeIndexStore {
 
         // Get Index caches based on realm
         if (indexCacheSize > 0) {
+            indexCache = getIndexCache(indexCaches, realmDN);
+            referralIndexCache = getIndexCache(referralIndexCaches, realmDN);
+        }
+    }
 
-            synchronized (indexCaches) {
-                indexCache = (IndexCache)indexCaches.get(realmDN);
-                if (indexCache == null) {
-                    indexCache = new IndexCache(indexCacheSize);
-                    indexCaches.put(realmDN, indexCache);
-                }
+    /**
+     * Returns the index cache of a realm, creating it if it doesn't exist yet. The caches are looked up on every
+     * policy evaluation, so this doesn't lock unless the cache has to be created.
+     */
+    private static IndexCache getIndexCache(ConcurrentMap<String, IndexCache> caches, String realmDN) {
+        String key = realmDN.toLowerCase();
+        IndexCache cache = caches.get(key);
+        if (cache == null) {
+            IndexCache newCache = new IndexCache(indexCacheSize);
+            cache = caches.putIfAbsent(key, newCache);
+            if (cache == null) {
+                cache = newCache;
             }
-            synchronized (referralIndexCaches) {
-                referralIndexCache = (IndexCache)referralIndexCaches.get(
-                    realmDN);
-                if (referralIndexCache == null) {
-                    referralIndexCache = new IndexCache(indexCacheSize);
-                    referralIndexCaches.put(realmDN, referralIndexCache);
+        }
+        return cache;
+    }
+
+    /**
+     * Loads the policies of all the realms into the policy and index caches in the background, so that the first
+     * evaluations after a restart don't have to search the data store.
+     */
+    private static void startWarmUp(final int threads) {
+        Thread warmUp = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                warmUp(threads);
+            }
+        }, "OpenSSOIndexStore-WarmUp");
+        warmUp.setDaemon(true);
+        warmUp.start();
+    }
+
+    private static void warmUp(int threads) {
+        Set<String> realms = new HashSet<>();
+        realms.add("/");
+        try {
+            SSOToken adminToken = AccessController.doPrivileged(AdminTokenAction.getInstance());
+            realms.addAll(new OrganizationConfigManager(adminToken, "/").getSubOrganizationNames("*", true));
+        } catch (SMSException e) {
+            PolicyConstants.DEBUG.error("OpenSSOIndexStore.warmUp: unable to list the realms", e);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "OpenSSOIndexStore-WarmUp");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        final Subject adminSubject = SubjectUtils.createSuperAdminSubject();
+        for (final String realm : realms) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    new OpenSSOIndexStore(adminSubject, realm.startsWith("/") ? realm : "/" + realm).warmUp();
                 }
+            });
+        }
+        executor.shutdown();
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Caches all the policies of the realm.
+     */
+    private void warmUp() {
+        long start = currentTimeMillis();
+        try {
+            List<Privilege> privileges = findAllPolicies();
+            for (Privilege privilege : privileges) {
+                cache(privilege, null, realmDN);
+            }
+            if (PolicyConstants.DEBUG.messageEnabled()) {
+                PolicyConstants.DEBUG.message("OpenSSOIndexStore.warmUp: cached " + privileges.size()
+                        + " policies of " + getRealm() + " in " + (currentTimeMillis() - start) + "ms");
             }
+        } catch (EntitlementException e) {
+            PolicyConstants.DEBUG.error("OpenSSOIndexStore.warmUp: unable to cache the policies of " + getRealm(), e);
         }
     }
 
@@ -938,6 +1024,41 @@ public class OpenSSOIndexStore extends PrivilegeIndexStore {
         return referralCache.getCount();
     }
 
+    /**
+     * Returns the realms which have a policy index cache.
+     *
+     * @return The DNs of the realms, in lower case.
+     */
+    public static Set<String> getIndexCacheRealms() {
+        return indexCaches == null ? Collections.<String>emptySet() : indexCaches.keySet();
+    }
+
+    /**
+     * Returns the number of indexes in the policy index cache of a realm.
+     *
+     * @param realm The realm.
+     * @return The number of indexes, zero if the realm has no cache.
+     */
+    public static int getIndexCacheSize(String realm) {
+        IndexCache cache = getIndexCache(realm);
+        return cache == null ? 0 : cache.getIndexCount();
+    }
+
+    /**
+     * Returns the proportion of searches of the policy index cache of a realm which found policies.
+     *
+     * @param realm The realm.
+     * @return The hit ratio, between 0 and 1.
+     */
+    public static double getIndexCacheHitRatio(String realm) {
+        IndexCache cache = getIndexCache(realm);
+        return cache == null ? 0 : cache.getHitRatio();
+    }
+
+    private static IndexCache getIndexCache(String realm) {
+        return indexCaches == null ? null : indexCaches.get(DNMapper.orgNameToDN(realm).toLowerCase());
+    }
+
     @Override
     public boolean hasPrivilgesWithApplication(
         String realm, String applName) throws EntitlementException {
@@ -1002,8 +1123,10 @@ public class OpenSSOIndexStore extends PrivilegeIndexStore {
                 (serviceComponent.trim().length() == 0) ||
                 serviceComponent.equals("/"))) {
                 // Realm has been deleted, clear the indexCaches &
-                indexCaches.remove(orgName);
-                referralIndexCaches.remove(orgName);
+                if (indexCaches != null) {
+                    indexCaches.remove(orgName.toLowerCase());
+                    referralIndexCaches.remove(orgName.toLowerCase());
+                }
                 getApplicationService(SUPER_ADMIN_SUBJECT, orgName).clearCache();
             }
         }
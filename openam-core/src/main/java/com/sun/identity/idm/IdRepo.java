@@ -24,7 +24,7 @@
  *
  * $Id: IdRepo.java,v 1.8 2009/07/02 20:33:30 hengming Exp $
  *
- * Portions Copyrighted 2013-2015 ForgeRock AS.
+ * Portions Copyrighted 2013-2016 ForgeRock AS.
  */
 package com.sun.identity.idm;
 
@@ -39,6 +39,8 @@ import com.iplanet.sso.SSOException;
 import com.iplanet.sso.SSOToken;
 import com.sun.identity.sm.SchemaType;
 import org.forgerock.openam.utils.CrestQuery;
+import org.forgerock.util.promise.Promise;
+import org.forgerock.util.promise.Promises;
 
 /**
  *
@@ -202,6 +204,36 @@ public abstract class IdRepo {
     public abstract Map<String, Set<String>> getAttributes(SSOToken token, IdType type, String name,
             Set<String> attrNames) throws IdRepoException, SSOException;
 
+    /**
+     * Returns requested attributes and values of name object without waiting for the repository to respond, so that
+     * the caller can issue requests to several repositories, or several requests to the same repository, before
+     * waiting for any of them. The default implementation reads the attributes synchronously and returns a completed
+     * promise; repositories capable of pipelining their requests should override it.
+     *
+     * @param token
+     *     Single sign on token of identity performing the task.
+     * @param type
+     *     Identity type of this object.
+     * @param name
+     *     Name of the object of interest.
+     * @param attrNames
+     *     Set of attribute names to be read, or <code>null</code> to read all the attributes.
+     * @return
+     *     A promise of the map of attribute-values, which fails with an {@link IdRepoException} if there are
+     *     repository related error conditions.
+     * @throws SSOException If identity's single sign on token is invalid.
+     * @since 14.0.0
+     */
+    public Promise<Map<String, Set<String>>, IdRepoException> getAttributesAsync(SSOToken token, IdType type,
+            String name, Set<String> attrNames) throws SSOException {
+        try {
+            return Promises.newResultPromise(attrNames == null
+                    ? getAttributes(token, type, name) : getAttributes(token, type, name, attrNames));
+        } catch (IdRepoException e) {
+            return Promises.newExceptionPromise(e);
+        }
+    }
+
     /**
      * Returns requested binary attributes as an array of bytes.
      *
@@ -432,6 +464,35 @@ public abstract class IdRepo {
             String name, IdType membershipType) throws IdRepoException,
             SSOException;
 
+    /**
+     * Returns the memberships of an identity without waiting for the repository to respond. The default
+     * implementation reads the memberships synchronously and returns a completed promise; repositories capable of
+     * pipelining their requests should override it.
+     *
+     * @param token
+     *     Single sign on token of identity performing the task.
+     * @param type
+     *     Identity type of this object.
+     * @param name
+     *     Name of the object of interest.
+     * @param membershipType
+     *     IdType of memberships to return.
+     * @return
+     *     A promise of the set of objects that <code>name</code> is a member of, which fails with an
+     *     {@link IdRepoException} if there are repository related error conditions.
+     * @throws SSOException If identity's single sign on token is invalid.
+     * @see #getMemberships(SSOToken, IdType, String, IdType)
+     * @since 14.0.0
+     */
+    public Promise<Set<String>, IdRepoException> getMembershipsAsync(SSOToken token, IdType type, String name,
+            IdType membershipType) throws SSOException {
+        try {
+            return Promises.newResultPromise(getMemberships(token, type, name, membershipType));
+        } catch (IdRepoException e) {
+            return Promises.newExceptionPromise(e);
+        }
+    }
+
     /**
      * This method is used to assign a service to the given identity.
      * The behavior of this method will be different, depending on
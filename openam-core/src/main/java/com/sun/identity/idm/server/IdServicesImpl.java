@@ -73,16 +73,19 @@ import com.sun.identity.sm.ServiceSchemaManager;
 import org.forgerock.openam.ldap.LDAPUtils;
 import org.forgerock.openam.utils.CollectionUtils;
 import org.forgerock.openam.utils.CrestQuery;
+import org.forgerock.util.promise.Promise;
 import org.forgerock.util.thread.listener.ShutdownListener;
 import org.forgerock.util.thread.listener.ShutdownManager;
 
 import javax.security.auth.callback.Callback;
 import javax.security.auth.callback.NameCallback;
 import java.security.AccessController;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -764,20 +767,29 @@ public class IdServicesImpl implements IdServices {
            }
        }
 
-       Iterator it = configuredPluginClasses.iterator();
+       // Send the read to every data store before waiting for any of them,
+       // so that the data stores are queried concurrently
        int noOfSuccess = configuredPluginClasses.size();
+       List<IdRepo> idRepos = new ArrayList<>(noOfSuccess);
+       List<Promise<Map<String, Set<String>>, IdRepoException>> reads =
+               new ArrayList<>(noOfSuccess);
+       for (Iterator items = configuredPluginClasses.iterator();
+           items.hasNext();) {
+           IdRepo idRepo = (IdRepo) items.next();
+           idRepos.add(idRepo);
+           if (idRepo.getClass().getName()
+               .equals(IdConstants.AMSDK_PLUGIN) && (amsdkDN != null)) {
+               reads.add(idRepo.getAttributesAsync(token, type, amsdkDN, null));
+           } else {
+               reads.add(idRepo.getAttributesAsync(token, type, name, null));
+           }
+       }
 
-       while (it.hasNext()) {
-           IdRepo idRepo = (IdRepo) it.next();
+       for (int i = 0; i < idRepos.size(); i++) {
+           IdRepo idRepo = idRepos.get(i);
            try {
                Map cMap = idRepo.getConfiguration();
-               Map aMap = null;
-               if (idRepo.getClass().getName()
-                   .equals(IdConstants.AMSDK_PLUGIN) && (amsdkDN != null)) {
-                   aMap = idRepo.getAttributes(token, type, amsdkDN);
-               } else {
-                   aMap = idRepo.getAttributes(token, type, name);
-               }
+               Map aMap = reads.get(i).getOrThrowUninterruptibly();
                if (DEBUG.messageEnabled()) {
                    DEBUG.message("IdServicesImpl.getAttributes: " +
                        "before reverseMapAttributeNames aMap=" +
@@ -980,6 +992,11 @@ public class IdServicesImpl implements IdServices {
        Set amsdkMemberShips = new HashSet();
        boolean amsdkIncluded = false;
 
+       // Send the read to every data store before waiting for any of them,
+       // so that the data stores are queried concurrently
+       List<IdRepo> idRepos = new ArrayList<>(noOfSuccess);
+       List<Promise<Set<String>, IdRepoException>> reads =
+               new ArrayList<>(noOfSuccess);
        while (it.hasNext()) {
            IdRepo idRepo = (IdRepo)it.next();
            if (!idRepo.getSupportedTypes().contains(membershipType) ||
@@ -989,12 +1006,20 @@ public class IdServicesImpl implements IdServices {
                noOfSuccess--;
                continue;
            }
+           boolean isAMSDK = idRepo.getClass().getName().equals(
+                   IdConstants.AMSDK_PLUGIN);
+           idRepos.add(idRepo);
+           reads.add((isAMSDK && (amsdkDN != null)) ?
+               idRepo.getMembershipsAsync(token, type, amsdkDN, membershipType)
+               : idRepo.getMembershipsAsync(token, type, name, membershipType));
+       }
+
+       for (int i = 0; i < idRepos.size(); i++) {
+           IdRepo idRepo = idRepos.get(i);
            try {
                boolean isAMSDK = idRepo.getClass().getName().equals(
                        IdConstants.AMSDK_PLUGIN);
-               Set members = (isAMSDK && (amsdkDN != null)) ?
-                   idRepo.getMemberships(token, type, amsdkDN, membershipType)
-                   : idRepo.getMemberships(token, type, name, membershipType);
+               Set members = reads.get(i).getOrThrowUninterruptibly();
                if (isAMSDK) {
                    amsdkMemberShips.addAll(members);
                    amsdkIncluded = true;
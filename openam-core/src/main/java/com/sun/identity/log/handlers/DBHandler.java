@@ -33,6 +33,7 @@ import static org.forgerock.openam.utils.Time.*;
 
 import java.io.StringReader;
 import java.io.UnsupportedEncodingException;
+import java.sql.BatchUpdateException;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
@@ -42,6 +43,7 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.Date;
 import java.util.HashSet;
@@ -52,6 +54,7 @@ import java.util.logging.Formatter;
 import java.util.logging.Handler;
 import java.util.logging.LogRecord;
 
+import com.iplanet.am.util.SystemProperties;
 import com.iplanet.am.util.ThreadPoolException;
 import com.iplanet.log.ConnectionException;
 import com.iplanet.log.DriverLoadException;
@@ -67,6 +70,9 @@ import com.sun.identity.monitoring.Agent;
 import com.sun.identity.monitoring.MonitoringUtil;
 import com.sun.identity.monitoring.SsoServerLoggingHdlrEntryImpl;
 import com.sun.identity.monitoring.SsoServerLoggingSvcImpl;
+import com.sun.identity.shared.Constants;
+
+import org.forgerock.util.annotations.VisibleForTesting;
 
 /**
  * DBHandler takes log messages from the Logger and exports
@@ -79,6 +85,9 @@ import com.sun.identity.monitoring.SsoServerLoggingSvcImpl;
  */
 public class DBHandler extends Handler {
 
+    private static final int DEFAULT_BATCH_SIZE = 100;
+    private static final long DEFAULT_MAX_PENDING_WAIT = 5000L;
+
     private LogManager lmanager = LogManagerUtil.getLogManager();
     private String driver;
     private String databaseURL;
@@ -88,6 +97,11 @@ public class DBHandler extends Handler {
     private String password;
     private int recCountLimit;
     private int recMaxDBMem = 2;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private long maxPendingWait = DEFAULT_MAX_PENDING_WAIT;
+    // Records handed over to the LoggingThread and not yet written, guarded by pendingLock
+    private int pendingRecords = 0;
+    private final Object pendingLock = new Object();
     private LinkedList<LogRecord> recordBuffer;
     private TimeBufferingTask bufferTask;
     private boolean timeBufferingEnabled = false;
@@ -161,6 +175,10 @@ public class DBHandler extends Handler {
             recMaxDBMem = recCountLimit;
         }
 
+        batchSize = Math.max(1, SystemProperties.getAsInt(Constants.LOG_DB_BATCH_SIZE, DEFAULT_BATCH_SIZE));
+        maxPendingWait = Math.max(0L,
+                SystemProperties.getAsLong(Constants.LOG_DB_MAX_PENDING_WAIT, DEFAULT_MAX_PENDING_WAIT));
+
         String status = lmanager.getProperty(LogConstants.TIME_BUFFERING_STATUS);
 
         if ( status != null && status.equalsIgnoreCase("ON")) {
@@ -360,6 +378,24 @@ public class DBHandler extends Handler {
         }
     }
 
+    /**
+     * Creates a DBHandler writing to a table through an open connection, without reading the log configuration.
+     * @param tableName Database table name for logger.
+     * @param conn The connection to the database.
+     * @param formatter The formatter of the records.
+     * @param batchSize The maximum number of records inserted per batch.
+     * @param isMySQL Whether the database is MySQL.
+     */
+    @VisibleForTesting
+    DBHandler(String tableName, Connection conn, Formatter formatter, int batchSize, boolean isMySQL) {
+        this.tableName = tableName;
+        this.conn = conn;
+        this.batchSize = batchSize;
+        this.isMySQL = isMySQL;
+        setFormatter(formatter);
+        recordBuffer = new LinkedList<LogRecord>();
+    }
+
     /**
      * Publishes the provided LogRecord.
      * @param logRecord the log record to be published.
@@ -375,6 +411,7 @@ public class DBHandler extends Handler {
         if (!isLoggable(logRecord)) {
             return;
         }
+        boolean flushed = false;
         synchronized (this) {
             recordBuffer.add(logRecord);
             if (recordBuffer.size() >= recCountLimit) {
@@ -384,6 +421,46 @@ public class DBHandler extends Handler {
                         + recCountLimit + " writing all");
                 }
                 nonBlockingFlush();
+                flushed = true;
+            }
+        }
+        if (flushed) {
+            awaitPendingRecords();
+        }
+    }
+
+    /**
+     * Makes the publishing thread wait, for {@link Constants#LOG_DB_MAX_PENDING_WAIT} milliseconds at most, while the
+     * LoggingThread has more records to write than the maximum DB memory buffer size, so that records are not
+     * buffered faster than the database takes them.
+     */
+    private void awaitPendingRecords() {
+        synchronized (pendingLock) {
+            long deadline = currentTimeMillis() + maxPendingWait;
+            while (pendingRecords > recMaxDBMem) {
+                long wait = deadline - currentTimeMillis();
+                if (wait <= 0) {
+                    if (Debug.warningEnabled()) {
+                        Debug.warning(tableName + ":DBHandler:awaitPendingRecords: " + pendingRecords
+                                + " records still waiting to be written");
+                    }
+                    return;
+                }
+                try {
+                    pendingLock.wait(wait);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void updatePendingRecords(int delta) {
+        synchronized (pendingLock) {
+            pendingRecords += delta;
+            if (delta < 0) {
+                pendingLock.notifyAll();
             }
         }
     }
@@ -398,6 +475,17 @@ public class DBHandler extends Handler {
      * @throws SQLException if there is an issue creating or preparing the statement values.
      */
     private PreparedStatement getInsertPreparedStatement(List<String> values) throws SQLException {
+        PreparedStatement preparedStatement = conn.prepareStatement(getInsertStatementString(values.size()));
+        setInsertValues(preparedStatement, values);
+        return preparedStatement;
+    }
+
+    /**
+     * Returns the INSERT statement, with a placeholder for each value, for the table that this DBHandler represents.
+     * @param valueCount The number of values inserted.
+     * @return The INSERT statement string.
+     */
+    private String getInsertStatementString(int valueCount) {
 
         StringBuilder insertStringBuffer = new StringBuilder(2000);
         insertStringBuffer.append("INSERT INTO ").append(tableName);
@@ -409,7 +497,7 @@ public class DBHandler extends Handler {
         insertStringBuffer.append(" VALUES (");
 
         // Inset a placeholder for every value we have.
-        for (int i = 0; i < (values.size() - 1); i++) {
+        for (int i = 0; i < (valueCount - 1); i++) {
            insertStringBuffer.append("?,");
         }
         // Finish with remaining value placeholder less the ,
@@ -418,11 +506,18 @@ public class DBHandler extends Handler {
         String preparedStatementString = insertStringBuffer.toString();
         if (Debug.messageEnabled()) {
             Debug.message(tableName +
-                ":DBHandler:getInsertPreparedStatement preparedStatementString is " + preparedStatementString);
+                ":DBHandler:getInsertStatementString preparedStatementString is " + preparedStatementString);
         }
+        return preparedStatementString;
+    }
 
-        PreparedStatement preparedStatement = conn.prepareStatement(preparedStatementString);
-
+    /**
+     * Sets the values of a record on the INSERT statement.
+     * @param preparedStatement The INSERT statement.
+     * @param values The values to be inserted, as returned by {@link #getValues(LogRecord)}.
+     * @throws SQLException if there is an issue setting the statement values.
+     */
+    private void setInsertValues(PreparedStatement preparedStatement, List<String> values) throws SQLException {
         // Column numbers in PreparedStatements start at 1 not 0.
         // Set the time and data values directly, these are always the first two columns.
         preparedStatement.setTimestamp(1, new Timestamp(Long.parseLong(values.get(0))));
@@ -435,8 +530,6 @@ public class DBHandler extends Handler {
         for (int i = 2; i < values.size(); i++) {
             preparedStatement.setString(i + 1, values.get(i));
         }
-
-        return preparedStatement;
     }
 
     /**
@@ -524,6 +617,7 @@ public class DBHandler extends Handler {
         }
 
         LogTask task = new LogTask(tempBuffer);
+        updatePendingRecords(task.recordCount);
         try {
             // Get an instance as required otherwise it can cause issues on container restart.
             LoggingThread.getInstance().run(task);
@@ -860,7 +954,8 @@ public class DBHandler extends Handler {
         }
     }
 
-    private void logRecords(LinkedList<LogRecord> records) {
+    @VisibleForTesting
+    void logRecords(LinkedList<LogRecord> records) {
 
         //
         //  check if the connection to the db had problems before
@@ -1009,184 +1104,262 @@ public class DBHandler extends Handler {
             closeStatement(testConnectionStatement);
         }
 
+        List<LogRecord> remaining = records;
+        if (batchSize > 1) {
+            remaining = insertBatches(records);
+        }
+        for (LogRecord record : remaining) {
+            insertRecord(getValues(record), records);
+        }
+    }
+
+    /**
+     * Inserts the records in batches of up to {@code batchSize} records, through a single prepared statement.
+     * Records which could not be inserted this way are returned, to be inserted one at a time so that the
+     * connection and table can be recovered as for single inserts.
+     * @param records The records to insert.
+     * @return The records which have not been inserted.
+     */
+    private List<LogRecord> insertBatches(List<LogRecord> records) {
         PreparedStatement insertStatement = null;
-        for (LogRecord record : records) {
-            List<String> values = getValues(record);
-            try {
-                insertStatement = getInsertPreparedStatement(values);
-                insertStatement.executeUpdate();
+        int start = 0;
+        int end = 0;
+        try {
+            while (start < records.size()) {
+                end = Math.min(records.size(), start + batchSize);
+                for (LogRecord record : records.subList(start, end)) {
+                    List<String> values = getValues(record);
+                    if (insertStatement == null) {
+                        insertStatement = conn.prepareStatement(getInsertStatementString(values.size()));
+                    }
+                    setInsertValues(insertStatement, values);
+                    insertStatement.addBatch();
+                }
+                insertStatement.executeBatch();
                 //Monit start
                 if (MonitoringUtil.isRunning() && dbLogHandlerForMonitoring != null) {
-                    dbLogHandlerForMonitoring.incHandlerSuccessCount(1);
+                    dbLogHandlerForMonitoring.incHandlerSuccessCount(end - start);
                 }
                 //Monit end
-            } catch (SQLException sqle) {
-                // Attempt to close this just in case it is holding resources.
-                closeStatement(insertStatement);
-                insertStatement = null;
+                start = end;
+            }
+            return Collections.emptyList();
+        } catch (SQLException sqle) {
+            if (Debug.messageEnabled()) {
+                Debug.message(tableName + ":DBHandler:insertBatches:SQLException (" + sqle.getErrorCode() + "): "
+                        + sqle.getMessage() + ", inserting the remaining records one at a time");
+            }
+            List<LogRecord> remaining = new ArrayList<LogRecord>(records.size() - start);
+            int[] updateCounts = sqle instanceof BatchUpdateException
+                    ? ((BatchUpdateException) sqle).getUpdateCounts() : null;
+            int inserted = 0;
+            if (updateCounts == null) {
+                remaining.addAll(records.subList(start, end));
+            } else if (updateCounts.length < end - start) {
+                // The driver stopped at the first failed record
+                inserted = updateCounts.length;
+                remaining.addAll(records.subList(start + inserted, end));
+            } else {
+                for (int i = 0; i < end - start; i++) {
+                    if (updateCounts[i] == Statement.EXECUTE_FAILED) {
+                        remaining.add(records.get(start + i));
+                    } else {
+                        inserted++;
+                    }
+                }
+            }
+            remaining.addAll(records.subList(end, records.size()));
+            //Monit start
+            if (inserted > 0 && MonitoringUtil.isRunning() && dbLogHandlerForMonitoring != null) {
+                dbLogHandlerForMonitoring.incHandlerSuccessCount(inserted);
+            }
+            //Monit end
+            return remaining;
+        } finally {
+            closeStatement(insertStatement);
+        }
+    }
+
+    /**
+     * Inserts a single record, reconnecting to the database or creating the table if needed.
+     * @param values The values of the record, as returned by {@link #getValues(LogRecord)}.
+     * @param records The records being written, put back in the buffer if the record cannot be inserted.
+     */
+    private void insertRecord(List<String> values, LinkedList<LogRecord> records) {
+        PreparedStatement insertStatement = null;
+        try {
+            insertStatement = getInsertPreparedStatement(values);
+            insertStatement.executeUpdate();
+            //Monit start
+            if (MonitoringUtil.isRunning() && dbLogHandlerForMonitoring != null) {
+                dbLogHandlerForMonitoring.incHandlerSuccessCount(1);
+            }
+            //Monit end
+        } catch (SQLException sqle) {
+            // Attempt to close this just in case it is holding resources.
+            closeStatement(insertStatement);
+            insertStatement = null;
 
+            /*
+             *  as mentioned above, connection errors to oracle
+             *  seem to get caught in the createStatement(), while
+             *  with mysql, they get caught here.
+             *
+             *  the other thing that could happen is the table was
+             *  dropped, but not the connection.
+             */
+            int sqleErrCode = sqle.getErrorCode();
+            boolean tableDoesNotExist = false;
+            if (Debug.messageEnabled()) {
+                Debug.message(tableName +
+                    ":DBHandler:logRecords:SQLException (" + sqleErrCode + "): " + sqle.getMessage());
+            }
+
+            /*
+             *  unfortunately have to check which db and specific
+             *  error codes...
+             *  see if table's missing
+             *  MySQL: 1146
+             *  Oracle: 942
+             */
+            if ((isMySQL && (sqleErrCode == 1146)) || (!isMySQL && (sqleErrCode == 942))) {
                 /*
-                 *  as mentioned above, connection errors to oracle
-                 *  seem to get caught in the createStatement(), while
-                 *  with mysql, they get caught here.
+                 *  connection to DB's there, but table's missing
                  *
-                 *  the other thing that could happen is the table was
-                 *  dropped, but not the connection.
+                 *  gotta make the table; try the executeUpdate()
+                 *  again
                  */
-                int sqleErrCode = sqle.getErrorCode();
-                boolean tableDoesNotExist = false;
-                if (Debug.messageEnabled()) {
-                    Debug.message(tableName +
-                        ":DBHandler:logRecords:SQLException (" + sqleErrCode + "): " + sqle.getMessage());
+                try {
+                    createTable(tableName);
+                } catch (SQLException se) {
+                    //  just log the message and continue, for now
+                    Debug.error(tableName + ":DBHandler:logRecords:execUpdate:cTable:SQLE ("
+                        + se.getErrorCode() + "): " + se.getMessage());
+                } catch (UnsupportedEncodingException usee) {
+                    //  just log the message and continue, for now
+                    Debug.error(tableName + ":DBHandler:logRecords:execUpdate:cTable:UE: " + usee.getMessage());
                 }
 
+                try {
+                    insertStatement = getInsertPreparedStatement(values);
+                    insertStatement.executeUpdate();
+                } catch (SQLException sqle2) {
+                    //  guess NOW it's an error
+                    Debug.error(tableName +
+                        ":DBHandler:flush:logRecords:exUpdate:SQLE (" + sqle2.getErrorCode() + "): " +
+                        sqle2.getMessage());
+                    throw new AMLogException (AMLogException.LOG_DB_EXECUPDATE);
+                } finally {
+                    closeStatement(insertStatement);
+                    insertStatement = null;
+                }
+            } else if ((isMySQL && (sqleErrCode == 0))
+                    || (!isMySQL && ((sqleErrCode == 17002) || (sqleErrCode == 17410)))) {
                 /*
-                 *  unfortunately have to check which db and specific
-                 *  error codes...
-                 *  see if table's missing
-                 *  MySQL: 1146
-                 *  Oracle: 942
+                 *  connection's probably gone gotta try everything
+                 *  up to this point again, starting with
+                 *  reconnecting to the db.  any failure along the
+                 *  line this time gets an exception.
                  */
-                if ((isMySQL && (sqleErrCode == 1146)) || (!isMySQL && (sqleErrCode == 942))) {
-                    /*
-                     *  connection to DB's there, but table's missing
-                     *
-                     *  gotta make the table; try the executeUpdate()
-                     *  again
-                     */
-                    try {
-                        createTable(tableName);
-                    } catch (SQLException se) {
-                        //  just log the message and continue, for now
-                        Debug.error(tableName + ":DBHandler:logRecords:execUpdate:cTable:SQLE ("
-                            + se.getErrorCode() + "): " + se.getMessage());
-                    } catch (UnsupportedEncodingException usee) {
-                        //  just log the message and continue, for now
-                        Debug.error(tableName + ":DBHandler:logRecords:execUpdate:cTable:UE: " + usee.getMessage());
+
+                try {
+                    conn.close();
+                } catch (SQLException ex) {
+                    //  log and continue
+                    if (Debug.messageEnabled()) {
+                        Debug.message(tableName +
+                            ":DBHandler:logRecords:execUpdate:close:SQLE (" + ex.getErrorCode() + "): " +
+                            ex.getMessage());
                     }
+                }
 
-                    try {
-                        insertStatement = getInsertPreparedStatement(values);
-                        insertStatement.executeUpdate();
-                    } catch (SQLException sqle2) {
-                        //  guess NOW it's an error
-                        Debug.error(tableName +
-                            ":DBHandler:flush:logRecords:exUpdate:SQLE (" + sqle2.getErrorCode() + "): " +
-                            sqle2.getMessage());
-                        throw new AMLogException (AMLogException.LOG_DB_EXECUPDATE);
-                    } finally {
-                        closeStatement(insertStatement);
-                        insertStatement = null;
+                connectionToDBLost = true;
+                try {
+                    reconnectToDatabase();
+                    Debug.error (tableName + ":DBHandler:logRecords:execUpdate:reconnect successful.");
+                } catch (DriverLoadException dle) {
+                    if (Debug.messageEnabled()) {
+                        Debug.message(tableName + ":DBHandler:logRecords:execUpdate:reconnect:DLE: " + dle.getMessage());
                     }
-                } else if ((isMySQL && (sqleErrCode == 0))
-                        || (!isMySQL && ((sqleErrCode == 17002) || (sqleErrCode == 17410)))) {
                     /*
-                     *  connection's probably gone gotta try everything
-                     *  up to this point again, starting with
-                     *  reconnecting to the db.  any failure along the
-                     *  line this time gets an exception.
+                     * if the max mem buffer is exceeded,
+                     * dump the records
                      */
-
-                    try {
-                        conn.close();
-                    } catch (SQLException ex) {
-                        //  log and continue
-                        if (Debug.messageEnabled()) {
-                            Debug.message(tableName +
-                                ":DBHandler:logRecords:execUpdate:close:SQLE (" + ex.getErrorCode() + "): " +
-                                ex.getMessage());
-                        }
+                    clearBuffer(records);
+                    throw new AMLogException (AMLogException.LOG_DB_RECONNECT_FAILED);
+                } catch (ConnectionException ce) {
+                    if (Debug.messageEnabled()) {
+                        Debug.message(tableName + ":DBHandler:logRecords:execUpdate:reconnect:CE: " + ce.getMessage());
                     }
+                    /*
+                     * if the max mem buffer is exceeded,
+                     * dump the records
+                     */
+                    clearBuffer(records);
+                    throw new AMLogException (AMLogException.LOG_DB_RECONNECT_FAILED);
+                } finally {
+                    closeStatement(insertStatement);
+                    insertStatement = null;
+                }
+                connectionToDBLost = false;
 
-                    connectionToDBLost = true;
-                    try {
-                        reconnectToDatabase();
-                        Debug.error (tableName + ":DBHandler:logRecords:execUpdate:reconnect successful.");
-                    } catch (DriverLoadException dle) {
-                        if (Debug.messageEnabled()) {
-                            Debug.message(tableName + ":DBHandler:logRecords:execUpdate:reconnect:DLE: " + dle.getMessage());
-                        }
-                        /*
-                         * if the max mem buffer is exceeded,
-                         * dump the records
-                         */
-                        clearBuffer(records);
-                        throw new AMLogException (AMLogException.LOG_DB_RECONNECT_FAILED);
-                    } catch (ConnectionException ce) {
-                        if (Debug.messageEnabled()) {
-                            Debug.message(tableName + ":DBHandler:logRecords:execUpdate:reconnect:CE: " + ce.getMessage());
-                        }
-                        /*
-                         * if the max mem buffer is exceeded,
-                         * dump the records
-                         */
-                        clearBuffer(records);
-                        throw new AMLogException (AMLogException.LOG_DB_RECONNECT_FAILED);
-                    } finally {
-                        closeStatement(insertStatement);
-                        insertStatement = null;
+                /*
+                 *  bunch the createTable, createStatement, and
+                 *  executeUpdate together because if any of these
+                 *  fail, throw an exception.
+                 */
+                try {
+                    createTable (tableName);
+                    insertStatement = getInsertPreparedStatement(values);
+                    insertStatement.executeUpdate();
+                    //Monit start
+                    if (MonitoringUtil.isRunning() && dbLogHandlerForMonitoring != null) {
+                        dbLogHandlerForMonitoring.incHandlerSuccessCount(1);
                     }
-                    connectionToDBLost = false;
-
+                    //Monit end
+                } catch (SQLException sqe) {
+                    Debug.error (tableName +
+                        ":DBHandler:logRecords:executeUpd:reconnect:stmt:SQE: (" + sqe.getErrorCode() + "): "
+                        + sqe.getMessage());
                     /*
-                     *  bunch the createTable, createStatement, and
-                     *  executeUpdate together because if any of these
-                     *  fail, throw an exception.
+                     *  if the max mem buffer is exceeded,
+                     *  dump the records
                      */
-                    try {
-                        createTable (tableName);
-                        insertStatement = getInsertPreparedStatement(values);
-                        insertStatement.executeUpdate();
-                        //Monit start
-                        if (MonitoringUtil.isRunning() && dbLogHandlerForMonitoring != null) {
-                            dbLogHandlerForMonitoring.incHandlerSuccessCount(1);
-                        }
-                        //Monit end
-                    } catch (SQLException sqe) {
-                        Debug.error (tableName +
-                            ":DBHandler:logRecords:executeUpd:reconnect:stmt:SQE: (" + sqe.getErrorCode() + "): "
-                            + sqe.getMessage());
-                        /*
-                         *  if the max mem buffer is exceeded,
-                         *  dump the records
-                         */
-                        clearBuffer(records);
-                        throw new AMLogException (AMLogException.LOG_DB_EXECUPDATE);
-                    } catch (UnsupportedEncodingException usee) {
-                        Debug.error (tableName + ":DBHandler:logRecords:execUpd:reconnect:stmt:UE: " + usee.getMessage());
-                        /*
-                         *  if the max mem buffer is exceeded,
-                         *  dump the records
-                         */
-                        clearBuffer(records);
-                        throw new AMLogException (AMLogException.LOG_DB_EXECUPDATE);
-                    } finally {
-                        closeStatement(insertStatement);
-                        insertStatement = null;
-                    }
-                } else {
+                    clearBuffer(records);
+                    throw new AMLogException (AMLogException.LOG_DB_EXECUPDATE);
+                } catch (UnsupportedEncodingException usee) {
+                    Debug.error (tableName + ":DBHandler:logRecords:execUpd:reconnect:stmt:UE: " + usee.getMessage());
                     /*
-                     *  not sure what to do here yet.  log the error,
-                     *  throw an exception, and see what happens next.
-                     *
-                     *  just for informational purposes, you get the
-                     *  following if the columns don't exist:
-                     *    if ((isMySQL && (sqleErrCode == 1054)) ||
-                     *        (!isMySQL && ((sqleErrCode == 904) ||
-                     *              (sqleErrCode == 913))))
+                     *  if the max mem buffer is exceeded,
+                     *  dump the records
                      */
-                    Debug.error (tableName +
-                        ":DBHandler:flush:executeUpdate failed (" +
-                        sqleErrCode + "): " + sqle.getMessage());
-                    // if the max mem buffer is exceeded, dump the
-                    // records
                     clearBuffer(records);
                     throw new AMLogException (AMLogException.LOG_DB_EXECUPDATE);
+                } finally {
+                    closeStatement(insertStatement);
+                    insertStatement = null;
                 }
-            } finally {
-                closeStatement(insertStatement);
-                insertStatement = null;
+            } else {
+                /*
+                 *  not sure what to do here yet.  log the error,
+                 *  throw an exception, and see what happens next.
+                 *
+                 *  just for informational purposes, you get the
+                 *  following if the columns don't exist:
+                 *    if ((isMySQL && (sqleErrCode == 1054)) ||
+                 *        (!isMySQL && ((sqleErrCode == 904) ||
+                 *              (sqleErrCode == 913))))
+                 */
+                Debug.error (tableName +
+                    ":DBHandler:flush:executeUpdate failed (" +
+                    sqleErrCode + "): " + sqle.getMessage());
+                // if the max mem buffer is exceeded, dump the
+                // records
+                clearBuffer(records);
+                throw new AMLogException (AMLogException.LOG_DB_EXECUPDATE);
             }
+        } finally {
+            closeStatement(insertStatement);
         }
     }
 
@@ -1221,14 +1394,19 @@ public class DBHandler extends Handler {
     private class LogTask implements Runnable {
 
         private LinkedList<LogRecord> buffer;
+        private final int recordCount;
 
         public LogTask(LinkedList<LogRecord> buffer) {
             this.buffer = buffer;
+            this.recordCount = buffer.size();
         }
 
         public void run() {
-
-            logRecords(buffer);
+            try {
+                logRecords(buffer);
+            } finally {
+                updatePendingRecords(-recordCount);
+            }
         }
     }
 
@@ -38,9 +38,7 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
-import java.io.Writer;
 import java.text.SimpleDateFormat;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -49,6 +47,7 @@ import java.util.logging.Formatter;
 import java.util.logging.Level;
 import java.util.logging.LogRecord;
 
+import com.iplanet.am.util.SystemProperties;
 import com.iplanet.am.util.ThreadPoolException;
 import com.iplanet.log.NullLocationException;
 import com.sun.identity.common.GeneralTaskRunnable;
@@ -62,9 +61,12 @@ import com.sun.identity.monitoring.Agent;
 import com.sun.identity.monitoring.MonitoringUtil;
 import com.sun.identity.monitoring.SsoServerLoggingHdlrEntryImpl;
 import com.sun.identity.monitoring.SsoServerLoggingSvcImpl;
+import com.sun.identity.shared.Constants;
 import java.io.FileNotFoundException;
 import java.util.Calendar;
 
+import org.forgerock.util.annotations.VisibleForTesting;
+
 /**
  * This <tt> FileHandler </tt> is very much similar to the
  * <t> java.util.logging.FileHandler </tt>. <p> The <TT> FileHandler </TT>
@@ -80,8 +82,6 @@ import java.util.Calendar;
 public class FileHandler extends java.util.logging.Handler {
 
     private LogManager lmanager = LogManagerUtil.getLogManager();
-    private OutputStream output;
-    private Writer writer;
     private MeteredStream meteredStream;
     private File files[];
     private boolean headerWritten;
@@ -93,6 +93,7 @@ public class FileHandler extends java.util.logging.Handler {
     private int recCountLimit;
     private LinkedList recordBuffer;
     private TimeBufferingTask bufferTask;
+    private SyncTask syncTask;
     private boolean timeBufferingEnabled = false;
     private boolean rotateEnabled = true;
     private static String headerString = null;
@@ -107,16 +108,32 @@ public class FileHandler extends java.util.logging.Handler {
     private boolean rotatingBySize = true;
 
     private static final String DEFAULT_LOG_SUFFIX_FORMAT = "-MM.dd.yy-kk.mm";
+    private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Serialises the writes to the files, so that publishing threads only
+     * wait on the record buffer while records are written or files rotated.
+     */
+    private final Object writeLock = new Object();
+    private long syncInterval;
+    private long lastSync;
+    /**
+     * Whether records were written since the file was last forced to the storage device, guarded by the write lock.
+     */
+    private boolean unsynced;
 
     private class MeteredStream extends OutputStream {
 
         OutputStream out;
+        FileOutputStream fout;
         String filename = null;
+        long written;
 
         MeteredStream(File fileName, boolean append) throws IOException {
             this.filename = fileName.toString();
-            FileOutputStream fout = new FileOutputStream(filename, append);
-            this.out = new BufferedOutputStream(fout);
+            this.written = append ? fileName.length() : 0L;
+            this.fout = new FileOutputStream(filename, append);
+            this.out = new BufferedOutputStream(fout, OUTPUT_BUFFER_SIZE);
         }
 
         /**
@@ -127,6 +144,7 @@ public class FileHandler extends java.util.logging.Handler {
          */
         public void write(int b) throws IOException {
             out.write(b);
+            written++;
         }
 
         /**
@@ -137,6 +155,7 @@ public class FileHandler extends java.util.logging.Handler {
          */
         public void write(byte[] b) throws IOException {
             out.write(b);
+            written += b.length;
         }
 
         /**
@@ -150,6 +169,7 @@ public class FileHandler extends java.util.logging.Handler {
         public void write(byte[] b, int offset, int length)
                 throws IOException {
             out.write(b, offset, length);
+            written += length;
         }
 
         /**
@@ -160,6 +180,15 @@ public class FileHandler extends java.util.logging.Handler {
             out.flush();
         }
 
+        /**
+         * Flush any buffered messages and force them to the storage device.
+         * @throws IOException if it fails to write out.
+         */
+        void sync() throws IOException {
+            out.flush();
+            fout.getChannel().force(false);
+        }
+
         /**
          * close the current output stream.
          * @throws IOException if it fails to close output stream.
@@ -169,60 +198,6 @@ public class FileHandler extends java.util.logging.Handler {
         }
     }
 
-    /**
-     * sets the output stream to the specified output stream ..picked up from
-     * StreamHandler.
-     */
-    private void setOutputStream(OutputStream out) throws SecurityException,
-            UnsupportedEncodingException {
-        if (out == null) {
-            if (Debug.warningEnabled()) {
-                Debug.warning(fileName + ":FileHandler: OutputStream is null");
-            }
-        }
-        output = out;
-        headerWritten = false;
-        String encoding = getEncoding();
-        if (encoding == null) {
-            writer = new OutputStreamWriter(output);
-        } else {
-            try {
-                writer = new OutputStreamWriter(output, encoding);
-            } catch (UnsupportedEncodingException e) {
-                Debug.error(fileName + ":FileHandler: Unsupported Encoding", e);
-                throw new UnsupportedEncodingException(e.getMessage());
-            }
-        }
-    }
-
-    /**
-     * Set (or change) the character encoding used by this <tt>Handler</tt>.
-     * The encoding should be set before any <tt>LogRecords</tt> are written
-     * to the <tt>Handler</tt>.
-     *
-     * @param encoding  The name of a supported character encoding.
-     *        May be null, to indicate the default platform encoding.
-     * @exception  SecurityException  if a security manager exists and if
-     *             the caller does not have
-     *             <tt>LoggingPermission("control")</tt>.
-     * @exception UnsupportedEncodingException if the named encoding is
-     *           not supported.
-     */
-    public void setEncoding(String encoding) throws SecurityException,
-            UnsupportedEncodingException {
-        super.setEncoding(encoding);
-        if (output == null) {
-            return;
-        }
-        // Replace the current writer with a writer for the new encoding.
-        cleanup();
-        if (encoding == null) {
-            writer = new OutputStreamWriter(output);
-        } else {
-            writer = new OutputStreamWriter(output, encoding);
-        }
-    }
-
     /**
      * This method is used for getting the properties from LogManager
      * and setting the private variables count, maxFileSize etc.
@@ -259,6 +234,8 @@ public class FileHandler extends java.util.logging.Handler {
             timeBufferingEnabled = true;
         }
 
+        syncInterval = SystemProperties.getAsLong(Constants.LOG_FILE_SYNC_INTERVAL, 0L);
+
         String strCount = lmanager.getProperty(LogConstants.NUM_HISTORY_FILES);
         if ((strCount == null) || (strCount.length() == 0)) {
             count = 0;
@@ -344,7 +321,6 @@ public class FileHandler extends java.util.logging.Handler {
      */
     private void open(File fileName, boolean append) throws IOException {
         meteredStream = new MeteredStream(fileName, append);
-        setOutputStream(meteredStream);
         checkForHeaderWritten(fileName.toString());
     }
 
@@ -387,6 +363,9 @@ public class FileHandler extends java.util.logging.Handler {
         if (timeBufferingEnabled) {
             startTimeBufferingThread();
         }
+        if (syncInterval > 0) {
+            startSyncTimer();
+        }
 
         if (MonitoringUtil.isRunning()) {
             logServiceImplForMonitoring =
@@ -397,6 +376,53 @@ public class FileHandler extends java.util.logging.Handler {
         }
     }
 
+    /**
+     * Creates a FileHandler rotating a file by size, without reading the log configuration.
+     * @param file The file to append the records to.
+     * @param maxFileSize The size in bytes at which the file is rotated.
+     * @param historyFiles The number of rotated files kept.
+     * @param syncInterval The interval in milliseconds at which the file is forced to the storage device.
+     * @param bufferSize The number of records buffered before they are written.
+     * @throws IOException if the file cannot be opened.
+     */
+    @VisibleForTesting
+    FileHandler(File file, long maxFileSize, int historyFiles, long syncInterval, int bufferSize)
+            throws IOException {
+        this.fileName = file.getName();
+        this.location = file.getParent() + File.separator;
+        this.maxFileSize = maxFileSize;
+        this.count = historyFiles;
+        this.syncInterval = syncInterval;
+        this.recCountLimit = bufferSize;
+        openFiles(file.getPath());
+        recordBuffer = new LinkedList();
+        if (syncInterval > 0) {
+            startSyncTimer();
+        }
+    }
+
+    /**
+     * Returns whether every record written has been forced to the storage device.
+     * @return {@code true} if no record was written since the file was last synced.
+     */
+    @VisibleForTesting
+    boolean isSynced() {
+        synchronized (writeLock) {
+            return !unsynced;
+        }
+    }
+
+    /**
+     * Returns whether the current file is open for writing.
+     * @return {@code true} if the stream to the current file has not been closed.
+     */
+    @VisibleForTesting
+    boolean isOpen() {
+        synchronized (writeLock) {
+            return meteredStream != null && meteredStream.fout.getChannel().isOpen();
+        }
+    }
+
     private String wrapFilename(String fileName) {
         String prefix = lmanager.getProperty(LogConstants.LOGFILE_PREFIX);
         String suffixFormat = lmanager.getProperty(LogConstants.LOGFILE_SUFFIX);
@@ -429,9 +455,9 @@ public class FileHandler extends java.util.logging.Handler {
     }
 
     private void cleanup() {
-        if (writer != null) {
+        if (meteredStream != null) {
             try {
-                writer.flush();
+                meteredStream.flush();
             } catch (Exception ex) {
                 Debug.error(fileName +
                         ":FileHandler: Could not Flush Output", ex);
@@ -444,11 +470,15 @@ public class FileHandler extends java.util.logging.Handler {
      */
     public void close() {
         flush();
-        if (writer != null) {
-            try {
-                writer.close();
-            } catch (IOException e) {
-                Debug.error(fileName + ":FileHandler: Error closing writer", e);
+        stopSyncTimer();
+        synchronized (writeLock) {
+            syncFile();
+            if (meteredStream != null) {
+                try {
+                    meteredStream.close();
+                } catch (IOException e) {
+                    Debug.error(fileName + ":FileHandler: Error closing file", e);
+                }
             }
         }
         stopBufferTimer();
@@ -518,56 +548,72 @@ public class FileHandler extends java.util.logging.Handler {
             LoggingThread.getInstance().run(task);
         } catch (ThreadPoolException ex) {
             // use current thread to flush the data if ThreadPool is shutdown
-            synchronized (this) {
-                task.run();
-            }
+            task.run();
         }
     }
 
+    /**
+     * Writes any buffered messages in the calling thread. The buffer is swapped under the handler's lock, so that
+     * publishing threads do not wait for the records to be written.
+     */
     public void flush() {
+        LinkedList writeBuffer;
         synchronized (this) {
             if (recordBuffer.size() <= 0) {
                 return;
             }
-            if (writer == null) {
-                int recordsToBeDropped = recordBuffer.size();
-                if (MonitoringUtil.isRunning() && fileLogHandlerForMonitoring !=
-                    null) {
-                    fileLogHandlerForMonitoring.incHandlerDroppedCount(
-                        recordsToBeDropped);
-                }
-                recordBuffer.clear();
-                return;
-            }
-            for (Iterator iter = recordBuffer.iterator(); iter.hasNext();) {
+            writeBuffer = recordBuffer;
+            recordBuffer = new LinkedList();
+        }
+        new LogTask(writeBuffer).run();
+    }
+
+    /**
+     * Writes the formatted records to the current file, rotating it as
+     * needed. The records are flushed to the file once they have all been
+     * written, and forced to the storage device if the sync interval has
+     * elapsed since it was last done, or else by the sync timer.
+     */
+    private void writeRecords(LinkedList buffer) {
+        synchronized (writeLock) {
+            for (Iterator iter = buffer.iterator(); iter.hasNext();) {
                 String message = (String) iter.next();
-                if (needsRotation(message)) {
-                    rotate();
-                }
                 try {
+                    byte[] bytes = encode(message);
+                    if (needsRotation(bytes.length)) {
+                        rotate();
+                    }
                     if (!headerWritten) {
-                        writer.write(getHeaderString());
+                        meteredStream.write(encode(getHeaderString()));
                         headerWritten = true;
                     }
-                    writer.write(message);
+                    meteredStream.write(bytes);
                     if (MonitoringUtil.isRunning() &&
                         fileLogHandlerForMonitoring != null) {
                         fileLogHandlerForMonitoring.incHandlerSuccessCount(1);
                     }
                 } catch (IOException ex) {
+                    Debug.error(fileName +
+                        ":FileHandler: could not write to file: ", ex);
                 }
-                cleanup();
             }
-            recordBuffer.clear();
-        }        
+            cleanup();
+            unsynced = true;
+            if (currentTimeMillis() - lastSync >= syncInterval) {
+                syncFile();
+            }
+        }
     }
 
-    private boolean needsRotation(String message) {
+    private byte[] encode(String message) throws UnsupportedEncodingException {
+        String encoding = getEncoding();
+        return encoding == null ? message.getBytes() : message.getBytes(encoding);
+    }
+
+    private boolean needsRotation(int length) {
         if (rotateEnabled) {
             if (rotatingBySize) {
-                if (!message.isEmpty()
-                        && new File(meteredStream.filename).length() >= maxFileSize
-                                - message.length()) {
+                if (length > 0 && meteredStream.written >= maxFileSize - length) {
                     return true;
                 }
             } else {
@@ -584,14 +630,28 @@ public class FileHandler extends java.util.logging.Handler {
         return false;
     }
 
+    private void syncFile() {
+        synchronized (writeLock) {
+            if (syncInterval > 0 && meteredStream != null) {
+                try {
+                    meteredStream.sync();
+                } catch (IOException ex) {
+                    Debug.error(fileName + ":FileHandler: could not sync file: ", ex);
+                }
+                lastSync = currentTimeMillis();
+                unsynced = false;
+            }
+        }
+    }
+
     private void rotate() {
-       if (writer != null) {
+       syncFile();
+       if (meteredStream != null) {
             try {
-                writer.flush();
-                writer.close();
+                meteredStream.close();
             } catch (Exception ex) {
                 Debug.error(fileName + ":FileHandler: " +
-                        "Error closing writer", ex);
+                        "Error closing file", ex);
             }
         }
         if (rotatingBySize) {
@@ -740,8 +800,8 @@ public class FileHandler extends java.util.logging.Handler {
         }
 
         public void run() {
-            if (writer == null) {
-                Debug.error(fileName + ":FileHandler: Writer is null");
+            if (meteredStream == null) {
+                Debug.error(fileName + ":FileHandler: File is not open");
                 int recordsToBeDropped = buffer.size();
                 if (MonitoringUtil.isRunning() && fileLogHandlerForMonitoring !=
                     null) {
@@ -756,27 +816,7 @@ public class FileHandler extends java.util.logging.Handler {
                     "buffered records (" +
                     buffer.size() + " records)");
             }
-            for (Iterator iter = buffer.iterator(); iter.hasNext();) {
-                String message = (String) iter.next();
-                if (needsRotation(message)) {
-                    rotate();
-                }
-                try {
-                    if (!headerWritten) {
-                        writer.write(getHeaderString());
-                        headerWritten = true;
-                    }
-                    writer.write(message);
-                    if (MonitoringUtil.isRunning() &&
-                        fileLogHandlerForMonitoring != null) {
-                        fileLogHandlerForMonitoring.incHandlerSuccessCount(1);
-                    }
-                } catch (IOException ex) {
-                    Debug.error(fileName +
-                        ":FileHandler: could not write to file: ", ex);
-                }
-                cleanup();
-            }
+            writeRecords(buffer);
         }
 
     }
@@ -820,6 +860,65 @@ public class FileHandler extends java.util.logging.Handler {
         }
     }
 
+    /**
+     * Forces the records written since the last sync to the storage device, so that they are synced within the sync
+     * interval even when no further records are written.
+     */
+    private class SyncTask extends GeneralTaskRunnable {
+
+        /**
+         * The method which implements the GeneralTaskRunnable.
+         */
+        public void run() {
+            synchronized (writeLock) {
+                if (unsynced) {
+                    syncFile();
+                }
+            }
+        }
+
+        /**
+         *  Methods that need to be implemented from GeneralTaskRunnable.
+         */
+        public boolean isEmpty() {
+            return true;
+        }
+
+        public boolean addElement(Object obj) {
+            return false;
+        }
+
+        public boolean removeElement(Object obj) {
+            return false;
+        }
+
+        public long getRunPeriod() {
+            return syncInterval;
+        }
+    }
+
+    private void startSyncTimer() {
+        if (syncTask == null) {
+            syncTask = new SyncTask();
+            try {
+                SystemTimer.getTimer().schedule(syncTask, new Date(currentTimeMillis() + syncInterval));
+            } catch (IllegalArgumentException e) {
+                Debug.error(fileName + ":FileHandler:SyncTimeArg: " + e.getMessage());
+            } catch (IllegalStateException e) {
+                if (Debug.messageEnabled()) {
+                    Debug.message(fileName + ":FileHandler:SyncTimeState: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void stopSyncTimer() {
+        if (syncTask != null) {
+            syncTask.cancel();
+            syncTask = null;
+        }
+    }
+
     private void startTimeBufferingThread() {
         String period = lmanager.getProperty(LogConstants.BUFFER_TIME);
         long interval;
@@ -27,7 +27,7 @@
  */
 
 /*
- * Portions Copyrighted [2011] [ForgeRock AS]
+ * Portions Copyrighted 2011-2016 ForgeRock AS.
  */
 package com.sun.identity.log.handlers;
 
@@ -204,7 +204,8 @@ public class LogReadDBHandler implements ReadDBHandler  {
 
         try {
             stmt = conn.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE,
-                                        ResultSet.CONCUR_UPDATABLE);
+                                        ResultSet.CONCUR_READ_ONLY);
+            limitRows(stmt, this.maxRecords);
 
             if (Debug.messageEnabled()) {
                 Debug.message("DBlogRecRead:about to execute: " + selStr);
@@ -561,7 +562,8 @@ public class LogReadDBHandler implements ReadDBHandler  {
 
             try {
                 stmt = conn.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE,
-                                        ResultSet.CONCUR_UPDATABLE);
+                                        ResultSet.CONCUR_READ_ONLY);
+                limitRows(stmt, this.maxRecords);
 
                 if (Debug.messageEnabled()) {
                     Debug.message("DBlogRecRead:about to execute: " + selStr);
@@ -815,7 +817,8 @@ public class LogReadDBHandler implements ReadDBHandler  {
                 try {
                     stmt = conn.createStatement(
                                 ResultSet.TYPE_SCROLL_INSENSITIVE,
-                                ResultSet.CONCUR_UPDATABLE);
+                                ResultSet.CONCUR_READ_ONLY);
+                    limitRows(stmt, this.maxRecords - totalNumberOfRows);
 
                     if (Debug.messageEnabled()) {
                         Debug.message("DBlogRecRead:about to execute: " +
@@ -1063,7 +1066,7 @@ public class LogReadDBHandler implements ReadDBHandler  {
         String [][] tableResults = null;
         try {
             stmt = conn.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE,
-                                        ResultSet.CONCUR_UPDATABLE);
+                                        ResultSet.CONCUR_READ_ONLY);
 
             if (Debug.messageEnabled()) {
                 Debug.message("DBgetTableNames:about to execute: " +
@@ -1187,7 +1190,7 @@ public class LogReadDBHandler implements ReadDBHandler  {
         String result = null;
         try {
             stmt = conn.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE,
-                                        ResultSet.CONCUR_UPDATABLE);
+                                        ResultSet.CONCUR_READ_ONLY);
 
             if (Debug.messageEnabled()) {
                 Debug.message("DBgetgetNumberOfRows:about to execute: " +
@@ -1245,6 +1248,18 @@ public class LogReadDBHandler implements ReadDBHandler  {
     //  the beginning once you've made it move.
     //
 
+    /**
+     * Limits the rows fetched by a query to one more than allowed, which is
+     * enough to tell that there are too many.
+     */
+    private void limitRows(Statement stmt, int allowedRows)
+        throws SQLException
+    {
+        if (allowedRows < Integer.MAX_VALUE) {
+            stmt.setMaxRows(Math.max(0, allowedRows) + 1);
+        }
+    }
+
     private void displayResultSet (ResultSet myrs) {
         try {
             ResultSetMetaData rsmd = myrs.getMetaData();
@@ -26,7 +26,7 @@
  *
  */
 /*
- * Portions Copyrighted 2011-2014 ForgeRock AS
+ * Portions Copyrighted 2011-2016 ForgeRock AS
  */
 
 package com.sun.identity.policy.plugins;
@@ -367,8 +367,8 @@ public class AMIdentityMembershipCondition implements Condition {
                             ((allowedMemberTypes 
                             = nameValueIdType.canHaveMembers()) != null) 
                             && allowedMemberTypes.contains(invocatorIdType)) {
-                        subjectMatch = invocatorIdentity.isMember(
-                                nameValueIdentity);
+                        subjectMatch = ConditionDecisionCache.getInstance()
+                                .isMember(invocatorIdentity, nameValueIdentity);
                         if (DEBUG.messageEnabled()) {
                             DEBUG.message(
                                     "AMIdentityMembershipCondition.isMember():"
@@ -0,0 +1,380 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package com.sun.identity.policy.plugins;
+
+import static org.forgerock.openam.utils.Time.currentTimeMillis;
+
+import java.security.AccessController;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+import org.forgerock.openam.entitlement.utils.IndexedCache;
+
+import com.iplanet.am.util.SystemProperties;
+import com.iplanet.sso.SSOException;
+import com.iplanet.sso.SSOToken;
+import com.sun.identity.idm.AMIdentity;
+import com.sun.identity.idm.AMIdentityRepository;
+import com.sun.identity.idm.IdEventListener;
+import com.sun.identity.idm.IdRepoException;
+import com.sun.identity.policy.PolicyException;
+import com.sun.identity.policy.PolicyManager;
+import com.sun.identity.policy.SubjectEvaluationCache;
+import com.sun.identity.security.AdminTokenAction;
+import com.sun.identity.shared.debug.Debug;
+
+/**
+ * Caches the decisions of the conditions which search a directory for the user, such as
+ * {@link LDAPFilterCondition}, across all the sessions of the user, as well as the group memberships the
+ * {@link AMIdentityMembershipCondition} conditions check through {@link #isMember(AMIdentity, AMIdentity)}.
+ * <p>
+ * Decisions are keyed by the universal ID of the user, the condition value (such as the LDAP filter the user must
+ * match, or the universal ID of the group the user must be a member of) and the server the condition is evaluated
+ * against. Both allow and deny decisions are cached, the latter for the milliseconds set by the
+ * {@value #NEGATIVE_TTL_PROPERTY} property if that is shorter.
+ * Concurrent evaluations of the same condition for the same user wait for the first one rather than each searching
+ * the directory.
+ * <p>
+ * Decisions involving an identity, as the user or as the group, are discarded when the identity repository reports
+ * that the identity changed, for the realms registered through {@link #listenForChanges(String)}. When the cache holds as many decisions as the
+ * {@value #MAX_SIZE_PROPERTY} property allows, the expired ones are removed, or all of them if none have expired.
+ *
+ * @since 14.0.0
+ */
+public final class ConditionDecisionCache implements IdEventListener {
+
+    static final String NEGATIVE_TTL_PROPERTY = "org.forgerock.openam.policy.conditionDecisionCache.negativeTtl";
+    static final String MAX_SIZE_PROPERTY = "org.forgerock.openam.policy.conditionDecisionCache.maxSize";
+    private static final int DEFAULT_MAX_SIZE = 10000;
+    /** Stands for the server of membership decisions, which the identity repository evaluates. */
+    private static final String MEMBERSHIP = "membership";
+    private static final Debug DEBUG = Debug.getInstance(PolicyManager.POLICY_DEBUG_NAME);
+
+    /**
+     * Evaluates a condition when its decision is not cached.
+     */
+    interface Evaluation {
+
+        /**
+         * Evaluates the condition against the directory.
+         *
+         * @return Whether the condition is satisfied.
+         * @throws PolicyException If the condition could not be evaluated.
+         * @throws SSOException If the token of the user is not valid.
+         */
+        boolean evaluate() throws PolicyException, SSOException;
+    }
+
+    private static final class InstanceHolder {
+        private static final ConditionDecisionCache INSTANCE;
+
+        static {
+            long ttl = SubjectEvaluationCache.getSubjectEvalTTL();
+            INSTANCE = new ConditionDecisionCache(ttl, SystemProperties.getAsLong(NEGATIVE_TTL_PROPERTY, ttl),
+                    SystemProperties.getAsInt(MAX_SIZE_PROPERTY, DEFAULT_MAX_SIZE));
+        }
+    }
+
+    private final IndexedCache.Index<Key> keysByIdentity = new IndexedCache.Index<Key>() {
+        @Override
+        protected String getId(Key key) {
+            return key.universalId;
+        }
+    };
+    private final IndexedCache.Index<Key> keysByGroup = new IndexedCache.Index<Key>() {
+        @Override
+        protected String getId(Key key) {
+            return key.group;
+        }
+    };
+    private final IndexedCache<Key, Entry> entries;
+    private final Set<String> listenedRealms = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final long ttl;
+    private final long negativeTtl;
+
+    /**
+     * Returns the cache shared by the conditions, which caches decisions for the subjects result time to live of the
+     * root realm's policy configuration.
+     *
+     * @return The shared cache.
+     */
+    public static ConditionDecisionCache getInstance() {
+        return InstanceHolder.INSTANCE;
+    }
+
+    /**
+     * Creates a new cache.
+     *
+     * @param ttl How long allow decisions are cached for, in milliseconds. Zero disables the cache.
+     * @param negativeTtl How long deny decisions are cached for, in milliseconds. Zero disables caching them.
+     * @param maxSize The number of decisions the cache can hold.
+     */
+    ConditionDecisionCache(long ttl, long negativeTtl, int maxSize) {
+        this.ttl = Math.max(0, ttl);
+        this.negativeTtl = Math.max(0, Math.min(negativeTtl, ttl));
+        this.entries = new IndexedCache<>(maxSize, keysByIdentity, keysByGroup);
+    }
+
+    /**
+     * Returns the cached decision of a condition for a user, evaluating the condition if it is not cached.
+     *
+     * @param universalId The universal ID of the user.
+     * @param conditionValue The value the condition checks the user against.
+     * @param server The server the condition is evaluated against.
+     * @param evaluation Evaluates the condition if its decision is not cached.
+     * @return Whether the condition is satisfied.
+     * @throws PolicyException If the condition could not be evaluated.
+     * @throws SSOException If the token of the user is not valid.
+     */
+    boolean getDecision(String universalId, String conditionValue, String server, Evaluation evaluation)
+            throws PolicyException, SSOException {
+        return getDecision(new Key(universalId, conditionValue, server, null), evaluation);
+    }
+
+    /**
+     * Returns whether an identity is a member of a group, as cached or else as returned by
+     * {@link AMIdentity#isMember(AMIdentity)}. The decision is discarded when either identity changes.
+     *
+     * @param member The identity which may be a member of the group.
+     * @param group The group.
+     * @return Whether the identity is a member of the group.
+     * @throws IdRepoException If the membership could not be checked.
+     * @throws SSOException If the token the identities were read with is not valid.
+     */
+    public boolean isMember(final AMIdentity member, final AMIdentity group) throws IdRepoException, SSOException {
+        listenForChanges(member.getRealm());
+        listenForChanges(group.getRealm());
+        String groupId = group.getUniversalId();
+        try {
+            Key key = new Key(member.getUniversalId(), groupId.toLowerCase(), MEMBERSHIP, groupId);
+            return getDecision(key, new Evaluation() {
+                @Override
+                public boolean evaluate() throws PolicyException, SSOException {
+                    try {
+                        return member.isMember(group);
+                    } catch (IdRepoException e) {
+                        throw new PolicyException(e);
+                    }
+                }
+            });
+        } catch (PolicyException e) {
+            if (e.getNestedException() instanceof IdRepoException) {
+                throw (IdRepoException) e.getNestedException();
+            }
+            throw new IdRepoException(e.getMessage());
+        }
+    }
+
+    private boolean getDecision(Key key, Evaluation evaluation) throws PolicyException, SSOException {
+        if (ttl == 0) {
+            return evaluation.evaluate();
+        }
+
+        while (true) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                if (DEBUG.messageEnabled()) {
+                    DEBUG.message("ConditionDecisionCache.getDecision(): cached decision for " + key);
+                }
+                return entry.getDecision();
+            }
+
+            Entry newEntry = new Entry();
+            if (entries.putIfAbsent(key, newEntry) == null) {
+                return evaluate(key, newEntry, evaluation);
+            }
+        }
+    }
+
+    /**
+     * Registers the cache for the identity change notifications of a realm, if it is not registered already.
+     *
+     * @param realm The realm the identities the cached decisions involve belong to.
+     */
+    void listenForChanges(String realm) {
+        if (ttl == 0 || realm == null || !listenedRealms.add(realm.toLowerCase())) {
+            return;
+        }
+        try {
+            SSOToken adminToken = AccessController.doPrivileged(AdminTokenAction.getInstance());
+            new AMIdentityRepository(adminToken, realm).addEventListener(this);
+        } catch (IdRepoException | SSOException e) {
+            listenedRealms.remove(realm.toLowerCase());
+            DEBUG.warning("ConditionDecisionCache.listenForChanges(): unable to listen for changes in " + realm, e);
+        }
+    }
+
+    /**
+     * Discards all the cached decisions.
+     */
+    void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Returns the number of cached decisions, including the ones being evaluated.
+     *
+     * @return The number of decisions.
+     */
+    int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the number of identities the cached decisions are indexed by.
+     *
+     * @return The number of identities.
+     */
+    int indexedIdentities() {
+        return keysByIdentity.size();
+    }
+
+    @Override
+    public void identityChanged(String universalId) {
+        invalidate(universalId);
+    }
+
+    @Override
+    public void identityDeleted(String universalId) {
+        invalidate(universalId);
+    }
+
+    @Override
+    public void identityRenamed(String universalId) {
+        invalidate(universalId);
+    }
+
+    @Override
+    public void allIdentitiesChanged() {
+        clear();
+    }
+
+    private boolean evaluate(Key key, Entry entry, Evaluation evaluation) throws PolicyException, SSOException {
+        long changesBeforeEvaluation = entries.getChanges();
+        boolean decision;
+        try {
+            decision = evaluation.evaluate();
+        } catch (PolicyException | SSOException | RuntimeException e) {
+            entries.remove(key, entry);
+            entry.fail(e);
+            throw e;
+        }
+
+        entry.complete(decision, currentTimeMillis() + (decision ? ttl : negativeTtl));
+        // The identities may have changed after the directory was searched
+        entries.discardIfChanged(key, entry, changesBeforeEvaluation);
+        return decision;
+    }
+
+    private void invalidate(String identity) {
+        int discarded = entries.invalidate(keysByIdentity, identity) + entries.invalidate(keysByGroup, identity);
+        if (discarded > 0 && DEBUG.messageEnabled()) {
+            DEBUG.message("ConditionDecisionCache.invalidate(): discarding " + discarded + " decisions for "
+                    + identity);
+        }
+    }
+
+    /**
+     * The decision of a condition, which may still be being evaluated.
+     */
+    private static final class Entry implements IndexedCache.Expiring {
+
+        private final CountDownLatch evaluated = new CountDownLatch(1);
+        private volatile long expiresAt = Long.MAX_VALUE;
+        private volatile boolean decision;
+        private volatile Exception failure;
+
+        private void complete(boolean decision, long expiresAt) {
+            this.decision = decision;
+            this.expiresAt = expiresAt;
+            evaluated.countDown();
+        }
+
+        private void fail(Exception failure) {
+            this.failure = failure;
+            this.expiresAt = 0;
+            evaluated.countDown();
+        }
+
+        @Override
+        public boolean isExpired(long now) {
+            return expiresAt <= now;
+        }
+
+        private boolean getDecision() throws PolicyException, SSOException {
+            try {
+                evaluated.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new PolicyException(e);
+            }
+            if (failure instanceof PolicyException) {
+                throw (PolicyException) failure;
+            } else if (failure instanceof SSOException) {
+                throw (SSOException) failure;
+            } else if (failure != null) {
+                throw (RuntimeException) failure;
+            }
+            return decision;
+        }
+    }
+
+    private static final class Key {
+
+        private final String universalId;
+        private final String conditionValue;
+        private final String server;
+        /** The universal ID of the group the condition value names, which is not part of the key. */
+        private final String group;
+
+        private Key(String universalId, String conditionValue, String server, String group) {
+            this.universalId = universalId.toLowerCase();
+            this.conditionValue = conditionValue == null ? "" : conditionValue;
+            this.server = server == null ? "" : server.toLowerCase();
+            this.group = group;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return universalId.equals(other.universalId)
+                    && conditionValue.equals(other.conditionValue)
+                    && server.equals(other.server);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = universalId.hashCode();
+            result = 31 * result + conditionValue.hashCode();
+            result = 31 * result + server.hashCode();
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return universalId + ":" + server + ":" + conditionValue;
+        }
+    }
+}
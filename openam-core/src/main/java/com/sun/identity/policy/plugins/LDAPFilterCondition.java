@@ -35,7 +35,6 @@ import static org.forgerock.opendj.ldap.LDAPConnectionFactory.CONNECT_TIMEOUT;
 
 import com.iplanet.sso.SSOException;
 import com.iplanet.sso.SSOToken;
-import com.iplanet.sso.SSOTokenListenersUnsupportedException;
 import com.sun.identity.common.ShutdownManager;
 import com.sun.identity.policy.ConditionDecision;
 import com.sun.identity.policy.PolicyConfig;
@@ -44,9 +43,9 @@ import com.sun.identity.policy.PolicyException;
 import com.sun.identity.policy.PolicyManager;
 import com.sun.identity.policy.PolicyUtils;
 import com.sun.identity.policy.ResBundleUtils;
-import com.sun.identity.policy.SubjectEvaluationCache;
 import com.sun.identity.policy.Syntax;
 import com.sun.identity.policy.interfaces.Condition;
+import com.sun.identity.shared.Constants;
 import com.sun.identity.shared.datastruct.CollectionHelper;
 import com.sun.identity.shared.debug.Debug;
 
@@ -287,13 +286,10 @@ public class LDAPFilterCondition implements Condition {
      * @throws SSOException if Single Sign On token is not valid
      * @throws PolicyException if an error occurred
      */
-    private boolean isMember(SSOToken token)
+    private boolean isMember(final SSOToken token)
         throws SSOException, PolicyException {
 
-        boolean member = false;
-        String userLocalDN = token.getPrincipal().getName();
-
-        String tokenID = token.getTokenID().toString();
+        final String userLocalDN = token.getPrincipal().getName();
         if (debug.messageEnabled()) {
             debug.message(
              "LDAPFilterCondition.isMember(): userLocalDN from ssoToken is: " 
@@ -301,27 +297,36 @@ public class LDAPFilterCondition implements Condition {
 
         }
 
-        Boolean matchFound = null;
-        if ((matchFound = SubjectEvaluationCache.isMember(
-                tokenID, ldapServer, ldapConditionFilter)) != null) {
-            if (debug.messageEnabled()) {
-                debug.message("LDAPFilterCondition.isMember():"
-                    + "Got membership "
-                    +"from cache userLocalDN: " + userLocalDN 
-                    + ", ldapConditionFilter: " + ldapConditionFilter
-                    + " , member:" +matchFound.booleanValue());
-            }
-            boolean result = matchFound.booleanValue();
-            if (result) {
-                return result;
-            }
+        String universalId = token.getProperty(Constants.UNIVERSAL_IDENTIFIER);
+        if (universalId == null) {
+            universalId = userLocalDN;
         }
+        ConditionDecisionCache decisionCache = ConditionDecisionCache.getInstance();
+        decisionCache.listenForChanges(orgName);
+        boolean member = decisionCache.getDecision(universalId, ldapConditionFilter, ldapServer + "/" + baseDN,
+                new ConditionDecisionCache.Evaluation() {
+                    @Override
+                    public boolean evaluate() throws PolicyException, SSOException {
+                        return searchMember(token, userLocalDN);
+                    }
+                });
+        if (debug.messageEnabled()) {
+            debug.message("LDAPFilterCondition.isMember():" 
+                    + "member=" + member);
+        }
+        return member;
+    }
 
-        // got here so entry not in subject evaluation cache
+    /**
+     * Searches the directory for the user, combining the user search filter with <code>ldapConditionFilter</code>.
+     */
+    private boolean searchMember(SSOToken token, String userLocalDN) throws SSOException, PolicyException {
+
+        // got here so entry not in the condition decision cache
         if (debug.messageEnabled()) {
-            debug.message("LDAPFilterCondition:isMember():"
+            debug.message("LDAPFilterCondition:searchMember():"
                     + " ldapConditionFilter:" + ldapConditionFilter
-                    + " not in subject evaluation cache, "
+                    + " not in condition decision cache, "
                     + " fetching from directory server.");
         }
 
@@ -373,31 +378,13 @@ public class LDAPFilterCondition implements Condition {
                     + " combined filter : " + searchFilter);
         }
 
-        member = searchFilterSatisfied(searchFilter);
+        boolean member = searchFilterSatisfied(searchFilter);
 
         if (debug.messageEnabled()) {
-            debug.message("LDAPFilterCondition:isMember():"
+            debug.message("LDAPFilterCondition:searchMember():"
                     + " caching result, searchFilter:" + searchFilter
                     + ", member:" + member);
         }
-
-        if (!PolicyEvaluator.ssoListenerRegistry.containsKey(tokenID)) {
-            try {
-                token.addSSOTokenListener(PolicyEvaluator.ssoListener);
-                SubjectEvaluationCache.addEntry(tokenID, ldapServer, ldapConditionFilter, member);
-                PolicyEvaluator.ssoListenerRegistry.put(tokenID, PolicyEvaluator.ssoListener);
-                if (debug.messageEnabled()) {
-                    debug.message("LDAPFilterCondition.isMember(): sso listener added .\n");
-                }
-            } catch (SSOTokenListenersUnsupportedException ex) {
-                // Catching exception to avoid adding tokenID to SubjectEvaluationCache and ssoListenerRegistry
-                debug.message("LDAPFilterCondition.isMember(): could not add sso listener: {}", ex.getMessage());
-            }
-        }
-        if (debug.messageEnabled()) {
-            debug.message("LDAPFilterCondition.isMember():" 
-                    + "member=" + member);
-        }
         return member;
     }
 
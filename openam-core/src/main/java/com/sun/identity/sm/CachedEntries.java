@@ -0,0 +1,79 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package com.sun.identity.sm;
+
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Installs entries in the caches of SMS entries shared between threads, where an entry can be invalidated while it
+ * is cached.
+ *
+ * @since 14.0.0
+ */
+final class CachedEntries {
+
+    /**
+     * Tells whether cached entries are valid, and discards the entries which are not cached.
+     *
+     * @param <E> The type of the entries.
+     */
+    interface Validator<E> {
+
+        /**
+         * Returns whether an entry can still be used.
+         *
+         * @param entry The entry.
+         * @return Whether the entry is valid.
+         */
+        boolean isValid(E entry);
+
+        /**
+         * Discards an entry which lost the race to be cached, without removing the entry which was cached instead.
+         *
+         * @param entry The entry.
+         */
+        void discard(E entry);
+    }
+
+    private CachedEntries() {
+    }
+
+    /**
+     * Caches an entry unless a valid entry is cached for its key already, replacing an invalid one. The candidate is
+     * discarded if another entry was cached first.
+     *
+     * @param entries The cached entries.
+     * @param key The key of the entry.
+     * @param candidate The entry to cache.
+     * @param validator Tells whether the entries are valid.
+     * @param <E> The type of the entries.
+     * @return The entry cached for the key, which is the candidate unless another thread cached an entry first.
+     */
+    static <E> E install(ConcurrentMap<String, E> entries, String key, E candidate, Validator<? super E> validator) {
+        E answer = entries.get(key);
+        while ((answer == null) || !validator.isValid(answer)) {
+            boolean added = (answer == null) ? (entries.putIfAbsent(key, candidate) == null)
+                    : entries.replace(key, answer, candidate);
+            answer = added ? candidate : entries.get(key);
+        }
+        if (answer != candidate) {
+            // Another thread cached the entry first
+            validator.discard(candidate);
+        }
+        return answer;
+    }
+}
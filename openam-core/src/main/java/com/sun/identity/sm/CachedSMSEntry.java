@@ -39,6 +39,8 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ConcurrentSkipListSet;
 
 import org.forgerock.guava.common.collect.Ordering;
@@ -53,12 +55,30 @@ import com.sun.identity.shared.Constants;
  * The class <code>CachedSchemaManagerImpl</code> provides interfaces to
  * manage the SMSEntry. It caches SMSEntries which is used by ServiceSchema and
  * ServiceConfig classes.
+ * <p>
+ * The cached <code>SMSEntry</code> is never modified once published: a refresh
+ * reads a new entry and swaps it in, so that readers never have to lock. A
+ * refresh is coalesced with the refreshes of other threads which started after
+ * it was requested, so that a change notification results in a single read of
+ * the entry however many threads find it dirty, see {@link RefreshCoalescer}.
  */
 public class CachedSMSEntry implements SMSEventListener {
 
-    // Cache of CachedSMSEntries (static)
-    private static Map smsEntries = Collections.synchronizedMap(
-        new HashMap(1000));
+    // Cache of CachedSMSEntries (static), keyed by normalised DN
+    private static final ConcurrentMap<String, CachedSMSEntry> smsEntries = new ConcurrentHashMap<>(1000);
+
+    private static final CachedEntries.Validator<CachedSMSEntry> VALIDATOR =
+            new CachedEntries.Validator<CachedSMSEntry>() {
+                @Override
+                public boolean isValid(CachedSMSEntry entry) {
+                    return entry.isValid();
+                }
+
+                @Override
+                public void discard(CachedSMSEntry entry) {
+                    entry.clear(false);
+                }
+            };
 
     // Instance variables
 
@@ -70,26 +90,25 @@ public class CachedSMSEntry implements SMSEventListener {
     private final Set<SMSEntryUpdateListener> serviceObjects = new ConcurrentSkipListSet<>(Ordering.arbitrary());
     private final SMSEventListenerManager.Subscription subscription;
 
-    protected Set principals = Collections.synchronizedSet(
-        new HashSet(10)); // Principals who have read access
+    // Principals who have read access
+    private final Set<String> principals = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>(10));
 
-    protected SSOToken token; // Valid SSOToken used for read
+    private volatile SSOToken token; // Valid SSOToken used for read
 
     private String dn2Str;
 
     private String dnRFCStr;
 
-    protected SMSEntry smsEntry;
+    private volatile SMSEntry smsEntry;
 
     // Flag that determines if this object can be used
-    private boolean valid;
+    private volatile boolean valid;
     
-    // Flag to determine if the cached entry is dirty and 
-    // must be refreshed along with the last update time & TTL
-    private boolean dirty;
-    private Object dirtyLock = new Object();
+    // Determines if the cached entry is dirty and must be refreshed,
+    // along with the last update time & TTL
+    private final RefreshCoalescer refresher = new RefreshCoalescer();
     static boolean ttlEnabled;
-    static long lastUpdate;
+    static volatile long lastUpdate;
     static long ttl = 1800000;  // 30 minutes
     
     
@@ -125,13 +144,11 @@ public class CachedSMSEntry implements SMSEventListener {
     
     // Used by JAXRPCObjectImpl
     public boolean isDirty() {
-        if (ttlEnabled && !dirty &&
+        if (ttlEnabled && !refresher.isDirty() &&
             ((currentTimeMillis() - lastUpdate) > ttl)) {
-            synchronized (dirtyLock) {
-                dirty = true;
-            }
+            refresher.markDirty();
         }
-        return dirty;
+        return refresher.isDirty();
     }
 
     /**
@@ -144,55 +161,70 @@ public class CachedSMSEntry implements SMSEventListener {
             SMSEntry.debug.message("CachedSMSEntry: update "
                     + "method called: " + dn2Str );
         }
-        synchronized (dirtyLock) {
-            dirty = true;
-        }
+        refresher.markDirty();
     }
     
     /**
      * Reads the attributes from the datastore and send notifications to
      * objects caching this entry. Used by JAXRPCObjectImpl
+     * <p>
+     * If another thread started refreshing the entry after this method was
+     * called, and the entry has not changed since, its result is used instead
+     * of reading the entry again.
      */
     public void refresh() {
-        synchronized (dirtyLock) {
-            if (SMSEntry.debug.messageEnabled()) {
-                SMSEntry.debug.message("CachedSMSEntry: refresh "
-                    + "method called: " + dn2Str );
+        boolean read = refresher.refresh(new Runnable() {
+            @Override
+            public void run() {
+                read();
             }
+        });
+        if (!read && SMSEntry.debug.messageEnabled()) {
+            SMSEntry.debug.message("CachedSMSEntry: refresh "
+                + "coalesced with concurrent refresh: " + dn2Str);
+        }
+    }
 
-            // Read the LDAP attributes and update listeners
-            boolean updated = false;
-            dirty = true;
-            try {
-                SSOToken t = getValidSSOToken();
-                if (t != null) {
-                    smsEntry.read(t);
-                    lastUpdate = currentTimeMillis();
-                    updated = true;
-                } else if (SMSEntry.debug.warningEnabled()) {
-                    SMSEntry.debug.warning("CachedSMSEntry:update No VALID " +
-                        "SSOToken found for dn: " + dn2Str);
-                }
-            } catch (SMSException e) {
-                // Error in reading the attribtues, entry could be deleted
-                // or does not have permissions to read the object
-                SMSEntry.debug.error("Error in reading entry attributes: " +
-                    dn2Str, e);
-            } catch (SSOException ssoe) {
-                // Error in reading the attribtues, SSOToken problem
-                // Might have timed-out
-                SMSEntry.debug.error("SSOToken problem in reading entry "
-                    + "attributes: " + dn2Str, ssoe);
-            }
-            if (!updated) {
-                // No valid SSOToken were foung
-                // this entry is no long valid, remove from cache
-                clear();
-            }
+    // Reads the entry again, holding the refresh lock
+    private void read() {
+        if (SMSEntry.debug.messageEnabled()) {
+            SMSEntry.debug.message("CachedSMSEntry: refresh "
+                + "method called: " + dn2Str );
+        }
 
-            updateServiceListeners();
-            dirty = false;
+        // Read the LDAP attributes and update listeners
+        boolean updated = false;
+        try {
+            SSOToken t = getValidSSOToken();
+            if (t != null) {
+                SMSEntry e = new SMSEntry(t, smsEntry.getDN());
+                e.setReadOnly();
+                smsEntry = e;
+                lastUpdate = currentTimeMillis();
+                updated = true;
+            } else if (SMSEntry.debug.warningEnabled()) {
+                SMSEntry.debug.warning("CachedSMSEntry:update No VALID " +
+                    "SSOToken found for dn: " + dn2Str);
+            }
+        } catch (SMSException e) {
+            // Error in reading the attribtues, entry could be deleted
+            // or does not have permissions to read the object
+            SMSEntry.debug.error("Error in reading entry attributes: " +
+                dn2Str, e);
+        } catch (SSOException ssoe) {
+            // Error in reading the attribtues, SSOToken problem
+            // Might have timed-out
+            SMSEntry.debug.error("SSOToken problem in reading entry "
+                + "attributes: " + dn2Str, ssoe);
+        }
+        if (!updated) {
+            // No valid SSOToken were foung
+            // this entry is no long valid, remove from cache
+            clear();
+            refresher.markClean();
         }
+
+        updateServiceListeners();
     }
     
     /**
@@ -201,12 +233,22 @@ public class CachedSMSEntry implements SMSEventListener {
      * @param e object that contains the updated values for the attributes
      * @throws com.sun.identity.sm.SMSException
      */
-    void refresh(SMSEntry e) throws SMSException {
-        synchronized (dirtyLock) {
-            smsEntry.refresh(e);
-            updateServiceListeners();
-            dirty = false;
-        }
+    void refresh(final SMSEntry e) throws SMSException {
+        refresher.update(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    SMSEntry updated = (SMSEntry) smsEntry.clone();
+                    updated.refresh(e);
+                    updated.setReadOnly();
+                    smsEntry = updated;
+                } catch (CloneNotSupportedException c) {
+                    SMSEntry.debug.error("Unable to clone SMSEntry: " + smsEntry, c);
+                    refresher.markDirty();
+                }
+                updateServiceListeners();
+            }
+        });
     }
     
     /**
@@ -226,12 +268,10 @@ public class CachedSMSEntry implements SMSEventListener {
         // this entry is no long valid, remove from cache
         subscription.cancel();
         valid = false;
-        synchronized(dirtyLock) {
-            dirty = true;
-        }
+        refresher.markDirty();
         // Remove from cache
         if (removeFromCache) {
-            smsEntries.remove(dnRFCStr);
+            smsEntries.remove(dnRFCStr, this);
         }
     }
     
@@ -240,18 +280,16 @@ public class CachedSMSEntry implements SMSEventListener {
         // Check if the cached SSOToken is valid
         if (!SMSEntry.tm.isValidToken(token)) {
             // Get a valid ssoToken from cached TokenIDs
-            synchronized (principals) {
-                for (Iterator items = principals.iterator(); items.hasNext();) {
-                    String tokenID = (String) items.next();
-                    try {
-                        token = SMSEntry.tm.createSSOToken(tokenID);
-                        if (SMSEntry.tm.isValidToken(token)) {
-                            break;
-                        }
-                    } catch (SSOException ssoe) {
-                        // SSOToken has expired, remove from list
-                        items.remove();
+            for (Iterator<String> items = principals.iterator(); items.hasNext();) {
+                String tokenID = items.next();
+                try {
+                    token = SMSEntry.tm.createSSOToken(tokenID);
+                    if (SMSEntry.tm.isValidToken(token)) {
+                        break;
                     }
+                } catch (SSOException ssoe) {
+                    // SSOToken has expired, remove from list
+                    items.remove();
                 }
             }
         }
@@ -295,8 +333,7 @@ public class CachedSMSEntry implements SMSEventListener {
         }
     }
 
-    synchronized void addPrincipal(SSOToken t) {
-        // Making a local copy to avoid synchronization problems
+    void addPrincipal(SSOToken t) {
         principals.add(t.getTokenID().toString());
     }
 
@@ -312,10 +349,11 @@ public class CachedSMSEntry implements SMSEventListener {
         if (isDirty()) {
             refresh();
         }
+        SMSEntry e = smsEntry;
         try {
-            return ((SMSEntry) smsEntry.clone());
+            return ((SMSEntry) e.clone());
         } catch (CloneNotSupportedException c) {
-            SMSEntry.debug.error("Unable to clone SMSEntry: " + smsEntry, c);
+            SMSEntry.debug.error("Unable to clone SMSEntry: " + e, c);
         }
         return (null);
     }
@@ -354,19 +392,16 @@ public class CachedSMSEntry implements SMSEventListener {
             SMSEntry.debug.message("CachedSMSEntry::getInstance: " + dn);
         }
         String cacheEntry = DN.valueOf(dn).toString().toLowerCase();
-        CachedSMSEntry answer = (CachedSMSEntry) smsEntries.get(cacheEntry);
+        CachedSMSEntry answer = smsEntries.get(cacheEntry);
         if ((answer == null) || !answer.isValid()) {
-            // Construct the SMS entry. Should be outside the synchronized
-            // block since SMSEntry call delegation which in turn calls
+            // Construct the SMS entry. Should be done before it is added
+            // to the cache since SMSEntry call delegation which in turn calls
             // policy, idrepo, special repo and SMS again
             CachedSMSEntry tmp = new CachedSMSEntry(new SMSEntry(t, dn));
-            synchronized (smsEntries) {
-                if (((answer = (CachedSMSEntry) smsEntries.get(cacheEntry))
-                    == null) || !answer.isValid()) {
-                    // Add it to cache
-                    answer = tmp;
-                    smsEntries.put(cacheEntry, answer);
-                }
+            answer = CachedEntries.install(smsEntries, cacheEntry, tmp, VALIDATOR);
+            // The snapshot may have been reconciled while the entry was read from it, before it could be marked dirty
+            if (SMSSnapshot.wasInvalidated(cacheEntry)) {
+                answer.update();
             }
         }
         
@@ -408,18 +443,50 @@ public class CachedSMSEntry implements SMSEventListener {
         }
     }
 
+    /**
+     * Marks the cached entry with the given normalised DN, if any, as dirty so that it is read again.
+     */
+    static void markDirty(String normalizedDN) {
+        CachedSMSEntry entry = smsEntries.get(normalizedDN);
+        if (entry != null) {
+            entry.update();
+        }
+    }
+
+    /**
+     * Returns a copy of the attributes of the cached entries which are up to date, keyed by their normalised DN.
+     * Entries which do not exist are mapped to null.
+     */
+    static Map<String, Map<String, Set<String>>> getCleanEntries() {
+        Map<String, Map<String, Set<String>>> answer = new HashMap<>();
+        for (Map.Entry<String, CachedSMSEntry> mapEntry : smsEntries.entrySet()) {
+            CachedSMSEntry cEntry = mapEntry.getValue();
+            if (!cEntry.isValid() || cEntry.isDirty()) {
+                continue;
+            }
+            SMSEntry e = cEntry.smsEntry;
+            Map<String, Set<String>> attributes = null;
+            if (!e.isNewEntry()) {
+                Map cached = e.getAttributes();
+                attributes = new HashMap<>(cached.size() * 2);
+                for (Object attribute : cached.entrySet()) {
+                    Map.Entry<String, Set<String>> values = (Map.Entry<String, Set<String>>) attribute;
+                    attributes.put(values.getKey(), new HashSet<>(values.getValue()));
+                }
+            }
+            answer.put(mapEntry.getKey(), attributes);
+        }
+        return answer;
+    }
+
     // Clears the cache
     static void clearCache() {
-        synchronized (smsEntries) {
-            for (Iterator items = smsEntries.values().iterator();
-                items.hasNext();) {
-                CachedSMSEntry cEntry = (CachedSMSEntry) items.next();
-                // this entry is no long valid
-                cEntry.clear(false);
-            }
-            // Remove all entries from cache
-            smsEntries.clear();
+        for (CachedSMSEntry cEntry : smsEntries.values()) {
+            // this entry is no long valid
+            cEntry.clear(false);
         }
+        // Remove all entries from cache
+        smsEntries.clear();
     }
 
     // ----------------------------------------------
@@ -0,0 +1,91 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package com.sun.identity.sm;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracks whether a cached entry is dirty and coalesces its refreshes, so that a change notification results in a
+ * single read of the entry however many threads find it dirty.
+ * <p>
+ * A thread asking for a refresh reuses the result of any refresh which started after it asked, provided no change
+ * was notified since. The entry is marked clean before it is read, so that a change notified during the read marks
+ * it dirty again and results in another refresh.
+ *
+ * @since 14.0.0
+ */
+final class RefreshCoalescer {
+
+    private final Object refreshLock = new Object();
+    private final AtomicLong startedRefreshes = new AtomicLong();
+    private volatile boolean dirty;
+
+    /**
+     * Returns whether the entry must be refreshed.
+     *
+     * @return Whether the entry is dirty.
+     */
+    boolean isDirty() {
+        return dirty;
+    }
+
+    /**
+     * Marks the entry as dirty, as it has changed.
+     */
+    void markDirty() {
+        dirty = true;
+    }
+
+    /**
+     * Marks the entry as clean, as it no longer has to be refreshed.
+     */
+    void markClean() {
+        dirty = false;
+    }
+
+    /**
+     * Refreshes the entry, unless another thread started refreshing it after this method was called and the entry
+     * has not changed since.
+     *
+     * @param read Reads the entry again.
+     * @return Whether the entry was read, false if the refresh was coalesced with a concurrent one.
+     */
+    boolean refresh(Runnable read) {
+        long requestedAfter = startedRefreshes.get();
+        synchronized (refreshLock) {
+            if (startedRefreshes.get() > requestedAfter && !dirty) {
+                return false;
+            }
+            update(read);
+            return true;
+        }
+    }
+
+    /**
+     * Updates the entry in place of any refresh asked for until now, as with an entry the caller has just written.
+     *
+     * @param update Updates the entry.
+     */
+    void update(Runnable update) {
+        synchronized (refreshLock) {
+            startedRefreshes.incrementAndGet();
+            // Notifications received from now on mark the entry dirty again
+            dirty = false;
+            update.run();
+        }
+    }
+}
@@ -24,7 +24,7 @@
  *
  * $Id: SMSEntry.java,v 1.53 2009/12/07 19:46:47 veiming Exp $
  *
- * Portions Copyrighted 2010-2015 ForgeRock AS.
+ * Portions Copyrighted 2010-2016 ForgeRock AS.
  */
 
 package com.sun.identity.sm;
@@ -223,6 +223,9 @@ public class SMSEntry implements Cloneable {
         // after the properties for cache/resourcebundle/internal users
         // are retrieved/initialized.
         initSMSObject();
+
+        // Load the configuration snapshot, if any, once the base DN is known
+        SMSSnapshot.initialize();
     }
     
     protected static void initializeProperties() {
@@ -696,7 +699,12 @@ public class SMSEntry implements Cloneable {
             // permission is denied
             getDelegationPermission(token, normalizedDN, readActionSet);
         }
-        attrSet = smsObject.read(token, dn);
+        Map<String, Set<String>> snapshot = SMSSnapshot.take(normalizedDN, token);
+        if (snapshot == null) {
+            attrSet = smsObject.read(token, dn);
+        } else {
+            attrSet = SMSSnapshot.isAbsent(snapshot) ? null : snapshot;
+        }
         if (attrSet == null) {
             newEntry = true;
         } else {
@@ -1626,6 +1634,18 @@ public class SMSEntry implements Cloneable {
 
     }
 
+    /**
+     * Returns whether the token belongs to one of the special users, which are not subject to delegation checks.
+     */
+    static boolean isSpecialUser(SSOToken token) {
+        try {
+            String tokenName = token.getPrincipal().getName();
+            return LDAPUtils.isDN(tokenName) && specialUserSet.contains(DN.valueOf(tokenName).toString());
+        } catch (SSOException se) {
+            return false;
+        }
+    }
+
     private static boolean isAllowed(SSOToken token, String dnName, Set actions)
             throws SMSException {
         // If JAXRPC return false
@@ -90,6 +90,7 @@ class SMSEventListenerManager implements SMSObjectListener {
     // In which case, delete notifications will never be generated.
     private void objectChanged(DN dn, int event, boolean isLocal) {
         debug.message("SMSEventListener::entry changed for: {} type: {}", dn, event);
+        SMSSnapshot.entryChanged(dn.toString().toLowerCase());
 
         // Normalize the DN
 
@@ -141,6 +142,7 @@ class SMSEventListenerManager implements SMSObjectListener {
         if (debug.messageEnabled()) {
             debug.message("SMSEventListenerManager::allObjectsChanged called");
         }
+        SMSSnapshot.discard();
         // Collect all the DNs from "nodeChanges" and send notifications
         // Send MODIFY notifications
         for (DN item : nodeChanges.keySet()) {
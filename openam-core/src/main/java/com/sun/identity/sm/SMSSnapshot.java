@@ -0,0 +1,582 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package com.sun.identity.sm;
+
+import static org.forgerock.openam.utils.Time.currentTimeMillis;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.AccessController;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.forgerock.openam.shared.security.crypto.PBKDF2KeyDerivation;
+import org.forgerock.opendj.ldap.DN;
+import org.forgerock.opendj.ldap.GeneralizedTime;
+import org.forgerock.util.annotations.VisibleForTesting;
+import org.forgerock.util.thread.listener.ShutdownListener;
+
+import com.iplanet.am.util.SystemProperties;
+import com.iplanet.sso.SSOException;
+import com.iplanet.sso.SSOToken;
+import com.sun.identity.common.CaseInsensitiveHashMap;
+import com.sun.identity.common.ShutdownManager;
+import com.sun.identity.security.AdminTokenAction;
+import com.sun.identity.shared.Constants;
+import com.sun.identity.shared.debug.Debug;
+
+/**
+ * A local snapshot of the SMS entries read by this server, so that a starting server can load its configuration from
+ * a single file rather than with one directory read per entry.
+ * <p>
+ * The snapshot is enabled by setting {@link Constants#SMS_SNAPSHOT_FILE}. It is written when the server shuts down,
+ * from the SMS entries cached at the time, and loaded when the server starts. The file carries a format version and
+ * the root suffix it was taken from, and is signed with a key derived from the encryption password of the deployment,
+ * so that a snapshot of another format or deployment, or one which has been tampered with, is ignored.
+ * <p>
+ * Once loaded, entries are served from the snapshot instead of the directory until the snapshot is reconciled in the
+ * background: the services subtree is searched for the SMS entries which changed since the snapshot was taken,
+ * allowing for some clock skew, and for the SMS entries which still exist. Entries which changed or disappeared are
+ * marked dirty if they were already served, and the snapshot stops serving entries altogether before a fresh one is
+ * written. If either search returns more than {@link Constants#SMS_SNAPSHOT_MAX_ENTRIES} entries, the results may be
+ * incomplete, so every entry served is marked dirty instead. Reconciling excludes taking entries from the snapshot,
+ * and the served entries it invalidates are recorded until {@link CachedSMSEntry} caches them, so that an entry which
+ * was still being read from the snapshot is marked dirty as soon as it is cached. Entries changed while the snapshot
+ * is serving are dropped as their notifications arrive. Only entries of the services subtree, read by special users,
+ * are served from the snapshot, as those are the entries the reconciliation covers and the users the snapshot was
+ * taken as.
+ *
+ * @since 14.0.0
+ */
+final class SMSSnapshot {
+
+    private static final Debug debug = Debug.getInstance("amSMS");
+    private static final int FORMAT_VERSION = 1;
+    private static final int MAGIC = 0x414d5353;
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+    private static final int KEY_SIZE = 256;
+    private static final long CLOCK_SKEW = TimeUnit.MINUTES.toMillis(5);
+    private static final int DEFAULT_MAX_ENTRIES = 100000;
+    private static final String SMS_ENTRY_FILTER = "(|(objectclass=" + SMSEntry.OC_ORG_UNIT + ")(objectclass="
+            + SMSEntry.OC_SERVICE + ")(objectclass=" + SMSEntry.OC_SERVICE_COMP + ")(objectclass="
+            + SMSEntry.OC_REALM_SERVICE + "))";
+
+    /** Stands for an entry which does not exist, as the entries map does not accept null values. */
+    private static final Map<String, Set<String>> ABSENT = Collections.emptyMap();
+
+    private static final Map<String, Map<String, Set<String>>> entries = new ConcurrentHashMap<>();
+    private static final Set<String> served = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private static final Set<String> invalidated = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    /** Held to take entries from the snapshot, and exclusively to stop serving them. */
+    private static final ReadWriteLock servingLock = new ReentrantReadWriteLock();
+    private static volatile boolean serving;
+    private static File file;
+    private static byte[] key;
+
+    private SMSSnapshot() {
+    }
+
+    /**
+     * Loads the snapshot, if enabled, and schedules its reconciliation. Called once the SMS object is initialised.
+     */
+    static synchronized void initialize() {
+        discard();
+        invalidated.clear();
+        String path = SystemProperties.get(Constants.SMS_SNAPSHOT_FILE);
+        if (path == null || path.trim().isEmpty() || !SystemProperties.isServerMode()
+                || SMSEntry.SMSJAXRPCObjectFlg) {
+            return;
+        }
+        String password = SystemProperties.get(Constants.ENC_PWD_PROPERTY);
+        if (password == null || password.isEmpty()) {
+            debug.warning("SMSSnapshot: no encryption key to sign the snapshot with, snapshot disabled");
+            return;
+        }
+        boolean registerShutdown = file == null;
+        try {
+            key = deriveKey(password, SMSEntry.baseDN);
+        } catch (Exception e) {
+            debug.error("SMSSnapshot: unable to derive the key to sign the snapshot with, snapshot disabled", e);
+            return;
+        }
+        file = new File(path.trim());
+        if (registerShutdown) {
+            ShutdownManager.getInstance().addShutdownListener(new ShutdownListener() {
+                @Override
+                public void shutdown() {
+                    write();
+                }
+            });
+        }
+
+        Map<String, Map<String, Set<String>>> loaded = new HashMap<>();
+        long snapshotTime = load(loaded);
+        if (snapshotTime > 0) {
+            serve(loaded);
+            final long since = snapshotTime - CLOCK_SKEW;
+            SMSThreadPool.scheduleTask(new Runnable() {
+                @Override
+                public void run() {
+                    reconcile(since);
+                }
+            });
+        }
+    }
+
+    /**
+     * Returns the attributes of an entry from the snapshot, removing the entry from it.
+     *
+     * @param normalizedDN The normalised DN of the entry.
+     * @param token The token the entry is read as.
+     * @return The attributes of the entry, {@link #ABSENT} if the entry does not exist, or null if the entry must be
+     * read from the directory.
+     */
+    static Map<String, Set<String>> take(String normalizedDN, SSOToken token) {
+        if (!serving || !SMSEntry.isSpecialUser(token)) {
+            return null;
+        }
+        return take(normalizedDN);
+    }
+
+    /**
+     * Returns the attributes of an entry from the snapshot, removing the entry from it, whoever reads the entry.
+     *
+     * @param normalizedDN The normalised DN of the entry.
+     * @return The attributes of the entry, {@link #ABSENT} if the entry does not exist, or null if the entry must be
+     * read from the directory.
+     */
+    @VisibleForTesting
+    static Map<String, Set<String>> take(String normalizedDN) {
+        Map<String, Set<String>> attributes;
+        servingLock.readLock().lock();
+        try {
+            // Checked again under the lock, as the snapshot may have been reconciled since
+            if (!serving) {
+                return null;
+            }
+            attributes = entries.remove(normalizedDN);
+            if (attributes == null) {
+                return null;
+            }
+            // Recorded before the reconciliation can run, so that it marks the entry dirty if it changed
+            served.add(normalizedDN);
+        } finally {
+            servingLock.readLock().unlock();
+        }
+        if (debug.messageEnabled()) {
+            debug.message("SMSSnapshot: read {} from the snapshot", normalizedDN);
+        }
+        return attributes == ABSENT ? ABSENT : copy(attributes);
+    }
+
+    /**
+     * Tells whether the attributes returned by {@link #take} stand for an entry which does not exist.
+     */
+    static boolean isAbsent(Map<String, Set<String>> attributes) {
+        return attributes == ABSENT;
+    }
+
+    /**
+     * Drops an entry which changed from the snapshot.
+     *
+     * @param normalizedDN The normalised DN of the entry.
+     */
+    static void entryChanged(String normalizedDN) {
+        if (serving) {
+            entries.remove(normalizedDN);
+        }
+    }
+
+    /**
+     * Returns whether an entry served from the snapshot was invalidated by its reconciliation since the entry was
+     * last cached, forgetting the invalidation. Called once the entry is cached, as an entry invalidated while it was
+     * being read from the snapshot was not cached yet, so could not be marked dirty.
+     *
+     * @param normalizedDN The normalised DN of the entry.
+     * @return Whether the cached entry must be marked dirty.
+     */
+    static boolean wasInvalidated(String normalizedDN) {
+        return !invalidated.isEmpty() && invalidated.remove(normalizedDN);
+    }
+
+    /**
+     * Stops serving entries from the snapshot.
+     */
+    static void discard() {
+        servingLock.writeLock().lock();
+        try {
+            serving = false;
+            entries.clear();
+            served.clear();
+        } finally {
+            servingLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Serves entries from the snapshot, in place of any served until now.
+     *
+     * @param snapshot The attributes of the entries by normalised DN, {@link #ABSENT} for those which do not exist.
+     */
+    @VisibleForTesting
+    static void serve(Map<String, Map<String, Set<String>>> snapshot) {
+        servingLock.writeLock().lock();
+        try {
+            entries.clear();
+            served.clear();
+            entries.putAll(snapshot);
+            serving = true;
+        } finally {
+            servingLock.writeLock().unlock();
+        }
+    }
+
+    private static void reconcile(long since) {
+        Set<String> changed = null;
+        Set<String> existing = null;
+        String timestamp = GeneralizedTime.valueOf(since).toString();
+        try {
+            SSOToken adminToken = AccessController.doPrivileged(AdminTokenAction.getInstance());
+            changed = search(adminToken, "(&" + SMS_ENTRY_FILTER + "(|(modifyTimestamp>=" + timestamp
+                    + ")(createTimestamp>=" + timestamp + ")))");
+            existing = search(adminToken, SMS_ENTRY_FILTER);
+        } catch (SMSException | SSOException | RuntimeException e) {
+            debug.error("SMSSnapshot: unable to reconcile the snapshot, discarding the entries read from it", e);
+        }
+        int invalidations = reconcile(changed, existing);
+        if (debug.messageEnabled()) {
+            debug.message("SMSSnapshot: reconciled the snapshot, {} served entries invalidated, changed since {}",
+                    invalidations, timestamp);
+        }
+        write();
+    }
+
+    /**
+     * Stops serving entries from the snapshot, and invalidates the served entries which changed or no longer exist.
+     * No entry can be taken from the snapshot meanwhile, so none is served without being reconciled.
+     *
+     * @param changed The normalised DNs of the entries which changed since the snapshot was taken, or null if they
+     * are not known, in which case every entry served is invalidated.
+     * @param existing The normalised DNs of the entries which exist, or null if they are not known.
+     * @return The number of served entries invalidated.
+     */
+    @VisibleForTesting
+    static int reconcile(Set<String> changed, Set<String> existing) {
+        servingLock.writeLock().lock();
+        try {
+            serving = false;
+            int invalidations = 0;
+            for (String dn : served) {
+                if (changed == null || existing == null || changed.contains(dn) || !existing.contains(dn)) {
+                    invalidate(dn);
+                    invalidations++;
+                }
+            }
+            entries.clear();
+            served.clear();
+            return invalidations;
+        } finally {
+            servingLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Searches the services subtree, failing rather than returning results which may be incomplete.
+     */
+    private static Set<String> search(SSOToken adminToken, String filter) throws SMSException, SSOException {
+        int maxEntries = Math.min(SystemProperties.getAsInt(Constants.SMS_SNAPSHOT_MAX_ENTRIES, DEFAULT_MAX_ENTRIES),
+                Integer.MAX_VALUE - 1);
+        Set<String> dns = SMSEntry.smsObject.search(adminToken, SMSEntry.servicesDN, filter, maxEntries + 1, 0, false,
+                false);
+        if (dns.size() > maxEntries) {
+            throw new SMSException("SMSSnapshot: more than " + maxEntries + " entries match " + filter);
+        }
+        return normalize(dns);
+    }
+
+    /**
+     * Marks a served entry dirty, recording the invalidation first in case the entry is not cached yet.
+     */
+    private static void invalidate(String dn) {
+        invalidated.add(dn);
+        CachedSMSEntry.markDirty(dn);
+    }
+
+    /**
+     * Loads the snapshot file.
+     *
+     * @return The time the snapshot was taken at, or zero if there is no usable snapshot.
+     */
+    private static long load(Map<String, Map<String, Set<String>>> loaded) {
+        if (!file.isFile()) {
+            debug.message("SMSSnapshot: no snapshot to load from {}", file);
+            return 0;
+        }
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            long snapshotTime = decode(in, SMSEntry.baseDN, key, loaded);
+            if (snapshotTime > 0) {
+                debug.message("SMSSnapshot: loaded {} entries from {}", loaded.size(), file);
+            } else {
+                debug.warning("SMSSnapshot: ignoring {}, which is not a snapshot of this deployment", file);
+            }
+            return snapshotTime;
+        } catch (IOException | GeneralSecurityException e) {
+            debug.error("SMSSnapshot: unable to load the snapshot from " + file, e);
+            loaded.clear();
+            return 0;
+        }
+    }
+
+    /**
+     * Writes the entries cached by this server to the snapshot file, replacing it atomically.
+     */
+    private static synchronized void write() {
+        if (file == null) {
+            return;
+        }
+        long snapshotTime = currentTimeMillis();
+        Map<String, Map<String, Set<String>>> cached = CachedSMSEntry.getCleanEntries();
+        try {
+            Path target = file.toPath().toAbsolutePath();
+            Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                encode(out, cached, SMSEntry.baseDN, snapshotTime, key);
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            debug.message("SMSSnapshot: wrote {} entries to {}", cached.size(), file);
+        } catch (IOException | GeneralSecurityException e) {
+            debug.error("SMSSnapshot: unable to write the snapshot to " + file, e);
+        }
+    }
+
+    /**
+     * Derives the key the snapshot is signed with from the encryption password of the deployment, salted with the
+     * root suffix.
+     *
+     * @param password The encryption password.
+     * @param rootSuffix The root suffix of the configuration.
+     * @return The key.
+     * @throws Exception If the key cannot be derived.
+     */
+    @VisibleForTesting
+    static byte[] deriveKey(String password, String rootSuffix) throws Exception {
+        PBKDF2KeyDerivation keyDerivation = new PBKDF2KeyDerivation();
+        keyDerivation.setPassword(password);
+        try {
+            return keyDerivation.deriveSecretKey(KEY_SIZE,
+                    MessageDigest.getInstance("SHA-256").digest(rootSuffix.getBytes(StandardCharsets.UTF_8)))
+                    .getEncoded();
+        } finally {
+            keyDerivation.clear();
+        }
+    }
+
+    /**
+     * Writes a snapshot of the given entries. Entries outside of the services subtree are left out.
+     *
+     * @param out The stream to write the snapshot to.
+     * @param cached The attributes of the entries by normalised DN, null for an entry which does not exist.
+     * @param rootSuffix The root suffix of the configuration.
+     * @param snapshotTime The time the snapshot is taken at.
+     * @param key The key to sign the snapshot with.
+     * @throws IOException If the snapshot cannot be written.
+     * @throws GeneralSecurityException If the snapshot cannot be signed.
+     */
+    @VisibleForTesting
+    static void encode(OutputStream out, Map<String, Map<String, Set<String>>> cached, String rootSuffix,
+            long snapshotTime, byte[] key) throws IOException, GeneralSecurityException {
+        String servicesDN = SMSEntry.SERVICES_RDN + SMSEntry.COMMA + rootSuffix;
+        Map<String, Map<String, Set<String>>> included = new HashMap<>(cached.size() * 2);
+        for (Map.Entry<String, Map<String, Set<String>>> entry : cached.entrySet()) {
+            if (isInSubtree(entry.getKey(), servicesDN)) {
+                included.put(entry.getKey(), entry.getValue());
+            }
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(bytes);
+        writeString(data, rootSuffix);
+        data.writeLong(snapshotTime);
+        data.writeInt(included.size());
+        for (Map.Entry<String, Map<String, Set<String>>> entry : included.entrySet()) {
+            writeString(data, entry.getKey());
+            Map<String, Set<String>> attributes = entry.getValue();
+            if (attributes == null) {
+                data.writeInt(-1);
+                continue;
+            }
+            data.writeInt(attributes.size());
+            for (Map.Entry<String, Set<String>> attribute : attributes.entrySet()) {
+                writeString(data, attribute.getKey());
+                data.writeInt(attribute.getValue().size());
+                for (String value : attribute.getValue()) {
+                    writeString(data, value);
+                }
+            }
+        }
+        data.flush();
+        byte[] payload = bytes.toByteArray();
+        byte[] signature = sign(payload, key);
+
+        DataOutputStream header = new DataOutputStream(out);
+        header.writeInt(MAGIC);
+        header.writeInt(FORMAT_VERSION);
+        header.writeInt(signature.length);
+        header.write(signature);
+        header.flush();
+        GZIPOutputStream gzip = new GZIPOutputStream(out);
+        gzip.write(payload);
+        gzip.finish();
+    }
+
+    /**
+     * Reads a snapshot written by {@link #encode}. Nothing is read into the entries unless the snapshot is of the
+     * current format, has a valid signature and was taken from the given root suffix.
+     *
+     * @param in The stream to read the snapshot from.
+     * @param rootSuffix The root suffix of the configuration.
+     * @param key The key the snapshot must be signed with.
+     * @param into The map to read the entries into, by normalised DN.
+     * @return The time the snapshot was taken at, or zero if the snapshot cannot be used.
+     * @throws IOException If the snapshot cannot be read.
+     * @throws GeneralSecurityException If the signature cannot be checked.
+     */
+    @VisibleForTesting
+    static long decode(InputStream in, String rootSuffix, byte[] key, Map<String, Map<String, Set<String>>> into)
+            throws IOException, GeneralSecurityException {
+        DataInputStream header = new DataInputStream(in);
+        if (header.readInt() != MAGIC || header.readInt() != FORMAT_VERSION) {
+            debug.warning("SMSSnapshot: not a snapshot of the current format");
+            return 0;
+        }
+        byte[] signature = new byte[header.readInt()];
+        header.readFully(signature);
+        byte[] payload = readFully(new GZIPInputStream(in));
+        if (!MessageDigest.isEqual(signature, sign(payload, key))) {
+            debug.error("SMSSnapshot: the signature of the snapshot does not match");
+            return 0;
+        }
+
+        DataInputStream data = new DataInputStream(new ByteArrayInputStream(payload));
+        String snapshotSuffix = readString(data);
+        long snapshotTime = data.readLong();
+        if (!snapshotSuffix.equals(rootSuffix)) {
+            debug.warning("SMSSnapshot: the snapshot was taken from {}", snapshotSuffix);
+            return 0;
+        }
+        String servicesDN = SMSEntry.SERVICES_RDN + SMSEntry.COMMA + rootSuffix;
+        Map<String, Map<String, Set<String>>> decoded = new HashMap<>();
+        for (int count = data.readInt(); count > 0; count--) {
+            String dn = readString(data);
+            int attributeCount = data.readInt();
+            Map<String, Set<String>> attributes = ABSENT;
+            if (attributeCount >= 0) {
+                attributes = new CaseInsensitiveHashMap<>(attributeCount * 2);
+                for (int i = 0; i < attributeCount; i++) {
+                    String name = readString(data);
+                    int valueCount = data.readInt();
+                    Set<String> values = new HashSet<>(valueCount * 2);
+                    for (int j = 0; j < valueCount; j++) {
+                        values.add(readString(data));
+                    }
+                    attributes.put(name, values);
+                }
+            }
+            if (isInSubtree(dn, servicesDN)) {
+                decoded.put(dn, attributes);
+            }
+        }
+        into.putAll(decoded);
+        return snapshotTime;
+    }
+
+    private static boolean isInSubtree(String dn, String baseDN) {
+        return dn.equals(baseDN) || dn.endsWith(SMSEntry.COMMA + baseDN);
+    }
+
+    private static byte[] sign(byte[] payload, byte[] key) throws GeneralSecurityException {
+        Mac mac = Mac.getInstance(MAC_ALGORITHM);
+        mac.init(new SecretKeySpec(key, MAC_ALGORITHM));
+        return mac.doFinal(payload);
+    }
+
+    private static Set<String> normalize(Set<String> dns) {
+        Set<String> normalized = new HashSet<>(dns.size() * 2);
+        for (String dn : dns) {
+            normalized.add(DN.valueOf(dn).toString().toLowerCase());
+        }
+        return normalized;
+    }
+
+    private static Map<String, Set<String>> copy(Map<String, Set<String>> attributes) {
+        Map<String, Set<String>> copy = new CaseInsensitiveHashMap<>(attributes.size() * 2);
+        for (Map.Entry<String, Set<String>> attribute : attributes.entrySet()) {
+            copy.put(attribute.getKey(), new HashSet<>(attribute.getValue()));
+        }
+        return copy;
+    }
+
+    /**
+     * Strings are written with an int length, as attribute values such as service schemas exceed the 64KB limit of
+     * {@link DataOutputStream#writeUTF}.
+     */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+}
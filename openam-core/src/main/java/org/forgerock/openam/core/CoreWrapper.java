@@ -33,6 +33,7 @@ import com.sun.identity.idm.AMIdentity;
 import com.sun.identity.idm.IdRepoException;
 import com.sun.identity.idm.IdUtils;
 import com.sun.identity.policy.PolicyUtils;
+import com.sun.identity.policy.plugins.ConditionDecisionCache;
 import com.sun.identity.security.AdminTokenAction;
 import com.sun.identity.sm.DNMapper;
 import com.sun.identity.sm.SMSException;
@@ -140,6 +141,19 @@ public class CoreWrapper {
         return IdUtils.getIdentity(token, univId);
     }
 
+    /**
+     * Returns whether an identity is a member of a group, caching the decision until either identity changes.
+     *
+     * @param member The identity which may be a member of the group.
+     * @param group The group.
+     * @return Whether the identity is a member of the group.
+     * @throws IdRepoException If the membership could not be checked.
+     * @throws SSOException If the token the identities were read with is not valid.
+     */
+    public boolean isMember(AMIdentity member, AMIdentity group) throws IdRepoException, SSOException {
+        return ConditionDecisionCache.getInstance().isMember(member, group);
+    }
+
     /**
      * Destroys a single sign on token.
      *
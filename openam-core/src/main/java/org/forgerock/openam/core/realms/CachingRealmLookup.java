@@ -18,45 +18,65 @@ package org.forgerock.openam.core.realms;
 
 import javax.inject.Provider;
 import javax.inject.Singleton;
-import java.util.Collections;
-import java.util.Map;
-import java.util.Set;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
-import com.sun.identity.common.CaseInsensitiveHashMap;
-import com.sun.identity.common.CaseInsensitiveHashSet;
+import com.iplanet.am.util.SystemProperties;
 import com.sun.identity.idm.AMIdentityRepository;
 import com.sun.identity.shared.debug.Debug;
 import com.sun.identity.sm.ServiceConfigManager;
 import com.sun.identity.sm.ServiceListener;
+import org.forgerock.util.annotations.VisibleForTesting;
+import org.forgerock.util.time.TimeService;
 
 /**
  * Implementation of {@link RealmLookup} which caches realm look up results from its delegate
  * {@code Realms} instance.
  *
- * <p>Caches are cleared on any global or organisation config change.</p>
+ * <p>Results are held in a realm directory which is read without locking. Realm paths and DNs are indexed
+ * separately from other identifiers, such as DNS aliases, and each index is bounded. Unsuccessful look ups are
+ * remembered for a limited time only.</p>
+ *
+ * <p>The directory is atomically replaced by an empty one on any global or organisation config change, so a look
+ * up which was in progress during the change cannot repopulate the new directory with a stale result.</p>
  *
  * @since 14.0.0
  */
 @Singleton
 final class CachingRealmLookup implements RealmLookup {
 
-    private static Debug debug = AMIdentityRepository.debug;
+    private static final String MAX_ENTRIES_PROPERTY = "org.forgerock.openam.realms.cache.maxEntries";
+    private static final String NEGATIVE_TTL_PROPERTY = "org.forgerock.openam.realms.cache.negativeTtlSeconds";
 
-    private final Map<String, Realm> orgIdentifierToOrgName =
-            Collections.synchronizedMap(new CaseInsensitiveHashMap<String, Realm>());
-    private final Set<String> unknownOrgLookupCache =
-            Collections.synchronizedSet(new CaseInsensitiveHashSet<String>());
-    private final Map<Realm, Boolean> orgStatusCache =
-            Collections.synchronizedMap(new CaseInsensitiveHashMap<Realm, Boolean>());
+    private static Debug debug = AMIdentityRepository.debug;
 
+    private final AtomicReference<RealmDirectory> directory = new AtomicReference<>();
     private final RealmLookup delegate;
     private final Provider<ServiceConfigManager> idRepoServiceProvider;
+    private final TimeService clock;
+    private final int maxEntries;
+    private final long negativeTtlMillis;
     private AtomicBoolean initialised = new AtomicBoolean();
 
     CachingRealmLookup(RealmLookup delegate, Provider<ServiceConfigManager> idRepoServiceProvider) {
+        this(delegate, idRepoServiceProvider, TimeService.SYSTEM,
+                SystemProperties.getAsInt(MAX_ENTRIES_PROPERTY, 10000),
+                TimeUnit.SECONDS.toMillis(SystemProperties.getAsLong(NEGATIVE_TTL_PROPERTY, 60L)));
+    }
+
+    @VisibleForTesting
+    CachingRealmLookup(RealmLookup delegate, Provider<ServiceConfigManager> idRepoServiceProvider, TimeService clock,
+            int maxEntries, long negativeTtlMillis) {
         this.delegate = delegate;
         this.idRepoServiceProvider = idRepoServiceProvider;
+        this.clock = clock;
+        this.maxEntries = maxEntries;
+        this.negativeTtlMillis = negativeTtlMillis;
+        this.directory.set(new RealmDirectory());
     }
 
     private void init() {
@@ -73,13 +93,15 @@ final class CachingRealmLookup implements RealmLookup {
     @Override
     public Realm lookup(String orgIdentifier) throws RealmLookupException {
         init();
-        Realm realm = orgIdentifierToOrgName.get(orgIdentifier);
+        RealmDirectory realms = directory.get();
+        String key = key(orgIdentifier);
+        Realm realm = realms.getRealm(key);
         if (realm != null) {
             return realm;
         }
 
         // Don't go to the expense of an organisation search if we have failed to look this up already.
-        if (unknownOrgLookupCache.contains(orgIdentifier)) {
+        if (realms.isUnknown(key)) {
             debug.message("RealmsCache.lookup: orgIdentifier {} found in unknown org lookup cache.", orgIdentifier);
             throw new NoRealmFoundException(orgIdentifier);
         }
@@ -87,11 +109,11 @@ final class CachingRealmLookup implements RealmLookup {
         try {
             realm = delegate.lookup(orgIdentifier);
         } catch (NoRealmFoundException e) {
-            unknownOrgLookupCache.add(orgIdentifier);
+            realms.putUnknown(key);
             throw e;
         }
 
-        orgIdentifierToOrgName.put(orgIdentifier, realm);
+        realms.putRealm(key, realm);
 
         return realm;
     }
@@ -99,14 +121,82 @@ final class CachingRealmLookup implements RealmLookup {
     @Override
     public boolean isActive(Realm realm) throws RealmLookupException {
         init();
-        if (orgStatusCache.containsKey(realm)) {
-            return orgStatusCache.get(realm);
+        RealmDirectory realms = directory.get();
+        Boolean active = realms.status.get(realm);
+        if (active != null) {
+            return active;
+        }
+        active = delegate.isActive(realm);
+        if (realms.status.size() < maxEntries) {
+            realms.status.put(realm, active);
         }
-        boolean active = delegate.isActive(realm);
-        orgStatusCache.put(realm, active);
         return active;
     }
 
+    private static String key(String orgIdentifier) {
+        return orgIdentifier == null ? "" : orgIdentifier.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * The realm indexes for one generation of the realm configuration. A config change replaces the directory
+     * rather than clearing it.
+     */
+    private final class RealmDirectory {
+
+        private final ConcurrentMap<String, Realm> pathIndex = new ConcurrentHashMap<>();
+        private final ConcurrentMap<String, Realm> aliasIndex = new ConcurrentHashMap<>();
+        private final ConcurrentMap<String, Long> unknownIdentifiers = new ConcurrentHashMap<>();
+        private final ConcurrentMap<Realm, Boolean> status = new ConcurrentHashMap<>();
+
+        private boolean isPath(String key) {
+            // Realm paths and DNs, anything else is a realm name or alias
+            return key.isEmpty() || key.charAt(0) == '/' || key.indexOf('=') >= 0;
+        }
+
+        private ConcurrentMap<String, Realm> indexFor(String key) {
+            return isPath(key) ? pathIndex : aliasIndex;
+        }
+
+        Realm getRealm(String key) {
+            return indexFor(key).get(key);
+        }
+
+        void putRealm(String key, Realm realm) {
+            ConcurrentMap<String, Realm> index = indexFor(key);
+            if (index.size() < maxEntries) {
+                index.put(key, realm);
+            }
+            if (pathIndex.size() < maxEntries) {
+                pathIndex.putIfAbsent(key(realm.asPath()), realm);
+                pathIndex.putIfAbsent(key(realm.asDN()), realm);
+            }
+        }
+
+        boolean isUnknown(String key) {
+            Long expiry = unknownIdentifiers.get(key);
+            if (expiry == null) {
+                return false;
+            }
+            if (expiry <= clock.now()) {
+                unknownIdentifiers.remove(key, expiry);
+                return false;
+            }
+            return true;
+        }
+
+        void putUnknown(String key) {
+            if (negativeTtlMillis <= 0) {
+                return;
+            }
+            if (unknownIdentifiers.size() >= maxEntries) {
+                // Unknown identifiers are typically host names supplied by clients, so rather than letting them
+                // grow the cache we start over.
+                unknownIdentifiers.clear();
+            }
+            unknownIdentifiers.put(key, clock.now() + negativeTtlMillis);
+        }
+    }
+
     private class RealmsCacheListener implements ServiceListener {
 
         @Override
@@ -127,9 +217,7 @@ final class CachingRealmLookup implements RealmLookup {
 
         private void clearCaches() {
             debug.message("RealmsCache: Clearing caches due to config change.");
-            orgIdentifierToOrgName.clear();
-            orgStatusCache.clear();
-            unknownOrgLookupCache.clear();
+            directory.set(new RealmDirectory());
         }
     }
 }
@@ -11,11 +11,14 @@
  * Header, with the fields enclosed by brackets [] replaced by your own identifying
  * information: "Portions copyright [year] [name of copyright owner]".
  *
- * Copyright 2014 ForgeRock AS.
+ * Copyright 2014-2016 ForgeRock AS.
  */
 
 package org.forgerock.openam.cts.monitoring;
 
+import org.forgerock.openam.ldap.MeteredConnectionFactory;
+import org.forgerock.openam.sm.datalayer.api.ConnectionType;
+
 /**
  * A data structure for storing monitoring information about CTS connections.
  * <br/>
@@ -71,4 +74,45 @@ public interface CTSConnectionMonitoringStore {
      * @return The total count of connections in a given period.
      */
     double getConnectionsCumulativeCount(boolean success);
+
+    /**
+     * Registers the connection pool used for the given connection type, so that its borrow metrics can be reported.
+     * A pool registered earlier for the same connection type is replaced.
+     *
+     * @param connectionType The connection type the pool serves.
+     * @param pool The metered connection pool.
+     */
+    void addConnectionPool(ConnectionType connectionType, MeteredConnectionFactory pool);
+
+    /**
+     * Gets the number of requests currently waiting for a connection from the pool of the given connection type.
+     *
+     * @param connectionType The connection type.
+     * @return The number of waiting requests, or zero if no pool is registered for the connection type.
+     */
+    int getConnectionPoolWaiters(ConnectionType connectionType);
+
+    /**
+     * Gets the number of connections currently borrowed from the pool of the given connection type.
+     *
+     * @param connectionType The connection type.
+     * @return The number of connections in use, or zero if no pool is registered for the connection type.
+     */
+    int getConnectionPoolConnectionsInUse(ConnectionType connectionType);
+
+    /**
+     * Gets the average time it took to borrow a connection from the pool of the given connection type.
+     *
+     * @param connectionType The connection type.
+     * @return The average borrow time in milliseconds, or zero if no pool is registered for the connection type.
+     */
+    double getConnectionPoolAverageBorrowTime(ConnectionType connectionType);
+
+    /**
+     * Gets the longest time it took to borrow a connection from the pool of the given connection type.
+     *
+     * @param connectionType The connection type.
+     * @return The maximum borrow time in milliseconds, or zero if no pool is registered for the connection type.
+     */
+    long getConnectionPoolMaximumBorrowTime(ConnectionType connectionType);
 }
@@ -11,7 +11,7 @@
  * Header, with the fields enclosed by brackets [] replaced by your own identifying
  * information: "Portions copyright [year] [name of copyright owner]".
  *
- * Copyright 2013-2015 ForgeRock AS.
+ * Copyright 2013-2016 ForgeRock AS.
  */
 
 package org.forgerock.openam.cts.monitoring.impl;
@@ -27,6 +27,11 @@ import org.forgerock.openam.cts.monitoring.CTSReaperMonitoringStore;
 import org.forgerock.openam.cts.monitoring.impl.connections.ConnectionStore;
 import org.forgerock.openam.cts.monitoring.impl.operations.TokenOperationsStore;
 import org.forgerock.openam.cts.monitoring.impl.reaper.ReaperMonitor;
+import org.forgerock.openam.ldap.MeteredConnectionFactory;
+import org.forgerock.openam.shared.monitoring.metrics.Counter;
+import org.forgerock.openam.shared.monitoring.metrics.Gauge;
+import org.forgerock.openam.shared.monitoring.metrics.MetricsRegistry;
+import org.forgerock.openam.sm.datalayer.api.ConnectionType;
 
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -34,6 +39,8 @@ import javax.inject.Singleton;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * An implementation of the CTSOperationsMonitoringStore that stores the CTS monitoring information
@@ -50,12 +57,20 @@ public class CTSMonitoringStoreImpl implements CTSOperationsMonitoringStore, CTS
      */
     public static final String EXECUTOR_BINDING_NAME = "MONITORING_EXECUTOR";
 
+    private static final int OPERATION_COUNT = CTSOperation.values().length;
+
     private final Debug debug;
 
     private final TokenOperationsStore tokenOperationsStore;
     private final ExecutorService executorService;
     private final ReaperMonitor reaperMonitor;
     private final ConnectionStore connectionStore;
+    private final MetricsRegistry metricsRegistry;
+    //the token operation counters by token type, operation and outcome, looked up in the registry on first use only
+    private final AtomicReferenceArray<Counter> tokenOperationCounters =
+            new AtomicReferenceArray<>((TokenType.values().length + 1) * OPERATION_COUNT * 2);
+    private final Counter connectionSuccesses;
+    private final Counter connectionFailures;
 
     /**
      * Constructs an instance of the CTSMonitoringStoreImpl.
@@ -64,18 +79,29 @@ public class CTSMonitoringStoreImpl implements CTSOperationsMonitoringStore, CTS
      * @param executorService An instance of an ExecutorService.
      * @param tokenOperationsStore An instance of the TokenOperationsStore.
      * @param reaperMonitor An instance of the ReaperMonitor.
+     * @param connectionStore An instance of the ConnectionStore.
+     * @param metricsRegistry The registry the CTS metrics are also reported to.
      */
     @Inject
     public CTSMonitoringStoreImpl(@Named(EXECUTOR_BINDING_NAME) final ExecutorService executorService,
                                   final TokenOperationsStore tokenOperationsStore,
                                   final ReaperMonitor reaperMonitor,
                                   final ConnectionStore connectionStore,
+                                  final MetricsRegistry metricsRegistry,
                                   @Named(CoreTokenConstants.CTS_DEBUG) final Debug debug) {
         this.debug = debug;
         this.executorService = executorService;
         this.tokenOperationsStore = tokenOperationsStore;
         this.reaperMonitor = reaperMonitor;
         this.connectionStore = connectionStore;
+        this.metricsRegistry = metricsRegistry;
+        this.connectionSuccesses = connectionCounter(metricsRegistry, "success");
+        this.connectionFailures = connectionCounter(metricsRegistry, "failure");
+    }
+
+    private static Counter connectionCounter(MetricsRegistry metricsRegistry, String outcome) {
+        return metricsRegistry.counter("am_cts_connections_total", "The number of connections requested by the CTS.",
+                "outcome", outcome);
     }
 
     /**
@@ -83,6 +109,7 @@ public class CTSMonitoringStoreImpl implements CTSOperationsMonitoringStore, CTS
      */
     @Override
     public void addTokenOperation(final Token token, final CTSOperation operation, final boolean success) {
+        countTokenOperation(token == null ? null : token.getType(), operation, success);
         if (token == null) {
             addTokenOperation(operation, success);
             return;
@@ -101,6 +128,20 @@ public class CTSMonitoringStoreImpl implements CTSOperationsMonitoringStore, CTS
         }
     }
 
+    private void countTokenOperation(TokenType tokenType, CTSOperation operation, boolean success) {
+        int index = ((tokenType == null ? 0 : tokenType.ordinal() + 1) * OPERATION_COUNT + operation.ordinal()) * 2
+                + (success ? 1 : 0);
+        Counter counter = tokenOperationCounters.get(index);
+        if (counter == null) {
+            // The registry hands out the same counter to concurrent lookups, so the race is harmless
+            counter = metricsRegistry.counter("am_cts_token_operations_total", "The number of CTS token operations.",
+                    "token_type", tokenType == null ? "" : tokenType.name(), "operation", operation.name(),
+                    "outcome", success ? "success" : "failure");
+            tokenOperationCounters.set(index, counter);
+        }
+        counter.increment();
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -209,6 +250,7 @@ public class CTSMonitoringStoreImpl implements CTSOperationsMonitoringStore, CTS
     @Override
     public void addConnection(boolean success) {
         connectionStore.addConnection(success);
+        (success ? connectionSuccesses : connectionFailures).increment();
     }
 
     @Override
@@ -230,4 +272,60 @@ public class CTSMonitoringStoreImpl implements CTSOperationsMonitoringStore, CTS
     public double getConnectionsCumulativeCount(boolean success) {
         return connectionStore.getConnectionsCumulativeCount(success);
     }
+
+    @Override
+    public void addConnectionPool(final ConnectionType connectionType, MeteredConnectionFactory pool) {
+        connectionStore.addConnectionPool(connectionType, pool);
+        String type = connectionType.name();
+        metricsRegistry.gauge("am_ldap_pool_waiters", "The number of requests waiting for an LDAP connection.",
+                new Gauge() {
+                    @Override
+                    public double getValue() {
+                        return connectionStore.getConnectionPoolWaiters(connectionType);
+                    }
+                }, "connection_type", type);
+        metricsRegistry.gauge("am_ldap_pool_connections_in_use", "The number of LDAP connections in use.",
+                new Gauge() {
+                    @Override
+                    public double getValue() {
+                        return connectionStore.getConnectionPoolConnectionsInUse(connectionType);
+                    }
+                }, "connection_type", type);
+        metricsRegistry.gauge("am_ldap_pool_borrow_average_seconds",
+                "The average time it took to obtain an LDAP connection.", new Gauge() {
+                    @Override
+                    public double getValue() {
+                        return connectionStore.getConnectionPoolAverageBorrowTime(connectionType)
+                                / TimeUnit.SECONDS.toMillis(1);
+                    }
+                }, "connection_type", type);
+        metricsRegistry.gauge("am_ldap_pool_borrow_max_seconds",
+                "The longest time it took to obtain an LDAP connection.", new Gauge() {
+                    @Override
+                    public double getValue() {
+                        return (double) connectionStore.getConnectionPoolMaximumBorrowTime(connectionType)
+                                / TimeUnit.SECONDS.toMillis(1);
+                    }
+                }, "connection_type", type);
+    }
+
+    @Override
+    public int getConnectionPoolWaiters(ConnectionType connectionType) {
+        return connectionStore.getConnectionPoolWaiters(connectionType);
+    }
+
+    @Override
+    public int getConnectionPoolConnectionsInUse(ConnectionType connectionType) {
+        return connectionStore.getConnectionPoolConnectionsInUse(connectionType);
+    }
+
+    @Override
+    public double getConnectionPoolAverageBorrowTime(ConnectionType connectionType) {
+        return connectionStore.getConnectionPoolAverageBorrowTime(connectionType);
+    }
+
+    @Override
+    public long getConnectionPoolMaximumBorrowTime(ConnectionType connectionType) {
+        return connectionStore.getConnectionPoolMaximumBorrowTime(connectionType);
+    }
 }
@@ -11,15 +11,22 @@
  * Header, with the fields enclosed by brackets [] replaced by your own identifying
  * information: "Portions copyright [year] [name of copyright owner]".
  *
- * Copyright 2014 ForgeRock AS.
+ * Copyright 2014-2016 ForgeRock AS.
  */
 
 package org.forgerock.openam.cts.monitoring.impl.connections;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 import javax.inject.Inject;
 
+import org.forgerock.openam.ldap.MeteredConnectionFactory;
+import org.forgerock.openam.sm.datalayer.api.ConnectionType;
+
 /**
- * A data structure that stores the cumulative count and rate for CTS connections.
+ * A data structure that stores the cumulative count and rate for CTS connections, along with the connection pools
+ * of each connection type.
  *
  * Periods can be customized through setting of the appropriate ConnectionMonitor values.
  *
@@ -29,6 +36,8 @@ public class ConnectionStore {
 
     private final ConnectionMonitor failureConnectionMonitor;
     private final ConnectionMonitor connectionMonitor;
+    private final ConcurrentMap<ConnectionType, MeteredConnectionFactory> pools =
+            new ConcurrentHashMap<ConnectionType, MeteredConnectionFactory>();
 
     @Inject
     public ConnectionStore(ConnectionMonitor successMonitor, ConnectionMonitor failureMonitor) {
@@ -113,4 +122,58 @@ public class ConnectionStore {
             return failureConnectionMonitor.getCumulativeCount();
         }
     }
+
+    /**
+     * Registers the connection pool of a connection type, replacing any pool previously registered for it.
+     *
+     * @param connectionType the connection type the pool serves
+     * @param pool the metered connection pool
+     */
+    public void addConnectionPool(ConnectionType connectionType, MeteredConnectionFactory pool) {
+        pools.put(connectionType, pool);
+    }
+
+    /**
+     * Returns the number of requests waiting for a connection from the pool of the connection type.
+     *
+     * @param connectionType the connection type
+     * @return the number of waiting requests, zero if no pool is registered for the connection type
+     */
+    public int getConnectionPoolWaiters(ConnectionType connectionType) {
+        MeteredConnectionFactory pool = pools.get(connectionType);
+        return pool == null ? 0 : pool.getWaiters();
+    }
+
+    /**
+     * Returns the number of connections borrowed from the pool of the connection type.
+     *
+     * @param connectionType the connection type
+     * @return the number of connections in use, zero if no pool is registered for the connection type
+     */
+    public int getConnectionPoolConnectionsInUse(ConnectionType connectionType) {
+        MeteredConnectionFactory pool = pools.get(connectionType);
+        return pool == null ? 0 : pool.getConnectionsInUse();
+    }
+
+    /**
+     * Returns the average time in milliseconds it took to borrow a connection from the pool of the connection type.
+     *
+     * @param connectionType the connection type
+     * @return the average borrow time, zero if no pool is registered for the connection type
+     */
+    public double getConnectionPoolAverageBorrowTime(ConnectionType connectionType) {
+        MeteredConnectionFactory pool = pools.get(connectionType);
+        return pool == null ? 0 : pool.getAverageBorrowTime();
+    }
+
+    /**
+     * Returns the longest time in milliseconds it took to borrow a connection from the pool of the connection type.
+     *
+     * @param connectionType the connection type
+     * @return the maximum borrow time, zero if no pool is registered for the connection type
+     */
+    public long getConnectionPoolMaximumBorrowTime(ConnectionType connectionType) {
+        MeteredConnectionFactory pool = pools.get(connectionType);
+        return pool == null ? 0 : pool.getMaximumBorrowTime();
+    }
 }
@@ -17,9 +17,11 @@ package org.forgerock.openam.cts.utils;
 
 import java.util.Calendar;
 import java.util.Collection;
-import java.util.LinkedHashMap;
+import java.util.EnumMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 
 import javax.inject.Inject;
 
@@ -32,8 +34,10 @@ import org.forgerock.openam.tokens.TokenType;
 import org.forgerock.openam.utils.CollectionUtils;
 import org.forgerock.opendj.ldap.Attribute;
 import org.forgerock.opendj.ldap.AttributeDescription;
+import org.forgerock.opendj.ldap.ByteString;
 import org.forgerock.opendj.ldap.DN;
 import org.forgerock.opendj.ldap.Entry;
+import org.forgerock.opendj.ldap.LinkedAttribute;
 import org.forgerock.opendj.ldap.LinkedHashMapEntry;
 
 /**
@@ -54,6 +58,21 @@ public class LdapTokenAttributeConversion {
      */
     static final String EMPTY = "-empty-";
 
+    private static final int FIELD_COUNT = CoreTokenField.values().length;
+
+    /**
+     * The attribute descriptions are parsed once, rather than for every attribute of every Token converted.
+     */
+    private static final Map<CoreTokenField, AttributeDescription> DESCRIPTIONS = new EnumMap<>(CoreTokenField.class);
+    private static final Map<String, CoreTokenField> FIELDS = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+
+    static {
+        for (CoreTokenField field : CoreTokenField.values()) {
+            DESCRIPTIONS.put(field, AttributeDescription.valueOf(field.toString()));
+            FIELDS.put(field.toString(), field);
+        }
+    }
+
     // Injected
     private final LDAPDataConversion conversion;
     private final LdapDataLayerConfiguration dataLayerConfiguration;
@@ -78,34 +97,35 @@ public class LdapTokenAttributeConversion {
 
         for (CoreTokenField field : token.getAttributeNames()) {
 
-            String key = field.toString();
+            AttributeDescription description = DESCRIPTIONS.get(field);
 
             // Token Type special case is an Enum
             if (CoreTokenField.TOKEN_TYPE.equals(field)) {
                 TokenType type = token.getAttribute(field);
-                entry.addAttribute(key, type.name());
+                entry.addAttribute(new LinkedAttribute(description, ByteString.valueOfUtf8(type.name())));
                 continue;
             }
 
             if (CoreTokenFieldTypes.isMulti(field)) {
-                Object[] addition = getMultiAttribute(token, field);
-                if (addition.length > 0) {
-                    entry.addAttribute(key, addition);
+                Attribute attribute = getMultiAttribute(token, field, description);
+                if (!attribute.isEmpty()) {
+                    entry.addAttribute(attribute);
                 }
             } else if (CoreTokenFieldTypes.isCalendar(field)) {
                 Calendar calendar = token.getAttribute(field);
                 String dateString = conversion.toLDAPDate(calendar);
-                entry.addAttribute(key, dateString);
+                entry.addAttribute(new LinkedAttribute(description, ByteString.valueOfUtf8(dateString)));
             } else if (CoreTokenFieldTypes.isByteArray(field)) {
+                // The Token hands out a fresh copy of its binary data, so it can be wrapped rather than copied
                 byte[] array = token.getAttribute(field);
-                entry.addAttribute(key, array);
+                entry.addAttribute(new LinkedAttribute(description, ByteString.wrap(array)));
             } else if (CoreTokenFieldTypes.isInteger(field)) {
                 Integer value = token.getAttribute(field);
-                entry.addAttribute(key, value);
+                entry.addAttribute(new LinkedAttribute(description, ByteString.valueOfUtf8(value.toString())));
             } else if (CoreTokenFieldTypes.isString(field)) {
                 String value = token.getAttribute(field);
                 if (!value.isEmpty()) {
-                    entry.addAttribute(key, value);
+                    entry.addAttribute(new LinkedAttribute(description, ByteString.valueOfUtf8(value)));
                 }
             } else {
                 throw new IllegalStateException();
@@ -115,22 +135,27 @@ public class LdapTokenAttributeConversion {
         return entry;
     }
 
-    private Object[] getMultiAttribute(Token token, CoreTokenField field) {
+    private Attribute getMultiAttribute(Token token, CoreTokenField field, AttributeDescription description) {
+        Attribute attribute = new LinkedAttribute(description);
         if (CoreTokenFieldTypes.isString(field)) {
             Collection<String> value = token.getAttribute(field);
             if (!CollectionUtils.isEmpty(value)) {
-                return value.toArray(new String[value.size()]);
+                for (String s : value) {
+                    attribute.add(ByteString.valueOfUtf8(s));
+                }
             }
         } else if (CoreTokenFieldTypes.isInteger(field)) {
             Collection<Integer> value = token.getAttribute(field);
             if (!CollectionUtils.isEmpty(value)) {
-                return value.toArray(new Integer[value.size()]);
+                for (Integer i : value) {
+                    attribute.add(ByteString.valueOfUtf8(i.toString()));
+                }
             }
         } else {
             throw new IllegalStateException("New parser for multi-value type required for field : " + field);
         }
 
-        return new Object[0];
+        return attribute;
     }
 
     /**
@@ -145,65 +170,92 @@ public class LdapTokenAttributeConversion {
      * @return A mapping of zero or more CoreTokenFields to Objects.
      */
     public Map<CoreTokenField, Object> mapFromEntry(Entry entry) {
-        stripObjectClass(entry);
+        return mapFromEntry(entry, null);
+    }
 
-        Map<CoreTokenField, Object> r = new LinkedHashMap<>();
+    /**
+     * Convert the given fields of an Entry into a Mapping of CoreTokenField to Object.
+     *
+     * Only the attributes of the requested fields are decoded, the other attributes of the
+     * Entry are skipped.
+     *
+     * @param entry Non null entry to convert.
+     * @param fields The fields to convert, or null to convert every attribute of the Entry.
+     *
+     * @return A mapping of zero or more CoreTokenFields to Objects.
+     * @since 14.0.0
+     */
+    public Map<CoreTokenField, Object> mapFromEntry(Entry entry, Set<CoreTokenField> fields) {
+        Map<CoreTokenField, Object> r = new EnumMap<>(CoreTokenField.class);
 
         for (Attribute a : entry.getAllAttributes()) {
-            AttributeDescription description = a.getAttributeDescription();
-            CoreTokenField field = CoreTokenField.fromLDAPAttribute(description.toString());
-
-            // Special case for Token Type
-            if (CoreTokenField.TOKEN_TYPE.equals(field)) {
-                String value = entry.parseAttribute(description).asString();
-                r.put(field, TokenType.valueOf(value));
+            CoreTokenField field = getTokenField(a);
+            if (field == null || (fields != null && !fields.contains(field)) || a.isEmpty()) {
                 continue;
             }
 
             if (CoreTokenFieldTypes.isMulti(field)) {
-                r.put(field, parseMulti(field, entry, description));
-            } else if (CoreTokenFieldTypes.isCalendar(field)) {
-                String dateString = entry.parseAttribute(description).asString();
-                Calendar calendar = conversion.fromLDAPDate(dateString);
-                r.put(field, calendar);
-            } else if (CoreTokenFieldTypes.isString(field)) {
-                String value = entry.parseAttribute(description).asString();
-                r.put(field, resolveEmpty(value));
-            } else if (CoreTokenFieldTypes.isInteger(field)) {
-                Integer value = entry.parseAttribute(description).asInteger();
-                r.put(field, value);
-            } else if (CoreTokenFieldTypes.isByteArray(field)) {
-                byte[] data = entry.parseAttribute(description).asByteString().toByteArray();
-                r.put(field, data);
+                r.put(field, parseMulti(field, a));
             } else {
-                throw new IllegalStateException();
+                r.put(field, parseSingle(field, a));
             }
         }
 
         return r;
     }
 
+    /**
+     * Resolves the field an attribute holds.
+     *
+     * @return The field, or null for the object class.
+     * @throws IllegalArgumentException If the attribute is not a token attribute.
+     */
+    private static CoreTokenField getTokenField(Attribute attribute) {
+        String name = attribute.getAttributeDescriptionAsString();
+        CoreTokenField field = FIELDS.get(name);
+        if (field == null) {
+            if (CoreTokenConstants.OBJECT_CLASS.equalsIgnoreCase(name)) {
+                return null;
+            }
+            throw new IllegalArgumentException("Invalid CoreTokenField value: " + name);
+        }
+        return field;
+    }
+
+    private Object parseSingle(CoreTokenField field, Attribute attribute) {
+        // Special case for Token Type
+        if (CoreTokenField.TOKEN_TYPE.equals(field)) {
+            return TokenType.valueOf(attribute.firstValueAsString());
+        } else if (CoreTokenFieldTypes.isCalendar(field)) {
+            return conversion.fromLDAPDate(attribute.firstValueAsString());
+        } else if (CoreTokenFieldTypes.isString(field)) {
+            return resolveEmpty(attribute.firstValueAsString());
+        } else if (CoreTokenFieldTypes.isInteger(field)) {
+            return Integer.valueOf(attribute.firstValueAsString());
+        } else if (CoreTokenFieldTypes.isByteArray(field)) {
+            return attribute.firstValue().toByteArray();
+        } else {
+            throw new IllegalStateException();
+        }
+    }
+
     private String resolveEmpty(String value) {
         return EMPTY.equals(value) ? "" : value;
     }
 
-    private Collection<?> parseMulti(CoreTokenField field, Entry entry, AttributeDescription description) {
+    private Set<?> parseMulti(CoreTokenField field, Attribute attribute) {
+        Set<Object> result = new LinkedHashSet<>(attribute.size() * 2);
         if (CoreTokenFieldTypes.isString(field)) {
-            return resolveEmptyMultiStringValues(entry, description);
+            for (ByteString value : attribute) {
+                result.add(resolveEmpty(value.toString()));
+            }
         } else if (CoreTokenFieldTypes.isInteger(field)) {
-            return entry.parseAttribute(description).asSetOfInteger();
+            for (ByteString value : attribute) {
+                result.add(Integer.valueOf(value.toString()));
+            }
         } else {
             throw new IllegalStateException("New parser for multi-value type required for field : " + field);
         }
-    }
-
-    private Collection<String> resolveEmptyMultiStringValues(Entry entry, AttributeDescription description) {
-        Set<String> result = entry.parseAttribute(description).asSetOfString();
-        boolean wasPresent = result.remove(EMPTY);
-        if (wasPresent) {
-            result.add("");
-        }
-
         return result;
     }
 
@@ -220,33 +272,49 @@ public class LdapTokenAttributeConversion {
      * @see #mapFromEntry(org.forgerock.opendj.ldap.Entry)
      */
     public Token tokenFromEntry(Entry entry) {
-        Map<CoreTokenField, Object> map = mapFromEntry(entry);
-
-        String tokenId = (String) map.get(CoreTokenField.TOKEN_ID);
-        TokenType type = (TokenType) map.get(CoreTokenField.TOKEN_TYPE);
-
-        Token token = new Token(tokenId, type);
+        // The Token can only be created once its id and type are known, so the attributes are
+        // first sorted by field, and then decoded straight into the Token.
+        Attribute[] attributes = new Attribute[FIELD_COUNT];
+        for (Attribute a : entry.getAllAttributes()) {
+            CoreTokenField field = getTokenField(a);
+            if (field != null && !a.isEmpty()) {
+                attributes[field.ordinal()] = a;
+            }
+        }
 
-        for (Map.Entry<CoreTokenField, Object> e : map.entrySet()) {
-            CoreTokenField key = e.getKey();
-            Object value = e.getValue();
+        Attribute tokenId = attributes[CoreTokenField.TOKEN_ID.ordinal()];
+        Attribute type = attributes[CoreTokenField.TOKEN_TYPE.ordinal()];
+        Token token = new Token(tokenId == null ? null : tokenId.firstValueAsString(),
+                type == null ? null : TokenType.valueOf(type.firstValueAsString()));
 
-            if (Token.isFieldReadOnly(key)) {
+        for (CoreTokenField field : CoreTokenField.values()) {
+            Attribute attribute = attributes[field.ordinal()];
+            if (attribute == null || Token.isFieldReadOnly(field)) {
                 continue;
             }
 
-            if (Collection.class.isAssignableFrom(value.getClass())) {
-                Collection collection = (Collection) value;
-                for (Object content : collection) {
-                    token.setMultiAttribute(key, content);
+            if (CoreTokenFieldTypes.isMulti(field)) {
+                for (Object content : parseMulti(field, attribute)) {
+                    token.setMultiAttribute(field, content);
                 }
             } else {
-                token.setAttribute(key, value);
+                token.setAttribute(field, parseSingle(field, attribute));
             }
         }
         return token;
     }
 
+    /**
+     * Resolves the field held by the LDAP attribute of the given name.
+     *
+     * @param attributeName The name of the LDAP attribute, compared case insensitively.
+     * @return The field, or null if the attribute is not a token attribute.
+     * @since 14.0.0
+     */
+    public static CoreTokenField getTokenField(String attributeName) {
+        return attributeName == null ? null : FIELDS.get(attributeName);
+    }
+
     /**
      * Only adds the ObjectClass if it hasn't already been added.
      *
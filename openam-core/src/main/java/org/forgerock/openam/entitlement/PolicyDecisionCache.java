@@ -0,0 +1,508 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openam.entitlement;
+
+import static org.forgerock.openam.utils.Time.currentTimeMillis;
+
+import java.security.AccessController;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.security.auth.Subject;
+
+import org.forgerock.guava.common.base.Predicate;
+import org.forgerock.openam.entitlement.utils.IndexedCache;
+
+import com.iplanet.am.util.SystemProperties;
+import com.iplanet.sso.SSOException;
+import com.iplanet.sso.SSOToken;
+import com.iplanet.sso.SSOTokenEvent;
+import com.iplanet.sso.SSOTokenListener;
+import com.sun.identity.entitlement.Entitlement;
+import com.sun.identity.entitlement.opensso.SubjectUtils;
+import com.sun.identity.idm.AMIdentityRepository;
+import com.sun.identity.idm.IdEventListener;
+import com.sun.identity.idm.IdRepoException;
+import com.sun.identity.security.AdminTokenAction;
+import com.sun.identity.shared.Constants;
+import com.sun.identity.shared.debug.Debug;
+import com.sun.identity.sm.SMSException;
+import com.sun.identity.sm.ServiceConfigManager;
+import com.sun.identity.sm.ServiceListener;
+
+/**
+ * Caches the entitlement decisions of the server, so that a subject requesting the same resource again does not
+ * require the policies to be evaluated again.
+ * <p>
+ * Decisions are keyed by the realm, application, session (and authentication level) of the subject, resource,
+ * evaluation mode and environment of the request. Only decisions made for subjects with a session, and without
+ * advices, are cached. A decision is cached for the milliseconds set by the
+ * {@link Constants#POLICY_DECISION_CACHE_TTL} property, or until the earliest time to live of its entitlements if
+ * that comes first.
+ * <p>
+ * Decisions are discarded when:
+ * <ul>
+ *     <li>a policy of their realm and application is changed through this server, see {@link #policyChanged};</li>
+ *     <li>the policies or applications of any realm are changed through another server, which is reported through
+ *     the SMS notifications of the services storing them;</li>
+ *     <li>the identity repository reports that the identity of their subject changed;</li>
+ *     <li>the session of their subject is destroyed, times out or has its properties changed.</li>
+ * </ul>
+ * Decisions are keyed by the ID of the session rather than the session itself, so that the cache does not keep
+ * sessions alive. The cache listens to the events of a session from the first time a decision is looked up for it,
+ * until the session ends.
+ * The cache is disabled unless {@link Constants#POLICY_DECISION_CACHE_ENABLED} is set.
+ *
+ * @since 14.0.0
+ */
+public final class PolicyDecisionCache implements IdEventListener, SSOTokenListener {
+
+    private static final Debug DEBUG = PolicyConstants.DEBUG;
+    private static final int DEFAULT_MAX_SIZE = 100000;
+    private static final long DEFAULT_TTL = 60000;
+    private static final String POLICY_INDEX_SERVICE = "sunEntitlementIndexes";
+    private static final String APPLICATION_SERVICE = "sunEntitlementService";
+
+    private static final class InstanceHolder {
+        private static final PolicyDecisionCache INSTANCE;
+
+        static {
+            if (SystemProperties.getAsBoolean(Constants.POLICY_DECISION_CACHE_ENABLED, false)) {
+                INSTANCE = new PolicyDecisionCache(
+                        SystemProperties.getAsLong(Constants.POLICY_DECISION_CACHE_TTL, DEFAULT_TTL),
+                        SystemProperties.getAsInt(Constants.POLICY_DECISION_CACHE_MAX_SIZE, DEFAULT_MAX_SIZE));
+                INSTANCE.listenForPolicyChanges();
+            } else {
+                INSTANCE = new PolicyDecisionCache(0, 0);
+            }
+        }
+    }
+
+    private final IndexedCache.Index<Key> keysBySession = new IndexedCache.Index<Key>() {
+        @Override
+        protected String getId(Key key) {
+            return key.sessionId;
+        }
+    };
+    private final IndexedCache.Index<Key> keysByIdentity = new IndexedCache.Index<Key>() {
+        @Override
+        protected String getId(Key key) {
+            return key.universalId;
+        }
+    };
+    private final IndexedCache<Key, Entry> entries;
+    private final Set<String> listenedSessions = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final Set<String> listenedRealms = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final long ttl;
+    private volatile boolean enabled;
+
+    /**
+     * Returns the cache shared by the evaluators.
+     *
+     * @return The shared cache.
+     */
+    public static PolicyDecisionCache getInstance() {
+        return InstanceHolder.INSTANCE;
+    }
+
+    /**
+     * Creates a new cache.
+     *
+     * @param ttl How long decisions are cached for at most, in milliseconds. Zero disables the cache.
+     * @param maxSize The number of decisions the cache can hold.
+     */
+    PolicyDecisionCache(long ttl, int maxSize) {
+        this.ttl = Math.max(0, ttl);
+        this.entries = new IndexedCache<>(maxSize, keysBySession, keysByIdentity);
+        this.enabled = this.ttl > 0;
+    }
+
+    /**
+     * Returns the key of a request, if its decision can be cached.
+     *
+     * @param realm The realm of the request.
+     * @param applicationName The application of the request.
+     * @param subject The subject of the request.
+     * @param resourceName The requested resource.
+     * @param environment The environment of the request.
+     * @param recursive Whether the sub resources are evaluated too.
+     * @return The key, or null if the decision cannot be cached.
+     */
+    public Key getKey(String realm, String applicationName, Subject subject, String resourceName,
+            Map<String, Set<String>> environment, boolean recursive) {
+        if (!enabled || subject == null) {
+            return null;
+        }
+        SSOToken token = SubjectUtils.getSSOToken(subject);
+        if (token == null) {
+            return null;
+        }
+        try {
+            String universalId = token.getProperty(Constants.UNIVERSAL_IDENTIFIER);
+            String sessionId = token.getTokenID().toString();
+            if (!listenForSessionChanges(token, sessionId)) {
+                return null;
+            }
+            return new Key(realm, applicationName, sessionId, token.getAuthLevel(), universalId, resourceName,
+                    environment, recursive);
+        } catch (SSOException e) {
+            if (DEBUG.messageEnabled()) {
+                DEBUG.message("PolicyDecisionCache.getKey(): not caching decision for invalid session", e);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Returns the cached decision of a request.
+     *
+     * @param key The key of the request, may be null.
+     * @return A copy of the cached entitlements, or null if the decision is not cached.
+     */
+    public List<Entitlement> get(Key key) {
+        if (key == null) {
+            return null;
+        }
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (DEBUG.messageEnabled()) {
+            DEBUG.message("PolicyDecisionCache.get(): cached decision for " + key);
+        }
+        return copy(entry.entitlements);
+    }
+
+    /**
+     * Caches the decision of a request.
+     *
+     * @param key The key of the request, may be null.
+     * @param entitlements The entitlements of the decision.
+     * @param changesBeforeEvaluation The value of {@link #getChanges()} before the decision was evaluated, so that a
+     * decision made while the policies or identities changed is not cached.
+     */
+    public void put(Key key, List<Entitlement> entitlements, long changesBeforeEvaluation) {
+        if (key == null || entitlements == null) {
+            return;
+        }
+        long expiresAt = currentTimeMillis() + ttl;
+        for (Entitlement entitlement : entitlements) {
+            if (entitlement.hasAdvice()) {
+                return;
+            }
+            expiresAt = Math.min(expiresAt, entitlement.getTTL());
+        }
+        if (expiresAt <= currentTimeMillis()) {
+            return;
+        }
+
+        Entry entry = new Entry(copy(entitlements), expiresAt);
+        entries.put(key, entry);
+        entries.discardIfChanged(key, entry, changesBeforeEvaluation);
+    }
+
+    /**
+     * Returns a counter which changes every time decisions are discarded.
+     *
+     * @return The counter.
+     */
+    public long getChanges() {
+        return entries.getChanges();
+    }
+
+    /**
+     * Discards the decisions of a realm and application, as one of its policies changed.
+     *
+     * @param realm The realm of the policy.
+     * @param applicationName The application of the policy.
+     */
+    public void policyChanged(final String realm, final String applicationName) {
+        if (!enabled) {
+            return;
+        }
+        entries.invalidate(new Predicate<Key>() {
+            @Override
+            public boolean apply(Key key) {
+                return key.realm.equalsIgnoreCase(realm) && key.applicationName.equals(applicationName);
+            }
+        });
+    }
+
+    /**
+     * Discards all the cached decisions.
+     */
+    public void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Returns the number of cached decisions.
+     *
+     * @return The number of decisions.
+     */
+    int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the number of sessions the cached decisions are indexed by.
+     *
+     * @return The number of sessions.
+     */
+    int indexedSessions() {
+        return keysBySession.size();
+    }
+
+    /**
+     * Returns the number of identities the cached decisions are indexed by.
+     *
+     * @return The number of identities.
+     */
+    int indexedIdentities() {
+        return keysByIdentity.size();
+    }
+
+    @Override
+    public void ssoTokenChanged(SSOTokenEvent event) {
+        String sessionId = event.getToken().getTokenID().toString();
+        entries.invalidate(keysBySession, sessionId);
+        if (isSessionEnded(event)) {
+            listenedSessions.remove(sessionId);
+        }
+    }
+
+    @Override
+    public void identityChanged(String universalId) {
+        entries.invalidate(keysByIdentity, universalId);
+    }
+
+    @Override
+    public void identityDeleted(String universalId) {
+        entries.invalidate(keysByIdentity, universalId);
+    }
+
+    @Override
+    public void identityRenamed(String universalId) {
+        entries.invalidate(keysByIdentity, universalId);
+    }
+
+    @Override
+    public void allIdentitiesChanged() {
+        clear();
+    }
+
+    private void listenForPolicyChanges() {
+        ServiceListener listener = new ServiceListener() {
+            @Override
+            public void schemaChanged(String serviceName, String version) {
+                clear();
+            }
+
+            @Override
+            public void globalConfigChanged(String serviceName, String version, String groupName,
+                    String serviceComponent, int type) {
+                clear();
+            }
+
+            @Override
+            public void organizationConfigChanged(String serviceName, String version, String orgName,
+                    String groupName, String serviceComponent, int type) {
+                clear();
+            }
+        };
+        try {
+            SSOToken adminToken = AccessController.doPrivileged(AdminTokenAction.getInstance());
+            new ServiceConfigManager(POLICY_INDEX_SERVICE, adminToken).addListener(listener);
+            new ServiceConfigManager(APPLICATION_SERVICE, adminToken).addListener(listener);
+        } catch (SMSException | SSOException e) {
+            DEBUG.error("PolicyDecisionCache: unable to listen for policy changes, disabling the cache", e);
+            enabled = false;
+            clear();
+        }
+    }
+
+    /**
+     * Registers the cache for the identity changes of a realm, so that the decisions made for its identities can be
+     * discarded when they change.
+     *
+     * @param realm The realm.
+     */
+    public void listenForChanges(String realm) {
+        if (!enabled || realm == null || !listenedRealms.add(realm.toLowerCase())) {
+            return;
+        }
+        try {
+            SSOToken adminToken = AccessController.doPrivileged(AdminTokenAction.getInstance());
+            new AMIdentityRepository(adminToken, realm).addEventListener(this);
+        } catch (IdRepoException | SSOException e) {
+            listenedRealms.remove(realm.toLowerCase());
+            DEBUG.warning("PolicyDecisionCache: unable to listen for identity changes in " + realm, e);
+        }
+    }
+
+    /**
+     * Listens to the events of a session, unless already listening to them.
+     *
+     * @return Whether the events of the session are listened to, otherwise its decisions must not be cached.
+     */
+    private boolean listenForSessionChanges(SSOToken token, String sessionId) {
+        if (listenedSessions.contains(sessionId) || !listenedSessions.add(sessionId)) {
+            return true;
+        }
+        try {
+            token.addSSOTokenListener(this);
+            return true;
+        } catch (SSOException e) {
+            listenedSessions.remove(sessionId);
+            if (DEBUG.messageEnabled()) {
+                DEBUG.message("PolicyDecisionCache: unable to listen for the changes of a session", e);
+            }
+            return false;
+        }
+    }
+
+    private static boolean isSessionEnded(SSOTokenEvent event) {
+        try {
+            switch (event.getType()) {
+                case SSOTokenEvent.SSO_TOKEN_DESTROY:
+                case SSOTokenEvent.SSO_TOKEN_IDLE_TIMEOUT:
+                case SSOTokenEvent.SSO_TOKEN_MAX_TIMEOUT:
+                    return true;
+                default:
+                    return false;
+            }
+        } catch (SSOException e) {
+            return true;
+        }
+    }
+
+    /**
+     * The entitlements are mutable, so they are copied both into and out of the cache.
+     */
+    private static List<Entitlement> copy(List<Entitlement> entitlements) {
+        List<Entitlement> result = new ArrayList<>(entitlements.size());
+        for (Entitlement entitlement : entitlements) {
+            Entitlement copy = new Entitlement(entitlement.getApplicationName(), entitlement.getResourceName(),
+                    entitlement.getActionValues());
+            copy.setAttributes(copyValues(entitlement.getAttributes()));
+            copy.setAdvices(copyValues(entitlement.getAdvices()));
+            copy.setTTL(entitlement.getTTL());
+            result.add(copy);
+        }
+        return result;
+    }
+
+    private static Map<String, Set<String>> copyValues(Map<String, Set<String>> map) {
+        if (map == null) {
+            return null;
+        }
+        Map<String, Set<String>> result = new HashMap<>(map.size() * 2);
+        for (Map.Entry<String, Set<String>> entry : map.entrySet()) {
+            result.put(entry.getKey(), entry.getValue() == null ? null : new HashSet<>(entry.getValue()));
+        }
+        return result;
+    }
+
+    private static final class Entry implements IndexedCache.Expiring {
+
+        private final List<Entitlement> entitlements;
+        private final long expiresAt;
+
+        private Entry(List<Entitlement> entitlements, long expiresAt) {
+            this.entitlements = entitlements;
+            this.expiresAt = expiresAt;
+        }
+
+        @Override
+        public boolean isExpired(long now) {
+            return expiresAt <= now;
+        }
+    }
+
+    /**
+     * Identifies the request a decision was made for.
+     */
+    public static final class Key {
+
+        private final String realm;
+        private final String applicationName;
+        private final String sessionId;
+        private final int authLevel;
+        private final String universalId;
+        private final String resourceName;
+        private final Map<String, Set<String>> environment;
+        private final boolean recursive;
+        private final int hashCode;
+
+        private Key(String realm, String applicationName, String sessionId, int authLevel, String universalId,
+                String resourceName, Map<String, Set<String>> environment, boolean recursive) {
+            this.realm = realm.toLowerCase();
+            this.applicationName = applicationName;
+            this.sessionId = sessionId;
+            this.authLevel = authLevel;
+            this.universalId = universalId;
+            this.resourceName = resourceName;
+            this.environment = environment == null ? Collections.<String, Set<String>>emptyMap()
+                    : copyValues(environment);
+            this.recursive = recursive;
+
+            int result = this.realm.hashCode();
+            result = 31 * result + applicationName.hashCode();
+            result = 31 * result + sessionId.hashCode();
+            result = 31 * result + authLevel;
+            result = 31 * result + resourceName.hashCode();
+            result = 31 * result + this.environment.hashCode();
+            result = 31 * result + (recursive ? 1 : 0);
+            this.hashCode = result;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return hashCode == other.hashCode
+                    && authLevel == other.authLevel
+                    && recursive == other.recursive
+                    && realm.equals(other.realm)
+                    && applicationName.equals(other.applicationName)
+                    && sessionId.equals(other.sessionId)
+                    && resourceName.equals(other.resourceName)
+                    && environment.equals(other.environment);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public String toString() {
+            return realm + ":" + applicationName + ":" + universalId + ":" + resourceName;
+        }
+    }
+}
@@ -11,18 +11,23 @@
 * Header, with the fields enclosed by brackets [] replaced by your own identifying
 * information: "Portions copyright [year] [name of copyright owner]".
 *
-* Copyright 2014 ForgeRock AS.
+* Copyright 2014-2016 ForgeRock AS.
 */
 package org.forgerock.openam.entitlement.monitoring;
 
 import com.sun.identity.shared.debug.Debug;
+import java.util.EnumMap;
+import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
 import javax.security.auth.Subject;
+import org.forgerock.openam.shared.monitoring.metrics.Histogram;
+import org.forgerock.openam.shared.monitoring.metrics.MetricsRegistry;
 
 /**
  * Singleton through which all access to the policy monitoring stores is achieved.
@@ -50,6 +55,10 @@ public class PolicyMonitorImpl implements PolicyMonitor {
     //internal monitoring store
     private final InternalEvaluationTimingStore internalEvaluationTimingStore;
 
+    //record every evaluation time, rather than a sample of them
+    private final Map<PolicyMonitoringType, Histogram> evaluationDurations;
+    private final Histogram privilegeEvaluationDurations;
+
     //for pushing off our monitoring writes to another thread
     private final ExecutorService executorService;
     public static final String EXECUTOR_BINDING_NAME = "POLICY_MONITORING_EXECUTOR";
@@ -64,6 +73,7 @@ public class PolicyMonitorImpl implements PolicyMonitor {
      * @param subtreeEvaluationMonitoringStore Store for the SUBTREE mode evaluation monitoring
      * @param subtreeEvaluationTimingStore Store for the SELF mode timing monitoring
      * @param internalEvaluationTimingStore Store for the internal privilege evaluation monitoring
+     * @param metricsRegistry Registry the evaluation times are also recorded in
      */
     @Inject
     public PolicyMonitorImpl(@Named(POLICY_MONITOR_DEBUG) Debug debug,
@@ -72,7 +82,8 @@ public class PolicyMonitorImpl implements PolicyMonitor {
                              final EvaluationTimingStore selfEvaluationTimingStore,
                              final EvaluationMonitoringStore subtreeEvaluationMonitoringStore,
                              final EvaluationTimingStore subtreeEvaluationTimingStore,
-                             final InternalEvaluationTimingStore internalEvaluationTimingStore) {
+                             final InternalEvaluationTimingStore internalEvaluationTimingStore,
+                             final MetricsRegistry metricsRegistry) {
         this.debug = debug;
         this.executorService = executorService;
         this.selfEvaluationMonitoringStore = selfEvaluationMonitoringStore;
@@ -80,6 +91,13 @@ public class PolicyMonitorImpl implements PolicyMonitor {
         this.subtreeEvaluationMonitoringStore = subtreeEvaluationMonitoringStore;
         this.subtreeEvaluationTimingStore = subtreeEvaluationTimingStore;
         this.internalEvaluationTimingStore = internalEvaluationTimingStore;
+        this.evaluationDurations = new EnumMap<>(PolicyMonitoringType.class);
+        for (PolicyMonitoringType monitoringType : PolicyMonitoringType.values()) {
+            evaluationDurations.put(monitoringType, metricsRegistry.histogram("am_policy_evaluation_duration_seconds",
+                    "The time policy evaluations took.", "mode", monitoringType.name()));
+        }
+        this.privilegeEvaluationDurations = metricsRegistry.histogram("am_policy_privilege_evaluation_duration_seconds",
+                "The time the evaluations of individual policies took.");
     }
 
     /**
@@ -88,6 +106,7 @@ public class PolicyMonitorImpl implements PolicyMonitor {
     @Override
     public void addEvaluation(final long duration, final String realm, final String applicationName,
                               final String resourceName, final Subject subject, final PolicyMonitoringType monitoringType) {
+        evaluationDurations.get(monitoringType).record(duration, TimeUnit.MILLISECONDS);
         if (monitoringType == PolicyMonitoringType.SUBTREE) {
 
             try {
@@ -122,6 +141,7 @@ public class PolicyMonitorImpl implements PolicyMonitor {
     @Override
     public void addEvaluation(final String policyName, final long duration, final String realm,
                        final String applicationName, final String resourceName, final Subject subject) {
+        privilegeEvaluationDurations.record(duration, TimeUnit.MILLISECONDS);
 
         try {
             executorService.submit(new Callable<Void>() {
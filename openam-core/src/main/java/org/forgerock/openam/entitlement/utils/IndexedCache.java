@@ -0,0 +1,312 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openam.entitlement.utils;
+
+import static org.forgerock.openam.utils.Time.currentTimeMillis;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.forgerock.guava.common.base.Predicate;
+
+/**
+ * A bounded cache of expiring decisions, indexed by the identifiers their decisions can be discarded by, such as the
+ * identity or the session they were made for.
+ * <p>
+ * The cache counts the changes which discard decisions, so that a decision made while the identities or policies it
+ * depends on changed can be discarded, see {@link #discardIfChanged}. When the cache holds as many decisions as its
+ * maximum size allows, the expired ones are removed, or all of them if none have expired.
+ * <p>
+ * Identifiers are compared case-insensitively. An identifier is removed from its index along with its last key, so
+ * that the indexes do not grow with the identifiers of decisions which are no longer cached.
+ *
+ * @param <K> The type of the keys.
+ * @param <V> The type of the decisions.
+ * @since 14.0.0
+ */
+public final class IndexedCache<K, V extends IndexedCache.Expiring> {
+
+    /**
+     * A decision which expires.
+     */
+    public interface Expiring {
+
+        /**
+         * Tells whether the decision has expired.
+         *
+         * @param now The current time, in milliseconds.
+         * @return Whether the decision has expired.
+         */
+        boolean isExpired(long now);
+    }
+
+    /**
+     * Indexes the keys of the cache by an identifier their decisions can be discarded by.
+     *
+     * @param <K> The type of the keys.
+     */
+    public abstract static class Index<K> {
+
+        private final ConcurrentMap<String, Set<K>> keysById = new ConcurrentHashMap<>();
+
+        /**
+         * Returns the identifier a key is indexed by.
+         *
+         * @param key The key.
+         * @return The identifier, or null if the key is not indexed.
+         */
+        protected abstract String getId(K key);
+
+        /**
+         * Returns the number of identifiers in the index.
+         *
+         * @return The number of identifiers.
+         */
+        public int size() {
+            return keysById.size();
+        }
+
+        /**
+         * Adds a key to the keys of its identifier. The keys of an identifier are locked while they are changed, so
+         * that a key is never added to keys which {@link #remove} dropped from the index as they became empty.
+         */
+        private void add(K key) {
+            String id = getId(key);
+            if (id == null) {
+                return;
+            }
+            id = id.toLowerCase();
+            while (true) {
+                Set<K> keys = keysById.get(id);
+                if (keys == null) {
+                    Set<K> newKeys = Collections.newSetFromMap(new ConcurrentHashMap<K, Boolean>());
+                    keys = keysById.putIfAbsent(id, newKeys);
+                    if (keys == null) {
+                        keys = newKeys;
+                    }
+                }
+                synchronized (keys) {
+                    if (keysById.get(id) == keys) {
+                        keys.add(key);
+                        return;
+                    }
+                }
+            }
+        }
+
+        private void remove(K key) {
+            String id = getId(key);
+            if (id == null) {
+                return;
+            }
+            id = id.toLowerCase();
+            Set<K> keys = keysById.get(id);
+            if (keys != null) {
+                synchronized (keys) {
+                    if (keys.remove(key) && keys.isEmpty()) {
+                        keysById.remove(id, keys);
+                    }
+                }
+            }
+        }
+    }
+
+    private final ConcurrentMap<K, V> entries = new ConcurrentHashMap<>();
+    private final List<Index<K>> indexes;
+    private final AtomicLong changes = new AtomicLong();
+    private final int maxSize;
+
+    /**
+     * Creates a new cache.
+     *
+     * @param maxSize The number of decisions the cache can hold.
+     * @param indexes The indexes of the keys.
+     */
+    @SafeVarargs
+    public IndexedCache(int maxSize, Index<K>... indexes) {
+        this.maxSize = maxSize;
+        this.indexes = Arrays.asList(indexes);
+    }
+
+    /**
+     * Returns the decision cached for a key, removing it if it has expired.
+     *
+     * @param key The key.
+     * @return The decision, or null if no decision is cached or it has expired.
+     */
+    public V get(K key) {
+        V value = entries.get(key);
+        if (value != null && value.isExpired(currentTimeMillis())) {
+            remove(key, value);
+            return null;
+        }
+        return value;
+    }
+
+    /**
+     * Caches a decision, replacing the one cached for the key if any.
+     *
+     * @param key The key.
+     * @param value The decision.
+     */
+    public void put(K key, V value) {
+        makeRoomIfFull();
+        entries.put(key, value);
+        index(key);
+    }
+
+    /**
+     * Caches a decision unless one is cached for the key already.
+     *
+     * @param key The key.
+     * @param value The decision.
+     * @return The decision cached for the key already, or null if the decision was cached.
+     */
+    public V putIfAbsent(K key, V value) {
+        makeRoomIfFull();
+        V existing = entries.putIfAbsent(key, value);
+        if (existing == null) {
+            index(key);
+        }
+        return existing;
+    }
+
+    /**
+     * Removes a decision, if it is still the one cached for its key.
+     *
+     * @param key The key.
+     * @param value The decision.
+     */
+    public void remove(K key, V value) {
+        if (entries.remove(key, value)) {
+            for (Index<K> index : indexes) {
+                index.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Removes a decision if decisions were discarded since it started being made, as the identities or policies it
+     * depends on may have changed after it was made.
+     *
+     * @param key The key.
+     * @param value The decision.
+     * @param changesBefore The value of {@link #getChanges()} before the decision started being made.
+     */
+    public void discardIfChanged(K key, V value, long changesBefore) {
+        if (changes.get() != changesBefore) {
+            remove(key, value);
+        }
+    }
+
+    /**
+     * Discards the decisions indexed by an identifier.
+     *
+     * @param index The index.
+     * @param id The identifier, may be null.
+     * @return The number of decisions discarded.
+     */
+    public int invalidate(Index<K> index, String id) {
+        if (id == null) {
+            return 0;
+        }
+        changes.incrementAndGet();
+        Set<K> keys = index.keysById.remove(id.toLowerCase());
+        if (keys == null) {
+            return 0;
+        }
+        for (K key : keys) {
+            V value = entries.get(key);
+            if (value != null) {
+                remove(key, value);
+            }
+        }
+        return keys.size();
+    }
+
+    /**
+     * Discards the decisions whose keys match.
+     *
+     * @param predicate Matches the keys of the decisions to discard.
+     */
+    public void invalidate(Predicate<? super K> predicate) {
+        changes.incrementAndGet();
+        for (Map.Entry<K, V> entry : entries.entrySet()) {
+            if (predicate.apply(entry.getKey())) {
+                remove(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Discards all the decisions.
+     */
+    public void clear() {
+        changes.incrementAndGet();
+        entries.clear();
+        for (Index<K> index : indexes) {
+            index.keysById.clear();
+        }
+    }
+
+    /**
+     * Returns a counter which changes every time decisions are discarded.
+     *
+     * @return The counter.
+     */
+    public long getChanges() {
+        return changes.get();
+    }
+
+    /**
+     * Returns the number of cached decisions.
+     *
+     * @return The number of decisions.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    private void makeRoomIfFull() {
+        if (entries.size() < maxSize) {
+            return;
+        }
+        long now = currentTimeMillis();
+        int removed = 0;
+        for (Map.Entry<K, V> entry : entries.entrySet()) {
+            if (entry.getValue().isExpired(now)) {
+                remove(entry.getKey(), entry.getValue());
+                removed++;
+            }
+        }
+        if (removed == 0) {
+            clear();
+        }
+    }
+
+    private void index(K key) {
+        for (Index<K> index : indexes) {
+            index.add(key);
+        }
+    }
+}
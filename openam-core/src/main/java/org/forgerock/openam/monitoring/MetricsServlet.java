@@ -0,0 +1,90 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openam.monitoring;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.forgerock.guice.core.InjectorHolder;
+import org.forgerock.openam.shared.monitoring.metrics.Gauge;
+import org.forgerock.openam.shared.monitoring.metrics.MetricsRegistry;
+import org.forgerock.openam.shared.monitoring.metrics.PrometheusTextFormat;
+
+import com.iplanet.am.util.SystemProperties;
+import com.sun.identity.shared.Constants;
+
+/**
+ * Renders the content of the {@link MetricsRegistry} in the Prometheus text format, so that Prometheus can scrape
+ * OpenAM directly. The endpoint responds with 404 unless the {@link Constants#METRICS_ENDPOINT_ENABLED} property is
+ * set to true.
+ *
+ * @since 14.0.0
+ */
+public class MetricsServlet extends HttpServlet {
+
+    @Override
+    public void init(ServletConfig config) throws ServletException {
+        super.init(config);
+        MetricsRegistry registry = InjectorHolder.getInstance(MetricsRegistry.class);
+        final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        registry.gauge("am_jvm_heap_used_bytes", "The heap memory used by the JVM.", new Gauge() {
+            @Override
+            public double getValue() {
+                return memory.getHeapMemoryUsage().getUsed();
+            }
+        });
+        registry.gauge("am_jvm_heap_max_bytes", "The maximum heap memory available to the JVM.", new Gauge() {
+            @Override
+            public double getValue() {
+                return memory.getHeapMemoryUsage().getMax();
+            }
+        });
+        registry.gauge("am_jvm_threads", "The number of live threads.", new Gauge() {
+            @Override
+            public double getValue() {
+                return threads.getThreadCount();
+            }
+        });
+        registry.gauge("am_jvm_uptime_seconds", "The time since the JVM started.", new Gauge() {
+            @Override
+            public double getValue() {
+                return (double) ManagementFactory.getRuntimeMXBean().getUptime() / TimeUnit.SECONDS.toMillis(1);
+            }
+        });
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (!SystemProperties.getAsBoolean(Constants.METRICS_ENDPOINT_ENABLED, false)) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        response.setContentType(PrometheusTextFormat.CONTENT_TYPE);
+        response.setHeader("Cache-Control", "no-cache");
+        PrometheusTextFormat.write(InjectorHolder.getInstance(MetricsRegistry.class), response.getWriter());
+    }
+}
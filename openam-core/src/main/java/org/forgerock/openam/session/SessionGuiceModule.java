@@ -46,6 +46,7 @@ import com.iplanet.dpro.session.service.SessionAuditor;
 import com.iplanet.dpro.session.service.SessionLogging;
 import com.iplanet.dpro.session.service.SessionNotificationPublisher;
 import com.iplanet.dpro.session.service.SessionNotificationSender;
+import com.iplanet.dpro.session.service.SessionQuotaTracker;
 import com.iplanet.dpro.session.service.SessionServerConfig;
 import com.iplanet.dpro.session.service.SessionService;
 import com.iplanet.dpro.session.service.SessionTimeoutHandlerExecutor;
@@ -150,11 +151,12 @@ public class SessionGuiceModule extends PrivateModule {
             final SessionAuditor sessionAuditor,
             final SessionNotificationSender sessionNotificationSender,
             final SessionNotificationPublisher sessionNotificationPublisher,
-            final SessionTimeoutHandlerExecutor sessionTimeoutHandlerExecutor) {
+            final SessionTimeoutHandlerExecutor sessionTimeoutHandlerExecutor,
+            final SessionQuotaTracker sessionQuotaTracker) {
 
         return new InternalSessionEventBroker(
                 sessionLogging, sessionAuditor, sessionNotificationSender, sessionNotificationPublisher,
-                sessionTimeoutHandlerExecutor);
+                sessionTimeoutHandlerExecutor, sessionQuotaTracker);
     }
 
     @Provides
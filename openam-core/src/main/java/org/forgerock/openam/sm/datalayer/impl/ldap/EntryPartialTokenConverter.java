@@ -11,16 +11,20 @@
  * Header, with the fields enclosed by brackets [] replaced by your own identifying
  * information: "Portions copyright [year] [name of copyright owner]".
  *
- * Copyright 2015 ForgeRock AS.
+ * Copyright 2015-2016 ForgeRock AS.
  */
 
 package org.forgerock.openam.sm.datalayer.impl.ldap;
 
+import java.util.EnumSet;
+import java.util.Set;
+
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
 import org.forgerock.openam.cts.utils.LdapTokenAttributeConversion;
 import org.forgerock.openam.sm.datalayer.api.query.PartialToken;
+import org.forgerock.openam.tokens.CoreTokenField;
 import org.forgerock.opendj.ldap.Entry;
 
 /**
@@ -38,6 +42,26 @@ public class EntryPartialTokenConverter implements EntryConverter<PartialToken>
 
     @Override
     public PartialToken convert(Entry entry, String[] requestedAttributes) {
-        return new PartialToken(attributeConversion.mapFromEntry(entry));
+        return new PartialToken(attributeConversion.mapFromEntry(entry, getFields(requestedAttributes)));
+    }
+
+    /**
+     * Only the requested fields, and the ETag which is always returned alongside them, need decoding.
+     *
+     * @return The fields to decode, or null if every attribute of the entry should be decoded.
+     */
+    private Set<CoreTokenField> getFields(String[] requestedAttributes) {
+        if (requestedAttributes == null || requestedAttributes.length == 0) {
+            return null;
+        }
+        Set<CoreTokenField> fields = EnumSet.of(CoreTokenField.ETAG);
+        for (String attribute : requestedAttributes) {
+            CoreTokenField field = LdapTokenAttributeConversion.getTokenField(attribute);
+            if (field == null) {
+                return null;
+            }
+            fields.add(field);
+        }
+        return fields;
     }
 }
@@ -26,7 +26,9 @@ import javax.inject.Named;
 import javax.inject.Singleton;
 
 import org.forgerock.openam.cts.api.CoreTokenConstants;
+import org.forgerock.openam.cts.monitoring.CTSConnectionMonitoringStore;
 import org.forgerock.openam.ldap.LDAPUtils;
+import org.forgerock.openam.ldap.MeteredConnectionFactory;
 import org.forgerock.openam.sm.ConnectionConfig;
 import org.forgerock.openam.sm.ConnectionConfigFactory;
 import org.forgerock.openam.sm.datalayer.api.ConnectionFactory;
@@ -59,6 +61,10 @@ import com.sun.identity.shared.debug.Debug;
  * <p/>
  * External - Uses CTS Configuration for CTS connections which are pointed towards an external
  * LDAP server. Uses service management configuration for {@link StoreMode#DEFAULT} connections.
+ * <p/>
+ * Each {@link ConnectionType} gets its own connection pool, so that slow operations, such as the searches of the
+ * CTS reaper, do not hold up the connections used for the token reads and writes. The borrow metrics of each pool
+ * are reported through the {@link CTSConnectionMonitoringStore}.
  */
 @Singleton
 public class LdapConnectionFactoryProvider implements ConnectionFactoryProvider<Connection> {
@@ -68,21 +74,25 @@ public class LdapConnectionFactoryProvider implements ConnectionFactoryProvider<
     private final ConnectionConfigFactory configFactory;
     private final Debug debug;
     private final ConnectionType connectionType;
+    private final CTSConnectionMonitoringStore monitoringStore;
 
     /**
      * Generates an instance and registers the shutdown listener.
      *
      * @param connectionConfigFactory Required to resolve configuration parameters, non null.
      * @param timeoutConfig Timeout Configuration, Non null.
+     * @param monitoringStore Required to report the connection pool metrics, non null.
      * @param debug Required for debugging.
      */
     @Inject
     public LdapConnectionFactoryProvider(ConnectionType connectionType,
             ConnectionConfigFactory connectionConfigFactory,
             TimeoutConfig timeoutConfig,
+            CTSConnectionMonitoringStore monitoringStore,
             @Named(DataLayerConstants.DATA_LAYER_DEBUG) Debug debug) {
         this.configFactory = connectionConfigFactory;
         this.timeoutConfig = timeoutConfig;
+        this.monitoringStore = monitoringStore;
         this.debug = debug;
         this.connectionType = connectionType;
     }
@@ -107,14 +117,16 @@ public class LdapConnectionFactoryProvider implements ConnectionFactoryProvider<
                 config.getLdapHeartbeat(),
                 timeout);
 
-        final org.forgerock.opendj.ldap.ConnectionFactory ldapConnectionFactory = LDAPUtils.newFailoverConnectionPool(
-                config.getLDAPURLs(),
-                config.getBindDN(),
-                config.getBindPassword(),
-                config.getMaxConnections(),
-                config.getLdapHeartbeat(),
-                SECONDS.toString(),
-                options);
+        final MeteredConnectionFactory ldapConnectionFactory = new MeteredConnectionFactory(connectionType.name(),
+                LDAPUtils.newFailoverConnectionPool(
+                        config.getLDAPURLs(),
+                        config.getBindDN(),
+                        config.getBindPassword(),
+                        config.getMaxConnections(),
+                        config.getLdapHeartbeat(),
+                        SECONDS.toString(),
+                        options));
+        monitoringStore.addConnectionPool(connectionType, ldapConnectionFactory);
 
         return new LdapConnectionFactory(ldapConnectionFactory);
     }
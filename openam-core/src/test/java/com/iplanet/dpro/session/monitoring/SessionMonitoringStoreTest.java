@@ -11,7 +11,7 @@
 * Header, with the fields enclosed by brackets [] replaced by your own identifying
 * information: "Portions copyright [year] [name of copyright owner]".
 *
-* Copyright 2014 ForgeRock AS.
+* Copyright 2014-2016 ForgeRock AS.
 */
 package com.iplanet.dpro.session.monitoring;
 
@@ -25,6 +25,7 @@ import static org.mockito.Matchers.anyLong;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import org.forgerock.openam.shared.monitoring.metrics.MetricsRegistry;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
@@ -42,8 +43,8 @@ public class SessionMonitoringStoreTest {
     @BeforeMethod
     public void setUp() {
         mockFactory = mock(SessionMonitoringTimingStoreFactory.class);
-        testSessionMonitoringStore = new SessionMonitoringStore(service, mockFactory, refreshStore,
-                propertyStore, destroyStore, logoutStore);
+        testSessionMonitoringStore = new SessionMonitoringStore(service, mockFactory, new MetricsRegistry(),
+                refreshStore, propertyStore, destroyStore, logoutStore);
     }
 
     @Test
@@ -17,16 +17,20 @@
 package com.iplanet.dpro.session.service;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.atLeastOnce;
 import static org.mockito.BDDMockito.eq;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.BDDMockito.mock;
 import static org.mockito.BDDMockito.verify;
 
 import org.forgerock.openam.session.service.SessionAccessManager;
+import org.forgerock.openam.shared.monitoring.metrics.MetricsRegistry;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import com.iplanet.dpro.session.SessionID;
+import com.iplanet.dpro.session.service.AuthenticationSessionStore.RejectionPolicy;
+import com.sun.identity.shared.debug.Debug;
 
 public class AuthenticationSessionStoreTest {
 
@@ -45,7 +49,8 @@ public class AuthenticationSessionStoreTest {
         given(mockSession.getSessionID()).willReturn(mockSessionID);
         given(mockSession.getTimeLeft()).willReturn(1000L);
 
-        store = new AuthenticationSessionStore(mockAccessManager);
+        store = new AuthenticationSessionStore(mockAccessManager, new MetricsRegistry(), mock(Debug.class), 0,
+                RejectionPolicy.REJECT);
     }
 
     @Test (expectedExceptions = IllegalStateException.class)
@@ -100,4 +105,56 @@ public class AuthenticationSessionStoreTest {
         InternalSession result = store.removeSession(mockSessionID);
         assertThat(result).isNull();
     }
-}
\ No newline at end of file
+
+    @Test
+    public void shouldCullSessionsOnceDue() {
+        given(mockSession.getTimeLeft()).willReturn(0L);
+        store.addSession(mockSession);
+
+        store.cullExpiredSessions();
+
+        verify(mockSession, atLeastOnce()).getTimeLeft();
+        assertThat(store.removeSession(mockSessionID)).isNull();
+    }
+
+    @Test
+    public void shouldNotCullSessionsBeforeTheyAreDue() {
+        store.addSession(mockSession);
+
+        store.cullExpiredSessions();
+
+        assertThat(store.removeSession(mockSessionID)).isEqualTo(mockSession);
+    }
+
+    @Test (expectedExceptions = IllegalStateException.class)
+    public void shouldRejectSessionsWhenFull() {
+        store = new AuthenticationSessionStore(mockAccessManager, new MetricsRegistry(), mock(Debug.class), 1,
+                RejectionPolicy.REJECT);
+        store.addSession(mockSession);
+        store.addSession(newSession(1000L));
+    }
+
+    @Test
+    public void shouldEvictSessionNextToExpireWhenFull() {
+        store = new AuthenticationSessionStore(mockAccessManager, new MetricsRegistry(), mock(Debug.class), 2,
+                RejectionPolicy.EVICT_NEXT_TO_EXPIRE);
+        InternalSession longLived = newSession(5000L);
+        InternalSession newest = newSession(3000L);
+        store.addSession(longLived);
+        store.addSession(mockSession);
+
+        store.addSession(newest);
+
+        assertThat(store.getSession(mockSessionID)).isNull();
+        assertThat(store.getSession(longLived.getSessionID())).isEqualTo(longLived);
+        assertThat(store.getSession(newest.getSessionID())).isEqualTo(newest);
+    }
+
+    private InternalSession newSession(long timeLeft) {
+        InternalSession session = mock(InternalSession.class);
+        SessionID sessionID = mock(SessionID.class);
+        given(session.getSessionID()).willReturn(sessionID);
+        given(session.getTimeLeft()).willReturn(timeLeft);
+        return session;
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package com.iplanet.dpro.session.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.forgerock.openam.utils.Time.currentTimeMillis;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.mock;
+import static org.mockito.BDDMockito.times;
+import static org.mockito.BDDMockito.verify;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Provider;
+
+import org.forgerock.openam.session.SessionEventType;
+import org.forgerock.openam.session.service.access.SessionQueryManager;
+import org.forgerock.openam.shared.monitoring.metrics.MetricsRegistry;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.iplanet.dpro.session.SessionID;
+import com.sun.identity.shared.debug.Debug;
+
+public class SessionQuotaTrackerTest {
+
+    private static final String UUID = "id=demo,ou=user,dc=openam,dc=forgerock,dc=org";
+
+    private SessionQueryManager mockQueryManager;
+    private SessionQuotaTracker tracker;
+
+    @BeforeMethod
+    public void setup() {
+        mockQueryManager = mock(SessionQueryManager.class);
+        tracker = newTracker(true, TimeUnit.MINUTES.toMillis(1));
+    }
+
+    @Test
+    public void shouldQueryRepositoryWhenDisabled() throws Exception {
+        tracker = newTracker(false, TimeUnit.MINUTES.toMillis(1));
+        given(mockQueryManager.getAllSessionsByUUID(UUID)).willReturn(sessions("one"));
+
+        tracker.getSessions(UUID, 5);
+        tracker.getSessions(UUID, 5);
+
+        verify(mockQueryManager, times(2)).getAllSessionsByUUID(UUID);
+    }
+
+    @Test
+    public void shouldUseTrackedSessionsBelowQuota() throws Exception {
+        given(mockQueryManager.getAllSessionsByUUID(UUID)).willReturn(sessions("one"));
+
+        tracker.getSessions(UUID, 5);
+        tracker.onEvent(event(UUID, "two", SessionEventType.SESSION_CREATION));
+        Map<String, Long> sessions = tracker.getSessions(UUID.toUpperCase(), 5);
+
+        assertThat(sessions).containsOnlyKeys("one", "two");
+        verify(mockQueryManager, times(1)).getAllSessionsByUUID(UUID);
+    }
+
+    @Test
+    public void shouldQueryRepositoryWhenQuotaIsReached() throws Exception {
+        given(mockQueryManager.getAllSessionsByUUID(UUID)).willReturn(sessions("one"));
+
+        tracker.getSessions(UUID, 2);
+        tracker.onEvent(event(UUID, "two", SessionEventType.SESSION_CREATION));
+        tracker.getSessions(UUID, 2);
+
+        verify(mockQueryManager, times(2)).getAllSessionsByUUID(UUID);
+    }
+
+    @Test
+    public void shouldForgetDestroyedSessions() throws Exception {
+        given(mockQueryManager.getAllSessionsByUUID(UUID)).willReturn(sessions("one", "two"));
+
+        tracker.getSessions(UUID, 5);
+        tracker.onEvent(event(UUID, "two", SessionEventType.LOGOUT));
+        Map<String, Long> sessions = tracker.getSessions(UUID, 5);
+
+        assertThat(sessions).containsOnlyKeys("one");
+        verify(mockQueryManager, times(1)).getAllSessionsByUUID(UUID);
+    }
+
+    @Test
+    public void shouldReconcileOnceReconcilePeriodHasPassed() throws Exception {
+        tracker = newTracker(true, -1);
+        given(mockQueryManager.getAllSessionsByUUID(UUID)).willReturn(sessions("one"));
+
+        tracker.getSessions(UUID, 5);
+        tracker.getSessions(UUID, 5);
+
+        verify(mockQueryManager, times(2)).getAllSessionsByUUID(UUID);
+    }
+
+    @Test
+    public void shouldNotTrackUsersNotYetReconciled() throws Exception {
+        given(mockQueryManager.getAllSessionsByUUID(UUID)).willReturn(sessions());
+
+        tracker.onEvent(event(UUID, "one", SessionEventType.SESSION_CREATION));
+        Map<String, Long> sessions = tracker.getSessions(UUID, 5);
+
+        assertThat(sessions).isEmpty();
+        verify(mockQueryManager, times(1)).getAllSessionsByUUID(UUID);
+    }
+
+    @Test
+    public void shouldForgetUserWhenLastLocalSessionEndsWithoutRemoteSessions() throws Exception {
+        given(mockQueryManager.getAllSessionsByUUID(UUID)).willReturn(sessions());
+
+        tracker.getSessions(UUID, 5);
+        tracker.onEvent(event(UUID, "one", SessionEventType.SESSION_CREATION));
+        tracker.onEvent(event(UUID, "one", SessionEventType.LOGOUT));
+
+        assertThat(tracker.getTrackedUserCount()).isZero();
+    }
+
+    @Test
+    public void shouldKeepUserWithRemoteSessionsWhenLastLocalSessionEnds() throws Exception {
+        given(mockQueryManager.getAllSessionsByUUID(UUID)).willReturn(sessions("remote"));
+
+        tracker.getSessions(UUID, 5);
+        tracker.onEvent(event(UUID, "one", SessionEventType.SESSION_CREATION));
+        tracker.onEvent(event(UUID, "one", SessionEventType.LOGOUT));
+        Map<String, Long> sessions = tracker.getSessions(UUID, 5);
+
+        assertThat(sessions).containsOnlyKeys("remote");
+        verify(mockQueryManager, times(1)).getAllSessionsByUUID(UUID);
+    }
+
+    @Test
+    public void shouldForgetUserWhenLastLocalSessionEndsAndRemoteSessionsMustBeReconciled() throws Exception {
+        tracker = newTracker(true, -1);
+        given(mockQueryManager.getAllSessionsByUUID(UUID)).willReturn(sessions("remote"));
+
+        tracker.getSessions(UUID, 5);
+        tracker.onEvent(event(UUID, "one", SessionEventType.SESSION_CREATION));
+        tracker.onEvent(event(UUID, "one", SessionEventType.LOGOUT));
+
+        assertThat(tracker.getTrackedUserCount()).isZero();
+    }
+
+    @Test
+    public void shouldKeepUserWhileLocalSessionsRemain() throws Exception {
+        tracker = newTracker(true, -1);
+        given(mockQueryManager.getAllSessionsByUUID(UUID)).willReturn(sessions());
+
+        tracker.getSessions(UUID, 5);
+        tracker.onEvent(event(UUID, "one", SessionEventType.SESSION_CREATION));
+        tracker.onEvent(event(UUID, "two", SessionEventType.SESSION_CREATION));
+        tracker.onEvent(event(UUID, "one", SessionEventType.LOGOUT));
+
+        assertThat(tracker.getTrackedUserCount()).isEqualTo(1);
+    }
+
+    private SessionQuotaTracker newTracker(boolean enabled, long reconcilePeriod) {
+        return new SessionQuotaTracker(new Provider<SessionQueryManager>() {
+            @Override
+            public SessionQueryManager get() {
+                return mockQueryManager;
+            }
+        }, new MetricsRegistry(), mock(Debug.class), enabled, false, reconcilePeriod);
+    }
+
+    private static Map<String, Long> sessions(String... sessionIds) {
+        long expirationTime = TimeUnit.MILLISECONDS.toSeconds(currentTimeMillis()) + 3600;
+        Map<String, Long> sessions = new HashMap<>();
+        for (String sessionId : sessionIds) {
+            sessions.put(sessionId, expirationTime);
+        }
+        return sessions;
+    }
+
+    private static InternalSessionEvent event(String uuid, String sessionId, SessionEventType type) {
+        InternalSession session = mock(InternalSession.class);
+        SessionID sessionID = mock(SessionID.class);
+        given(sessionID.toString()).willReturn(sessionId);
+        given(session.getSessionID()).willReturn(sessionID);
+        given(session.getUUID()).willReturn(uuid);
+        given(session.getMaxSessionExpirationTime(TimeUnit.SECONDS))
+                .willReturn(TimeUnit.MILLISECONDS.toSeconds(currentTimeMillis()) + 3600);
+        return new InternalSessionEvent(session, type, currentTimeMillis());
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package com.sun.identity.entitlement;
+
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.security.auth.Subject;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Checks that the policies a batch search selects for each resource are the ones a search for that resource alone
+ * selects, which is all batch evaluation changes. The index store is stood in for by a search matching the indexes
+ * the way its filter does.
+ */
+public class PrivilegeEvaluatorBatchSearchTest {
+
+    private static final String REALM = "/";
+    private static final Subject ADMIN = new Subject();
+    private static final Set<String> SUBJECT_INDEXES = new HashSet<>(asList("id=demo", "authenticated"));
+
+    private List<StoredPolicy> store;
+
+    @BeforeMethod
+    public void setUp() {
+        store = new ArrayList<>();
+    }
+
+    @Test
+    public void shouldSelectSamePoliciesForOverlappingResources() throws Exception {
+        Map<String, ResourceSearchIndexes> resources = new HashMap<>();
+        resources.put("http://a.com:80/x", indexes(asList("://a.com", "://.com"), asList("/x", "/")));
+        resources.put("http://a.com:80/x/y", indexes(asList("://a.com", "://.com"), asList("/x/y", "/x", "/")));
+        storePolicy(asList("://a.com"), asList("/x"), "authenticated");
+        storePolicy(asList("://A.com"), asList("/X/Y"), "id=demo");
+        storePolicy(asList("://.com"), asList("/"), "authenticated");
+        storePolicy(asList("://a.com"), asList("/z"), "authenticated");
+
+        assertSamePoliciesAsSearchedAlone(resources);
+    }
+
+    @Test
+    public void shouldSelectSamePoliciesForDisjointResources() throws Exception {
+        Map<String, ResourceSearchIndexes> resources = new HashMap<>();
+        resources.put("http://a.com:80/x", indexes(asList("://a.com"), asList("/x")));
+        resources.put("http://b.org:80/y", indexes(asList("://b.org"), asList("/y")));
+        storePolicy(asList("://a.com"), asList("/x"), "authenticated");
+        storePolicy(asList("://b.org"), asList("/y"), "authenticated");
+        // Found by the union of the indexes, but by neither resource alone
+        storePolicy(asList("://a.com"), asList("/y"), "authenticated");
+        storePolicy(asList("://b.org"), asList("/x"), "authenticated");
+
+        assertSamePoliciesAsSearchedAlone(resources);
+        assertThat(policiesOf(batch(resources), "http://a.com:80/x")).hasSize(1);
+    }
+
+    @Test
+    public void shouldNotSelectPoliciesOfOtherSubjects() throws Exception {
+        Map<String, ResourceSearchIndexes> resources = new HashMap<>();
+        resources.put("http://a.com:80/x", indexes(asList("://a.com"), asList("/x")));
+        storePolicy(asList("://a.com"), asList("/x"), "id=demo");
+        storePolicy(asList("://a.com"), asList("/x"), "id=other");
+
+        assertSamePoliciesAsSearchedAlone(resources);
+        assertThat(policiesOf(batch(resources), "http://a.com:80/x")).hasSize(1);
+    }
+
+    @Test
+    public void shouldSelectNoPoliciesForNoResources() throws Exception {
+        Map<String, ResourceSearchIndexes> resources = Collections.emptyMap();
+        storePolicy(asList("://a.com"), asList("/x"), "authenticated");
+
+        PrivilegeEvaluator.BatchSearch batch = batch(resources);
+
+        assertThat(batch.covers("http://a.com:80/x")).isFalse();
+        assertThat(policiesOf(batch, "http://a.com:80/x")).isEmpty();
+    }
+
+    @Test
+    public void shouldOnlyCoverResourcesOfBatch() throws Exception {
+        Map<String, ResourceSearchIndexes> resources = new HashMap<>();
+        resources.put("http://a.com:80/x", indexes(asList("://a.com"), asList("/x")));
+
+        PrivilegeEvaluator.BatchSearch batch = batch(resources);
+
+        assertThat(batch.covers("http://a.com:80/x")).isTrue();
+        assertThat(batch.covers("http://a.com:80/y")).isFalse();
+    }
+
+    @Test
+    public void shouldSelectPoliciesWithoutIndexesForEveryResource() throws Exception {
+        Map<String, ResourceSearchIndexes> resources = new HashMap<>();
+        resources.put("http://a.com:80/x", indexes(asList("://a.com"), asList("/x")));
+        resources.put("http://b.org:80/y", indexes(asList("://b.org"), asList("/y")));
+        IPrivilege policy = mock(IPrivilege.class);
+
+        PrivilegeEvaluator.BatchSearch batch = PrivilegeEvaluator.BatchSearch.of(ADMIN, REALM, resources,
+                Collections.singletonList(policy).iterator());
+
+        assertThat(policiesOf(batch, "http://a.com:80/x")).containsExactly(policy);
+        assertThat(policiesOf(batch, "http://b.org:80/y")).containsExactly(policy);
+    }
+
+    private void assertSamePoliciesAsSearchedAlone(Map<String, ResourceSearchIndexes> resources) throws Exception {
+        PrivilegeEvaluator.BatchSearch batch = batch(resources);
+        for (Map.Entry<String, ResourceSearchIndexes> resource : resources.entrySet()) {
+            assertThat(policiesOf(batch, resource.getKey()))
+                    .as(resource.getKey())
+                    .containsOnlyElementsOf(search(resource.getValue()))
+                    .hasSameSizeAs(search(resource.getValue()));
+        }
+    }
+
+    private PrivilegeEvaluator.BatchSearch batch(Map<String, ResourceSearchIndexes> resources) throws Exception {
+        ResourceSearchIndexes union = new ResourceSearchIndexes(null, null, null);
+        for (ResourceSearchIndexes indexes : resources.values()) {
+            union.addAll(indexes);
+        }
+        List<IPrivilege> found = resources.isEmpty() ? Collections.<IPrivilege>emptyList() : search(union);
+        return PrivilegeEvaluator.BatchSearch.of(ADMIN, REALM, resources, found.iterator());
+    }
+
+    /**
+     * Matches the stored policies the way the index store filter does: on any of the subject indexes, any of the
+     * host indexes and any of the path indexes, case-insensitively.
+     */
+    private List<IPrivilege> search(ResourceSearchIndexes indexes) {
+        List<IPrivilege> found = new ArrayList<>();
+        for (StoredPolicy stored : store) {
+            if (intersects(stored.subjectIndexes, SUBJECT_INDEXES)
+                    && intersects(stored.saveIndexes.getHostIndexes(), indexes.getHostIndexes())
+                    && intersects(stored.saveIndexes.getPathIndexes(), indexes.getPathIndexes())) {
+                found.add(stored.policy);
+            }
+        }
+        return found;
+    }
+
+    private static boolean intersects(Set<String> stored, Set<String> searched) {
+        for (String index : stored) {
+            for (String value : searched) {
+                if (index.equalsIgnoreCase(value)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static List<IPrivilege> policiesOf(PrivilegeEvaluator.BatchSearch batch, String resourceName) {
+        List<IPrivilege> policies = new ArrayList<>();
+        for (Iterator<IPrivilege> i = batch.getPolicies(resourceName); i.hasNext();) {
+            policies.add(i.next());
+        }
+        return policies;
+    }
+
+    private void storePolicy(List<String> hostIndexes, List<String> pathIndexes, String subjectIndex)
+            throws Exception {
+        ResourceSaveIndexes saveIndexes =
+                new ResourceSaveIndexes(new HashSet<>(hostIndexes), new HashSet<>(pathIndexes), null);
+        Privilege policy = mock(Privilege.class);
+        given(policy.getResourceSaveIndexes(any(Subject.class), anyString())).willReturn(saveIndexes);
+        store.add(new StoredPolicy(policy, saveIndexes, Collections.singleton(subjectIndex)));
+    }
+
+    private static ResourceSearchIndexes indexes(List<String> hostIndexes, List<String> pathIndexes) {
+        return new ResourceSearchIndexes(new HashSet<>(hostIndexes), new HashSet<>(pathIndexes), null);
+    }
+
+    private static final class StoredPolicy {
+
+        private final IPrivilege policy;
+        private final ResourceSaveIndexes saveIndexes;
+        private final Set<String> subjectIndexes;
+
+        private StoredPolicy(IPrivilege policy, ResourceSaveIndexes saveIndexes, Set<String> subjectIndexes) {
+            this.policy = policy;
+            this.saveIndexes = saveIndexes;
+            this.subjectIndexes = subjectIndexes;
+        }
+    }
+}
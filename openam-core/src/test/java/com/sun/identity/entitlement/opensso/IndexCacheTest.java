@@ -0,0 +1,47 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package com.sun.identity.entitlement.opensso;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.forgerock.openam.utils.CollectionUtils.asSet;
+
+import org.testng.annotations.Test;
+
+import com.sun.identity.entitlement.ResourceSaveIndexes;
+import com.sun.identity.entitlement.ResourceSearchIndexes;
+
+public class IndexCacheTest {
+
+    private static final String DN = "ou=policy,ou=default,ou=OrganizationConfig,ou=1.0,ou=sunEntitlementIndexes";
+
+    @Test
+    public void shouldTrackIndexCountAndHitRatio() {
+        IndexCache cache = new IndexCache(1000);
+        cache.cache(new ResourceSaveIndexes(asSet("://www.example.com"), asSet("/index.html"), asSet("/")),
+                null, DN);
+
+        assertThat(cache.getIndexCount()).isEqualTo(3);
+        assertThat(cache.getHitRatio()).isEqualTo(0.0);
+
+        assertThat(cache.getMatchingEntries(new ResourceSearchIndexes(asSet("://www.example.com"),
+                asSet("/index.html"), asSet("/")), null, false)).containsOnly(DN);
+        assertThat(cache.getMatchingEntries(new ResourceSearchIndexes(asSet("://www.example.org"),
+                asSet("/index.html"), asSet("/")), null, false)).isEmpty();
+
+        assertThat(cache.getHitRatio()).isEqualTo(0.5);
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package com.sun.identity.log.handlers;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.logging.Formatter;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Checks that every record is inserted exactly once however the driver reports a failed batch. The database is
+ * stood in for by a prepared statement which records the times of the records it inserts.
+ */
+public class DBHandlerTest {
+
+    private static final int BATCH_SIZE = 3;
+    private static final Long[] RECORDS = {1L, 2L, 3L, 4L, 5L, 6L, 7L};
+
+    private Connection connection;
+    private PreparedStatement insertStatement;
+    private List<Long> inserted;
+    private List<Long> batch;
+    private Long current;
+    private int executedBatches;
+    private int[] secondBatchUpdateCounts;
+    private boolean failSecondBatch;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        inserted = new ArrayList<>();
+        batch = new ArrayList<>();
+        executedBatches = 0;
+        failSecondBatch = false;
+        connection = mock(Connection.class);
+        insertStatement = mock(PreparedStatement.class);
+        given(connection.createStatement()).willReturn(mock(Statement.class));
+        given(connection.prepareStatement(anyString())).willReturn(insertStatement);
+
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                current = ((Timestamp) invocation.getArguments()[1]).getTime();
+                return null;
+            }
+        }).when(insertStatement).setTimestamp(eq(1), any(Timestamp.class));
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                batch.add(current);
+                return null;
+            }
+        }).when(insertStatement).addBatch();
+        given(insertStatement.executeUpdate()).willAnswer(new Answer<Integer>() {
+            @Override
+            public Integer answer(InvocationOnMock invocation) {
+                inserted.add(current);
+                return 1;
+            }
+        });
+        given(insertStatement.executeBatch()).willAnswer(new Answer<int[]>() {
+            @Override
+            public int[] answer(InvocationOnMock invocation) throws SQLException {
+                return executeBatch();
+            }
+        });
+    }
+
+    @Test
+    public void shouldInsertAllRecordsInBatches() throws Exception {
+        logRecords(BATCH_SIZE);
+
+        assertThat(inserted).containsExactly(RECORDS);
+        assertThat(executedBatches).isEqualTo(3);
+        verify(insertStatement, never()).executeUpdate();
+    }
+
+    @Test
+    public void shouldInsertWholeBatchOneAtATimeWhenUpdateCountsAreUnknown() throws Exception {
+        failSecondBatchWith(null);
+
+        logRecords(BATCH_SIZE);
+
+        assertThat(inserted).containsExactly(RECORDS);
+    }
+
+    @Test
+    public void shouldInsertRecordsAfterTheFailedOneWhenUpdateCountsAreTruncated() throws Exception {
+        failSecondBatchWith(new int[] {1});
+
+        logRecords(BATCH_SIZE);
+
+        assertThat(inserted).containsExactly(RECORDS);
+    }
+
+    @Test
+    public void shouldInsertOnlyFailedRecordsOfBatchOneAtATime() throws Exception {
+        failSecondBatchWith(new int[] {1, Statement.EXECUTE_FAILED, Statement.SUCCESS_NO_INFO});
+
+        logRecords(BATCH_SIZE);
+
+        assertThat(inserted).containsOnly(RECORDS).hasSize(RECORDS.length);
+    }
+
+    @Test
+    public void shouldInsertOneAtATimeWhenBatchSizeIsOne() throws Exception {
+        logRecords(1);
+
+        assertThat(inserted).containsExactly(RECORDS);
+        assertThat(executedBatches).isZero();
+    }
+
+    private void logRecords(int batchSize) {
+        DBHandler handler = new DBHandler("am_access", connection, mock(Formatter.class), batchSize, true);
+        LinkedList<LogRecord> records = new LinkedList<>();
+        for (Long millis : RECORDS) {
+            LogRecord record = new LogRecord(Level.INFO, "record " + millis);
+            record.setMillis(millis);
+            records.add(record);
+        }
+        handler.logRecords(records);
+    }
+
+    private void failSecondBatchWith(int[] updateCounts) {
+        failSecondBatch = true;
+        secondBatchUpdateCounts = updateCounts;
+    }
+
+    /**
+     * Inserts the records of the batch, or if it is the second batch and it is set to fail, only those the update
+     * counts report as inserted before throwing them.
+     */
+    private int[] executeBatch() throws SQLException {
+        List<Long> executed = new ArrayList<>(batch);
+        batch.clear();
+        executedBatches++;
+        if (failSecondBatch && executedBatches == 2) {
+            if (secondBatchUpdateCounts != null) {
+                for (int i = 0; i < secondBatchUpdateCounts.length; i++) {
+                    if (secondBatchUpdateCounts[i] != Statement.EXECUTE_FAILED) {
+                        inserted.add(executed.get(i));
+                    }
+                }
+            }
+            throw new BatchUpdateException(secondBatchUpdateCounts);
+        }
+        inserted.addAll(executed);
+        int[] updateCounts = new int[executed.size()];
+        Arrays.fill(updateCounts, 1);
+        return updateCounts;
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package com.sun.identity.log.handlers;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.logging.Formatter;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Checks that the file is rotated on the number of bytes it holds, counting those already in a file appended to,
+ * and that records are forced to the storage device by the sync timer and when the handler is closed.
+ */
+public class FileHandlerTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String HEADER = "#Version: 1.0\n";
+    private static final String EXISTING = HEADER + "existing\n";
+    private static final long MAX_FILE_SIZE = 30L;
+    private static final int BUFFER_SIZE = 100;
+
+    private File directory;
+    private File file;
+    private File rotated;
+    private FileHandler handler;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("filehandler").toFile();
+        file = new File(directory, "amAuthentication.access");
+        rotated = new File(directory, "amAuthentication.access-1");
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        if (handler != null) {
+            handler.close();
+            handler = null;
+        }
+        File[] children = directory.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                child.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void shouldAppendRecordThatFitsInExistingFile() throws Exception {
+        // Given
+        write(file, EXISTING);
+        handler = newHandler(MAX_FILE_SIZE, 0L);
+
+        // When
+        publish("ab");
+        handler.flush();
+
+        // Then
+        assertThat(rotated.exists()).isFalse();
+        assertThat(read(file)).isEqualTo(EXISTING + "ab\n");
+    }
+
+    @Test
+    public void shouldRotateExistingFileWhenRecordWouldExceedMaxSize() throws Exception {
+        // Given
+        write(file, EXISTING);
+        handler = newHandler(MAX_FILE_SIZE, 0L);
+
+        // When
+        publish("0123456");
+        handler.flush();
+
+        // Then
+        assertThat(read(rotated)).isEqualTo(EXISTING);
+        assertThat(read(file)).isEqualTo(HEADER + "0123456\n");
+    }
+
+    @Test
+    public void shouldRotateOnEncodedSizeOfMultiByteRecords() throws Exception {
+        // Given
+        String record = "\u00e9\u00e9\u00e9\u00e9";
+        write(file, EXISTING);
+        handler = newHandler(MAX_FILE_SIZE, 0L);
+        handler.setEncoding("UTF-8");
+
+        // When
+        publish(record);
+        handler.flush();
+
+        // Then
+        assertThat(read(rotated)).isEqualTo(EXISTING);
+        assertThat(Files.readAllBytes(file.toPath())).isEqualTo((HEADER + record + "\n").getBytes(UTF_8));
+    }
+
+    @Test
+    public void shouldSyncQuietFileOnTimer() throws Exception {
+        // Given
+        handler = newHandler(1024L, 1000L);
+        publish("first");
+        handler.flush();
+        publish("second");
+        handler.flush();
+        assertThat(handler.isSynced()).isFalse();
+
+        // When
+        long deadline = System.currentTimeMillis() + 10000L;
+        while (!handler.isSynced() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50L);
+        }
+
+        // Then
+        assertThat(handler.isSynced()).isTrue();
+        assertThat(read(file)).isEqualTo(HEADER + "first\nsecond\n");
+    }
+
+    @Test
+    public void shouldSyncAndCloseFileOnClose() throws Exception {
+        // Given
+        handler = newHandler(1024L, 60000L);
+        publish("first");
+        handler.flush();
+        publish("second");
+        handler.flush();
+        publish("third");
+
+        // When
+        handler.close();
+
+        // Then
+        assertThat(handler.isSynced()).isTrue();
+        assertThat(handler.isOpen()).isFalse();
+        assertThat(read(file)).isEqualTo(HEADER + "first\nsecond\nthird\n");
+        handler = null;
+    }
+
+    private FileHandler newHandler(long maxFileSize, long syncInterval) throws IOException {
+        FileHandler fileHandler = new FileHandler(file, maxFileSize, 1, syncInterval, BUFFER_SIZE);
+        fileHandler.setFormatter(new LineFormatter());
+        return fileHandler;
+    }
+
+    private void publish(String message) {
+        handler.publish(new LogRecord(Level.INFO, message));
+    }
+
+    private static void write(File target, String content) throws IOException {
+        Files.write(target.toPath(), content.getBytes(UTF_8));
+    }
+
+    private static String read(File source) throws IOException {
+        return new String(Files.readAllBytes(source.toPath()), UTF_8);
+    }
+
+    /**
+     * Formats each record as its message on a line, under an ELF version header.
+     */
+    private static final class LineFormatter extends Formatter {
+
+        @Override
+        public String format(LogRecord record) {
+            return record.getMessage() + "\n";
+        }
+
+        @Override
+        public String getHead(Handler handler) {
+            return HEADER;
+        }
+    }
+}
@@ -0,0 +1,291 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package com.sun.identity.policy.plugins;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.iplanet.sso.SSOException;
+import com.sun.identity.idm.AMIdentity;
+import com.sun.identity.idm.IdRepoException;
+import com.sun.identity.policy.PolicyException;
+
+public class ConditionDecisionCacheTest {
+
+    private static final String USER = "id=demo,ou=user,o=realm,ou=services,dc=openam,dc=forgerock,dc=org";
+    private static final String FILTER = "(employeeType=manager)";
+    private static final String SERVER = "localhost:50389";
+    private static final String GROUP = "id=managers,ou=group,o=realm,ou=services,dc=openam,dc=forgerock,dc=org";
+
+    private ConditionDecisionCache cache;
+
+    @BeforeMethod
+    public void setUp() {
+        cache = new ConditionDecisionCache(60000, 60000, 100);
+    }
+
+    @Test
+    public void shouldOnlyEvaluateOnceForTheSameUserAndFilter() throws Exception {
+        CountingEvaluation evaluation = new CountingEvaluation(true);
+
+        assertThat(cache.getDecision(USER, FILTER, SERVER, evaluation)).isTrue();
+        assertThat(cache.getDecision(USER.toUpperCase(), FILTER, SERVER, evaluation)).isTrue();
+
+        assertThat(evaluation.count.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldCacheDenyDecisions() throws Exception {
+        CountingEvaluation evaluation = new CountingEvaluation(false);
+
+        assertThat(cache.getDecision(USER, FILTER, SERVER, evaluation)).isFalse();
+        assertThat(cache.getDecision(USER, FILTER, SERVER, evaluation)).isFalse();
+
+        assertThat(evaluation.count.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldNotCacheDenyDecisionsWithoutNegativeTtl() throws Exception {
+        cache = new ConditionDecisionCache(60000, 0, 100);
+        CountingEvaluation evaluation = new CountingEvaluation(false);
+
+        cache.getDecision(USER, FILTER, SERVER, evaluation);
+        cache.getDecision(USER, FILTER, SERVER, evaluation);
+
+        assertThat(evaluation.count.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldEvaluateDifferentFiltersSeparately() throws Exception {
+        CountingEvaluation evaluation = new CountingEvaluation(true);
+
+        cache.getDecision(USER, FILTER, SERVER, evaluation);
+        cache.getDecision(USER, "(employeeType=contractor)", SERVER, evaluation);
+
+        assertThat(evaluation.count.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldDiscardDecisionsWhenIdentityChanges() throws Exception {
+        CountingEvaluation evaluation = new CountingEvaluation(true);
+        cache.getDecision(USER, FILTER, SERVER, evaluation);
+
+        cache.identityChanged(USER.toUpperCase());
+        cache.getDecision(USER, FILTER, SERVER, evaluation);
+
+        assertThat(evaluation.count.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldNotCacheDecisionsEvaluatedWhileIdentitiesChanged() throws Exception {
+        ConditionDecisionCache.Evaluation evaluation = new ConditionDecisionCache.Evaluation() {
+            @Override
+            public boolean evaluate() {
+                cache.allIdentitiesChanged();
+                return true;
+            }
+        };
+
+        assertThat(cache.getDecision(USER, FILTER, SERVER, evaluation)).isTrue();
+        assertThat(cache.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldIndexDecisionsByUserOnly() throws Exception {
+        CountingEvaluation evaluation = new CountingEvaluation(true);
+        cache.getDecision(USER, FILTER, SERVER, evaluation);
+
+        cache.identityChanged(FILTER);
+        cache.getDecision(USER, FILTER, SERVER, evaluation);
+
+        assertThat(evaluation.count.get()).isEqualTo(1);
+        assertThat(cache.indexedIdentities()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldRemoveIdentityFromIndexWithItsLastDecision() throws Exception {
+        ConditionDecisionCache.Evaluation evaluation = new ConditionDecisionCache.Evaluation() {
+            @Override
+            public boolean evaluate() {
+                cache.identityChanged("id=other,ou=user,o=realm,ou=services,dc=openam,dc=forgerock,dc=org");
+                return true;
+            }
+        };
+
+        cache.getDecision(USER, FILTER, SERVER, evaluation);
+
+        assertThat(cache.size()).isEqualTo(0);
+        assertThat(cache.indexedIdentities()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldCacheMembershipUntilTheGroupChanges() throws Exception {
+        AMIdentity user = identity(USER);
+        AMIdentity group = identity(GROUP);
+        given(user.isMember(group)).willReturn(true);
+
+        assertThat(cache.isMember(user, group)).isTrue();
+        assertThat(cache.isMember(user, group)).isTrue();
+        verify(user).isMember(group);
+
+        cache.identityChanged(GROUP.toUpperCase());
+        assertThat(cache.isMember(user, group)).isTrue();
+        verify(user, times(2)).isMember(group);
+    }
+
+    @Test
+    public void shouldDiscardMembershipWhenTheMemberChanges() throws Exception {
+        AMIdentity user = identity(USER);
+        AMIdentity group = identity(GROUP);
+        given(user.isMember(group)).willReturn(false);
+
+        assertThat(cache.isMember(user, group)).isFalse();
+        cache.identityChanged(USER);
+        assertThat(cache.isMember(user, group)).isFalse();
+
+        verify(user, times(2)).isMember(group);
+    }
+
+    @Test
+    public void shouldKeepMembershipApartFromFilterDecisions() throws Exception {
+        AMIdentity user = identity(USER);
+        AMIdentity group = identity(GROUP);
+        given(user.isMember(group)).willReturn(false);
+        cache.getDecision(USER, GROUP, SERVER, new CountingEvaluation(true));
+
+        assertThat(cache.isMember(user, group)).isFalse();
+    }
+
+    @Test
+    public void shouldRethrowMembershipFailuresWithoutCachingThem() throws Exception {
+        AMIdentity user = identity(USER);
+        AMIdentity group = identity(GROUP);
+        IdRepoException failure = new IdRepoException("unavailable");
+        given(user.isMember(group)).willThrow(failure).willReturn(true);
+
+        IdRepoException thrown = null;
+        try {
+            cache.isMember(user, group);
+        } catch (IdRepoException e) {
+            thrown = e;
+        }
+
+        assertThat(thrown).isSameAs(failure);
+        assertThat(cache.isMember(user, group)).isTrue();
+    }
+
+    @Test
+    public void shouldNotCacheFailures() throws Exception {
+        ConditionDecisionCache.Evaluation failing = new ConditionDecisionCache.Evaluation() {
+            @Override
+            public boolean evaluate() throws PolicyException {
+                throw new PolicyException("unavailable");
+            }
+        };
+        try {
+            cache.getDecision(USER, FILTER, SERVER, failing);
+        } catch (PolicyException e) {
+            // expected
+        }
+
+        assertThat(cache.getDecision(USER, FILTER, SERVER, new CountingEvaluation(true))).isTrue();
+    }
+
+    @Test
+    public void shouldClearWhenFull() throws Exception {
+        cache = new ConditionDecisionCache(60000, 60000, 1);
+        CountingEvaluation evaluation = new CountingEvaluation(true);
+
+        cache.getDecision(USER, FILTER, SERVER, evaluation);
+        cache.getDecision("id=other,ou=user,o=realm,ou=services,dc=openam,dc=forgerock,dc=org", FILTER, SERVER,
+                evaluation);
+
+        assertThat(cache.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldShareConcurrentEvaluations() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountingEvaluation evaluation = new CountingEvaluation(true) {
+            @Override
+            public boolean evaluate() throws PolicyException, SSOException {
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new PolicyException(e);
+                }
+                return super.evaluate();
+            }
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Callable<Boolean> lookup = new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    return cache.getDecision(USER, FILTER, SERVER, evaluation);
+                }
+            };
+            Future<Boolean> first = executor.submit(lookup);
+            Future<Boolean> second = executor.submit(lookup);
+            Future<Boolean> third = executor.submit(lookup);
+            release.countDown();
+
+            assertThat(first.get()).isTrue();
+            assertThat(second.get()).isTrue();
+            assertThat(third.get()).isTrue();
+            assertThat(evaluation.count.get()).isEqualTo(1);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static AMIdentity identity(String universalId) {
+        AMIdentity identity = mock(AMIdentity.class);
+        given(identity.getUniversalId()).willReturn(universalId);
+        return identity;
+    }
+
+    private static class CountingEvaluation implements ConditionDecisionCache.Evaluation {
+
+        private final AtomicInteger count = new AtomicInteger();
+        private final boolean decision;
+
+        private CountingEvaluation(boolean decision) {
+            this.decision = decision;
+        }
+
+        @Override
+        public boolean evaluate() throws PolicyException, SSOException {
+            count.incrementAndGet();
+            return decision;
+        }
+    }
+}
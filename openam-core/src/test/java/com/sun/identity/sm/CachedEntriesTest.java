@@ -0,0 +1,153 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package com.sun.identity.sm;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class CachedEntriesTest {
+
+    private static final String KEY = "ou=service,ou=services,dc=openam,dc=forgerock,dc=org";
+    private static final int THREADS = 8;
+
+    private ConcurrentMap<String, Entry> entries;
+    private ExecutorService executor;
+
+    @BeforeMethod
+    public void setUp() {
+        entries = new ConcurrentHashMap<>();
+        executor = Executors.newFixedThreadPool(THREADS);
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void shouldDiscardLosingCandidatesWithoutEvictingTheWinner() throws Exception {
+        List<Entry> candidates = candidates();
+
+        List<Entry> answers = installConcurrently(candidates);
+
+        Entry winner = entries.get(KEY);
+        assertThat(candidates).contains(winner);
+        assertThat(answers).containsOnly(winner);
+        assertThat(winner.valid).isTrue();
+        assertThat(winner.discarded).isFalse();
+        for (Entry candidate : candidates) {
+            if (candidate != winner) {
+                assertThat(candidate.discarded).isTrue();
+            }
+        }
+    }
+
+    @Test
+    public void shouldReplaceInvalidEntryOnce() throws Exception {
+        Entry invalid = new Entry();
+        invalid.valid = false;
+        entries.put(KEY, invalid);
+        List<Entry> candidates = candidates();
+
+        List<Entry> answers = installConcurrently(candidates);
+
+        Entry winner = entries.get(KEY);
+        assertThat(winner).isNotSameAs(invalid);
+        assertThat(candidates).contains(winner);
+        assertThat(answers).containsOnly(winner);
+        assertThat(winner.discarded).isFalse();
+    }
+
+    @Test
+    public void shouldKeepValidEntry() {
+        Entry cached = new Entry();
+        entries.put(KEY, cached);
+        Entry candidate = new Entry();
+
+        Entry answer = CachedEntries.install(entries, KEY, candidate, new EntryValidator());
+
+        assertThat(answer).isSameAs(cached);
+        assertThat(candidate.discarded).isTrue();
+        assertThat(cached.discarded).isFalse();
+    }
+
+    private static List<Entry> candidates() {
+        List<Entry> candidates = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            candidates.add(new Entry());
+        }
+        return candidates;
+    }
+
+    private List<Entry> installConcurrently(List<Entry> candidates) throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Future<Entry>> futures = new ArrayList<>();
+        for (final Entry candidate : candidates) {
+            futures.add(executor.submit(new Callable<Entry>() {
+                @Override
+                public Entry call() throws Exception {
+                    start.await();
+                    return CachedEntries.install(entries, KEY, candidate, new EntryValidator());
+                }
+            }));
+        }
+        start.countDown();
+        List<Entry> answers = new ArrayList<>();
+        for (Future<Entry> future : futures) {
+            answers.add(future.get(10, TimeUnit.SECONDS));
+        }
+        return answers;
+    }
+
+    private static final class Entry {
+        private volatile boolean valid = true;
+        private volatile boolean discarded;
+    }
+
+    /**
+     * Discards entries as a cached SMS entry clears itself, removing the entry from the cache if it is still the one
+     * cached for its key.
+     */
+    private final class EntryValidator implements CachedEntries.Validator<Entry> {
+
+        @Override
+        public boolean isValid(Entry entry) {
+            return entry.valid;
+        }
+
+        @Override
+        public void discard(Entry entry) {
+            entry.valid = false;
+            entry.discarded = true;
+            entries.remove(KEY, entry);
+        }
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package com.sun.identity.sm;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class RefreshCoalescerTest {
+
+    private static final int WAITING_THREADS = 4;
+
+    private RefreshCoalescer refresher;
+    private AtomicInteger reads;
+    private CountDownLatch reading;
+    private CountDownLatch release;
+
+    @BeforeMethod
+    public void setUp() {
+        refresher = new RefreshCoalescer();
+        reads = new AtomicInteger();
+        reading = new CountDownLatch(1);
+        release = new CountDownLatch(1);
+    }
+
+    @Test
+    public void shouldCoalesceRefreshesAskedForDuringARead() throws Exception {
+        refresher.markDirty();
+        Thread first = startRefresh(blockingFirstRead());
+        assertThat(reading.await(10, TimeUnit.SECONDS)).isTrue();
+
+        List<Thread> waiting = startWaitingRefreshes(blockingFirstRead());
+        release.countDown();
+        join(first, waiting);
+
+        // The refresh in progress may have read the entry before it changed, the next one is shared by all threads
+        assertThat(reads.get()).isEqualTo(2);
+        assertThat(refresher.isDirty()).isFalse();
+    }
+
+    @Test
+    public void shouldRefreshAgainWhenNotifiedDuringARead() throws Exception {
+        refresher.markDirty();
+        Runnable read = new Runnable() {
+            @Override
+            public void run() {
+                int count = reads.incrementAndGet();
+                if (count == 1) {
+                    awaitRelease();
+                } else if (count == 2) {
+                    // The entry changes while it is read by the refresh shared by the waiting threads
+                    refresher.markDirty();
+                }
+            }
+        };
+        Thread first = startRefresh(read);
+        assertThat(reading.await(10, TimeUnit.SECONDS)).isTrue();
+
+        List<Thread> waiting = startWaitingRefreshes(read);
+        release.countDown();
+        join(first, waiting);
+
+        assertThat(reads.get()).isEqualTo(3);
+        assertThat(refresher.isDirty()).isFalse();
+    }
+
+    @Test
+    public void shouldStayDirtyWhenNotifiedDuringTheLastRead() {
+        refresher.markDirty();
+
+        boolean read = refresher.refresh(new Runnable() {
+            @Override
+            public void run() {
+                refresher.markDirty();
+            }
+        });
+
+        assertThat(read).isTrue();
+        assertThat(refresher.isDirty()).isTrue();
+    }
+
+    @Test
+    public void shouldNotCoalesceRefreshesAskedForAfterAnUpdate() {
+        refresher.update(countingRead());
+
+        assertThat(refresher.refresh(countingRead())).isTrue();
+        assertThat(reads.get()).isEqualTo(2);
+    }
+
+    private Runnable blockingFirstRead() {
+        return new Runnable() {
+            @Override
+            public void run() {
+                if (reads.incrementAndGet() == 1) {
+                    awaitRelease();
+                }
+            }
+        };
+    }
+
+    private Runnable countingRead() {
+        return new Runnable() {
+            @Override
+            public void run() {
+                reads.incrementAndGet();
+            }
+        };
+    }
+
+    private void awaitRelease() {
+        reading.countDown();
+        try {
+            release.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Thread startRefresh(final Runnable read) {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                refresher.refresh(read);
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Starts threads asking for a refresh while the first one reads, and waits for them to be blocked on it.
+     */
+    private List<Thread> startWaitingRefreshes(Runnable read) throws InterruptedException {
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < WAITING_THREADS; i++) {
+            threads.add(startRefresh(read));
+        }
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        for (Thread thread : threads) {
+            while (thread.getState() != Thread.State.BLOCKED && System.currentTimeMillis() < deadline) {
+                Thread.sleep(1);
+            }
+            assertThat(thread.getState()).isEqualTo(Thread.State.BLOCKED);
+        }
+        return threads;
+    }
+
+    private static void join(Thread first, List<Thread> others) throws InterruptedException {
+        first.join(TimeUnit.SECONDS.toMillis(10));
+        for (Thread thread : others) {
+            thread.join(TimeUnit.SECONDS.toMillis(10));
+        }
+    }
+}
@@ -0,0 +1,289 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package com.sun.identity.sm;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+public class SMSSnapshotTest {
+
+    private static final String ROOT_SUFFIX = "dc=openam,dc=forgerock,dc=org";
+    private static final String SERVICE_DN = "ou=default,ou=organizationconfig,ou=1.0,ou=iplanetamauthservice,"
+            + "ou=services," + ROOT_SUFFIX;
+    private static final String ABSENT_DN = "ou=absent,ou=services," + ROOT_SUFFIX;
+    private static final long SNAPSHOT_TIME = 1234567890L;
+    private static final int READERS = 4;
+    private static final int ROUNDS = 50;
+    private static final int ENTRIES = 200;
+
+    private byte[] key;
+
+    @BeforeClass
+    public void setUpKey() throws Exception {
+        key = SMSSnapshot.deriveKey("password", ROOT_SUFFIX);
+    }
+
+    @Test
+    public void shouldRoundTripEntries() throws Exception {
+        Map<String, Map<String, Set<String>>> entries = new HashMap<>();
+        entries.put(SERVICE_DN, attributes());
+        entries.put(ABSENT_DN, null);
+
+        Map<String, Map<String, Set<String>>> loaded = new HashMap<>();
+        long snapshotTime = SMSSnapshot.decode(encode(entries, ROOT_SUFFIX, key), ROOT_SUFFIX, key, loaded);
+
+        assertThat(snapshotTime).isEqualTo(SNAPSHOT_TIME);
+        assertThat(loaded).containsOnlyKeys(SERVICE_DN, ABSENT_DN);
+        assertThat(loaded.get(SERVICE_DN)).isEqualTo(attributes());
+        assertThat(SMSSnapshot.isAbsent(loaded.get(ABSENT_DN))).isTrue();
+    }
+
+    @Test
+    public void shouldRoundTripValuesLongerThan64KB() throws Exception {
+        char[] schema = new char[70000];
+        Arrays.fill(schema, 'x');
+        Map<String, Set<String>> attributes = new HashMap<>();
+        attributes.put("sunServiceSchema", new HashSet<>(Arrays.asList(new String(schema))));
+        Map<String, Map<String, Set<String>>> entries = new HashMap<>();
+        entries.put(SERVICE_DN, attributes);
+
+        Map<String, Map<String, Set<String>>> loaded = new HashMap<>();
+        SMSSnapshot.decode(encode(entries, ROOT_SUFFIX, key), ROOT_SUFFIX, key, loaded);
+
+        assertThat(loaded.get(SERVICE_DN)).isEqualTo(attributes);
+    }
+
+    @Test
+    public void shouldLeaveOutEntriesOutsideOfServices() throws Exception {
+        Map<String, Map<String, Set<String>>> entries = new HashMap<>();
+        entries.put(SERVICE_DN, attributes());
+        entries.put(ROOT_SUFFIX, attributes());
+        entries.put("ou=people," + ROOT_SUFFIX, attributes());
+
+        Map<String, Map<String, Set<String>>> loaded = new HashMap<>();
+        SMSSnapshot.decode(encode(entries, ROOT_SUFFIX, key), ROOT_SUFFIX, key, loaded);
+
+        assertThat(loaded).containsOnlyKeys(SERVICE_DN);
+    }
+
+    @Test
+    public void shouldRejectSnapshotSignedWithAnotherKey() throws Exception {
+        byte[] otherKey = SMSSnapshot.deriveKey("other password", ROOT_SUFFIX);
+
+        Map<String, Map<String, Set<String>>> loaded = new HashMap<>();
+        long snapshotTime = SMSSnapshot.decode(encode(entries(), ROOT_SUFFIX, otherKey), ROOT_SUFFIX, key, loaded);
+
+        assertThat(snapshotTime).isZero();
+        assertThat(loaded).isEmpty();
+    }
+
+    @Test
+    public void shouldRejectTamperedSignature() throws Exception {
+        ByteArrayInputStream snapshot = encode(entries(), ROOT_SUFFIX, key);
+        byte[] bytes = new byte[snapshot.available()];
+        snapshot.read(bytes);
+        // The signature follows the magic number, format version and signature length
+        bytes[12] ^= 1;
+
+        Map<String, Map<String, Set<String>>> loaded = new HashMap<>();
+        long snapshotTime = SMSSnapshot.decode(new ByteArrayInputStream(bytes), ROOT_SUFFIX, key, loaded);
+
+        assertThat(snapshotTime).isZero();
+        assertThat(loaded).isEmpty();
+    }
+
+    @Test
+    public void shouldRejectSnapshotOfAnotherRootSuffix() throws Exception {
+        String otherSuffix = "dc=example,dc=com";
+
+        Map<String, Map<String, Set<String>>> loaded = new HashMap<>();
+        long snapshotTime = SMSSnapshot.decode(encode(entries(), otherSuffix, key), ROOT_SUFFIX, key, loaded);
+
+        assertThat(snapshotTime).isZero();
+        assertThat(loaded).isEmpty();
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        SMSSnapshot.discard();
+    }
+
+    @Test
+    public void shouldRecordEntryInvalidatedWhileBeingRead() {
+        SMSSnapshot.serve(entries());
+        assertThat(SMSSnapshot.take(SERVICE_DN)).isEqualTo(attributes());
+
+        // Reconciled before the entry read from the snapshot is cached, so it cannot be marked dirty yet
+        int invalidations = SMSSnapshot.reconcile(Collections.singleton(SERVICE_DN),
+                Collections.singleton(SERVICE_DN));
+
+        assertThat(invalidations).isEqualTo(1);
+        assertThat(SMSSnapshot.wasInvalidated(SERVICE_DN)).isTrue();
+        assertThat(SMSSnapshot.wasInvalidated(SERVICE_DN)).isFalse();
+    }
+
+    @Test
+    public void shouldInvalidateServedEntryWhichNoLongerExists() {
+        SMSSnapshot.serve(entries());
+        SMSSnapshot.take(SERVICE_DN);
+
+        int invalidations = SMSSnapshot.reconcile(Collections.<String>emptySet(), Collections.<String>emptySet());
+
+        assertThat(invalidations).isEqualTo(1);
+        assertThat(SMSSnapshot.wasInvalidated(SERVICE_DN)).isTrue();
+    }
+
+    @Test
+    public void shouldInvalidateEveryServedEntryWhenReconciliationFails() {
+        SMSSnapshot.serve(entries());
+        SMSSnapshot.take(SERVICE_DN);
+
+        int invalidations = SMSSnapshot.reconcile(null, null);
+
+        assertThat(invalidations).isEqualTo(1);
+        assertThat(SMSSnapshot.wasInvalidated(SERVICE_DN)).isTrue();
+    }
+
+    @Test
+    public void shouldKeepServedEntryWhichDidNotChange() {
+        SMSSnapshot.serve(entries());
+        SMSSnapshot.take(SERVICE_DN);
+
+        int invalidations = SMSSnapshot.reconcile(Collections.<String>emptySet(), Collections.singleton(SERVICE_DN));
+
+        assertThat(invalidations).isZero();
+        assertThat(SMSSnapshot.wasInvalidated(SERVICE_DN)).isFalse();
+    }
+
+    @Test
+    public void shouldStopServingOnceReconciled() {
+        SMSSnapshot.serve(entries());
+
+        SMSSnapshot.reconcile(Collections.<String>emptySet(), Collections.singleton(SERVICE_DN));
+
+        assertThat(SMSSnapshot.take(SERVICE_DN)).isNull();
+        assertThat(SMSSnapshot.wasInvalidated(SERVICE_DN)).isFalse();
+    }
+
+    @Test
+    public void shouldInvalidateEveryEntryTakenWhileReconciling() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(READERS);
+        try {
+            for (int round = 0; round < ROUNDS; round++) {
+                Map<String, Map<String, Set<String>>> snapshot = new HashMap<>();
+                for (int i = 0; i < ENTRIES; i++) {
+                    snapshot.put(entryDN(i), attributes());
+                }
+                SMSSnapshot.serve(snapshot);
+
+                List<Future<List<String>>> readers = startReaders(executor);
+                // Every entry changed, so every entry taken from the snapshot must be invalidated
+                SMSSnapshot.reconcile(snapshot.keySet(), snapshot.keySet());
+
+                for (Future<List<String>> reader : readers) {
+                    for (String dn : reader.get(10, TimeUnit.SECONDS)) {
+                        assertThat(SMSSnapshot.wasInvalidated(dn)).as(dn).isTrue();
+                    }
+                }
+                for (String dn : snapshot.keySet()) {
+                    // Nothing is invalidated but the entries taken
+                    assertThat(SMSSnapshot.wasInvalidated(dn)).as(dn).isFalse();
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Starts threads taking every entry from the snapshot, each returning those it took, and waits for them to have
+     * started taking entries.
+     */
+    private List<Future<List<String>>> startReaders(ExecutorService executor) throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(READERS);
+        List<Future<List<String>>> readers = new ArrayList<>();
+        for (int r = 0; r < READERS; r++) {
+            final int first = r;
+            readers.add(executor.submit(new Callable<List<String>>() {
+                @Override
+                public List<String> call() {
+                    started.countDown();
+                    List<String> taken = new ArrayList<>();
+                    for (int i = 0; i < ENTRIES; i++) {
+                        String dn = entryDN((first + i) % ENTRIES);
+                        if (SMSSnapshot.take(dn) != null) {
+                            taken.add(dn);
+                        }
+                    }
+                    return taken;
+                }
+            }));
+        }
+        started.await(10, TimeUnit.SECONDS);
+        return readers;
+    }
+
+    private static String entryDN(int index) {
+        return "ou=service" + index + ",ou=services," + ROOT_SUFFIX;
+    }
+
+    @Test
+    public void shouldDeriveKeyFromPasswordAndRootSuffix() throws Exception {
+        assertThat(SMSSnapshot.deriveKey("password", ROOT_SUFFIX)).isEqualTo(key);
+        assertThat(SMSSnapshot.deriveKey("password", "dc=example,dc=com")).isNotEqualTo(key);
+        assertThat(key).isNotEqualTo("password".getBytes("UTF-8"));
+    }
+
+    private static ByteArrayInputStream encode(Map<String, Map<String, Set<String>>> entries, String rootSuffix,
+            byte[] key) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        SMSSnapshot.encode(out, entries, rootSuffix, SNAPSHOT_TIME, key);
+        return new ByteArrayInputStream(out.toByteArray());
+    }
+
+    private static Map<String, Map<String, Set<String>>> entries() {
+        Map<String, Map<String, Set<String>>> entries = new HashMap<>();
+        entries.put(SERVICE_DN, attributes());
+        return entries;
+    }
+
+    private static Map<String, Set<String>> attributes() {
+        Map<String, Set<String>> attributes = new HashMap<>();
+        attributes.put("objectclass", new HashSet<>(Arrays.asList("top", "sunServiceComponent")));
+        attributes.put("sunKeyValue", new HashSet<>(Arrays.asList("iplanet-am-auth-login-success-url=/")));
+        return attributes;
+    }
+}
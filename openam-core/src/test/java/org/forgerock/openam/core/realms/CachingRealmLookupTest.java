@@ -27,6 +27,7 @@ import com.sun.identity.idm.IdRepoErrorCode;
 import com.sun.identity.sm.ServiceConfigManager;
 import com.sun.identity.sm.ServiceListener;
 import org.forgerock.openam.core.CoreWrapper;
+import org.forgerock.util.time.TimeService;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
 import org.mockito.Mock;
@@ -414,6 +415,59 @@ public class CachingRealmLookupTest {
         verifyNoMoreInteractions(realmLookupDelegate);
     }
 
+    @Test
+    public void shouldExpireUnsuccessfulRealmLookupResult() throws Exception {
+
+        //Given
+        TimeService clock = mock(TimeService.class);
+        when(clock.now()).thenReturn(1000L);
+        realmsCache = new CachingRealmLookup(realmLookupDelegate, new Provider<ServiceConfigManager>() {
+            @Override
+            public ServiceConfigManager get() {
+                return idRepoService;
+            }
+        }, clock, 100, 500L);
+        Realm realm = mockRealm();
+        when(realmLookupDelegate.lookup("alias.example.com"))
+                .thenThrow(new NoRealmFoundException("alias.example.com"))
+                .thenReturn(realm);
+
+        try {
+            realmsCache.lookup("alias.example.com");
+        } catch (NoRealmFoundException ignored) {
+            // Expected IdRepoException
+        }
+
+        //When
+        when(clock.now()).thenReturn(1500L);
+        Realm returnedRealm = realmsCache.lookup("alias.example.com");
+
+        //Then
+        assertThat(returnedRealm).isEqualTo(realm);
+        verify(realmLookupDelegate, times(2)).lookup("alias.example.com");
+        verifyNoMoreInteractions(realmLookupDelegate);
+    }
+
+    @Test
+    public void shouldCacheRealmLookupResultIgnoringCaseAndByPath() throws Exception {
+
+        //Given
+        Realm realm = mockRealm();
+        when(realmLookupDelegate.lookup("ALIAS.example.com")).thenReturn(realm);
+
+        realmsCache.lookup("ALIAS.example.com");
+
+        //When
+        Realm byAlias = realmsCache.lookup("alias.EXAMPLE.com");
+        Realm byPath = realmsCache.lookup("/REALM");
+
+        //Then
+        assertThat(byAlias).isEqualTo(realm);
+        assertThat(byPath).isEqualTo(realm);
+        verify(realmLookupDelegate).lookup("ALIAS.example.com");
+        verifyNoMoreInteractions(realmLookupDelegate);
+    }
+
     private Realm mockRealm() {
         when(coreWrapper.convertOrgNameToRealmName("o=realm,ou=services,dc=openam,dc=example,dc=com"))
                 .thenReturn("/realm");
@@ -11,13 +11,17 @@
 * Header, with the fields enclosed by brackets [] replaced by your own identifying
 * information: "Portions copyright [year] [name of copyright owner]".
 *
-* Copyright 2014 ForgeRock AS.
+* Copyright 2014-2016 ForgeRock AS.
 */
 package org.forgerock.openam.cts.monitoring.impl.connections;
 
+import org.forgerock.openam.ldap.MeteredConnectionFactory;
+import org.forgerock.openam.sm.datalayer.api.ConnectionType;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 
@@ -89,4 +93,23 @@ public class ConnectionStoreTest {
         verify(successMonitor).getAverageRate();
     }
 
+    @Test
+    public void shouldGetConnectionPoolMetricsPerConnectionType() {
+
+        //Given
+        MeteredConnectionFactory pool = mock(MeteredConnectionFactory.class);
+        given(pool.getWaiters()).willReturn(2);
+        given(pool.getConnectionsInUse()).willReturn(10);
+        connectionStore.addConnectionPool(ConnectionType.CTS_ASYNC, pool);
+
+        //When
+        int waiters = connectionStore.getConnectionPoolWaiters(ConnectionType.CTS_ASYNC);
+        int inUse = connectionStore.getConnectionPoolConnectionsInUse(ConnectionType.CTS_ASYNC);
+        int reaperInUse = connectionStore.getConnectionPoolConnectionsInUse(ConnectionType.CTS_EXPIRY_DATE_WORKER);
+
+        //Then
+        assertThat(waiters).isEqualTo(2);
+        assertThat(inUse).isEqualTo(10);
+        assertThat(reaperInUse).isEqualTo(0);
+    }
 }
@@ -21,7 +21,9 @@ import static org.mockito.BDDMockito.*;
 import static org.testng.Assert.*;
 
 import java.util.Calendar;
+import java.util.EnumSet;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 import org.forgerock.openam.cts.TokenTestUtils;
@@ -180,6 +182,46 @@ public class LdapTokenAttributeConversionTest {
         assertTrue(strings.contains("wobble"));
     }
 
+    @Test
+    public void shouldOnlyConvertRequestedFields() {
+        // Given
+        LdapTokenAttributeConversion conversion = generateTokenAttributeConversion();
+
+        Token token = new Token("badger", TokenType.SESSION);
+        token.setAttribute(CoreTokenField.STRING_ONE, "Ferret");
+        token.setAttribute(CoreTokenField.INTEGER_ONE, 1234);
+        token.setAttribute(CoreTokenField.BLOB, new byte[] {1, 2, 3});
+        Entry entry = conversion.getEntry(token);
+
+        // When
+        Map<CoreTokenField, Object> result = conversion.mapFromEntry(entry,
+                EnumSet.of(CoreTokenField.TOKEN_ID, CoreTokenField.INTEGER_ONE));
+
+        // Then
+        assertEquals(result.size(), 2);
+        assertEquals(result.get(CoreTokenField.TOKEN_ID), "badger");
+        assertEquals(result.get(CoreTokenField.INTEGER_ONE), 1234);
+    }
+
+    @Test
+    public void shouldResolveAttributeNamesIgnoringCase() {
+        // Given
+        Entry entry = new LinkedHashMapEntry();
+        entry.addAttribute("objectclass", "frCoreToken");
+        entry.addAttribute(CoreTokenField.TOKEN_ID.toString().toUpperCase(), "id");
+        entry.addAttribute(CoreTokenField.TOKEN_TYPE.toString().toLowerCase(), TokenType.OAUTH.name());
+
+        LdapTokenAttributeConversion conversion = generateTokenAttributeConversion();
+
+        // When
+        Token result = conversion.tokenFromEntry(entry);
+
+        // Then
+        assertEquals(result.getTokenId(), "id");
+        assertEquals(result.getType(), TokenType.OAUTH);
+        assertNull(LdapTokenAttributeConversion.getTokenField("unknown"));
+    }
+
     @Test
     public void shouldAllowPlusSignInDN() {
         // Given
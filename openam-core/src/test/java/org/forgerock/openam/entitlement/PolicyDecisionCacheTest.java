@@ -0,0 +1,244 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openam.entitlement;
+
+import static java.util.Collections.*;
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.security.auth.Subject;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.iplanet.sso.SSOException;
+import com.iplanet.sso.SSOToken;
+import com.iplanet.sso.SSOTokenEvent;
+import com.iplanet.sso.SSOTokenID;
+import com.sun.identity.entitlement.Entitlement;
+import com.sun.identity.shared.Constants;
+
+public class PolicyDecisionCacheTest {
+
+    private static final String REALM = "/";
+    private static final String APPLICATION = "iPlanetAMWebAgentService";
+    private static final String RESOURCE = "http://www.example.com:80/index.html";
+    private static final String USER = "id=demo,ou=user,dc=openam,dc=forgerock,dc=org";
+    private static final Map<String, Set<String>> ENVIRONMENT = emptyMap();
+
+    private PolicyDecisionCache cache;
+    private SSOToken token;
+    private Subject subject;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        cache = new PolicyDecisionCache(60000, 100);
+        token = mockToken("session", USER);
+        subject = subject(token);
+    }
+
+    @Test
+    public void shouldReturnCachedDecision() {
+        PolicyDecisionCache.Key key = cache.getKey(REALM, APPLICATION, subject, RESOURCE, ENVIRONMENT, false);
+
+        cache.put(key, singletonList(allow()), cache.getChanges());
+
+        List<Entitlement> cached = cache.get(cache.getKey(REALM, APPLICATION, subject, RESOURCE, ENVIRONMENT, false));
+        assertThat(cached).hasSize(1);
+        assertThat(cached.get(0).getActionValue("GET")).isTrue();
+    }
+
+    @Test
+    public void shouldNotCacheWhenDisabled() {
+        cache = new PolicyDecisionCache(0, 100);
+
+        assertThat(cache.getKey(REALM, APPLICATION, subject, RESOURCE, ENVIRONMENT, false)).isNull();
+    }
+
+    @Test
+    public void shouldNotCacheSubjectsWithoutSession() {
+        assertThat(cache.getKey(REALM, APPLICATION, new Subject(), RESOURCE, ENVIRONMENT, false)).isNull();
+    }
+
+    @Test
+    public void shouldKeyOnEnvironment() {
+        PolicyDecisionCache.Key key = cache.getKey(REALM, APPLICATION, subject, RESOURCE, ENVIRONMENT, false);
+        cache.put(key, singletonList(allow()), cache.getChanges());
+
+        Map<String, Set<String>> environment = new HashMap<>();
+        environment.put("requestIp", singleton("10.0.0.1"));
+
+        assertThat(cache.get(cache.getKey(REALM, APPLICATION, subject, RESOURCE, environment, false))).isNull();
+    }
+
+    @Test
+    public void shouldNotCacheDecisionsWithAdvices() {
+        Entitlement entitlement = allow();
+        entitlement.setAdvices(singletonMap("AuthLevelConditionAdvice", singleton("10")));
+        PolicyDecisionCache.Key key = cache.getKey(REALM, APPLICATION, subject, RESOURCE, ENVIRONMENT, false);
+
+        cache.put(key, singletonList(entitlement), cache.getChanges());
+
+        assertThat(cache.get(key)).isNull();
+    }
+
+    @Test
+    public void shouldNotCacheBeyondEntitlementTtl() {
+        Entitlement entitlement = allow();
+        entitlement.setTTL(0);
+        PolicyDecisionCache.Key key = cache.getKey(REALM, APPLICATION, subject, RESOURCE, ENVIRONMENT, false);
+
+        cache.put(key, singletonList(entitlement), cache.getChanges());
+
+        assertThat(cache.get(key)).isNull();
+    }
+
+    @Test
+    public void shouldNotLetCallersChangeCachedDecisions() {
+        PolicyDecisionCache.Key key = cache.getKey(REALM, APPLICATION, subject, RESOURCE, ENVIRONMENT, false);
+        cache.put(key, singletonList(allow()), cache.getChanges());
+
+        cache.get(key).get(0).getActionValues().put("GET", false);
+
+        assertThat(cache.get(key).get(0).getActionValue("GET")).isTrue();
+    }
+
+    @Test
+    public void shouldNotCacheDecisionsMadeWhileChangesHappened() {
+        long changes = cache.getChanges();
+        PolicyDecisionCache.Key key = cache.getKey(REALM, APPLICATION, subject, RESOURCE, ENVIRONMENT, false);
+
+        cache.policyChanged(REALM, APPLICATION);
+        cache.put(key, singletonList(allow()), changes);
+
+        assertThat(cache.get(key)).isNull();
+    }
+
+    @Test
+    public void shouldDiscardDecisionsOfChangedPolicySet() {
+        PolicyDecisionCache.Key key = cache.getKey(REALM, APPLICATION, subject, RESOURCE, ENVIRONMENT, false);
+        PolicyDecisionCache.Key otherKey = cache.getKey(REALM, "other", subject, RESOURCE, ENVIRONMENT, false);
+        cache.put(key, singletonList(allow()), cache.getChanges());
+        cache.put(otherKey, singletonList(allow()), cache.getChanges());
+
+        cache.policyChanged(REALM, APPLICATION);
+
+        assertThat(cache.get(key)).isNull();
+        assertThat(cache.get(otherKey)).isNotNull();
+    }
+
+    @Test
+    public void shouldDiscardDecisionsOfChangedIdentity() throws Exception {
+        Subject otherSubject = subject(mockToken("other", "id=other,ou=user,dc=openam,dc=forgerock,dc=org"));
+        PolicyDecisionCache.Key key = cache.getKey(REALM, APPLICATION, subject, RESOURCE, ENVIRONMENT, false);
+        PolicyDecisionCache.Key otherKey = cache.getKey(REALM, APPLICATION, otherSubject, RESOURCE, ENVIRONMENT,
+                false);
+        cache.put(key, singletonList(allow()), cache.getChanges());
+        cache.put(otherKey, singletonList(allow()), cache.getChanges());
+
+        cache.identityChanged(USER.toUpperCase());
+
+        assertThat(cache.get(key)).isNull();
+        assertThat(cache.get(otherKey)).isNotNull();
+    }
+
+    @Test
+    public void shouldDiscardDecisionsOfDestroyedSession() {
+        PolicyDecisionCache.Key key = cache.getKey(REALM, APPLICATION, subject, RESOURCE, ENVIRONMENT, false);
+        cache.put(key, singletonList(allow()), cache.getChanges());
+        SSOTokenEvent event = mock(SSOTokenEvent.class);
+        given(event.getToken()).willReturn(token);
+        given(event.getType()).willReturn(SSOTokenEvent.SSO_TOKEN_DESTROY);
+
+        cache.ssoTokenChanged(event);
+
+        assertThat(cache.get(key)).isNull();
+        assertThat(cache.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldRemoveSessionAndIdentityFromIndexesWithTheirLastDecision() {
+        PolicyDecisionCache.Key key = cache.getKey(REALM, APPLICATION, subject, RESOURCE, ENVIRONMENT, false);
+        cache.put(key, singletonList(allow()), cache.getChanges());
+        assertThat(cache.indexedSessions()).isEqualTo(1);
+        assertThat(cache.indexedIdentities()).isEqualTo(1);
+
+        cache.policyChanged(REALM, APPLICATION);
+
+        assertThat(cache.size()).isEqualTo(0);
+        assertThat(cache.indexedSessions()).isEqualTo(0);
+        assertThat(cache.indexedIdentities()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldListenToEachSessionOnce() throws Exception {
+        cache.getKey(REALM, APPLICATION, subject, RESOURCE, ENVIRONMENT, false);
+        cache.getKey(REALM, APPLICATION, subject, RESOURCE + "2", ENVIRONMENT, false);
+
+        verify(token, times(1)).addSSOTokenListener(cache);
+    }
+
+    @Test
+    public void shouldNotCacheDecisionsOfSessionsWhichCannotBeListenedTo() throws Exception {
+        willThrow(new SSOException("invalid")).given(token).addSSOTokenListener(cache);
+
+        assertThat(cache.getKey(REALM, APPLICATION, subject, RESOURCE, ENVIRONMENT, false)).isNull();
+    }
+
+    @Test
+    public void shouldClearWhenFullWithoutExpiredDecisions() {
+        cache = new PolicyDecisionCache(60000, 2);
+        for (int i = 0; i < 3; i++) {
+            PolicyDecisionCache.Key key = cache.getKey(REALM, APPLICATION, subject, RESOURCE + i, ENVIRONMENT,
+                    false);
+            cache.put(key, singletonList(allow()), cache.getChanges());
+        }
+
+        assertThat(cache.size()).isEqualTo(1);
+    }
+
+    private static SSOToken mockToken(String sessionId, String universalId) throws Exception {
+        SSOToken token = mock(SSOToken.class);
+        SSOTokenID tokenId = mock(SSOTokenID.class);
+        given(tokenId.toString()).willReturn(sessionId);
+        given(token.getTokenID()).willReturn(tokenId);
+        given(token.getProperty(Constants.UNIVERSAL_IDENTIFIER)).willReturn(universalId);
+        given(token.getAuthLevel()).willReturn(0);
+        return token;
+    }
+
+    private static Subject subject(SSOToken token) {
+        Subject subject = new Subject();
+        subject.getPrivateCredentials().add(token);
+        return subject;
+    }
+
+    private static Entitlement allow() {
+        Map<String, Boolean> actions = new HashMap<>();
+        actions.put("GET", true);
+        return new Entitlement(APPLICATION, RESOURCE, actions);
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openam.entitlement.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.forgerock.guava.common.base.Predicate;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class IndexedCacheTest {
+
+    private IndexedCache.Index<String> byUser;
+    private IndexedCache<String, Value> cache;
+
+    @BeforeMethod
+    public void setUp() {
+        byUser = new IndexedCache.Index<String>() {
+            @Override
+            protected String getId(String key) {
+                return key.substring(0, key.indexOf(':'));
+            }
+        };
+        cache = new IndexedCache<>(10, byUser);
+    }
+
+    @Test
+    public void shouldNotReturnExpiredValues() {
+        cache.put("demo:a", new Value(0));
+
+        assertThat(cache.get("demo:a")).isNull();
+        assertThat(cache.size()).isEqualTo(0);
+        assertThat(byUser.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldInvalidateKeysOfIdentifierCaseInsensitively() {
+        cache.put("demo:a", new Value(Long.MAX_VALUE));
+        cache.put("demo:b", new Value(Long.MAX_VALUE));
+        cache.put("other:a", new Value(Long.MAX_VALUE));
+
+        assertThat(cache.invalidate(byUser, "DEMO")).isEqualTo(2);
+
+        assertThat(cache.get("demo:a")).isNull();
+        assertThat(cache.get("demo:b")).isNull();
+        assertThat(cache.get("other:a")).isNotNull();
+    }
+
+    @Test
+    public void shouldRemoveIdentifierWithItsLastKey() {
+        Value a = new Value(Long.MAX_VALUE);
+        Value b = new Value(Long.MAX_VALUE);
+        cache.put("demo:a", a);
+        cache.put("demo:b", b);
+
+        cache.remove("demo:a", a);
+        assertThat(byUser.size()).isEqualTo(1);
+        cache.remove("demo:b", b);
+
+        assertThat(byUser.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldNotRemoveReplacedValue() {
+        Value old = new Value(Long.MAX_VALUE);
+        Value current = new Value(Long.MAX_VALUE);
+        cache.put("demo:a", old);
+        cache.put("demo:a", current);
+
+        cache.remove("demo:a", old);
+
+        assertThat(cache.get("demo:a")).isSameAs(current);
+        assertThat(byUser.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldDiscardValuesMadeWhileChangesHappened() {
+        long changes = cache.getChanges();
+        Value value = new Value(Long.MAX_VALUE);
+        cache.put("demo:a", value);
+
+        cache.invalidate(byUser, "other");
+        cache.discardIfChanged("demo:a", value, changes);
+
+        assertThat(cache.get("demo:a")).isNull();
+    }
+
+    @Test
+    public void shouldInvalidateMatchingKeys() {
+        cache.put("demo:a", new Value(Long.MAX_VALUE));
+        cache.put("demo:b", new Value(Long.MAX_VALUE));
+
+        cache.invalidate(new Predicate<String>() {
+            @Override
+            public boolean apply(String key) {
+                return key.endsWith(":a");
+            }
+        });
+
+        assertThat(cache.get("demo:a")).isNull();
+        assertThat(cache.get("demo:b")).isNotNull();
+    }
+
+    @Test
+    public void shouldRemoveExpiredValuesWhenFull() {
+        cache = new IndexedCache<>(2, byUser);
+        cache.put("demo:a", new Value(0));
+        cache.put("demo:b", new Value(Long.MAX_VALUE));
+
+        cache.put("demo:c", new Value(Long.MAX_VALUE));
+
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(cache.get("demo:b")).isNotNull();
+    }
+
+    @Test
+    public void shouldClearWhenFullWithoutExpiredValues() {
+        cache = new IndexedCache<>(2, byUser);
+        cache.put("demo:a", new Value(Long.MAX_VALUE));
+        cache.put("other:b", new Value(Long.MAX_VALUE));
+
+        cache.put("demo:c", new Value(Long.MAX_VALUE));
+
+        assertThat(cache.size()).isEqualTo(1);
+        assertThat(byUser.size()).isEqualTo(1);
+    }
+
+    private static final class Value implements IndexedCache.Expiring {
+
+        private final long expiresAt;
+
+        private Value(long expiresAt) {
+            this.expiresAt = expiresAt;
+        }
+
+        @Override
+        public boolean isExpired(long now) {
+            return expiresAt <= now;
+        }
+    }
+}
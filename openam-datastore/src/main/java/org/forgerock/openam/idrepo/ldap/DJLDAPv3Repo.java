@@ -23,6 +23,7 @@ import static org.forgerock.opendj.ldap.LDAPConnectionFactory.*;
 import java.nio.charset.Charset;
 import java.security.GeneralSecurityException;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -63,25 +64,32 @@ import org.forgerock.opendj.ldap.Modification;
 import org.forgerock.opendj.ldap.ModificationType;
 import org.forgerock.opendj.ldap.ResultCode;
 import org.forgerock.opendj.ldap.SSLContextBuilder;
+import org.forgerock.opendj.ldap.SearchResultHandler;
 import org.forgerock.opendj.ldap.SearchResultReferenceIOException;
 import org.forgerock.opendj.ldap.SearchScope;
 import org.forgerock.opendj.ldap.requests.BindRequest;
 import org.forgerock.opendj.ldap.requests.ModifyRequest;
 import org.forgerock.opendj.ldap.requests.SearchRequest;
 import org.forgerock.opendj.ldap.responses.BindResult;
+import org.forgerock.opendj.ldap.responses.Result;
 import org.forgerock.opendj.ldap.responses.SearchResultEntry;
+import org.forgerock.opendj.ldap.responses.SearchResultReference;
 import org.forgerock.opendj.ldap.schema.AttributeType;
 import org.forgerock.opendj.ldap.schema.ObjectClass;
 import org.forgerock.opendj.ldap.schema.ObjectClassType;
 import org.forgerock.opendj.ldap.schema.Schema;
 import org.forgerock.opendj.ldap.schema.UnknownSchemaElementException;
 import org.forgerock.opendj.ldif.ConnectionEntryReader;
+import org.forgerock.util.AsyncFunction;
 import org.forgerock.util.Function;
 import org.forgerock.util.Options;
 import org.forgerock.util.annotations.VisibleForTesting;
+import org.forgerock.util.promise.Promise;
+import org.forgerock.util.promise.Promises;
 import org.forgerock.util.time.Duration;
 
 import com.iplanet.am.util.Cache;
+import com.iplanet.am.util.SystemProperties;
 import com.iplanet.services.naming.ServerEntryNotFoundException;
 import com.iplanet.services.naming.WebtopNaming;
 import com.iplanet.sso.SSOToken;
@@ -125,6 +133,13 @@ public class DJLDAPv3Repo extends IdRepo implements IdentityMovedOrRenamedListen
             Filter.valueOf("(&(objectclass=ldapsubentry)(objectclass=nsmanagedroledefinition))");
     private static final Filter DEFAULT_FILTERED_ROLE_SEARCH_FILTER =
             Filter.valueOf("(&(objectclass=ldapsubentry)(objectclass=nsfilteredroledefinition))");
+    private static final String MEMBERSHIP_CACHE_ENABLED = "org.forgerock.openam.idrepo.ldap.membershipCache.enabled";
+    private static final String MEMBERSHIP_CACHE_SIZE = "org.forgerock.openam.idrepo.ldap.membershipCache.size";
+    private static final String MEMBERSHIP_CACHE_NESTED = "org.forgerock.openam.idrepo.ldap.membershipCache.nested";
+    /**
+     * The smallest pool searches get connections of their own from, as a pool of a single connection is not pooled.
+     */
+    private static final int MIN_SEARCH_POOL_SIZE = 2;
     private Set<LDAPURL> ldapServers;
     private IdRepoListener idRepoListener;
     private Map<IdType, Set<IdOperation>> supportedTypesAndOperations;
@@ -169,8 +184,13 @@ public class DJLDAPv3Repo extends IdRepo implements IdentityMovedOrRenamedListen
     private int defaultSizeLimit;
     private int defaultTimeLimit;
     private DirectoryHelper helper;
-    //although there is a max pool size, we are currently doubling that in order to be able to authenticate users
+    //although there is a max pool size, we are currently doubling that in order to be able to authenticate users:
+    //the data store uses up to twice the max pool size connections per server, one max pool size for binds and
+    //one shared by the point reads and writes and the searches. A quarter of the latter is set aside for the searches
+    //that may return several entries, to keep the point reads and writes from waiting behind slow searches.
     private ConnectionFactory<Connection> connectionFactory;
+    //the same factory as connectionFactory when the max pool size is too small to be shared
+    private ConnectionFactory<Connection> searchConnectionFactory;
     private ConnectionFactory<Connection> bindConnectionFactory;
     //holds service attributes for the current realm
     private Map<String, Map<String, Set<String>>> serviceMap;
@@ -180,6 +200,8 @@ public class DJLDAPv3Repo extends IdRepo implements IdentityMovedOrRenamedListen
     private Cache dnCache;
     // provides a switch to enable/disable the dnCache
     private boolean dnCacheEnabled = false;
+    //caches group memberships while the persistent search keeps it up to date, null otherwise.
+    private volatile GroupMembershipCache membershipCache;
 
     private boolean isSecure = false;
     private boolean useStartTLS = false;
@@ -231,7 +253,14 @@ public class DJLDAPv3Repo extends IdRepo implements IdentityMovedOrRenamedListen
         isSecure = LDAP_CONNECTION_MODE_LDAPS.equalsIgnoreCase(connectionMode) || useStartTLS;
         protocolVersion = CollectionHelper.getMapAttr(configParams, LDAP_SERVER_SECURE_PROTOCOL_VERSION, "TLSv1");
         bindConnectionFactory = createConnectionFactory(null, null, maxPoolSize);
-        connectionFactory = createConnectionFactory(username, password, maxPoolSize);
+        int searchPoolSize = getSearchPoolSize(maxPoolSize);
+        if (searchPoolSize > 0) {
+            connectionFactory = createConnectionFactory(username, password, maxPoolSize - searchPoolSize);
+            searchConnectionFactory = createConnectionFactory(username, password, searchPoolSize);
+        } else {
+            connectionFactory = createConnectionFactory(username, password, maxPoolSize);
+            searchConnectionFactory = connectionFactory;
+        }
 
         supportedTypesAndOperations =
                 IdRepoUtils.parseSupportedTypesAndOperations(configParams.get(LDAP_SUPPORTED_TYPES_AND_OPERATIONS));
@@ -313,6 +342,20 @@ public class DJLDAPv3Repo extends IdRepo implements IdentityMovedOrRenamedListen
         }
     }
 
+    /**
+     * Returns the number of connections of the pool set aside for searches, so that long running searches do not
+     * starve the other operations. Searches share the pool with the other operations when it is too small to set
+     * aside a pool of at least {@link #MIN_SEARCH_POOL_SIZE} connections, as a smaller one would not be pooled.
+     *
+     * @param maxPoolSize The maximum size of the connection pool.
+     * @return The size of the search pool, or 0 if searches share the pool with the other operations.
+     */
+    @VisibleForTesting
+    static int getSearchPoolSize(int maxPoolSize) {
+        int searchPoolSize = maxPoolSize / 4;
+        return searchPoolSize >= MIN_SEARCH_POOL_SIZE ? searchPoolSize : 0;
+    }
+
     protected ConnectionFactory<Connection> createConnectionFactory(String username, char[] password, int maxPoolSize) {
         Options ldapOptions = Options.defaultOptions()
                 .set(REQUEST_TIMEOUT, new Duration((long) defaultTimeLimit, TimeUnit.SECONDS));
@@ -681,6 +724,7 @@ public class DJLDAPv3Repo extends IdRepo implements IdentityMovedOrRenamedListen
                     modifyRequest.addModification(ModificationType.ADD, memberOfAttr, dn);
                     conn.modify(modifyRequest);
                 }
+                invalidateMemberships(dn, Collections.singleton(defaultGroupMember));
             }
         } catch (LdapException ere) {
             DEBUG.error("Unable to add a new entry: " + name + " attrMap: "
@@ -775,22 +819,86 @@ public class DJLDAPv3Repo extends IdRepo implements IdentityMovedOrRenamedListen
      */
     private <T> Map<String, T> getAttributes(IdType type, String name, Set<String> attrNames,
             Function<Attribute, T, IdRepoException> function) throws IdRepoException {
+        AttributeRead read = newAttributeRead(type, name, attrNames);
+        if (read == null) {
+            return new HashMap<>(0);
+        }
+        Connection conn = null;
+        SearchResultEntry entry = null;
+        try {
+            conn = createConnection();
+            entry = conn.searchSingleEntry(read.request);
+        } catch (LdapException ere) {
+            DEBUG.error("An error occurred while getting user attributes", ere);
+            handleErrorResult(ere);
+        } finally {
+            IOUtils.closeIfNotNull(conn);
+        }
+        return read.toResult(entry, function);
+    }
+
+    /**
+     * Returns all the requested attributes that are defined in the configuration for this given identity, without
+     * waiting for the directory to respond. The identity's DN is still looked up synchronously (usually from the DN
+     * cache), but the entry itself is read with an asynchronous search, and the connection is returned to the pool
+     * when the search completes.
+     *
+     * @param token Not used.
+     * @param type The type of the identity.
+     * @param name The name of the identity.
+     * @param attrNames The names of the requested attributes or <code>null</code> to retrieve all the attributes.
+     * @return A promise of the requested attributes of this identity.
+     */
+    @Override
+    public Promise<Map<String, Set<String>>, IdRepoException> getAttributesAsync(SSOToken token, IdType type,
+            String name, Set<String> attrNames) {
+        if (DEBUG.messageEnabled()) {
+            DEBUG.message("getAttributesAsync invoked");
+        }
+        final AttributeRead read;
+        try {
+            read = newAttributeRead(type, name, attrNames);
+        } catch (IdRepoException ire) {
+            return Promises.newExceptionPromise(ire);
+        }
+        if (read == null) {
+            return Promises.<Map<String, Set<String>>, IdRepoException>newResultPromise(
+                    new HashMap<String, Set<String>>(0));
+        }
+        return withConnectionAsync(new AsyncFunction<Connection, SearchResultEntry, LdapException>() {
+            @Override
+            public Promise<SearchResultEntry, LdapException> apply(Connection conn) {
+                return conn.searchSingleEntryAsync(read.request);
+            }
+        }, "An error occurred while getting user attributes", null)
+                .then(new Function<SearchResultEntry, Map<String, Set<String>>, IdRepoException>() {
+                    @Override
+                    public Map<String, Set<String>> apply(SearchResultEntry entry) throws IdRepoException {
+                        return read.toResult(entry, new StringAttributeExtractor());
+                    }
+                });
+    }
+
+    /**
+     * Works out which attributes to read for {@link #getAttributes(IdType, String, Set, Function)}.
+     *
+     * @return The attribute read, or <code>null</code> if there is nothing to read and the result is empty.
+     */
+    private AttributeRead newAttributeRead(IdType type, String name, Set<String> attrNames) throws IdRepoException {
         Set<String> attrs = attrNames == null
                 ? new CaseInsensitiveHashSet(0) : new CaseInsensitiveHashSet(attrNames);
 
         if (type.equals(IdType.REALM)) {
             if (attrs.contains(OBJECT_CLASS_ATTR)) {
-                return new HashMap(0);
+                return null;
             }
         }
-        Map<String, T> result = new HashMap<>();
         String dn = getDN(type, name);
         if (type.equals(IdType.USER)) {
             if (attrs.contains(DEFAULT_USER_STATUS_ATTR)) {
                 attrs.add(userStatusAttr);
             }
         }
-        Connection conn = null;
         Set<String> definedAttributes = getDefinedAttributes(type);
         if (attrs.isEmpty() || attrs.contains("*")) {
             attrs.clear();
@@ -805,41 +913,10 @@ public class DJLDAPv3Repo extends IdRepo implements IdentityMovedOrRenamedListen
             }
             if (attrs.isEmpty()) {
                 //there were only non-defined attributes requested, so we shouldn't return anything here.
-                return new HashMap<>(0);
-            }
-        }
-        try {
-            conn = createConnection();
-            SearchResultEntry entry = conn.searchSingleEntry(
-                    LDAPRequests.newSingleEntrySearchRequest(dn, attrs.toArray(new String[attrs.size()])));
-            for (Attribute attribute : entry.getAllAttributes()) {
-                String attrName = attribute.getAttributeDescriptionAsString();
-                if (!definedAttributes.isEmpty() && !definedAttributes.contains(attrName)) {
-                    continue;
-                }
-                result.put(attribute.getAttributeDescriptionAsString(), function.apply(attribute));
-                if (attrName.equalsIgnoreCase(userStatusAttr)) {
-                    // Always include the DEFAULT_USER_STATUS_ATTR to cover any mapped isActive logic in envs like AD.
-                    String converted = helper.convertToInetUserStatus(attribute.firstValueAsString(), activeValue);
-                    result.put(DEFAULT_USER_STATUS_ATTR,
-                            function.apply(new LinkedAttribute(DEFAULT_USER_STATUS_ATTR, converted)));
-                }
+                return null;
             }
-        } catch (LdapException ere) {
-            DEBUG.error("An error occurred while getting user attributes", ere);
-            handleErrorResult(ere);
-        } finally {
-            IOUtils.closeIfNotNull(conn);
-        }
-        if (attrs.contains(DN_ATTR)) {
-            result.put(DN_ATTR, function.apply(new LinkedAttribute(DN_ATTR, dn)));
-        }
-
-        if (DEBUG.messageEnabled()) {
-            DEBUG.message("getAttributes returning attrMap: "
-                    + IdRepoUtils.getAttrMapWithoutPasswordAttrs(result, null));
         }
-        return result;
+        return new AttributeRead(dn, attrs, definedAttributes);
     }
 
     /**
@@ -1058,6 +1135,11 @@ public class DJLDAPv3Repo extends IdRepo implements IdentityMovedOrRenamedListen
         } finally {
             IOUtils.closeIfNotNull(conn);
         }
+        if (isMembershipChange(type, attributes.keySet())) {
+            Object members = new CaseInsensitiveHashMap(attributes).get(uniqueMemberAttr);
+            invalidateMemberships(modifyRequest.getName().toString(),
+                    members instanceof Set ? (Set<String>) members : null);
+        }
     }
 
     /**
@@ -1096,6 +1178,9 @@ public class DJLDAPv3Repo extends IdRepo implements IdentityMovedOrRenamedListen
         } finally {
             IOUtils.closeIfNotNull(conn);
         }
+        if (isMembershipChange(type, attrNames)) {
+            invalidateMemberships(dn, null);
+        }
     }
 
     /**
@@ -1176,7 +1261,7 @@ public class DJLDAPv3Repo extends IdRepo implements IdentityMovedOrRenamedListen
         Map<String, Map<String, Set<String>>> entries = new HashMap<>();
         int errorCode = RepoSearchResults.SUCCESS;
         try {
-            conn = createConnection();
+            conn = createSearchConnection();
             ConnectionEntryReader reader = conn.search(searchRequest);
             while (reader.hasNext()) {
                 Map<String, Set<String>> attributes = new HashMap<>();
@@ -1253,6 +1338,7 @@ public class DJLDAPv3Repo extends IdRepo implements IdentityMovedOrRenamedListen
         } finally {
             IOUtils.closeIfNotNull(conn);
         }
+        invalidateMemberships(dn, null);
         if (dnCacheEnabled) {
             dnCache.remove(generateDNCacheKey(name, type));
         }
@@ -1373,7 +1459,7 @@ public class DJLDAPv3Repo extends IdRepo implements IdentityMovedOrRenamedListen
         searchRequest.setSizeLimit(defaultSizeLimit);
         Connection conn = null;
         try {
-            conn = createConnection();
+            conn = createSearchConnection();
             ConnectionEntryReader reader = conn.search(searchRequest);
             while (reader.hasNext()) {
                 if (reader.isEntry()) {
@@ -1409,7 +1495,7 @@ public class DJLDAPv3Repo extends IdRepo implements IdentityMovedOrRenamedListen
         Set<String> results = new HashSet<>();
         Connection conn = null;
         try {
-            conn = createConnection();
+            conn = createSearchConnection();
             SearchResultEntry entry = conn.searchSingleEntry(LDAPRequests.newSingleEntrySearchRequest(dn,
                     roleFilterAttr));
             Attribute filterAttr = entry.getAttribute(roleFilterAttr);
@@ -1476,6 +1562,148 @@ public class DJLDAPv3Repo extends IdRepo implements IdentityMovedOrRenamedListen
         throw newIdRepoException(IdRepoErrorCode.MEMBERSHIP_NOT_SUPPORTED, CLASS_NAME, type.getName(), membershipType.getName());
     }
 
+    /**
+     * Returns the memberships of the given user without waiting for the directory to respond. The user's DN is still
+     * looked up synchronously (usually from the DN cache), but the membership data is read with an asynchronous
+     * search. Filtered role memberships are read along with the non-filtered role memberships in a single request.
+     *
+     * @param token Not used.
+     * @param type The type of the identity, this should be always USER.
+     * @param name The name of the identity.
+     * @param membershipType The type of the membership identity, this should be always GROUP/ROLE/FILTEREDROLE.
+     * @return A promise of the DNs of the groups/roles/filtered roles this user is member of.
+     * @see #getMemberships(SSOToken, IdType, String, IdType)
+     */
+    @Override
+    public Promise<Set<String>, IdRepoException> getMembershipsAsync(SSOToken token, IdType type, String name,
+            IdType membershipType) {
+        if (DEBUG.messageEnabled()) {
+            DEBUG.message("getMembershipsAsync called");
+        }
+        if (!type.equals(IdType.USER)) {
+            return Promises.newExceptionPromise(
+                    newIdRepoException(IdRepoErrorCode.MEMBERSHIPS_FOR_NOT_USERS_NOT_ALLOWED, CLASS_NAME));
+        }
+        String dn;
+        try {
+            dn = getDN(IdType.USER, name);
+        } catch (IdRepoException ire) {
+            return Promises.newExceptionPromise(ire);
+        }
+        if (membershipType.equals(IdType.GROUP)) {
+            if (membershipCache != null) {
+                // Served from memory once cached, so not worth a round trip through the connection pool
+                try {
+                    return Promises.newResultPromise(getGroupMemberships(dn));
+                } catch (IdRepoException ire) {
+                    return Promises.newExceptionPromise(ire);
+                }
+            }
+            if (memberOfAttr == null) {
+                return getGroupMembershipsAsync(dn);
+            }
+            return readAttributeValuesAsync(dn, new HashSet<String>(), "An error occurred while trying to retrieve "
+                    + "group memberships for " + dn + " using " + memberOfAttr + " attribute", memberOfAttr);
+        } else if (membershipType.equals(IdType.ROLE)) {
+            return readAttributeValuesAsync(dn, new HashSet<String>(), "An error occurred while trying to retrieve "
+                    + "role memberships for " + dn + " using " + roleDNAttr + " attribute", roleDNAttr);
+        } else if (membershipType.equals(IdType.FILTEREDROLE)) {
+            return readAttributeValuesAsync(dn, new CaseInsensitiveHashSet(), "An error occurred while trying to "
+                    + "retrieve filtered role memberships for " + dn + " using " + roleAttr + " and " + roleDNAttr
+                    + " attributes", roleAttr, roleDNAttr);
+        }
+        return Promises.newExceptionPromise(newIdRepoException(IdRepoErrorCode.MEMBERSHIP_NOT_SUPPORTED, CLASS_NAME,
+                type.getName(), membershipType.getName()));
+    }
+
+    /**
+     * Asynchronous equivalent of {@link #loadGroupMemberships(String)} when the memberOf attribute is not
+     * configured.
+     */
+    private Promise<Set<String>, IdRepoException> getGroupMembershipsAsync(final String dn) {
+        Filter filter = Filter.and(groupSearchFilter, Filter.equality(uniqueMemberAttr, dn));
+        final SearchRequest searchRequest =
+                LDAPRequests.newSearchRequest(getBaseDN(IdType.GROUP), defaultScope, filter, DN_ATTR);
+        searchRequest.setTimeLimit(defaultTimeLimit);
+        searchRequest.setSizeLimit(defaultSizeLimit);
+        // Entries are delivered one at a time, and the promise completes after the last one
+        final Set<String> results = new HashSet<>();
+        return withConnectionAsync(searchConnectionFactory,
+                new AsyncFunction<Connection, Set<String>, LdapException>() {
+            @Override
+            public Promise<Set<String>, LdapException> apply(Connection conn) {
+                return conn.searchAsync(searchRequest, null, new SearchResultHandler() {
+                    @Override
+                    public boolean handleEntry(SearchResultEntry entry) {
+                        results.add(entry.getName().toString());
+                        return true;
+                    }
+
+                    @Override
+                    public boolean handleReference(SearchResultReference reference) {
+                        //ignore search result references
+                        return true;
+                    }
+                }).then(new Function<Result, Set<String>, LdapException>() {
+                    @Override
+                    public Set<String> apply(Result result) {
+                        return results;
+                    }
+                });
+            }
+        }, "An error occurred while trying to retrieve group memberships for " + dn + " using " + uniqueMemberAttr,
+                results);
+    }
+
+    /**
+     * Reads the values of the given attributes from an entry without waiting for the directory to respond.
+     *
+     * @param dn The DN of the entry.
+     * @param results The set the attribute values are added to.
+     * @param errorMessage The message to log if the read fails.
+     * @param attributeNames The attributes to read.
+     * @return A promise of the results set.
+     */
+    private Promise<Set<String>, IdRepoException> readAttributeValuesAsync(String dn, final Set<String> results,
+            String errorMessage, final String... attributeNames) {
+        final SearchRequest request = LDAPRequests.newSingleEntrySearchRequest(dn, attributeNames);
+        return withConnectionAsync(new AsyncFunction<Connection, SearchResultEntry, LdapException>() {
+            @Override
+            public Promise<SearchResultEntry, LdapException> apply(Connection conn) {
+                return conn.searchSingleEntryAsync(request);
+            }
+        }, errorMessage, null).then(new Function<SearchResultEntry, Set<String>, IdRepoException>() {
+            @Override
+            public Set<String> apply(SearchResultEntry entry) {
+                if (entry != null) {
+                    for (String attributeName : attributeNames) {
+                        Attribute attr = entry.getAttribute(attributeName);
+                        if (attr != null) {
+                            results.addAll(LDAPUtils.getAttributeValuesAsStringSet(attr));
+                        }
+                    }
+                }
+                return results;
+            }
+        });
+    }
+
+    /**
+     * Returns the group membership informations for this given user, from the membership cache if it is enabled.
+     *
+     * @param dn The DN of the user identity.
+     * @return The DNs of the groups that the provided user is member of.
+     * @throws IdRepoException If there was an error while retrieving the group membership information.
+     * @see #loadGroupMemberships(String)
+     */
+    private Set<String> getGroupMemberships(String dn) throws IdRepoException {
+        GroupMembershipCache cache = membershipCache;
+        if (cache == null) {
+            return loadGroupMemberships(dn);
+        }
+        return cache.getGroups(dn);
+    }
+
     /**
      * Returns the group membership informations for this given user. In case the memberOf attribute is configured,
      * this will try to query the user entry and return the group DNs found in the memberOf attribute. Otherwise a
@@ -1485,7 +1713,7 @@ public class DJLDAPv3Repo extends IdRepo implements IdentityMovedOrRenamedListen
      * @return The DNs of the groups that the provided user is member of.
      * @throws IdRepoException If there was an error while retrieving the group membership information.
      */
-    private Set<String> getGroupMemberships(String dn) throws IdRepoException {
+    private Set<String> loadGroupMemberships(String dn) throws IdRepoException {
         Set<String> results = new HashSet<>();
         if (memberOfAttr == null) {
             Filter filter = Filter.and(groupSearchFilter, Filter.equality(uniqueMemberAttr, dn));
@@ -1495,7 +1723,7 @@ public class DJLDAPv3Repo extends IdRepo implements IdentityMovedOrRenamedListen
             searchRequest.setSizeLimit(defaultSizeLimit);
             Connection conn = null;
             try {
-                conn = createConnection();
+                conn = createSearchConnection();
                 ConnectionEntryReader reader = conn.search(searchRequest);
                 while (reader.hasNext()) {
                     if (reader.isEntry()) {
@@ -1683,6 +1911,7 @@ public class DJLDAPv3Repo extends IdRepo implements IdentityMovedOrRenamedListen
             handleErrorResult(ere);
         } finally {
             IOUtils.closeIfNotNull(conn);
+            invalidateMemberships(groupDN, memberDNs);
         }
 
     }
@@ -2098,6 +2327,7 @@ public class DJLDAPv3Repo extends IdRepo implements IdentityMovedOrRenamedListen
                 if (dnCacheEnabled) {
                     pSearch.addMovedOrRenamedListener(this);
                 }
+                addMembershipCache(pSearch);
                 pSearch.addListener(idRepoListener, getSupportedTypes());
                 try {
                     pSearch.startQuery();
@@ -2110,11 +2340,65 @@ public class DJLDAPv3Repo extends IdRepo implements IdentityMovedOrRenamedListen
                 if (dnCacheEnabled) {
                     pSearch.addMovedOrRenamedListener(this);
                 }
+                addMembershipCache(pSearch);
             }
         }
         return 0;
     }
 
+    /**
+     * Enables the group membership cache, if it has been enabled, now that the persistent search can keep it up to
+     * date. The cache is not used without a persistent search, as it would never learn about changes made by other
+     * servers or directly in the directory, nor when the persistent search does not report the changes to groups.
+     *
+     * @param pSearch The persistent search of this data store.
+     */
+    private void addMembershipCache(DJLDAPv3PersistentSearch pSearch) {
+        if (membershipCache != null || !SystemProperties.getAsBoolean(MEMBERSHIP_CACHE_ENABLED, false)) {
+            return;
+        }
+        if (!pSearch.covers(getBaseDN(IdType.GROUP), groupObjectClasses)) {
+            DEBUG.warning("The persistent search does not report the changes made to groups, the group membership "
+                    + "cache is disabled");
+            return;
+        }
+        GroupMembershipCache cache = new GroupMembershipCache(new GroupMembershipCache.Loader() {
+            @Override
+            public Set<String> loadGroups(String memberDN) throws IdRepoException {
+                return loadGroupMemberships(memberDN);
+            }
+        }, groupObjectClasses, SystemProperties.getAsInt(MEMBERSHIP_CACHE_SIZE, 10000),
+                SystemProperties.getAsBoolean(MEMBERSHIP_CACHE_NESTED, false));
+        pSearch.addEntryChangedListener(cache);
+        membershipCache = cache;
+    }
+
+    /**
+     * Discards the cached group memberships affected by a change this data store made to an entry, so that the
+     * change is visible straight away rather than once the persistent search reports it.
+     *
+     * @param dn The DN of the changed entry.
+     * @param memberDNs The members added to or removed from the entry if it is a group, or <code>null</code>.
+     */
+    private void invalidateMemberships(String dn, Collection<String> memberDNs) {
+        GroupMembershipCache cache = membershipCache;
+        if (cache != null) {
+            cache.invalidate(dn, memberDNs);
+        }
+    }
+
+    /**
+     * Tells whether modifying the given attributes of an identity may change group memberships.
+     *
+     * @param type The type of the identity.
+     * @param attrNames The names of the modified attributes.
+     * @return <code>true</code> if the identity is a group, or if the memberOf attribute is modified.
+     */
+    private boolean isMembershipChange(IdType type, Collection<String> attrNames) {
+        return type.equals(IdType.GROUP)
+                || (memberOfAttr != null && new CaseInsensitiveHashSet(attrNames).contains(memberOfAttr));
+    }
+
     /**
      * This method will be called by the end of the IdRepo's lifetime, and makes sure that persistent search is properly
      * terminated for this IdRepo.
@@ -2137,6 +2421,10 @@ public class DJLDAPv3Repo extends IdRepo implements IdentityMovedOrRenamedListen
                     DEBUG.error("PSearch is already removed, unable to unregister");
                 } else {
                     pSearch.removeMovedOrRenamedListener(this);
+                    if (membershipCache != null) {
+                        pSearch.removeEntryChangedListener(membershipCache);
+                        membershipCache = null;
+                    }
                     pSearch.removeListener(idRepoListener);
                     if (!pSearch.hasListeners()) {
                         pSearch.stopSearch();
@@ -2161,6 +2449,9 @@ public class DJLDAPv3Repo extends IdRepo implements IdentityMovedOrRenamedListen
         super.shutdown();
         removeListener();
         IOUtils.closeIfNotNull(connectionFactory);
+        if (searchConnectionFactory != connectionFactory) {
+            IOUtils.closeIfNotNull(searchConnectionFactory);
+        }
         IOUtils.closeIfNotNull(bindConnectionFactory);
         idRepoListener = null;
     }
@@ -2529,6 +2820,59 @@ public class DJLDAPv3Repo extends IdRepo implements IdentityMovedOrRenamedListen
         return new IdRepoException(IdRepoBundle.BUNDLE_NAME, key, String.valueOf(resultCode.intValue()), args);
     }
 
+    /**
+     * The search request for an attribute read, along with what is needed to turn its entry into the result.
+     */
+    private final class AttributeRead {
+
+        private final String dn;
+        private final Set<String> attrs;
+        private final Set<String> definedAttributes;
+        private final SearchRequest request;
+
+        private AttributeRead(String dn, Set<String> attrs, Set<String> definedAttributes) {
+            this.dn = dn;
+            this.attrs = attrs;
+            this.definedAttributes = definedAttributes;
+            this.request = LDAPRequests.newSingleEntrySearchRequest(dn, attrs.toArray(new String[attrs.size()]));
+        }
+
+        /**
+         * Converts the entry read into the attribute map.
+         *
+         * @param entry The entry, or <code>null</code> if it could not be read but the error was ignored.
+         */
+        private <T> Map<String, T> toResult(SearchResultEntry entry, Function<Attribute, T, IdRepoException> function)
+                throws IdRepoException {
+            Map<String, T> result = new HashMap<>();
+            if (entry != null) {
+                for (Attribute attribute : entry.getAllAttributes()) {
+                    String attrName = attribute.getAttributeDescriptionAsString();
+                    if (!definedAttributes.isEmpty() && !definedAttributes.contains(attrName)) {
+                        continue;
+                    }
+                    result.put(attribute.getAttributeDescriptionAsString(), function.apply(attribute));
+                    if (attrName.equalsIgnoreCase(userStatusAttr)) {
+                        // Always include the DEFAULT_USER_STATUS_ATTR to cover any mapped isActive logic in envs
+                        // like AD.
+                        String converted = helper.convertToInetUserStatus(attribute.firstValueAsString(), activeValue);
+                        result.put(DEFAULT_USER_STATUS_ATTR,
+                                function.apply(new LinkedAttribute(DEFAULT_USER_STATUS_ATTR, converted)));
+                    }
+                }
+            }
+            if (attrs.contains(DN_ATTR)) {
+                result.put(DN_ATTR, function.apply(new LinkedAttribute(DN_ATTR, dn)));
+            }
+
+            if (DEBUG.messageEnabled()) {
+                DEBUG.message("getAttributes returning attrMap: "
+                        + IdRepoUtils.getAttrMapWithoutPasswordAttrs(result, null));
+            }
+            return result;
+        }
+    }
+
     private static class StringAttributeExtractor implements Function<Attribute, Set<String>, IdRepoException> {
 
         @Override
@@ -2585,6 +2929,84 @@ public class DJLDAPv3Repo extends IdRepo implements IdentityMovedOrRenamedListen
         }
     }
 
+    /**
+     * Obtains a connection from the pool dedicated to the searches that may return several entries, so that these
+     * can not exhaust the connections used for reading and modifying individual entries.
+     */
+    private Connection createSearchConnection() throws IdRepoException {
+        try {
+            return searchConnectionFactory.create();
+        } catch (DataLayerException e) {
+            DEBUG.error("An error occurred while trying to create a search connection to the datastore", e);
+            throw newIdRepoException(IdRepoErrorCode.INITIALIZATION_ERROR, CLASS_NAME);
+        }
+    }
+
+    /**
+     * Obtains a connection without blocking, performs the asynchronous operation on it and releases it once the
+     * operation completes. LDAP errors are handled as {@link #handleErrorResult(LdapException)} would for the
+     * synchronous operations, so errors which are only logged (such as an exceeded size limit) complete the promise
+     * with the provided partial result.
+     *
+     * @param <V> The type of the operation's result.
+     * @param operation The operation to perform with the connection.
+     * @param errorMessage The message to log if the operation fails.
+     * @param partialResult The result of the operation if it fails with an error that is only logged.
+     * @return A promise of the operation's result.
+     */
+    private <V> Promise<V, IdRepoException> withConnectionAsync(
+            final AsyncFunction<Connection, V, LdapException> operation, final String errorMessage,
+            final V partialResult) {
+        return withConnectionAsync(connectionFactory, operation, errorMessage, partialResult);
+    }
+
+    /**
+     * Performs the asynchronous operation with a connection obtained from the provided connection pool, as
+     * {@link #withConnectionAsync(AsyncFunction, String, Object)} does.
+     */
+    private <V> Promise<V, IdRepoException> withConnectionAsync(final ConnectionFactory<Connection> factory,
+            final AsyncFunction<Connection, V, LdapException> operation, final String errorMessage,
+            final V partialResult) {
+        return factory.createAsync().thenAsync(
+                new AsyncFunction<Connection, V, IdRepoException>() {
+                    @Override
+                    public Promise<V, IdRepoException> apply(final Connection conn) {
+                        Promise<V, LdapException> promise;
+                        try {
+                            promise = operation.apply(conn);
+                        } catch (LdapException ere) {
+                            promise = Promises.newExceptionPromise(ere);
+                        }
+                        return promise.thenAlways(new Runnable() {
+                            @Override
+                            public void run() {
+                                IOUtils.closeIfNotNull(conn);
+                            }
+                        }).then(new Function<V, V, IdRepoException>() {
+                            @Override
+                            public V apply(V value) {
+                                return value;
+                            }
+                        }, new Function<LdapException, V, IdRepoException>() {
+                            @Override
+                            public V apply(LdapException ere) throws IdRepoException {
+                                DEBUG.error(errorMessage, ere);
+                                handleErrorResult(ere);
+                                return partialResult;
+                            }
+                        });
+                    }
+                },
+                new AsyncFunction<DataLayerException, V, IdRepoException>() {
+                    @Override
+                    public Promise<V, IdRepoException> apply(DataLayerException e) {
+                        DEBUG.error("An error occurred while trying to create a connection to the datastore", e);
+                        return Promises.newExceptionPromise(
+                                newIdRepoException(IdRepoErrorCode.INITIALIZATION_ERROR, CLASS_NAME));
+                    }
+                });
+    }
+
     private Connection createBindConnection() throws IdRepoException {
         try {
             return bindConnectionFactory.create();
@@ -0,0 +1,43 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openam.idrepo.ldap;
+
+import org.forgerock.opendj.ldap.DN;
+import org.forgerock.opendj.ldap.controls.PersistentSearchChangeType;
+import org.forgerock.opendj.ldap.responses.SearchResultEntry;
+
+/**
+ * Interface describing interactions when a watched entry is changed in the identity store.
+ *
+ * @since 14.0.0
+ */
+public interface EntryChangedListener {
+
+    /**
+     * Called when an entry has been added, modified, deleted, moved or renamed within the identity store.
+     *
+     * @param entry The entry as returned by the persistent search, with the attributes it requested.
+     * @param previousDN The DN of the entry before a move or rename, or <code>null</code>.
+     * @param type The type of the change.
+     */
+    void entryChanged(SearchResultEntry entry, DN previousDN, PersistentSearchChangeType type);
+
+    /**
+     * Called when changes may have been missed, for example while the persistent search was reconnecting, so any
+     * state derived from the identity store has to be discarded.
+     */
+    void allEntriesChanged();
+}
@@ -0,0 +1,299 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openam.idrepo.ldap;
+
+import static org.forgerock.openam.ldap.LDAPConstants.OBJECT_CLASS_ATTR;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.forgerock.i18n.LocalizedIllegalArgumentException;
+import org.forgerock.openam.ldap.LDAPUtils;
+import org.forgerock.opendj.ldap.Attribute;
+import org.forgerock.opendj.ldap.DN;
+import org.forgerock.opendj.ldap.controls.PersistentSearchChangeType;
+import org.forgerock.opendj.ldap.responses.SearchResultEntry;
+
+import com.sun.identity.common.CaseInsensitiveHashSet;
+import com.sun.identity.idm.IdRepoException;
+import com.sun.identity.shared.debug.Debug;
+
+/**
+ * Caches the group membership graph of a data store: for each member (user or group) the groups that list it
+ * directly, and for each group the cached members that it lists, so that a group being deleted or renamed only
+ * discards the entries that it affects. Nested group memberships are resolved on demand by walking the cached graph.
+ * <p>
+ * The cache is kept up to date from the persistent search through {@link EntryChangedListener}, and from the data
+ * store's own writes through {@link #invalidate(String, Collection)}. A change to an entry discards the entry's own
+ * groups and the cached members of the entry if it is a group, which covers members being removed, moved and deleted.
+ * The persistent search does not return the members of a group, as groups can be large, so a group being added or
+ * modified discards the whole cache: any member may have been added to it. Loads racing with a change are not cached.
+ *
+ * @since 14.0.0
+ */
+class GroupMembershipCache implements EntryChangedListener {
+
+    private static final Debug DEBUG = Debug.getInstance("DJLDAPv3Repo");
+
+    /**
+     * Reads the groups that directly list a member from the directory.
+     */
+    interface Loader {
+
+        /**
+         * Returns the DNs of the groups that directly list the member.
+         *
+         * @param memberDN The DN of the user or group.
+         * @return The DNs of the groups.
+         * @throws IdRepoException If the memberships cannot be read.
+         */
+        Set<String> loadGroups(String memberDN) throws IdRepoException;
+    }
+
+    private final ConcurrentMap<DN, Set<String>> groupsByMember = new ConcurrentHashMap<>();
+    private final ConcurrentMap<DN, Set<DN>> cachedMembersByGroup = new ConcurrentHashMap<>();
+    private final AtomicLong changes = new AtomicLong();
+    private final Loader loader;
+    private final Set<String> groupObjectClasses;
+    private final int maxSize;
+    private final boolean nested;
+
+    /**
+     * Creates a new membership cache.
+     *
+     * @param loader Reads the memberships that are not cached.
+     * @param groupObjectClasses The object classes of the groups.
+     * @param maxSize The maximum number of members to cache the memberships of.
+     * @param nested Whether {@link #getGroups(String)} should include the groups the member belongs to through other
+     * groups.
+     */
+    GroupMembershipCache(Loader loader, Set<String> groupObjectClasses, int maxSize, boolean nested) {
+        this.loader = loader;
+        this.groupObjectClasses = new CaseInsensitiveHashSet<>(groupObjectClasses);
+        this.maxSize = maxSize;
+        this.nested = nested;
+    }
+
+    /**
+     * Returns the DNs of the groups the member belongs to, loading and caching the memberships that are not cached.
+     * If nested memberships are enabled, this includes the parents of those groups, transitively.
+     *
+     * @param memberDN The DN of the user or group.
+     * @return A new set containing the DNs of the groups.
+     * @throws IdRepoException If the memberships of the member cannot be read.
+     */
+    Set<String> getGroups(String memberDN) throws IdRepoException {
+        Set<String> groups = new LinkedHashSet<>(getDirectGroups(memberDN));
+        if (!nested || groups.isEmpty()) {
+            return groups;
+        }
+
+        Set<DN> visited = new HashSet<>();
+        DN member = toDN(memberDN);
+        if (member != null) {
+            visited.add(member);
+        }
+        Deque<String> pending = new ArrayDeque<>(groups);
+        while (!pending.isEmpty()) {
+            String groupDN = pending.poll();
+            DN group = toDN(groupDN);
+            if (group == null || !visited.add(group)) {
+                continue;
+            }
+            try {
+                for (String parentDN : getDirectGroups(groupDN)) {
+                    if (groups.add(parentDN)) {
+                        pending.add(parentDN);
+                    }
+                }
+            } catch (IdRepoException ire) {
+                // A dangling group reference shouldn't hide the memberships that can be resolved.
+                DEBUG.warning("Unable to resolve the parent groups of " + groupDN, ire);
+            }
+        }
+        return groups;
+    }
+
+    /**
+     * Discards the cached memberships affected by a change made to an entry.
+     *
+     * @param dn The DN of the changed entry.
+     * @param memberDNs The members the entry lists after the change, if it is a group and they are known.
+     */
+    void invalidate(String dn, Collection<String> memberDNs) {
+        changes.incrementAndGet();
+        DN changed = toDN(dn);
+        if (changed != null) {
+            invalidate(changed);
+        }
+        if (memberDNs != null) {
+            for (String memberDN : memberDNs) {
+                DN member = toDN(memberDN);
+                if (member != null) {
+                    removeMember(member);
+                }
+            }
+        }
+    }
+
+    /**
+     * Discards all the cached memberships.
+     */
+    void clear() {
+        changes.incrementAndGet();
+        groupsByMember.clear();
+        cachedMembersByGroup.clear();
+    }
+
+    /**
+     * Returns the number of members whose memberships are cached.
+     *
+     * @return The number of cached members.
+     */
+    int size() {
+        return groupsByMember.size();
+    }
+
+    @Override
+    public void entryChanged(SearchResultEntry entry, DN previousDN, PersistentSearchChangeType type) {
+        changes.incrementAndGet();
+        if (previousDN != null) {
+            invalidate(previousDN);
+        }
+        invalidate(entry.getName());
+        if ((PersistentSearchChangeType.ADD.equals(type) || PersistentSearchChangeType.MODIFY.equals(type))
+                && isGroup(entry)) {
+            // The members the group lists now are not known, so any cached member may have been added to it
+            if (DEBUG.messageEnabled()) {
+                DEBUG.message("Group " + entry.getName() + " changed, clearing the group membership cache");
+            }
+            clear();
+        }
+    }
+
+    @Override
+    public void allEntriesChanged() {
+        clear();
+    }
+
+    private Set<String> getDirectGroups(String memberDN) throws IdRepoException {
+        DN member = toDN(memberDN);
+        if (member == null) {
+            return loader.loadGroups(memberDN);
+        }
+        Set<String> groups = groupsByMember.get(member);
+        if (groups != null) {
+            return groups;
+        }
+
+        long changesBeforeLoad = changes.get();
+        groups = Collections.unmodifiableSet(new HashSet<>(loader.loadGroups(memberDN)));
+        if (groupsByMember.size() >= maxSize) {
+            if (DEBUG.messageEnabled()) {
+                DEBUG.message("Group membership cache is full, clearing it");
+            }
+            clear();
+            return groups;
+        }
+
+        // Index the memberships before publishing them, so that a concurrent change to one of the groups either
+        // finds the member in the index, or is detected by the change count below.
+        Set<DN> groupDNs = new HashSet<>(groups.size());
+        for (String groupDN : groups) {
+            DN group = toDN(groupDN);
+            if (group == null) {
+                return groups;
+            }
+            groupDNs.add(group);
+        }
+        for (DN group : groupDNs) {
+            Set<DN> cachedMembers = cachedMembersByGroup.get(group);
+            if (cachedMembers == null) {
+                Set<DN> newMembers = Collections.newSetFromMap(new ConcurrentHashMap<DN, Boolean>());
+                cachedMembers = cachedMembersByGroup.putIfAbsent(group, newMembers);
+                if (cachedMembers == null) {
+                    cachedMembers = newMembers;
+                }
+            }
+            cachedMembers.add(member);
+        }
+        groupsByMember.put(member, groups);
+        if (changes.get() != changesBeforeLoad) {
+            // The directory may have changed after the memberships were read
+            groupsByMember.remove(member, groups);
+        }
+        return groups;
+    }
+
+    private void invalidate(DN dn) {
+        removeMember(dn);
+        Set<DN> cachedMembers = cachedMembersByGroup.remove(dn);
+        if (cachedMembers != null) {
+            for (DN member : cachedMembers) {
+                removeMember(member);
+            }
+        }
+    }
+
+    private void removeMember(DN member) {
+        Set<String> groups = groupsByMember.remove(member);
+        if (groups != null) {
+            for (String groupDN : groups) {
+                DN group = toDN(groupDN);
+                Set<DN> cachedMembers = group == null ? null : cachedMembersByGroup.get(group);
+                if (cachedMembers != null) {
+                    cachedMembers.remove(member);
+                }
+            }
+        }
+    }
+
+    /**
+     * Tells whether the entry is a group, judging by the object classes the persistent search returned. An entry
+     * returned without its object classes is assumed to be a group.
+     */
+    private boolean isGroup(SearchResultEntry entry) {
+        Attribute objectClasses = entry.getAttribute(OBJECT_CLASS_ATTR);
+        if (objectClasses == null || groupObjectClasses.isEmpty()) {
+            return true;
+        }
+        for (String objectClass : LDAPUtils.getAttributeValuesAsStringSet(objectClasses)) {
+            if (groupObjectClasses.contains(objectClass)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static DN toDN(String dn) {
+        try {
+            return DN.valueOf(dn);
+        } catch (LocalizedIllegalArgumentException e) {
+            if (DEBUG.messageEnabled()) {
+                DEBUG.message("Unable to parse DN " + dn + ", its memberships won't be cached");
+            }
+            return null;
+        }
+    }
+}
@@ -21,12 +21,16 @@ import static org.forgerock.openam.ldap.LDAPConstants.*;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
 
+import org.forgerock.openam.idrepo.ldap.EntryChangedListener;
 import org.forgerock.openam.idrepo.ldap.IdentityMovedOrRenamedListener;
 import org.forgerock.openam.ldap.LDAPUtils;
 import org.forgerock.openam.sm.datalayer.api.ConnectionFactory;
 import org.forgerock.opendj.ldap.DN;
+import org.forgerock.opendj.ldap.Entry;
 import org.forgerock.opendj.ldap.Filter;
+import org.forgerock.opendj.ldap.LinkedHashMapEntry;
 import org.forgerock.opendj.ldap.SearchScope;
 import org.forgerock.opendj.ldap.controls.PersistentSearchChangeType;
 import org.forgerock.opendj.ldap.responses.SearchResultEntry;
@@ -46,6 +50,7 @@ public class DJLDAPv3PersistentSearch extends LDAPv3PersistentSearch<IdRepoListe
     private static final Debug DEBUG = Debug.getInstance("PersistentSearch");
     private final SearchResultEntryHandler resultEntryHandler = new PSearchResultEntryHandler();
     private final Set<IdentityMovedOrRenamedListener> movedOrRenamedListenerSet = new HashSet<>(1);
+    private final Set<EntryChangedListener> entryChangedListenerSet = new CopyOnWriteArraySet<>();
     private final String usersSearchAttributeName;
 
     /**
@@ -53,7 +58,8 @@ public class DJLDAPv3PersistentSearch extends LDAPv3PersistentSearch<IdRepoListe
      *
      * @param configMap Non null. Map containing the configuration data necessary to perform a persistent search,
      *                  including the retry interval, search DN, the filter to apply and scope of the query and
-     *                  any user attributes that will be returned through the connection.
+     *                  any user attributes that will be returned through the connection. The object classes are
+     *                  returned as well, so that changes to groups can be told apart.
      * @param factory Used to produce connections down to the LDAP datastore.
      */
     public DJLDAPv3PersistentSearch(Map<String, Set<String>> configMap, ConnectionFactory factory) {
@@ -63,7 +69,8 @@ public class DJLDAPv3PersistentSearch extends LDAPv3PersistentSearch<IdRepoListe
                                 Filter.objectClassPresent()), LDAPUtils
                         .getSearchScope(CollectionHelper.getMapAttr(configMap, LDAP_PERSISTENT_SEARCH_SCOPE),
                                 SearchScope.WHOLE_SUBTREE), factory,
-                CollectionHelper.getMapAttr(configMap, LDAP_USER_SEARCH_ATTR));
+                CollectionHelper.getMapAttr(configMap, LDAP_USER_SEARCH_ATTR),
+                OBJECT_CLASS_ATTR);
         usersSearchAttributeName = CollectionHelper.getMapAttr(configMap, LDAP_USER_SEARCH_ATTR);
     }
 
@@ -91,11 +98,52 @@ public class DJLDAPv3PersistentSearch extends LDAPv3PersistentSearch<IdRepoListe
         movedOrRenamedListenerSet.remove(movedOrRenamedListener);
     }
 
+    /**
+     * Adds an {@link EntryChangedListener} object, which needs to be notified about every persistent search result.
+     *
+     * @param entryChangedListener The {@link EntryChangedListener} instance that needs to be notified about changes.
+     */
+    public void addEntryChangedListener(EntryChangedListener entryChangedListener) {
+        entryChangedListenerSet.add(entryChangedListener);
+    }
+
+    /**
+     * Removes an {@link EntryChangedListener} if it was registered to get persistent search notifications.
+     *
+     * @param entryChangedListener The {@link EntryChangedListener} instance to remove from the listeners.
+     */
+    public void removeEntryChangedListener(EntryChangedListener entryChangedListener) {
+        entryChangedListenerSet.remove(entryChangedListener);
+    }
+
+    /**
+     * Tells whether the persistent search reports the changes made to the entries with the given object classes below
+     * the given base DN.
+     *
+     * @param baseDN The DN the entries are below.
+     * @param objectClasses The object classes of the entries.
+     * @return <code>true</code> if the search base and scope include the entries below the base DN, and the search
+     * filter matches entries with these object classes.
+     */
+    public boolean covers(DN baseDN, Set<String> objectClasses) {
+        SearchScope scope = getSearchScope();
+        if (!baseDN.isSubordinateOrEqualTo(getSearchBaseDN())
+                || (!SearchScope.WHOLE_SUBTREE.equals(scope) && !SearchScope.SUBORDINATES.equals(scope))) {
+            return false;
+        }
+        Entry entry = new LinkedHashMapEntry(baseDN.child("cn", "entry"));
+        entry.addAttribute(OBJECT_CLASS_ATTR, objectClasses.toArray());
+        return getSearchFilter().matcher().matches(entry).toBoolean();
+    }
+
     @Override
     protected void clearCaches() {
         for (IdRepoListener idRepoListener : getListeners().keySet()) {
             idRepoListener.allObjectsChanged();
         }
+        for (EntryChangedListener listener : entryChangedListenerSet) {
+            listener.allEntriesChanged();
+        }
     }
 
     @Override
@@ -120,6 +168,10 @@ public class DJLDAPv3PersistentSearch extends LDAPv3PersistentSearch<IdRepoListe
                     }
                 }
 
+                for (EntryChangedListener listener : entryChangedListenerSet) {
+                    listener.entryChanged(entry, previousDn, type);
+                }
+
                 for (Map.Entry<IdRepoListener, Set<IdType>> listenerEntry : getListeners().entrySet()) {
                     IdRepoListener listener = listenerEntry.getKey();
 
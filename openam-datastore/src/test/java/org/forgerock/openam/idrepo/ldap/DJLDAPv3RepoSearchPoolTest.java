@@ -0,0 +1,43 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openam.idrepo.ldap;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+public class DJLDAPv3RepoSearchPoolTest {
+
+    @DataProvider
+    public Object[][] poolSizes() {
+        return new Object[][] {
+            {1, 0},
+            {3, 0},
+            {4, 0},
+            {7, 0},
+            {8, 2},
+            {10, 2},
+            {40, 10}
+        };
+    }
+
+    @Test(dataProvider = "poolSizes")
+    public void shouldOnlySetAsideSearchPoolOfAtLeastTwoConnections(int maxPoolSize, int searchPoolSize) {
+        assertThat(DJLDAPv3Repo.getSearchPoolSize(maxPoolSize)).isEqualTo(searchPoolSize);
+    }
+}
@@ -179,6 +179,26 @@ public class GenericRepoTest extends IdRepoTestBase {
         }
     }
 
+    @Test
+    public void getAttributesAsyncReturnsSameAttributesAsGetAttributes() throws Exception {
+        assertThat(idrepo.getAttributesAsync(null, IdType.USER, DEMO, null).getOrThrow())
+                .isEqualTo(idrepo.getAttributes(null, IdType.USER, DEMO));
+        assertThat(idrepo.getAttributesAsync(null, IdType.USER, DEMO, asSet("l", "sn")).getOrThrow())
+                .isEqualTo(idrepo.getAttributes(null, IdType.USER, DEMO, asSet("l", "sn")));
+        assertThat(idrepo.getAttributesAsync(null, IdType.USER, DEMO, asSet("l")).getOrThrow()).isEmpty();
+    }
+
+    @Test
+    public void getAttributesAsyncFailsForNonExistentUser() throws Exception {
+        try {
+            idrepo.getAttributesAsync(null, IdType.USER, "invalid", null).getOrThrow();
+            fail();
+        } catch (IdRepoException ire) {
+            assertThat(ire).isInstanceOf(IdRepoException.class)
+                    .hasMessage(getIdRepoExceptionMessage(IdRepoErrorCode.TYPE_NOT_FOUND, "invalid", "user"));
+        }
+    }
+
     @Test
     public void getAttributesReturnsDNIfNoAttributesAreRequested() throws Exception {
         Map<String, Set<String>> attrs = idrepo.getAttributes(null, IdType.USER, DEMO);
@@ -439,9 +459,12 @@ public class GenericRepoTest extends IdRepoTestBase {
         idrepo.modifyMemberShip(null, IdType.GROUP, TEST1_GROUP, asSet(DEMO), IdType.USER, IdRepo.ADDMEMBER);
         assertThat(idrepo.getMembers(null, IdType.GROUP, TEST1_GROUP, IdType.USER)).containsOnly(DEMO_DN);
         assertThat(idrepo.getMemberships(null, IdType.USER, DEMO, IdType.GROUP)).containsOnly(TEST1_GROUP_DN);
+        assertThat(idrepo.getMembershipsAsync(null, IdType.USER, DEMO, IdType.GROUP).getOrThrow())
+                .containsOnly(TEST1_GROUP_DN);
         idrepo.modifyMemberShip(null, IdType.GROUP, TEST1_GROUP, asSet(DEMO), IdType.USER, IdRepo.REMOVEMEMBER);
         assertThat(idrepo.getMembers(null, IdType.GROUP, TEST1_GROUP, IdType.USER)).isEmpty();
         assertThat(idrepo.getMemberships(null, IdType.USER, DEMO, IdType.GROUP)).isEmpty();
+        assertThat(idrepo.getMembershipsAsync(null, IdType.USER, DEMO, IdType.GROUP).getOrThrow()).isEmpty();
     }
 
     @Test(dependsOnMethods = "groupMembershipsAreConsistent")
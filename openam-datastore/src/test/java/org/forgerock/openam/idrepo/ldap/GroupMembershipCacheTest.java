@@ -0,0 +1,226 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openam.idrepo.ldap;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.forgerock.openam.utils.CollectionUtils.asSet;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.forgerock.opendj.ldap.DN;
+import org.forgerock.opendj.ldap.controls.PersistentSearchChangeType;
+import org.forgerock.opendj.ldap.responses.Responses;
+import org.forgerock.opendj.ldap.responses.SearchResultEntry;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.sun.identity.idm.IdRepoException;
+
+public class GroupMembershipCacheTest {
+
+    private static final String USER = "uid=demo,ou=people,dc=example,dc=com";
+    private static final String OTHER_USER = "uid=other,ou=people,dc=example,dc=com";
+    private static final String GROUP = "cn=group,ou=groups,dc=example,dc=com";
+    private static final String PARENT = "cn=parent,ou=groups,dc=example,dc=com";
+    private static final String GRANDPARENT = "cn=grandparent,ou=groups,dc=example,dc=com";
+    private static final Set<String> GROUP_OBJECT_CLASSES = asSet("groupOfUniqueNames", "groupOfURLs");
+
+    private FakeDirectory directory;
+    private GroupMembershipCache cache;
+
+    @BeforeMethod
+    public void setUp() {
+        directory = new FakeDirectory();
+        directory.memberships.put(USER, asSet(GROUP));
+        directory.memberships.put(OTHER_USER, Collections.<String>emptySet());
+        directory.memberships.put(GROUP, asSet(PARENT));
+        directory.memberships.put(PARENT, asSet(GRANDPARENT));
+        directory.memberships.put(GRANDPARENT, Collections.<String>emptySet());
+        cache = new GroupMembershipCache(directory, GROUP_OBJECT_CLASSES, 100, false);
+    }
+
+    @Test
+    public void shouldOnlyReadMembershipsOnce() throws Exception {
+        assertThat(cache.getGroups(USER)).containsOnly(GROUP);
+        assertThat(cache.getGroups("UID=demo, ou=People,dc=example,dc=com")).containsOnly(GROUP);
+
+        assertThat(directory.loads).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldResolveNestedGroupsFromCache() throws Exception {
+        cache = new GroupMembershipCache(directory, GROUP_OBJECT_CLASSES, 100, true);
+
+        assertThat(cache.getGroups(USER)).containsOnly(GROUP, PARENT, GRANDPARENT);
+        assertThat(cache.getGroups(USER)).containsOnly(GROUP, PARENT, GRANDPARENT);
+
+        assertThat(directory.loads).isEqualTo(4);
+    }
+
+    @Test
+    public void shouldStopAtMembershipCycles() throws Exception {
+        cache = new GroupMembershipCache(directory, GROUP_OBJECT_CLASSES, 100, true);
+        directory.memberships.put(GRANDPARENT, asSet(GROUP));
+
+        assertThat(cache.getGroups(USER)).containsOnly(GROUP, PARENT, GRANDPARENT);
+    }
+
+    @Test
+    public void shouldDiscardMembersRemovedFromChangedGroup() throws Exception {
+        cache.getGroups(USER);
+        directory.memberships.put(USER, Collections.<String>emptySet());
+
+        cache.entryChanged(groupEntry(GROUP), null, PersistentSearchChangeType.MODIFY);
+
+        assertThat(cache.getGroups(USER)).isEmpty();
+    }
+
+    @Test
+    public void shouldDiscardMembersAddedToChangedGroup() throws Exception {
+        cache.getGroups(OTHER_USER);
+        directory.memberships.put(OTHER_USER, asSet(GROUP));
+
+        cache.entryChanged(groupEntry(GROUP), null, PersistentSearchChangeType.MODIFY);
+
+        assertThat(cache.getGroups(OTHER_USER)).containsOnly(GROUP);
+    }
+
+    @Test
+    public void shouldDiscardMembersOfAddedGroup() throws Exception {
+        cache.getGroups(OTHER_USER);
+        directory.memberships.put(OTHER_USER, asSet("cn=new,ou=groups,dc=example,dc=com"));
+
+        cache.entryChanged(groupEntry("cn=new,ou=groups,dc=example,dc=com"), null, PersistentSearchChangeType.ADD);
+
+        assertThat(cache.getGroups(OTHER_USER)).containsOnly("cn=new,ou=groups,dc=example,dc=com");
+    }
+
+    @Test
+    public void shouldKeepMembershipsUnaffectedByChange() throws Exception {
+        cache.getGroups(USER);
+        cache.getGroups(OTHER_USER);
+
+        cache.entryChanged(userEntry(USER), null, PersistentSearchChangeType.MODIFY);
+        cache.getGroups(OTHER_USER);
+
+        assertThat(directory.loads).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldKeepMembershipsUnaffectedByDeletedGroup() throws Exception {
+        cache.getGroups(USER);
+        cache.getGroups(OTHER_USER);
+
+        cache.entryChanged(groupEntry(PARENT), null, PersistentSearchChangeType.DELETE);
+        cache.getGroups(OTHER_USER);
+
+        assertThat(directory.loads).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldTreatEntryWithoutObjectClassesAsGroup() throws Exception {
+        cache.getGroups(OTHER_USER);
+
+        cache.entryChanged(Responses.newSearchResultEntry(GROUP), null, PersistentSearchChangeType.MODIFY);
+
+        assertThat(cache.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldDiscardMembershipsOfRenamedMember() throws Exception {
+        cache.getGroups(USER);
+
+        cache.entryChanged(userEntry("uid=renamed,ou=people,dc=example,dc=com"), DN.valueOf(USER),
+                PersistentSearchChangeType.MODIFY_DN);
+        cache.getGroups(USER);
+
+        assertThat(directory.loads).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldDiscardNestedMembershipsWhenParentGroupChanges() throws Exception {
+        cache = new GroupMembershipCache(directory, GROUP_OBJECT_CLASSES, 100, true);
+        cache.getGroups(USER);
+        directory.memberships.put(PARENT, Collections.<String>emptySet());
+
+        cache.entryChanged(groupEntry(GRANDPARENT), null, PersistentSearchChangeType.MODIFY);
+
+        assertThat(cache.getGroups(USER)).containsOnly(GROUP, PARENT);
+    }
+
+    @Test
+    public void shouldNotCacheMembershipsReadWhileDirectoryChanged() throws Exception {
+        directory.onLoad = new Runnable() {
+            @Override
+            public void run() {
+                cache.invalidate(GROUP, null);
+            }
+        };
+
+        cache.getGroups(USER);
+
+        assertThat(cache.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldClearWhenChangesMayHaveBeenMissed() throws Exception {
+        cache.getGroups(USER);
+
+        cache.allEntriesChanged();
+
+        assertThat(cache.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldClearWhenFull() throws Exception {
+        cache = new GroupMembershipCache(directory, GROUP_OBJECT_CLASSES, 1, false);
+        cache.getGroups(USER);
+
+        assertThat(cache.getGroups(OTHER_USER)).isEmpty();
+        assertThat(cache.size()).isEqualTo(0);
+    }
+
+    private SearchResultEntry groupEntry(String dn) {
+        SearchResultEntry entry = Responses.newSearchResultEntry(dn);
+        entry.addAttribute("objectClass", "top", "groupOfUniqueNames");
+        return entry;
+    }
+
+    private SearchResultEntry userEntry(String dn) {
+        SearchResultEntry entry = Responses.newSearchResultEntry(dn);
+        entry.addAttribute("objectClass", "top", "inetOrgPerson");
+        return entry;
+    }
+
+    private static final class FakeDirectory implements GroupMembershipCache.Loader {
+
+        private final Map<String, Set<String>> memberships = new HashMap<>();
+        private int loads;
+        private Runnable onLoad;
+
+        @Override
+        public Set<String> loadGroups(String memberDN) throws IdRepoException {
+            loads++;
+            if (onLoad != null) {
+                onLoad.run();
+            }
+            return memberships.get(memberDN);
+        }
+    }
+}
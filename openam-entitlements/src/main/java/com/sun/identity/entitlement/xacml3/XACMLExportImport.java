@@ -19,11 +19,20 @@ package com.sun.identity.entitlement.xacml3;
 import static org.forgerock.openam.xacml.v3.XACMLApplicationUtils.ApplicationTypeService;
 
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -32,10 +41,12 @@ import javax.security.auth.Subject;
 import org.forgerock.openam.entitlement.service.ApplicationService;
 import org.forgerock.openam.entitlement.service.ApplicationServiceFactory;
 import org.forgerock.openam.entitlement.service.ResourceTypeService;
+import org.forgerock.openam.xacml.v3.ImportProgressListener;
 import org.forgerock.openam.xacml.v3.ImportStep;
 import org.forgerock.openam.xacml.v3.PersistableImportStep;
 import org.forgerock.openam.xacml.v3.ImportStepGenerator;
 
+import com.iplanet.am.util.SystemProperties;
 import com.sun.identity.entitlement.EntitlementException;
 import com.sun.identity.entitlement.Privilege;
 import com.sun.identity.entitlement.PrivilegeManager;
@@ -54,6 +65,11 @@ public class XACMLExportImport {
 
     public static final String PREFIX = XACMLExportImport.class.getSimpleName();
 
+    private static final String IMPORT_THREADS_PROPERTY = "org.forgerock.openam.xacml.import.threads";
+    private static final String IMPORT_BATCH_SIZE_PROPERTY = "org.forgerock.openam.xacml.import.batchSize";
+    private static final int DEFAULT_IMPORT_THREADS = 4;
+    private static final int DEFAULT_IMPORT_BATCH_SIZE = 100;
+
     // Injected
     private final XACMLReaderWriter xacmlReaderWriter;
     private final SearchFilterFactory searchFilterFactory;
@@ -103,9 +119,34 @@ public class XACMLExportImport {
      */
     public List<ImportStep> importXacml(String realm, InputStream xacml, Subject admin, boolean dryRun)
             throws EntitlementException {
+        return importXacml(realm, xacml, admin, dryRun, null);
+    }
+
+    /**
+     * Performs the Import based on the given Stream. The stream must contain XML in XACML.
+     * <p>
+     * Resource types and applications are applied first, in order. Privileges are then applied in batches by a
+     * bounded number of threads, configured by {@code org.forgerock.openam.xacml.import.threads} (4 by default) and
+     * {@code org.forgerock.openam.xacml.import.batchSize} (100 by default).
+     * If a step fails, no further batches are started and the first failure is thrown once the batches already
+     * running have stopped.
+     *
+     * @param realm Non null Realm to populate with the Policies.
+     * @param xacml Non null stream to read.
+     * @param admin Non null admin Subject.
+     * @param dryRun boolean flag, indicating import steps should be reported but not applied.
+     * @param listener Notified as each step is applied, may be null.
+     * @return The sequence steps that could or have been used to carry out the import.
+     * @throws EntitlementException If there was any unexpected error.
+     */
+    public List<ImportStep> importXacml(String realm, InputStream xacml, Subject admin, boolean dryRun,
+            ImportProgressListener listener) throws EntitlementException {
         PrivilegeSet privilegeSet = xacmlToPrivilegeSet(xacml);
-        List<PersistableImportStep> importSteps = generateImportSteps(realm, privilegeSet, admin);
-        applyIfRequired(dryRun, importSteps);
+        ImportStepGenerator importStepGenerator = generateImportSteps(realm, privilegeSet, admin);
+        List<PersistableImportStep> importSteps = importStepGenerator.getAllImportSteps();
+        if (!dryRun) {
+            applyImportSteps(importStepGenerator, new ImportProgress(importSteps.size(), listener));
+        }
 
         return new ArrayList<ImportStep>(importSteps);
     }
@@ -120,10 +161,10 @@ public class XACMLExportImport {
      * @param realm Non null Realm to populate with the Policies.
      * @param privilegeSet Non null, collection of Privileges, ReferralPrivileges etc. to import.
      * @param admin Non null admin Subject.
-     * @return The sequence steps that can be used to carry out the import.
+     * @return The generator holding the steps that can be used to carry out the import.
      * @throws EntitlementException If there was any unexpected error.
      */
-    private List<PersistableImportStep> generateImportSteps(String realm, PrivilegeSet privilegeSet, Subject admin)
+    private ImportStepGenerator generateImportSteps(String realm, PrivilegeSet privilegeSet, Subject admin)
             throws EntitlementException {
         ApplicationService applicationService = applicationServiceFactory.create(admin, realm);
         PrivilegeManager privilegeManager = privilegeManagerFactory.createReferralPrivilegeManager(realm, admin);
@@ -135,23 +176,98 @@ public class XACMLExportImport {
 
         importStepGenerator.generateImportSteps();
 
-        return importStepGenerator.getAllImportSteps();
+        return importStepGenerator;
     }
 
-    private void applyIfRequired(boolean dryRun, List<PersistableImportStep> importSteps) throws EntitlementException {
-        if (!dryRun) {
-            message("Import: Policies to Import {0}", importSteps.size());
+    private void applyImportSteps(ImportStepGenerator importStepGenerator, ImportProgress progress)
+            throws EntitlementException {
+        message("Import: Policies to Import {0}", progress.total);
+
+        // Privileges refer to the resource types and applications, so these are all in place first
+        applyInOrder(importStepGenerator.getImportStepsResourceType(), progress);
+        applyInOrder(importStepGenerator.getImportStepsApplication(), progress);
+        applyInBatches(importStepGenerator.getImportStepsPrivilege(), progress);
+
+        message("Import: Complete");
+    }
+
+    private void applyInOrder(List<? extends PersistableImportStep> importSteps, ImportProgress progress)
+            throws EntitlementException {
+        for (PersistableImportStep importStep : importSteps) {
+            apply(importStep, progress);
+        }
+    }
+
+    private void applyInBatches(List<? extends PersistableImportStep> importSteps, final ImportProgress progress)
+            throws EntitlementException {
+        int batchSize = Math.max(1, SystemProperties.getAsInt(IMPORT_BATCH_SIZE_PROPERTY, DEFAULT_IMPORT_BATCH_SIZE));
+        int batches = (importSteps.size() + batchSize - 1) / batchSize;
+        int threads = Math.min(batches, SystemProperties.getAsInt(IMPORT_THREADS_PROPERTY, DEFAULT_IMPORT_THREADS));
+        if (threads <= 1) {
+            applyInOrder(importSteps, progress);
+            return;
+        }
 
-            for (PersistableImportStep importStep : importSteps) {
-                message("Import: {0} {1} {2}",
-                        importStep.getDiffStatus().name(), importStep.getType(), importStep.getName());
-                importStep.apply();
+        message("Import: Applying {0} Privileges in {1} batches using {2} threads",
+                importSteps.size(), batches, threads);
+        final AtomicBoolean failed = new AtomicBoolean(false);
+        ExecutorService executorService = Executors.newFixedThreadPool(threads, new ImportThreadFactory());
+        try {
+            List<Future<Void>> results = new ArrayList<>(batches);
+            for (int start = 0; start < importSteps.size(); start += batchSize) {
+                final List<? extends PersistableImportStep> batch =
+                        importSteps.subList(start, Math.min(start + batchSize, importSteps.size()));
+                results.add(executorService.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws EntitlementException {
+                        for (PersistableImportStep importStep : batch) {
+                            if (failed.get()) {
+                                break;
+                            }
+                            try {
+                                apply(importStep, progress);
+                            } catch (EntitlementException | RuntimeException e) {
+                                failed.set(true);
+                                throw e;
+                            }
+                        }
+                        return null;
+                    }
+                }));
             }
 
-            message("Import: Complete");
+            Throwable failure = null;
+            for (Future<Void> result : results) {
+                try {
+                    result.get();
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause();
+                    }
+                }
+            }
+            if (failure instanceof EntitlementException) {
+                throw (EntitlementException) failure;
+            } else if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            } else if (failure != null) {
+                throw new EntitlementException(EntitlementException.INTERNAL_ERROR, failure);
+            }
+        } catch (InterruptedException e) {
+            failed.set(true);
+            Thread.currentThread().interrupt();
+            throw new EntitlementException(EntitlementException.INTERNAL_ERROR, e);
+        } finally {
+            executorService.shutdownNow();
         }
     }
 
+    private void apply(PersistableImportStep importStep, ImportProgress progress) throws EntitlementException {
+        message("Import: {0} {1} {2}", importStep.getDiffStatus().name(), importStep.getType(), importStep.getName());
+        importStep.apply();
+        progress.stepApplied(importStep);
+    }
+
     /**
      * Performs an export of all Policies found in the Privilege Manager that match the
      * provided filters.
@@ -165,7 +281,53 @@ public class XACMLExportImport {
     public PolicySet exportXACML(String realm, Subject admin, List<String> filters)
             throws EntitlementException {
         PrivilegeManager pm = privilegeManagerFactory.createReferralPrivilegeManager(realm, admin);
+        Set<String> privilegeNames = searchPrivilegeNames(pm, filters);
+
+        PrivilegeSet privilegeSet = new PrivilegeSet();
+        for (String name : privilegeNames) {
+            Privilege privilege = pm.findByName(name, admin);
+            message("Export: Privilege {0}", privilege.getName());
+            privilegeSet.addPrivilege(privilege);
+        }
+
+        PolicySet policySet = xacmlReaderWriter.toXACML(realm, privilegeSet);
+        message("Export: Complete");
+        return policySet;
+    }
+
+    /**
+     * Performs an export of all Policies found in the Privilege Manager that match the provided filters, writing
+     * each Policy to the stream as its Privilege is read so that only one Privilege is held in memory at a time.
+     * Nothing is written if no Privileges match the filters.
+     *
+     * @param realm Non null realm.
+     * @param admin Non null admin subject to authenticate as.
+     * @param filters Non null, but maybe empty filters to select Privileges against.
+     * @param outputStream Non null stream to write the XACML PolicySet to. It is not closed.
+     * @return The number of Policies written.
+     * @throws EntitlementException If there was any problem with the generation of Policies.
+     */
+    public int exportXACML(String realm, Subject admin, List<String> filters, OutputStream outputStream)
+            throws EntitlementException {
+        PrivilegeManager pm = privilegeManagerFactory.createReferralPrivilegeManager(realm, admin);
+        Set<String> privilegeNames = searchPrivilegeNames(pm, filters);
+        if (privilegeNames.isEmpty()) {
+            return 0;
+        }
+
+        XACMLPolicySetWriter writer = xacmlReaderWriter.newPolicySetWriter(realm, outputStream);
+        for (String name : privilegeNames) {
+            Privilege privilege = pm.findByName(name, admin);
+            message("Export: Privilege {0}", privilege.getName());
+            writer.write(privilege);
+        }
+        writer.close();
 
+        message("Export: Complete");
+        return writer.getCount();
+    }
+
+    private Set<String> searchPrivilegeNames(PrivilegeManager pm, List<String> filters) throws EntitlementException {
         Set<SearchFilter> filterSet = new HashSet<SearchFilter>();
         if (filters != null) {
             for (String filter : filters) {
@@ -177,17 +339,7 @@ public class XACMLExportImport {
 
         Set<String> privilegeNames = pm.searchNames(filterSet);
         message("Export: Privilege Matches {0}", privilegeNames.size());
-
-        PrivilegeSet privilegeSet = new PrivilegeSet();
-        for (String name : privilegeNames) {
-            Privilege privilege = pm.findByName(name, admin);
-            message("Export: Privilege {0}", privilege.getName());
-            privilegeSet.addPrivilege(privilege);
-        }
-
-        PolicySet policySet = xacmlReaderWriter.toXACML(realm, privilegeSet);
-        message("Export: Complete");
-        return policySet;
+        return privilegeNames;
     }
 
     private void message(String format, Object... args) {
@@ -196,6 +348,40 @@ public class XACMLExportImport {
         }
     }
 
+    /**
+     * Counts the applied import steps and passes them on to the listener, one at a time.
+     */
+    private static final class ImportProgress {
+
+        private final int total;
+        private final ImportProgressListener listener;
+        private int applied;
+
+        private ImportProgress(int total, ImportProgressListener listener) {
+            this.total = total;
+            this.listener = listener;
+        }
+
+        private synchronized void stepApplied(ImportStep importStep) {
+            applied++;
+            if (listener != null) {
+                listener.stepApplied(importStep, applied, total);
+            }
+        }
+    }
+
+    private static final class ImportThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, PREFIX + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
     /**
      * Factory to allow PrivilegeManager to be mocked in tests
      */
@@ -0,0 +1,141 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package com.sun.identity.entitlement.xacml3;
+
+import static com.sun.identity.entitlement.xacml3.XACMLReaderWriter.XACML3_NAMESPACE;
+
+import java.io.OutputStream;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.json.JSONException;
+
+import com.sun.identity.entitlement.EntitlementException;
+import com.sun.identity.entitlement.Privilege;
+import com.sun.identity.entitlement.ReferralPrivilege;
+import com.sun.identity.entitlement.xacml3.core.ObjectFactory;
+import com.sun.identity.entitlement.xacml3.core.Policy;
+import com.sun.identity.entitlement.xacml3.core.PolicySet;
+
+/**
+ * Writes OpenAM Privileges to a stream as an XACML PolicySet one at a time, so that exporting a realm does not
+ * need all of its privileges, or their XACML translation, in memory at once.
+ * <p>
+ * The PolicySet element is written when the writer is created, each privilege is marshalled as a Policy as soon as
+ * it is written, and the PolicySet is ended by {@link #close()}. Instances are not thread safe.
+ *
+ * @see XACMLReaderWriter#newPolicySetWriter(String, java.io.OutputStream)
+ * @since 14.0.0
+ */
+public class XACMLPolicySetWriter {
+
+    private static final String ENCODING = "UTF-8";
+
+    private final ObjectFactory objectFactory = new ObjectFactory();
+    private final XMLStreamWriter writer;
+    private final Marshaller marshaller;
+    private int count;
+
+    XACMLPolicySetWriter(JAXBContext jaxbContext, String realm, OutputStream outputStream)
+            throws EntitlementException {
+        try {
+            marshaller = jaxbContext.createMarshaller();
+            marshaller.setProperty(Marshaller.JAXB_FRAGMENT, Boolean.TRUE);
+            writer = XMLOutputFactory.newInstance().createXMLStreamWriter(outputStream, ENCODING);
+
+            PolicySet policySet = XACMLPrivilegeUtils.newPolicySet(realm);
+            writer.writeStartDocument(ENCODING, "1.0");
+            writer.setDefaultNamespace(XACML3_NAMESPACE);
+            writer.writeStartElement(XACML3_NAMESPACE, "PolicySet");
+            writer.writeDefaultNamespace(XACML3_NAMESPACE);
+            writer.writeAttribute("PolicySetId", policySet.getPolicySetId());
+            writer.writeAttribute("Version", policySet.getVersion().getValue());
+            writer.writeAttribute("PolicyCombiningAlgId", policySet.getPolicyCombiningAlgId());
+            marshaller.marshal(objectFactory.createTarget(policySet.getTarget()), writer);
+        } catch (JAXBException | XMLStreamException e) {
+            throw new EntitlementException(EntitlementException.UNABLE_TO_SERIALIZE_OBJECT, e);
+        }
+    }
+
+    /**
+     * Translates the privilege to an XACML Policy and writes it.
+     *
+     * @param privilege Non null privilege to write.
+     * @throws EntitlementException If the privilege could not be translated or written.
+     */
+    public void write(Privilege privilege) throws EntitlementException {
+        Policy policy = XACMLPrivilegeUtils.privilegeToPolicy(privilege);
+        if (policy == null) {
+            // The cause has already been logged by privilegeToPolicy
+            throw new EntitlementException(EntitlementException.UNABLE_TO_SERIALIZE_OBJECT);
+        }
+        write(policy);
+    }
+
+    /**
+     * Translates the referral privilege to an XACML Policy and writes it.
+     *
+     * @param referralPrivilege Non null referral privilege to write.
+     * @throws EntitlementException If the referral privilege could not be translated or written.
+     */
+    public void write(ReferralPrivilege referralPrivilege) throws EntitlementException {
+        try {
+            write(XACMLPrivilegeUtils.referralToPolicy(referralPrivilege));
+        } catch (JSONException e) {
+            throw new EntitlementException(XACMLReaderWriter.JSON_PARSE_ERROR, e);
+        }
+    }
+
+    /**
+     * Returns the number of policies written so far.
+     *
+     * @return The number of policies.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Ends the PolicySet and flushes it to the stream, which is left open.
+     *
+     * @throws EntitlementException If the PolicySet could not be written.
+     */
+    public void close() throws EntitlementException {
+        try {
+            writer.writeEndElement();
+            writer.writeEndDocument();
+            writer.flush();
+            writer.close();
+        } catch (XMLStreamException e) {
+            throw new EntitlementException(EntitlementException.UNABLE_TO_SERIALIZE_OBJECT, e);
+        }
+    }
+
+    private void write(Policy policy) throws EntitlementException {
+        try {
+            marshaller.marshal(objectFactory.createPolicy(policy), writer);
+            count++;
+        } catch (JAXBException e) {
+            throw new EntitlementException(EntitlementException.UNABLE_TO_SERIALIZE_OBJECT, e);
+        }
+    }
+}
@@ -23,10 +23,16 @@ import static org.forgerock.openam.xacml.v3.XACMLResourceTypeUtils.createResourc
 import static org.forgerock.openam.xacml.v3.XACMLResourceTypeUtils.generateResourceTypeDummyUuid;
 
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.HashMap;
 import java.util.Map;
 
+import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import org.forgerock.openam.entitlement.ResourceType;
 import org.forgerock.openam.xacml.v3.XACMLApplicationUtils;
@@ -48,23 +54,82 @@ public class XACMLReaderWriter {
     public static final int JSON_PARSE_ERROR = EntitlementException.JSON_PARSE_ERROR;
     public static final int INVALID_XML = EntitlementException.INVALID_XML;
 
+    static final String XACML3_NAMESPACE = "urn:oasis:names:tc:xacml:3.0:core:schema:wd-17";
+    private static final String POLICY_SET = "PolicySet";
+    private static final String POLICY = "Policy";
+
+    private static volatile JAXBContext jaxbContext;
+
     /**
      * Reads a sequence of XACML policies as OpenAM Privileges.
+     * <p>
+     * The policy set is read as a stream and each of its policies is unmarshalled and translated on its own, so the
+     * XML tree of the whole policy set is never held in memory. The translation is the same as
+     * {@link #fromXACML(PolicySet)}.
      *
      * @param xacml Non null stream to read.
      * @return The XACML policies translated to OpenAM privileges.
      * @throws EntitlementException If there was any unexpected error.
      */
     public PrivilegeSet read(InputStream xacml) throws EntitlementException {
+        PrivilegeSet privilegeSet = new PrivilegeSet();
+        if (xacml == null) {
+            return privilegeSet;
+        }
 
-        PolicySet policySet;
+        XMLStreamReader reader = null;
         try {
-            policySet = XACMLPrivilegeUtils.streamToPolicySet(xacml);
+            reader = newXMLInputFactory().createXMLStreamReader(xacml);
+            reader.nextTag();
+            if (!isXACMLElement(reader, POLICY_SET)) {
+                throw new EntitlementException(INVALID_XML,
+                        new XMLStreamException("Expected a " + POLICY_SET + " but found " + reader.getName()));
+            }
 
-        } catch (JAXBException e) {
+            Unmarshaller unmarshaller = getJAXBContext().createUnmarshaller();
+            Map<String, Application> applicationMap = new HashMap<>();
+            int depth = 0;
+            while (reader.hasNext()) {
+                if (reader.isStartElement()) {
+                    if (depth == 1 && isXACMLElement(reader, POLICY)) {
+                        // Leaves the reader on the event following the end of the policy
+                        Policy policy = unmarshaller.unmarshal(reader, Policy.class).getValue();
+                        addPolicy(policy, privilegeSet, applicationMap);
+                        continue;
+                    }
+                    depth++;
+                } else if (reader.isEndElement()) {
+                    depth--;
+                }
+                reader.next();
+            }
+            return privilegeSet;
+
+        } catch (XMLStreamException | JAXBException e) {
             throw new EntitlementException(INVALID_XML, e);
+        } catch (JSONException e) {
+            throw new EntitlementException(JSON_PARSE_ERROR, e);
+        } finally {
+            closeQuietly(reader);
+        }
+    }
+
+    /**
+     * Creates a writer which streams OpenAM Privileges to the provided stream as an XACML PolicySet, translating
+     * and writing each privilege as it is given rather than building the whole PolicySet first.
+     *
+     * @param realm The realm to which the privileges belong.
+     * @param outputStream Non null stream to write to. It is not closed by the writer.
+     * @return A writer which has already written the start of the PolicySet.
+     * @throws EntitlementException If the PolicySet could not be started.
+     */
+    public XACMLPolicySetWriter newPolicySetWriter(String realm, OutputStream outputStream)
+            throws EntitlementException {
+        try {
+            return new XACMLPolicySetWriter(getJAXBContext(), realm, outputStream);
+        } catch (JAXBException e) {
+            throw new EntitlementException(EntitlementException.UNABLE_TO_SERIALIZE_OBJECT, e);
         }
-        return fromXACML(policySet);
     }
 
     /**
@@ -93,42 +158,47 @@ public class XACMLReaderWriter {
             Map<String, Application> applicationMap = new HashMap<>();
 
             for (Policy policy : getPoliciesFromPolicySet(policySet)) {
+                addPolicy(policy, privilegeSet, applicationMap);
+            }
 
-                if (isReferralPolicy(policy)) {
-                    privilegeSet.addReferralPrivilege(policyToReferral(policy));
-                    continue;
-                }
+            return privilegeSet;
+
+        } catch (JSONException e) {
+            throw new EntitlementException(JSON_PARSE_ERROR, e);
+        }
+    }
 
-                String applicationName = getApplicationNameFromPolicy(policy);
+    private void addPolicy(Policy policy, PrivilegeSet privilegeSet, Map<String, Application> applicationMap)
+            throws EntitlementException, JSONException {
 
-                Application application = applicationMap.get(applicationName);
-                if (application == null) {
-                    application = policyToApplication(policy);
-                    applicationMap.put(applicationName, application);
-                    privilegeSet.addApplication(application);
-                }
+        if (isReferralPolicy(policy)) {
+            privilegeSet.addReferralPrivilege(policyToReferral(policy));
+            return;
+        }
 
-                // Create one resourceType instance (with a dummy uuid) per policy read from the XACML file.
-                // Later these instances with dummy ids will be replaced by either an existing instance
-                //  in the data store or by a new instance created during Resource Type Import Step generation.
-                ResourceType resourceType = createResourceType(applicationName, null,
-                        getResourceNamesFromPolicy(policy),
-                        getActionValuesFromPolicy(policy),
-                        generateResourceTypeDummyUuid());
-                privilegeSet.addResourceType(resourceType);
+        String applicationName = getApplicationNameFromPolicy(policy);
 
-                Privilege privilege = policyToPrivilege(policy);
-                privilegeSet.addPrivilege(privilege);
+        Application application = applicationMap.get(applicationName);
+        if (application == null) {
+            application = policyToApplication(policy);
+            applicationMap.put(applicationName, application);
+            privilegeSet.addApplication(application);
+        }
 
-                application.addResourceTypeUuid(resourceType.getUUID());
-                privilege.setResourceTypeUuid(resourceType.getUUID());
-            }
+        // Create one resourceType instance (with a dummy uuid) per policy read from the XACML file.
+        // Later these instances with dummy ids will be replaced by either an existing instance
+        //  in the data store or by a new instance created during Resource Type Import Step generation.
+        ResourceType resourceType = createResourceType(applicationName, null,
+                getResourceNamesFromPolicy(policy),
+                getActionValuesFromPolicy(policy),
+                generateResourceTypeDummyUuid());
+        privilegeSet.addResourceType(resourceType);
 
-            return privilegeSet;
+        Privilege privilege = policyToPrivilege(policy);
+        privilegeSet.addPrivilege(privilege);
 
-        } catch (JSONException e) {
-            throw new EntitlementException(JSON_PARSE_ERROR, e);
-        }
+        application.addResourceTypeUuid(resourceType.getUUID());
+        privilege.setResourceTypeUuid(resourceType.getUUID());
     }
 
     /**
@@ -155,4 +225,38 @@ public class XACMLReaderWriter {
         return policySet;
     }
 
+    private static boolean isXACMLElement(XMLStreamReader reader, String localName) {
+        return localName.equals(reader.getLocalName()) && XACML3_NAMESPACE.equals(reader.getNamespaceURI());
+    }
+
+    private static XMLInputFactory newXMLInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        // Policy sets are imported from outside, so neither DTDs nor external entities are processed
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        return factory;
+    }
+
+    /**
+     * Creating a JAXB context is expensive, and the context is thread safe, so it is created once.
+     */
+    static JAXBContext getJAXBContext() throws JAXBException {
+        JAXBContext context = jaxbContext;
+        if (context == null) {
+            context = JAXBContext.newInstance(XACMLConstants.XACML3_CORE_PKG);
+            jaxbContext = context;
+        }
+        return context;
+    }
+
+    private static void closeQuietly(XMLStreamReader reader) {
+        if (reader != null) {
+            try {
+                reader.close();
+            } catch (XMLStreamException e) {
+                // Nothing more to read
+            }
+        }
+    }
+
 }
@@ -14,7 +14,7 @@
  * Copyright 2007 Sun Microsystems Inc
  */
 /*
- * Portions Copyright 2011-2015 ForgeRock AS.
+ * Portions Copyright 2011-2016 ForgeRock AS.
  */
 
 package org.forgerock.openam.entitlement.conditions.environment;
@@ -185,7 +185,7 @@ public class AMIdentityMembershipCondition extends EntitlementConditionAdaptor {
                         subjectMatch = true;
                     } else if ((allowedMemberTypes = nameValueIdType.canHaveMembers()) != null
                             && allowedMemberTypes.contains(invocatorIdType)) {
-                        subjectMatch = invocatorIdentity.isMember(nameValueIdentity);
+                        subjectMatch = coreWrapper.isMember(invocatorIdentity, nameValueIdentity);
                         if (debug.messageEnabled()) {
                             debug.message("AMIdentityMembershipCondition.isMember():invocatorIdentityType "
                                             + invocatorIdType + " can be a member of nameValueIdentityType "
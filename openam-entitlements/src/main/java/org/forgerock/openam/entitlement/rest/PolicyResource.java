@@ -74,12 +74,12 @@ import org.forgerock.json.resource.UpdateRequest;
 import org.forgerock.openam.errors.ExceptionMappingHandler;
 import org.forgerock.openam.entitlement.rest.model.json.PolicyRequest;
 import org.forgerock.openam.rest.query.QueryResponsePresentation;
+import org.forgerock.openam.rest.query.StreamingQueryResponseHandler;
 import org.forgerock.opendj.ldap.DN;
 import org.forgerock.util.Reject;
 import org.forgerock.util.promise.Promise;
 
 import javax.inject.Inject;
-import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -322,13 +322,12 @@ public final class PolicyResource implements CollectionResourceProvider{
     public Promise<QueryResponse, ResourceException> queryCollection(Context context, QueryRequest request,
             QueryResourceHandler handler) {
         try {
-            List<ResourceResponse> results = new ArrayList<>();
+            QueryResponsePresentation.enableDeprecatedRemainingQueryResponse(request);
+            StreamingQueryResponseHandler results = QueryResponsePresentation.newStreamingHandler(handler, request);
             for (Privilege policy: policyStoreProvider.getPolicyStore(context).query(request)) {
-                results.add(policyResource(policy));
+                results.handleResource(policyResource(policy));
             }
-
-            QueryResponsePresentation.enableDeprecatedRemainingQueryResponse(request);
-            return QueryResponsePresentation.perform(handler, request, results);
+            return results.getResponse();
         } catch (EntitlementException ex) {
             DEBUG.error("PolicyResource :: QUERY : Error querying policy collection.", ex);
             return resourceErrorHandler.handleError(context, request, ex).asPromise();
@@ -0,0 +1,37 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openam.xacml.v3;
+
+/**
+ * Notified as the steps of an XACML import are applied to the data store.
+ * <p>
+ * Privileges are applied by several threads, but notifications are never made concurrently and the applied count
+ * only increases.
+ *
+ * @since 14.0.0
+ */
+public interface ImportProgressListener {
+
+    /**
+     * Called after an import step has been applied.
+     *
+     * @param step the step that has been applied.
+     * @param applied the number of steps applied so far, including this one.
+     * @param total the number of steps to apply.
+     */
+    void stepApplied(ImportStep step, int applied, int total);
+
+}
@@ -32,9 +32,12 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.testng.AssertJUnit.fail;
 
+import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 
 import javax.security.auth.Subject;
 
@@ -42,7 +45,9 @@ import org.forgerock.openam.entitlement.ResourceType;
 import org.forgerock.openam.entitlement.service.ApplicationService;
 import org.forgerock.openam.entitlement.service.ApplicationServiceFactory;
 import org.forgerock.openam.entitlement.service.ResourceTypeService;
+import org.forgerock.openam.utils.CollectionUtils;
 import org.forgerock.openam.xacml.v3.DiffStatus;
+import org.forgerock.openam.xacml.v3.ImportProgressListener;
 import org.forgerock.openam.xacml.v3.ImportStep;
 import org.forgerock.openam.xacml.v3.PersistableImportStep;
 import org.testng.annotations.BeforeMethod;
@@ -190,6 +195,71 @@ public class XACMLExportImportTest {
         fail("Expected validation exception");
     }
 
+    @Test
+    public void appliesLargeImportsInBatchesAndReportsProgress() throws Exception {
+        // Given
+        PrivilegeSet privilegeSet = new PrivilegeSet();
+        for (int i = 0; i < 250; i++) {
+            privilegeSet.addPrivilege(notExisting(valid(privilege("p" + i))));
+        }
+        given(xacmlReaderWriter.read(eq(NULL_INPUT))).willReturn(privilegeSet);
+        final List<Integer> progress = new ArrayList<>();
+
+        // When
+        xacmlExportImport.importXacml(ROOT_REALM, NULL_INPUT, NULL_SUBJECT, false, new ImportProgressListener() {
+            @Override
+            public void stepApplied(ImportStep step, int applied, int total) {
+                assertThat(total).isEqualTo(250);
+                progress.add(applied);
+            }
+        });
+
+        // Then
+        for (Privilege privilege : privilegeSet.getPrivileges()) {
+            verify(pm).add(privilege);
+        }
+        assertThat(progress).hasSize(250);
+        assertThat(progress.get(249)).isEqualTo(250);
+    }
+
+    @Test(expectedExceptions = EntitlementException.class)
+    public void throwsAnExceptionIfABatchFails() throws Exception {
+        // Given
+        PrivilegeSet privilegeSet = new PrivilegeSet();
+        for (int i = 0; i < 250; i++) {
+            privilegeSet.addPrivilege(notExisting(valid(privilege("p" + i))));
+        }
+        given(xacmlReaderWriter.read(eq(NULL_INPUT))).willReturn(privilegeSet);
+        doThrow(new EntitlementException(EntitlementException.UNABLE_TO_CREATE_POLICY))
+                .when(pm).add(privilegeSet.getPrivileges().get(150));
+
+        // When
+        xacmlExportImport.importXacml(ROOT_REALM, NULL_INPUT, NULL_SUBJECT, false);
+
+        // Then
+        fail("Expected the failure of the batch to be thrown");
+    }
+
+    @Test
+    public void canStreamExportOfPrivileges() throws Exception {
+        // Given
+        Privilege privilege = privilege("p1");
+        given(pm.searchNames(any(Set.class))).willReturn(CollectionUtils.asSet("p1"));
+        given(pm.findByName("p1", NULL_SUBJECT)).willReturn(privilege);
+        XACMLPolicySetWriter writer = mock(XACMLPolicySetWriter.class);
+        given(writer.getCount()).willReturn(1);
+        ByteArrayOutputStream xacml = new ByteArrayOutputStream();
+        given(xacmlReaderWriter.newPolicySetWriter(ROOT_REALM, xacml)).willReturn(writer);
+
+        // When
+        int exported = xacmlExportImport.exportXACML(ROOT_REALM, NULL_SUBJECT, Collections.<String>emptyList(), xacml);
+
+        // Then
+        assertThat(exported).isEqualTo(1);
+        verify(writer).write(privilege);
+        verify(writer).close();
+    }
+
     private Privilege privilege(String name) throws EntitlementException {
         return createArbitraryPrivilege(name, now);
     }
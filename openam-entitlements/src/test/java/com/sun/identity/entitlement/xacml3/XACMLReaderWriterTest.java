@@ -21,8 +21,12 @@ import static com.sun.identity.entitlement.xacml3.FactoryMethods.*;
 import static org.fest.assertions.Assertions.assertThat;
 import static org.forgerock.openam.utils.Time.getCalendarInstance;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
 import org.testng.annotations.Test;
 
+import com.sun.identity.entitlement.EntitlementException;
 import com.sun.identity.entitlement.Privilege;
 import com.sun.identity.entitlement.ReferralPrivilege;
 import com.sun.identity.entitlement.xacml3.core.PolicySet;
@@ -59,4 +63,54 @@ public class XACMLReaderWriterTest {
         assertReferralPrivilegesEquivalent(outputPrivilegeSet.getReferralPrivileges().get(0), referralPrivilege);
     }
 
+    @Test
+    public void canStreamPrivilegesAsXACML() throws Exception {
+        // Given
+        Privilege privilege = createArbitraryPrivilege("Privilege", now);
+        ReferralPrivilege referralPrivilege = createArbitraryReferralPrivilege("ReferralPrivilege", now);
+        XACMLReaderWriter xacmlReaderWriter = new XACMLReaderWriter();
+        ByteArrayOutputStream xacml = new ByteArrayOutputStream();
+
+        // When
+        XACMLPolicySetWriter writer = xacmlReaderWriter.newPolicySetWriter(ROOT_REALM, xacml);
+        writer.write(privilege);
+        writer.write(referralPrivilege);
+        writer.close();
+        PrivilegeSet outputPrivilegeSet = xacmlReaderWriter.read(new ByteArrayInputStream(xacml.toByteArray()));
+
+        // Then
+        assertThat(writer.getCount()).isEqualTo(2);
+
+        assertThat(outputPrivilegeSet.getPrivileges()).hasSize(1);
+        assertPrivilegesEquivalent(outputPrivilegeSet.getPrivileges().get(0), privilege);
+
+        assertThat(outputPrivilegeSet.getReferralPrivileges()).hasSize(1);
+        assertReferralPrivilegesEquivalent(outputPrivilegeSet.getReferralPrivileges().get(0), referralPrivilege);
+    }
+
+    @Test
+    public void canReadPolicySetWrittenInOneGo() throws Exception {
+        // Given
+        Privilege privilege = createArbitraryPrivilege("Privilege", now);
+        XACMLReaderWriter xacmlReaderWriter = new XACMLReaderWriter();
+
+        PrivilegeSet inputPrivilegeSet = new PrivilegeSet();
+        inputPrivilegeSet.addPrivilege(privilege);
+        String xacml = XACMLPrivilegeUtils.toXML(xacmlReaderWriter.toXACML(ROOT_REALM, inputPrivilegeSet));
+
+        // When
+        PrivilegeSet outputPrivilegeSet = xacmlReaderWriter.read(new ByteArrayInputStream(xacml.getBytes("UTF-8")));
+
+        // Then
+        assertThat(outputPrivilegeSet.getResourceTypes()).hasSize(1);
+        assertThat(outputPrivilegeSet.getApplication()).hasSize(1);
+        assertThat(outputPrivilegeSet.getPrivileges()).hasSize(1);
+        assertPrivilegesEquivalent(outputPrivilegeSet.getPrivileges().get(0), privilege);
+    }
+
+    @Test(expectedExceptions = EntitlementException.class)
+    public void shouldRejectDocumentsThatAreNotPolicySets() throws Exception {
+        new XACMLReaderWriter().read(new ByteArrayInputStream("<Policies/>".getBytes("UTF-8")));
+    }
+
 }
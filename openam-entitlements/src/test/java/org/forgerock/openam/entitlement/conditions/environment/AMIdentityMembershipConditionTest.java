@@ -324,7 +324,7 @@ public class AMIdentityMembershipConditionTest {
         given(invocatorIdentity.getType()).willReturn(invocatorIdType);
         given(identity.getType()).willReturn(identityIdType);
         given(identityIdType.canHaveMembers()).willReturn(Collections.singleton(invocatorIdType));
-        given(invocatorIdentity.isMember(identity)).willReturn(false);
+        given(coreWrapper.isMember(invocatorIdentity, identity)).willReturn(false);
 
         //When
         ConditionDecision decision = condition.evaluate(realm, subject, resourceName, env);
@@ -356,7 +356,7 @@ public class AMIdentityMembershipConditionTest {
         given(invocatorIdentity.getType()).willReturn(invocatorIdType);
         given(identity.getType()).willReturn(identityIdType);
         given(identityIdType.canHaveMembers()).willReturn(Collections.singleton(invocatorIdType));
-        given(invocatorIdentity.isMember(identity)).willReturn(true);
+        given(coreWrapper.isMember(invocatorIdentity, identity)).willReturn(true);
 
         //When
         ConditionDecision decision = condition.evaluate(realm, subject, resourceName, env);
@@ -11,7 +11,7 @@
 * Header, with the fields enclosed by brackets [] replaced by your own identifying
 * information: "Portions copyright [year] [name of copyright owner]".
 *
-* Copyright 2014 ForgeRock AS.
+* Copyright 2014-2016 ForgeRock AS.
 */
 package org.forgerock.openam.entitlement.monitoring;
 
@@ -22,6 +22,7 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
 import javax.security.auth.Subject;
 import org.forgerock.openam.shared.monitoring.RateTimer;
+import org.forgerock.openam.shared.monitoring.metrics.MetricsRegistry;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -53,7 +54,7 @@ public class PolicyMonitorImplTest {
 
         testPolicyMonitor = new PolicyMonitorImpl(mockDebug, service, selfEvaluationMonitoringStore,
                 selfEvaluationTimingStore, subtreeEvaluationMonitoringStore, subtreeEvaluationTimingStore,
-                internalEvaluationTimingStore);
+                internalEvaluationTimingStore, new MetricsRegistry());
     }
 
     @Test
@@ -64,7 +65,7 @@ public class PolicyMonitorImplTest {
 
         testPolicyMonitor = new PolicyMonitorImpl(mockDebug, service, selfEvaluationMonitoringStore,
                 selfEvaluationTimingStore, mockSubtreeEvaluationMonitoringStore, mockSubtreeEvaluationTimingStore,
-                internalEvaluationTimingStore);
+                internalEvaluationTimingStore, new MetricsRegistry());
 
         //when
         testPolicyMonitor.addEvaluation(1l, null, null, null, mockSubject, PolicyMonitoringType.SUBTREE);
@@ -82,7 +83,7 @@ public class PolicyMonitorImplTest {
 
         testPolicyMonitor = new PolicyMonitorImpl(mockDebug, service, mockSelfEvaluationMonitoringStore,
                 mockSelfEvaluationTimingStore, subtreeEvaluationMonitoringStore, subtreeEvaluationTimingStore,
-                internalEvaluationTimingStore);
+                internalEvaluationTimingStore, new MetricsRegistry());
 
         //when
         testPolicyMonitor.addEvaluation(1l, null, null, null, mockSubject, PolicyMonitoringType.SELF);
@@ -99,7 +100,7 @@ public class PolicyMonitorImplTest {
 
         testPolicyMonitor = new PolicyMonitorImpl(mockDebug, service, selfEvaluationMonitoringStore,
                 selfEvaluationTimingStore, subtreeEvaluationMonitoringStore, subtreeEvaluationTimingStore,
-                mockInternalEvaluationTimingStore);
+                mockInternalEvaluationTimingStore, new MetricsRegistry());
 
         //when
         testPolicyMonitor.addEvaluation(null, 1l, null, null, null, mockSubject);
@@ -84,6 +84,7 @@ public final class LDAPUtils {
     private static final Map<String, SearchScope> SCOPES;
     private static final Debug DEBUG = Debug.getInstance("LDAPUtils");
     private static final int DEFAULT_HEARTBEAT_TIMEOUT = 3;
+    private static final int DEFAULT_IDLE_TIMEOUT = 60;
 
     static {
         Map<String, SearchScope> mappings = new HashMap<String, SearchScope>(3);
@@ -127,6 +128,8 @@ public final class LDAPUtils {
 
     /**
      * Creates a new connection pool that is capable to failover to the servers defined in case there is an error.
+     * The minimum size of the pool is determined by the {@link Constants#LDAP_POOL_MIN_SIZE_PERCENT} property, by
+     * default the pool is of fixed size.
      *
      * @param servers The set of LDAP URLs that will be used to set up the connection factory.
      * @param username The directory user's DN. May be null if this is an anonymous connection.
@@ -144,11 +147,50 @@ public final class LDAPUtils {
             int heartBeatInterval,
             String heartBeatTimeUnit,
             Options ldapOptions) {
+        int minSizePercent = SystemPropertiesManager.getAsInt(Constants.LDAP_POOL_MIN_SIZE_PERCENT, 100);
+        int minSize = Math.max(1, (int) Math.ceil(maxSize * Math.min(100, Math.max(0, minSizePercent)) / 100d));
+        int idleTimeout = SystemPropertiesManager.getAsInt(Constants.LDAP_POOL_IDLE_TIMEOUT, DEFAULT_IDLE_TIMEOUT);
+        return newFailoverConnectionPool(servers, username, password, minSize, maxSize, idleTimeout,
+                heartBeatInterval, heartBeatTimeUnit, ldapOptions);
+    }
+
+    /**
+     * Creates a new elastic connection pool that is capable to failover to the servers defined in case there is an
+     * error. The pool for each server keeps at least {@code minSize} connections open, and opens additional
+     * connections up to {@code maxSize} instead of making requests wait for a connection to be released. The
+     * additional connections are closed again once they have been idle for {@code idleTimeout} seconds. Requests
+     * arriving when all {@code maxSize} connections are in use are queued, and served in arrival order.
+     *
+     * @param servers The set of LDAP URLs that will be used to set up the connection factory.
+     * @param username The directory user's DN. May be null if this is an anonymous connection.
+     * @param password The directory user's password.
+     * @param minSize The min size of the created pool.
+     * @param maxSize The max size of the created pool.
+     * @param idleTimeout The time in seconds after which idle connections above the min size are closed.
+     * @param heartBeatInterval The interval for sending out heartbeat requests.
+     * @param heartBeatTimeUnit The timeunit for the heartbeat interval.
+     * @param ldapOptions Additional LDAP settings used to create the pool
+     * @return A failover loadbalanced authenticated/anonymous connection pool, which may also send heartbeat requests.
+     */
+    public static ConnectionFactory newFailoverConnectionPool(Set<LDAPURL> servers,
+            String username,
+            char[] password,
+            int minSize,
+            int maxSize,
+            int idleTimeout,
+            int heartBeatInterval,
+            String heartBeatTimeUnit,
+            Options ldapOptions) {
         List<ConnectionFactory> factories = new ArrayList<ConnectionFactory>(servers.size());
         for (LDAPURL ldapurl : servers) {
-            ConnectionFactory cf = Connections.newFixedConnectionPool(
-                    newConnectionFactory(ldapurl, username, password, heartBeatInterval, heartBeatTimeUnit,
-                    ldapOptions), maxSize);
+            ConnectionFactory factory = newConnectionFactory(ldapurl, username, password, heartBeatInterval,
+                    heartBeatTimeUnit, ldapOptions);
+            ConnectionFactory cf;
+            if (minSize >= maxSize) {
+                cf = Connections.newFixedConnectionPool(factory, maxSize);
+            } else {
+                cf = Connections.newCachedConnectionPool(factory, minSize, maxSize, idleTimeout, TimeUnit.SECONDS);
+            }
             factories.add(cf);
         }
 
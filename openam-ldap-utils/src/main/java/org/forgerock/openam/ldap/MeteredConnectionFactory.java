@@ -0,0 +1,230 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openam.ldap;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.forgerock.opendj.ldap.AbstractConnectionWrapper;
+import org.forgerock.opendj.ldap.Connection;
+import org.forgerock.opendj.ldap.ConnectionFactory;
+import org.forgerock.opendj.ldap.LdapException;
+import org.forgerock.opendj.ldap.requests.UnbindRequest;
+import org.forgerock.util.Function;
+import org.forgerock.util.Reject;
+import org.forgerock.util.promise.Promise;
+
+/**
+ * A {@link ConnectionFactory} decorator that measures how connections are borrowed from the decorated connection
+ * pool. The following metrics are maintained:
+ * <ul>
+ *     <li>the number of requests currently waiting for a connection,</li>
+ *     <li>the number of connections currently borrowed and not yet closed,</li>
+ *     <li>the number of borrow attempts, and the average and maximum time they took.</li>
+ * </ul>
+ * Closing a connection obtained from this factory returns it to the decorated pool as usual.
+ *
+ * @since 14.0.0
+ */
+public class MeteredConnectionFactory implements ConnectionFactory {
+
+    private final String name;
+    private final ConnectionFactory factory;
+    private final AtomicInteger waiters = new AtomicInteger();
+    private final AtomicInteger inUse = new AtomicInteger();
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong failedBorrowCount = new AtomicLong();
+    private final AtomicLong totalBorrowNanos = new AtomicLong();
+    private final AtomicLong maxBorrowNanos = new AtomicLong();
+
+    /**
+     * Creates a new metered connection factory.
+     *
+     * @param name The name of the connection pool, used to tell the pools apart when reporting the metrics.
+     * @param factory The connection pool to measure.
+     */
+    public MeteredConnectionFactory(String name, ConnectionFactory factory) {
+        Reject.ifNull(name, factory);
+        this.name = name;
+        this.factory = factory;
+    }
+
+    @Override
+    public Connection getConnection() throws LdapException {
+        long start = startBorrow();
+        boolean success = false;
+        try {
+            Connection connection = factory.getConnection();
+            success = true;
+            return new MeteredConnection(connection);
+        } finally {
+            endBorrow(start, success);
+        }
+    }
+
+    @Override
+    public Promise<Connection, LdapException> getConnectionAsync() {
+        final long start = startBorrow();
+        return factory.getConnectionAsync().then(
+                new Function<Connection, Connection, LdapException>() {
+                    @Override
+                    public Connection apply(Connection connection) {
+                        endBorrow(start, true);
+                        return new MeteredConnection(connection);
+                    }
+                },
+                new Function<LdapException, Connection, LdapException>() {
+                    @Override
+                    public Connection apply(LdapException e) throws LdapException {
+                        endBorrow(start, false);
+                        throw e;
+                    }
+                });
+    }
+
+    @Override
+    public void close() {
+        factory.close();
+    }
+
+    /**
+     * Returns the name of the measured connection pool.
+     *
+     * @return The name of the pool.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the number of requests currently waiting for a connection from the pool.
+     *
+     * @return The number of waiting requests.
+     */
+    public int getWaiters() {
+        return waiters.get();
+    }
+
+    /**
+     * Returns the number of connections currently borrowed from the pool.
+     *
+     * @return The number of connections in use.
+     */
+    public int getConnectionsInUse() {
+        return inUse.get();
+    }
+
+    /**
+     * Returns the number of connections successfully borrowed from the pool since it was created.
+     *
+     * @return The number of successful borrows.
+     */
+    public long getBorrowCount() {
+        return borrowCount.get();
+    }
+
+    /**
+     * Returns the number of failed attempts to borrow a connection from the pool since it was created.
+     *
+     * @return The number of failed borrows.
+     */
+    public long getFailedBorrowCount() {
+        return failedBorrowCount.get();
+    }
+
+    /**
+     * Returns the average time it took to borrow a connection from the pool, including failed attempts.
+     *
+     * @return The average borrow time in milliseconds.
+     */
+    public double getAverageBorrowTime() {
+        long count = borrowCount.get() + failedBorrowCount.get();
+        if (count == 0) {
+            return 0;
+        }
+        return (double) totalBorrowNanos.get() / count / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * Returns the longest time it took to borrow a connection from the pool.
+     *
+     * @return The maximum borrow time in milliseconds.
+     */
+    public long getMaximumBorrowTime() {
+        return TimeUnit.NANOSECONDS.toMillis(maxBorrowNanos.get());
+    }
+
+    @Override
+    public String toString() {
+        return "MeteredConnectionFactory(" + name + ", waiters=" + waiters.get() + ", inUse=" + inUse.get()
+                + ", borrowed=" + borrowCount.get() + ", failed=" + failedBorrowCount.get() + ", avgBorrowTime="
+                + getAverageBorrowTime() + "ms, maxBorrowTime=" + getMaximumBorrowTime() + "ms)";
+    }
+
+    private long startBorrow() {
+        waiters.incrementAndGet();
+        return System.nanoTime();
+    }
+
+    private void endBorrow(long start, boolean success) {
+        long elapsed = System.nanoTime() - start;
+        waiters.decrementAndGet();
+        totalBorrowNanos.addAndGet(elapsed);
+        long max = maxBorrowNanos.get();
+        while (elapsed > max && !maxBorrowNanos.compareAndSet(max, elapsed)) {
+            max = maxBorrowNanos.get();
+        }
+        if (success) {
+            borrowCount.incrementAndGet();
+            inUse.incrementAndGet();
+        } else {
+            failedBorrowCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Tracks when the borrowed connection is returned to the pool. A connection may be closed multiple times, but it
+     * is only accounted for once.
+     */
+    private final class MeteredConnection extends AbstractConnectionWrapper<Connection> {
+
+        private final AtomicBoolean released = new AtomicBoolean(false);
+
+        private MeteredConnection(Connection connection) {
+            super(connection);
+        }
+
+        @Override
+        public void close() {
+            release();
+            super.close();
+        }
+
+        @Override
+        public void close(UnbindRequest request, String reason) {
+            release();
+            super.close(request, reason);
+        }
+
+        private void release() {
+            if (released.compareAndSet(false, true)) {
+                inUse.decrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openam.ldap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.forgerock.opendj.ldap.Connection;
+import org.forgerock.opendj.ldap.ConnectionFactory;
+import org.forgerock.opendj.ldap.Connections;
+import org.forgerock.opendj.ldap.LdapException;
+import org.forgerock.opendj.ldap.MemoryBackend;
+import org.forgerock.opendj.ldap.ResultCode;
+import org.forgerock.util.promise.Promise;
+import org.forgerock.util.promise.Promises;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Unit test for {@link MeteredConnectionFactory}.
+ *
+ * @since 14.0.0
+ */
+public final class MeteredConnectionFactoryTest {
+
+    private MeteredConnectionFactory factory;
+
+    @BeforeMethod
+    public void setUp() {
+        factory = new MeteredConnectionFactory("test",
+                Connections.newInternalConnectionFactory(new MemoryBackend()));
+    }
+
+    @Test
+    public void shouldCountConnectionsInUseUntilClosed() throws Exception {
+        // Given
+        Connection first = factory.getConnection();
+        Connection second = factory.getConnectionAsync().getOrThrow();
+
+        // When
+        first.close();
+        first.close();
+
+        // Then
+        assertThat(factory.getBorrowCount()).isEqualTo(2);
+        assertThat(factory.getConnectionsInUse()).isEqualTo(1);
+        assertThat(factory.getWaiters()).isEqualTo(0);
+        second.close();
+        assertThat(factory.getConnectionsInUse()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldCountFailedBorrows() throws Exception {
+        // Given
+        factory = new MeteredConnectionFactory("failing", new UnavailableConnectionFactory());
+
+        // When
+        try {
+            factory.getConnection();
+        } catch (LdapException expected) {
+            // expected
+        }
+
+        // Then
+        assertThat(factory.getFailedBorrowCount()).isEqualTo(1);
+        assertThat(factory.getBorrowCount()).isEqualTo(0);
+        assertThat(factory.getConnectionsInUse()).isEqualTo(0);
+        assertThat(factory.getWaiters()).isEqualTo(0);
+    }
+
+    private static final class UnavailableConnectionFactory implements ConnectionFactory {
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public Promise<Connection, LdapException> getConnectionAsync() {
+            return Promises.newExceptionPromise(LdapException.newLdapException(ResultCode.UNAVAILABLE));
+        }
+
+        @Override
+        public Connection getConnection() throws LdapException {
+            throw LdapException.newLdapException(ResultCode.UNAVAILABLE);
+        }
+    }
+}
@@ -0,0 +1,278 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openam.oauth2;
+
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.forgerock.guava.common.cache.Cache;
+import org.forgerock.guava.common.cache.CacheBuilder;
+import org.forgerock.guava.common.cache.CacheStats;
+import org.forgerock.openidconnect.OpenIdConnectClientRegistration;
+import org.forgerock.util.annotations.VisibleForTesting;
+
+import com.iplanet.am.util.SystemProperties;
+import com.sun.identity.idm.AMIdentity;
+import com.sun.identity.idm.AMIdentityRepository;
+import com.sun.identity.idm.IdEventListener;
+import com.sun.identity.idm.IdRepoCreationListener;
+import com.sun.identity.shared.debug.Debug;
+import com.sun.identity.sm.DNMapper;
+
+/**
+ * Realm scoped cache of the client registrations resolved by the {@link OpenAMClientRegistrationStore}.
+ * <p>
+ * Entries are invalidated when the underlying agent identity is changed, deleted or renamed in the identity
+ * repository of its realm, and in any case expire after a configurable time to live so that changes which are not
+ * notified by the data store are eventually picked up. A time to live of zero disables the cache. The agent identity
+ * is cached with its registration, so that callers can check that it is still active.
+ * <p>
+ * The keys of the entries are indexed by the universal identifier of their agent identity, so that identity events
+ * only look up the entries of that identity. The index holds at most one key per client registration resolved since
+ * the identity last changed, and is only trimmed when the identity changes.
+ *
+ * @since 14.0.0
+ */
+@Singleton
+public class ClientRegistrationCache implements IdEventListener, IdRepoCreationListener {
+
+    private static final String MAX_SIZE_PROPERTY = "org.forgerock.openam.oauth2.clientRegistrationCache.maxSize";
+    private static final String TTL_PROPERTY = "org.forgerock.openam.oauth2.clientRegistrationCache.ttlSeconds";
+
+    private final Debug logger = Debug.getInstance("OAuth2Provider");
+    private final Cache<Key, Entry> cache;
+    private final ConcurrentMap<String, Set<Key>> keysByUniversalId = new ConcurrentHashMap<>();
+    private final Set<String> registeredRealms = ConcurrentHashMap.newKeySet();
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * Constructs a new ClientRegistrationCache sized from the server system properties.
+     */
+    @Inject
+    public ClientRegistrationCache() {
+        this(SystemProperties.getAsLong(MAX_SIZE_PROPERTY, 10000L), SystemProperties.getAsLong(TTL_PROPERTY, 300L));
+    }
+
+    /**
+     * Constructs a new ClientRegistrationCache.
+     *
+     * @param maxSize The maximum number of client registrations held across all realms.
+     * @param ttlSeconds The number of seconds a registration is kept after being cached, zero disables caching.
+     */
+    @VisibleForTesting
+    ClientRegistrationCache(long maxSize, long ttlSeconds) {
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(ttlSeconds > 0 ? maxSize : 0)
+                .expireAfterWrite(Math.max(ttlSeconds, 0), TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Returns the generation of the cache, which changes every time an entry is invalidated. Callers must read it
+     * before resolving a registration and pass it to {@link #put} so that a registration resolved concurrently with
+     * a change notification is not cached.
+     *
+     * @return The current generation.
+     */
+    long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Gets the cached client registration.
+     *
+     * @param realm The normalised realm.
+     * @param clientId The client identifier.
+     * @return The cached registration and its agent identity, or {@code null} if not cached.
+     */
+    Entry get(String realm, String clientId) {
+        return cache.getIfPresent(new Key(realm, clientId));
+    }
+
+    /**
+     * Caches a client registration, unless an invalidation has happened since {@code expectedGeneration} was read.
+     *
+     * @param realm The normalised realm.
+     * @param clientId The client identifier.
+     * @param identity The client agent identity.
+     * @param registration The client registration.
+     * @param expectedGeneration The generation read before the registration was resolved.
+     */
+    void put(String realm, String clientId, AMIdentity identity, OpenIdConnectClientRegistration registration,
+            long expectedGeneration) {
+        Key key = new Key(realm, clientId);
+        cache.put(key, new Entry(identity, registration));
+        // Indexed before the generation is checked, so that an invalidation which misses the key discards it here
+        index(identity.getUniversalId(), key);
+        if (generation.get() != expectedGeneration) {
+            cache.invalidate(key);
+        }
+    }
+
+    /**
+     * Gets the statistics of the cache, for monitoring purposes.
+     *
+     * @return The cache hit, miss and eviction statistics.
+     */
+    public CacheStats getStatistics() {
+        return cache.stats();
+    }
+
+    /**
+     * Gets the number of client registrations currently cached.
+     *
+     * @return The cache size.
+     */
+    public long size() {
+        return cache.size();
+    }
+
+    /**
+     * Registers this cache as an identity listener on the {@code AMIdentityRepository} of each realm.
+     *
+     * @param idRepo {@inheritDoc}
+     * @param realm {@inheritDoc}
+     */
+    @Override
+    public void notify(AMIdentityRepository idRepo, String realm) {
+        if (registeredRealms.add(DNMapper.orgNameToDN(realm).toLowerCase(Locale.ROOT))) {
+            idRepo.addEventListener(this);
+        }
+    }
+
+    @Override
+    public void identityChanged(String universalId) {
+        invalidate(universalId);
+    }
+
+    @Override
+    public void identityDeleted(String universalId) {
+        invalidate(universalId);
+    }
+
+    @Override
+    public void identityRenamed(String universalId) {
+        invalidate(universalId);
+    }
+
+    @Override
+    public void allIdentitiesChanged() {
+        generation.incrementAndGet();
+        keysByUniversalId.clear();
+        cache.invalidateAll();
+        if (logger.messageEnabled()) {
+            logger.message("ClientRegistrationCache: all identities changed, cache cleared");
+        }
+    }
+
+    private void invalidate(String universalId) {
+        if (universalId == null) {
+            return;
+        }
+        generation.incrementAndGet();
+        Set<Key> keys = keysByUniversalId.remove(universalId.toLowerCase(Locale.ROOT));
+        if (keys == null) {
+            return;
+        }
+        cache.invalidateAll(keys);
+        if (logger.messageEnabled()) {
+            logger.message("ClientRegistrationCache: invalidated client registration " + universalId);
+        }
+    }
+
+    private void index(String universalId, Key key) {
+        if (universalId == null) {
+            return;
+        }
+        String id = universalId.toLowerCase(Locale.ROOT);
+        Set<Key> keys = keysByUniversalId.get(id);
+        if (keys == null) {
+            Set<Key> newKeys = ConcurrentHashMap.newKeySet();
+            keys = keysByUniversalId.putIfAbsent(id, newKeys);
+            if (keys == null) {
+                keys = newKeys;
+            }
+        }
+        keys.add(key);
+    }
+
+    /**
+     * A cached client registration and the agent identity it was resolved from.
+     */
+    static final class Entry {
+        private final AMIdentity identity;
+        private final OpenIdConnectClientRegistration registration;
+
+        private Entry(AMIdentity identity, OpenIdConnectClientRegistration registration) {
+            this.identity = identity;
+            this.registration = registration;
+        }
+
+        /**
+         * Gets the agent identity the registration was resolved from.
+         *
+         * @return The agent identity.
+         */
+        AMIdentity getIdentity() {
+            return identity;
+        }
+
+        /**
+         * Gets the client registration.
+         *
+         * @return The client registration.
+         */
+        OpenIdConnectClientRegistration getRegistration() {
+            return registration;
+        }
+    }
+
+    private static final class Key {
+        private final String realm;
+        private final String clientId;
+
+        private Key(String realm, String clientId) {
+            this.realm = realm.toLowerCase(Locale.ROOT);
+            this.clientId = clientId.toLowerCase(Locale.ROOT);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return realm.equals(other.realm) && clientId.equals(other.clientId);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * realm.hashCode() + clientId.hashCode();
+        }
+    }
+}
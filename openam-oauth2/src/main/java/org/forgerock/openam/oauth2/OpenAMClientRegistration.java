@@ -69,8 +69,6 @@ import org.forgerock.oauth2.core.ClientType;
 import org.forgerock.oauth2.core.OAuth2Jwt;
 import org.forgerock.oauth2.core.OAuth2ProviderSettings;
 import org.forgerock.oauth2.core.PEMDecoder;
-import org.forgerock.oauth2.core.exceptions.ClientAuthenticationFailureFactory;
-import org.forgerock.oauth2.core.exceptions.InvalidClientException;
 import org.forgerock.oauth2.core.exceptions.ServerException;
 import org.forgerock.openam.utils.CollectionUtils;
 import org.forgerock.openam.utils.JsonValueBuilder;
@@ -104,8 +102,10 @@ public class OpenAMClientRegistration implements OpenIdConnectClientRegistration
     private final SigningManager signingManager = new SigningManager();
     private final PEMDecoder pemDecoder;
     private final OpenIdResolverService resolverService;
-    private final MessageDigest digest;
     private final OAuth2ProviderSettings providerSettings;
+    private volatile DecodedValue<PublicKey> rsaPublicEncryptionKey;
+    private volatile DecodedValue<X509Certificate> jwtPublicKeyCertificate;
+    private volatile DecodedValue<Map<String, Key>> jwkKeys;
 
 
     /**
@@ -115,17 +115,11 @@ public class OpenAMClientRegistration implements OpenIdConnectClientRegistration
      * @param pemDecoder A {@code PEMDecoder} instance.
      */
     OpenAMClientRegistration(AMIdentity amIdentity, PEMDecoder pemDecoder, OpenIdResolverService resolverService,
-            OAuth2ProviderSettings providerSettings, ClientAuthenticationFailureFactory failureFactory)
-            throws InvalidClientException {
+            OAuth2ProviderSettings providerSettings) {
         this.amIdentity = amIdentity;
         this.pemDecoder = pemDecoder;
         this.resolverService = resolverService;
         this.providerSettings = providerSettings;
-        try {
-            this.digest = MessageDigest.getInstance("SHA-256");
-        } catch (NoSuchAlgorithmException e) {
-            throw failureFactory.getException("SHA-256 algorithm MessageDigest not available");
-        }
     }
 
     /**
@@ -572,7 +566,12 @@ public class OpenAMClientRegistration implements OpenIdConnectClientRegistration
                 return null;
             }
             String encodedCert = set.iterator().next();
-            return pemDecoder.decodeRSAPublicKey(encodedCert);
+            DecodedValue<PublicKey> decoded = rsaPublicEncryptionKey;
+            if (decoded == null || !decoded.isDecodedFrom(encodedCert)) {
+                decoded = new DecodedValue<>(encodedCert, pemDecoder.decodeRSAPublicKey(encodedCert));
+                rsaPublicEncryptionKey = decoded;
+            }
+            return decoded.value;
         } catch (Exception e) {
             throw Utils.createException("idTokenPublicEncryptionKey", e, logger);
         }
@@ -690,13 +689,17 @@ public class OpenAMClientRegistration implements OpenIdConnectClientRegistration
                     "No Client Bearer JWK set.");
         }
 
-        final JWKSet jwkSet = new JWKSet(JsonValueBuilder.toJsonValue(jwkSetStr)
-                .get(OAuth2Constants.JWTTokenParams.KEYS));
-        final JWKSetParser setParser = new JWKSetParser(0, 0); //0 values as not using for inet comms
+        DecodedValue<Map<String, Key>> decoded = jwkKeys;
+        if (decoded == null || !decoded.isDecodedFrom(jwkSetStr)) {
+            final JWKSet jwkSet = new JWKSet(JsonValueBuilder.toJsonValue(jwkSetStr)
+                    .get(OAuth2Constants.JWTTokenParams.KEYS));
+            final JWKSetParser setParser = new JWKSetParser(0, 0); //0 values as not using for inet comms
 
-        final Map<String, Key> jwkMap = setParser.jwkSetToMap(jwkSet);
+            decoded = new DecodedValue<>(jwkSetStr, setParser.jwkSetToMap(jwkSet));
+            jwkKeys = decoded;
+        }
 
-        final Key key = jwkMap.get(jwt.getSignedJwt().getHeader().getKeyId());
+        final Key key = decoded.value.get(jwt.getSignedJwt().getHeader().getKeyId());
 
         return key != null && jwt.isValid(getSigningHandlerForKey(key));
     }
@@ -762,9 +765,13 @@ public class OpenAMClientRegistration implements OpenIdConnectClientRegistration
         }
 
         String encodedCert = set.iterator().next();
-        X509Certificate certificate = pemDecoder.decodeX509Certificate(encodedCert);
+        DecodedValue<X509Certificate> decoded = jwtPublicKeyCertificate;
+        if (decoded == null || !decoded.isDecodedFrom(encodedCert)) {
+            decoded = new DecodedValue<>(encodedCert, pemDecoder.decodeX509Certificate(encodedCert));
+            jwtPublicKeyCertificate = decoded;
+        }
 
-        return jwt.isValid(signingManager.newRsaSigningHandler(certificate.getPublicKey()));
+        return jwt.isValid(signingManager.newRsaSigningHandler(decoded.value.getPublicKey()));
     }
 
     /**
@@ -826,9 +833,9 @@ public class OpenAMClientRegistration implements OpenIdConnectClientRegistration
     private String subValueFromHost(String host, String resourceOwnerId, OAuth2ProviderSettings providerSettings) {
         try {
             final String concat = host + resourceOwnerId + providerSettings.getHashSalt();
-            byte[] hash = digest.digest(concat.getBytes("UTF-8"));
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(concat.getBytes("UTF-8"));
             return Base64.encode(hash);
-        } catch (UnsupportedEncodingException e) {
+        } catch (UnsupportedEncodingException | NoSuchAlgorithmException e) {
             logger.message("Unable to encrypt the sub value for user.");
             return null;
         } catch (ServerException e) {
@@ -862,4 +869,23 @@ public class OpenAMClientRegistration implements OpenIdConnectClientRegistration
         }
         return null;
     }
-}
\ No newline at end of file
+
+    /**
+     * A value decoded from an encoded attribute value, kept so that the decoding is only repeated when the
+     * attribute changes. Registrations are cached and shared between threads by the
+     * {@link OpenAMClientRegistrationStore}.
+     */
+    private static final class DecodedValue<T> {
+        private final String encoded;
+        private final T value;
+
+        private DecodedValue(String encoded, T value) {
+            this.encoded = encoded;
+            this.value = value;
+        }
+
+        private boolean isDecodedFrom(String encoded) {
+            return this.encoded.equals(encoded);
+        }
+    }
+}
@@ -71,6 +71,7 @@ public class OpenAMClientRegistrationStore implements OpenIdConnectClientRegistr
     private final ClientAuthenticationFailureFactory failureFactory;
     private final AMIdentityRepositoryFactory identityRepositoryFactory;
     private final PrivilegedAction<SSOToken> adminTokenAction;
+    private final ClientRegistrationCache registrationCache;
 
     /**
      * Constructs a new OpenAMClientRegistrationStore.
@@ -81,12 +82,14 @@ public class OpenAMClientRegistrationStore implements OpenIdConnectClientRegistr
      * @param failureFactory Factory for handling the invalid_client error of the OAuth2 specification.
      * @param identityRepositoryFactory Factory for creating {@code AMIdentityRepository} instances.
      * @param adminTokenAction Privileged action to get application single sign on token.
+     * @param registrationCache Cache of resolved client registrations.
      */
     @Inject
     public OpenAMClientRegistrationStore(RealmNormaliser realmNormaliser, PEMDecoder pemDecoder,
             @Named(OAuth2Constants.Custom.JWK_RESOLVER) OpenIdResolverService resolverService,
             OAuth2ProviderSettingsFactory providerSettingsFactory, ClientAuthenticationFailureFactory failureFactory,
-            AMIdentityRepositoryFactory identityRepositoryFactory, PrivilegedAction<SSOToken> adminTokenAction) {
+            AMIdentityRepositoryFactory identityRepositoryFactory, PrivilegedAction<SSOToken> adminTokenAction,
+            ClientRegistrationCache registrationCache) {
         this.realmNormaliser = realmNormaliser;
         this.pemDecoder = pemDecoder;
         this.resolverService = resolverService;
@@ -94,6 +97,7 @@ public class OpenAMClientRegistrationStore implements OpenIdConnectClientRegistr
         this.failureFactory = failureFactory;
         this.identityRepositoryFactory = identityRepositoryFactory;
         this.adminTokenAction = adminTokenAction;
+        this.registrationCache = registrationCache;
     }
 
     /**
@@ -121,15 +125,27 @@ public class OpenAMClientRegistrationStore implements OpenIdConnectClientRegistr
             throws InvalidClientException, NotFoundException {
         try {
             final String normalisedRealm = realmNormaliser.normalise(realm);
+            ClientRegistrationCache.Entry cached = registrationCache.get(normalisedRealm, clientId);
+            if (cached != null) {
+                // The status of the agent is checked again, as disabling it may not be notified
+                if (cached.getIdentity().isActive()) {
+                    return cached.getRegistration();
+                }
+                throw failureFactory.getException(request, AUTHENTICATION_FAILURE_MESSAGE);
+            }
+            final long generation = registrationCache.getGeneration();
+            OpenIdConnectClientRegistration clientRegistration;
             AMIdentity identity = getIdentity(clientId, normalisedRealm, request);
             if (isJ2eeAgent(identity) || isWebAgent(identity)) {
-                return new AgentClientRegistration(identity);
+                clientRegistration = new AgentClientRegistration(identity);
             } else {
                 OAuth2ProviderSettings providerSettings =
                         providerSettingsFactory.getRealmProviderSettings(normalisedRealm);
-                return new OpenAMClientRegistration(identity, pemDecoder, resolverService,
-                        providerSettings, failureFactory);
+                clientRegistration = new OpenAMClientRegistration(identity, pemDecoder, resolverService,
+                        providerSettings);
             }
+            registrationCache.put(normalisedRealm, clientId, identity, clientRegistration, generation);
+            return clientRegistration;
         } catch (org.forgerock.json.resource.NotFoundException e) {
             throw new NotFoundException(e.getMessage());
         } catch (SSOException | IdRepoException e) {
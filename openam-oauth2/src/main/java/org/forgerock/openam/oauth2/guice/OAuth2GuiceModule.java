@@ -102,6 +102,7 @@ import org.forgerock.openam.cts.adapters.TokenAdapter;
 import org.forgerock.openam.cts.api.CoreTokenConstants;
 import org.forgerock.openam.cts.api.tokens.TokenIdGenerator;
 import org.forgerock.openam.oauth2.AccessTokenProtectionFilter;
+import org.forgerock.openam.oauth2.ClientRegistrationCache;
 import org.forgerock.openam.oauth2.CookieExtractor;
 import org.forgerock.openam.oauth2.OAuth2AuditLogger;
 import org.forgerock.openam.oauth2.OAuth2Constants;
@@ -153,6 +154,7 @@ import com.google.inject.multibindings.MapBinder;
 import com.google.inject.multibindings.Multibinder;
 import com.iplanet.services.naming.WebtopNamingQuery;
 import com.iplanet.sso.SSOTokenManager;
+import com.sun.identity.idm.IdRepoCreationListener;
 import com.sun.identity.shared.debug.Debug;
 
 /**
@@ -172,6 +174,8 @@ public class OAuth2GuiceModule extends AbstractModule {
         bind(ResourceOwnerConsentVerifier.class).to(OpenIdResourceOwnerConsentVerifier.class);
         bind(ClientRegistrationStore.class).to(OpenAMClientRegistrationStore.class);
         bind(OpenIdConnectClientRegistrationStore.class).to(OpenAMClientRegistrationStore.class);
+        Multibinder.newSetBinder(binder(), IdRepoCreationListener.class)
+                .addBinding().to(ClientRegistrationCache.class);
         bind(TokenStore.class).to(OpenAMTokenStore.class);
         bind(OpenIdConnectTokenStore.class).to(OpenAMTokenStore.class);
         bind(ClientAuthenticationFailureFactory.class).to(OpenAMClientAuthenticationFailureFactory.class);
@@ -0,0 +1,110 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openam.oauth2;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+import org.forgerock.openidconnect.OpenIdConnectClientRegistration;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.sun.identity.idm.AMIdentity;
+
+public class ClientRegistrationCacheTest {
+
+    private static final String REALM = "/realm";
+    private static final String CLIENT_ID = "client";
+    private static final String UNIVERSAL_ID = "id=client,ou=agent,o=realm,ou=services,dc=openam,dc=forgerock,dc=org";
+
+    private ClientRegistrationCache cache;
+    private AMIdentity identity;
+    private OpenIdConnectClientRegistration registration;
+
+    @BeforeMethod
+    public void setUp() {
+        cache = new ClientRegistrationCache(100, 60);
+        identity = mock(AMIdentity.class);
+        given(identity.getUniversalId()).willReturn(UNIVERSAL_ID);
+        registration = mock(OpenIdConnectClientRegistration.class);
+    }
+
+    @Test
+    public void shouldReturnCachedRegistrationIgnoringCase() {
+        cache.put(REALM, CLIENT_ID, identity, registration, cache.getGeneration());
+
+        assertThat(cache.get(REALM.toUpperCase(), CLIENT_ID.toUpperCase()).getRegistration()).isSameAs(registration);
+        assertThat(cache.get("/other", CLIENT_ID)).isNull();
+    }
+
+    @Test
+    public void shouldInvalidateRegistrationWhenIdentityChanges() {
+        cache.put(REALM, CLIENT_ID, identity, registration, cache.getGeneration());
+
+        cache.identityChanged(UNIVERSAL_ID.toUpperCase());
+
+        assertThat(cache.get(REALM, CLIENT_ID)).isNull();
+    }
+
+    @Test
+    public void shouldNotInvalidateRegistrationsOfOtherIdentities() {
+        cache.put(REALM, CLIENT_ID, identity, registration, cache.getGeneration());
+
+        cache.identityChanged("id=demo,ou=user,o=realm,ou=services,dc=openam,dc=forgerock,dc=org");
+
+        assertThat(cache.get(REALM, CLIENT_ID).getRegistration()).isSameAs(registration);
+    }
+
+    @Test
+    public void shouldInvalidateRegistrationCachedAgainAfterIdentityChanged() {
+        cache.put(REALM, CLIENT_ID, identity, registration, cache.getGeneration());
+        cache.identityChanged(UNIVERSAL_ID);
+        cache.put(REALM, CLIENT_ID, identity, registration, cache.getGeneration());
+
+        cache.identityDeleted(UNIVERSAL_ID);
+
+        assertThat(cache.get(REALM, CLIENT_ID)).isNull();
+    }
+
+    @Test
+    public void shouldInvalidateAllRegistrationsWhenAllIdentitiesChange() {
+        cache.put(REALM, CLIENT_ID, identity, registration, cache.getGeneration());
+
+        cache.allIdentitiesChanged();
+
+        assertThat(cache.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldNotCacheRegistrationResolvedDuringInvalidation() {
+        long generation = cache.getGeneration();
+        cache.identityDeleted(UNIVERSAL_ID);
+
+        cache.put(REALM, CLIENT_ID, identity, registration, generation);
+
+        assertThat(cache.get(REALM, CLIENT_ID)).isNull();
+    }
+
+    @Test
+    public void shouldNotCacheWhenTimeToLiveIsZero() {
+        cache = new ClientRegistrationCache(100, 0);
+
+        cache.put(REALM, CLIENT_ID, identity, registration, cache.getGeneration());
+
+        assertThat(cache.get(REALM, CLIENT_ID)).isNull();
+    }
+}
@@ -20,6 +20,8 @@ import static org.mockito.BDDMockito.given;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.MockitoAnnotations.initMocks;
 
 import java.security.PrivilegedAction;
@@ -80,7 +82,8 @@ public class OpenAMClientRegistrationStoreTest {
                 mock(OAuth2ProviderSettingsFactory.class),
                 new OpenAMClientAuthenticationFailureFactory(realmNormaliser),
                 identityRepositoryFactory,
-                adminTokenAction);
+                adminTokenAction,
+                new ClientRegistrationCache(100, 60));
     }
 
     @Test
@@ -163,7 +166,29 @@ public class OpenAMClientRegistrationStoreTest {
         store.get(AGENT_NAME, REALM, null);
     }
 
-    private void setUpAgent(String agentType, boolean isActive) throws IdRepoException, SSOException {
+    @Test
+    public void getReturnsCachedRegistrationWithoutSearchingAgain()
+            throws NotFoundException, InvalidClientException, IdRepoException, SSOException {
+        setUpAgent(AgentConfiguration.AGENT_TYPE_OAUTH2, true);
+
+        OpenIdConnectClientRegistration registration = store.get(AGENT_NAME, REALM, null);
+
+        assertThat(store.get(AGENT_NAME, REALM, null)).isSameAs(registration);
+        verify(identityRepositoryFactory, times(1)).create(REALM, ssoToken);
+    }
+
+    @Test(expectedExceptions = InvalidClientException.class)
+    public void getThrowsExceptionIfCachedIdentityIsNoLongerActive()
+            throws NotFoundException, InvalidClientException, IdRepoException, SSOException {
+        AMIdentity agent = setUpAgent(AgentConfiguration.AGENT_TYPE_OAUTH2, true);
+        store.get(AGENT_NAME, REALM, null);
+
+        given(agent.isActive()).willReturn(false);
+
+        store.get(AGENT_NAME, REALM, null);
+    }
+
+    private AMIdentity setUpAgent(String agentType, boolean isActive) throws IdRepoException, SSOException {
         AMIdentity j2eeAgent = mock(AMIdentity.class);
         given(j2eeAgent.getAttribute(IdConstants.AGENT_TYPE))
                 .willReturn(new HashSet<>(Collections.singletonList(agentType)));
@@ -177,6 +202,7 @@ public class OpenAMClientRegistrationStoreTest {
                 .willReturn(searchResults);
         given(identityRepositoryFactory.create(REALM, ssoToken))
                 .willReturn(identityRepository);
+        return j2eeAgent;
     }
 
     private OAuth2Request createRequest() {
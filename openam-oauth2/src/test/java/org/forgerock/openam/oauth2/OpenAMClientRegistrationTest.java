@@ -24,7 +24,6 @@ import static org.forgerock.openam.oauth2.OAuth2Constants.OAuth2Client.*;
 import static org.forgerock.openam.utils.CollectionUtils.asList;
 import static org.forgerock.openam.utils.CollectionUtils.asSet;
 import static org.mockito.BDDMockito.given;
-import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
 import java.net.URI;
@@ -47,7 +46,6 @@ import org.forgerock.jaspi.modules.openid.resolvers.service.OpenIdResolverServic
 import org.forgerock.json.jose.jwe.JweAlgorithm;
 import org.forgerock.oauth2.core.OAuth2ProviderSettings;
 import org.forgerock.oauth2.core.PEMDecoder;
-import org.forgerock.oauth2.core.exceptions.ClientAuthenticationFailureFactory;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.testng.annotations.BeforeClass;
@@ -87,9 +85,7 @@ public class OpenAMClientRegistrationTest {
     @BeforeMethod
     public void setup() throws Exception {
         MockitoAnnotations.initMocks(this);
-        ClientAuthenticationFailureFactory failureFactory = mock(ClientAuthenticationFailureFactory.class);
-        clientRegistration = new OpenAMClientRegistration(amIdentity, new PEMDecoder(), resolver, providerSettings,
-                failureFactory);
+        clientRegistration = new OpenAMClientRegistration(amIdentity, new PEMDecoder(), resolver, providerSettings);
     }
 
     @Test
@@ -15,27 +15,16 @@
  */
 package org.forgerock.openam.rest.query;
 
-import static org.forgerock.json.resource.Responses.*;
-import org.forgerock.json.JsonPointer;
-import org.forgerock.json.JsonValue;
+import java.util.Comparator;
+import java.util.List;
+
 import org.forgerock.json.resource.BadRequestException;
-import org.forgerock.json.resource.CountPolicy;
 import org.forgerock.json.resource.QueryRequest;
 import org.forgerock.json.resource.QueryResourceHandler;
 import org.forgerock.json.resource.QueryResponse;
 import org.forgerock.json.resource.ResourceException;
 import org.forgerock.json.resource.ResourceResponse;
-import org.forgerock.json.resource.Responses;
-import org.forgerock.json.resource.SortKey;
-import org.forgerock.openam.utils.CollectionUtils;
-import org.forgerock.util.Function;
 import org.forgerock.util.promise.Promise;
-import org.forgerock.util.promise.Promises;
-
-import java.util.Collection;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.List;
 
 /**
  * Responsible for managing the presentation detail around a CREST query and its
@@ -77,18 +66,27 @@ public class QueryResponsePresentation {
      */
     public static Promise<QueryResponse, ResourceException> perform(QueryResourceHandler handler, QueryRequest request,
                                                              List<ResourceResponse> resources) {
-
-        if (isSortingRequested(request)) {
-            resources = sortItems(request, resources);
-        }
-
-        if (isPagingRequested(request)) {
-            handler = createPagingHandler(handler, request);
+        StreamingQueryResponseHandler streamingHandler = newStreamingHandler(handler, request);
+        for (ResourceResponse resource : resources) {
+            streamingHandler.handleResource(resource);
         }
+        return streamingHandler.getResponse();
+    }
 
-        int handledCount = handleResources(handler, resources);
-        QueryResponse response = generateQueryResponse(request, resources.size(), handledCount);
-        return Promises.newResultPromise(response);
+    /**
+     * Creates a handler which query backends can push their results into as they are found, rather than collecting
+     * them into a list for {@link #perform(QueryResourceHandler, QueryRequest, List)}. Paging and sorting are
+     * applied in the same way, but without retaining results which cannot appear in the requested page.
+     *
+     * Once all results have been pushed, {@link StreamingQueryResponseHandler#getResponse()} completes the query.
+     *
+     * @param handler Non null QueryResourceHandler which will receive the results from the query.
+     * @param request Non null QueryRequest required to determine how results should be processed before returning.
+     * @return Non null handler to push query results into.
+     */
+    public static StreamingQueryResponseHandler newStreamingHandler(QueryResourceHandler handler,
+            QueryRequest request) {
+        return new StreamingQueryResponseHandler(handler, request);
     }
 
     /**
@@ -107,137 +105,4 @@ public class QueryResponsePresentation {
             throw new IllegalStateException(e);
         }
     }
-
-    /**
-     * Validate the QueryRequest and determine if we have enough information to provide
-     * paging for the caller.
-     *
-     * @param handler Non null handler to wrap.
-     * @param request Non null QueryRequest possibly with page size and offset defined.
-     * @return Non null wrapped QueryResponseHandler.
-     */
-    private static QueryResponseHandler createPagingHandler(QueryResourceHandler handler, QueryRequest request) {
-        if (isPagingRequested(request)) {
-            return new PagingQueryResponseHandler(
-                    new QueryResponseHandler(handler),
-                    Math.max(0, request.getPageSize()),
-                    Math.max(0, request.getPagedResultsOffset()));
-        } else {
-            return new QueryResponseHandler(handler);
-        }
-    }
-
-    /**
-     * If we detect we need to operate in CREST 2.0 compatibility mode, then return the
-     * remaining number of items in the query.
-     *
-     * Otherwise, the response will always contain the total results available.
-     *
-     * @see QueryResponsePresentation#enableDeprecatedRemainingQueryResponse(QueryRequest)
-     */
-    private static QueryResponse generateQueryResponse(QueryRequest request, int total, int handled) {
-        if ("true".equalsIgnoreCase(request.getAdditionalParameter(REMAINING))) {
-            return Responses.newRemainingResultsResponse(null, total - handled);
-        } else {
-            return Responses.newQueryResponse(null, CountPolicy.EXACT, total);
-        }
-    }
-
-    /**
-     * Will attempt to handle each resource in sequence until the handler indicates they are complete.
-     */
-    private static int handleResources(QueryResourceHandler handler, List<ResourceResponse> resources) {
-        int count = 0;
-        for (ResourceResponse response : resources) {
-            count++;
-            boolean handled = handler.handleResource(response);
-            if (!handled) {
-                break;
-            }
-        }
-        return count;
-    }
-
-    private static boolean isPagingRequested(QueryRequest request) {
-        return request.getPageSize() > 0;
-    }
-
-    private static boolean isSortingRequested(QueryRequest request) {
-        return !CollectionUtils.isEmpty(request.getSortKeys());
-    }
-
-    private static List<ResourceResponse> sortItems(final QueryRequest request, List<ResourceResponse> items) {
-        Comparator<ResourceResponse> comparator = new Comparator<ResourceResponse>() {
-            final List<SortKey> sortKeys = request.getSortKeys();
-            @Override
-            public int compare(ResourceResponse o1, ResourceResponse o2) {
-                int compare = 0;
-                for (SortKey key : sortKeys) {
-                    Comparable<Object> v1 = getField(o1, key.getField());
-                    Comparable<Object> v2 = getField(o2, key.getField());
-
-                    compare = compare(v1, v2, key.isAscendingOrder());
-                    if (compare != 0) {
-                        break;
-                    }
-                }
-                return compare;
-            }
-
-            private int compare(Comparable<Object> first, Comparable<Object> second, boolean ascending) {
-                int result;
-                if (first == null && second == null) {
-                    result = 0;
-                } else if (first == null) {
-                    result = -1;
-                } else if (second == null) {
-                    result = 1;
-                } else {
-                    result = first.compareTo(second);
-                }
-
-                if (!ascending) {
-                    result = -result;
-                }
-                return result;
-            }
-
-            /**
-             * Gets the comparable field value from a resource.
-             *
-             * @param resource The resource.
-             * @param field The field.
-             * @return The comparable field value or {@code null} if the field is empty or the
-             * field value is not comparable.
-             */
-            private Comparable<Object> getField(ResourceResponse resource, JsonPointer field) {
-                JsonValue value = resource.getContent();
-                if (value.get(field).isNull()) {
-                    return null;
-                }
-                Object object = value.get(field).getObject();
-                if (isComparable(object)) {
-                    return asComparable(object);
-                } else {
-                    return null;
-                }
-            }
-
-            private boolean isComparable(Object o) {
-                return o instanceof Comparable;
-            }
-
-            @SuppressWarnings("unchecked")
-            private Comparable<Object> asComparable(Object o) {
-                return (Comparable<Object>) o;
-            }
-        };
-
-        try {
-            Collections.sort(items, comparator);
-        } catch (NullPointerException e) {
-            // No-op, sorting failed.
-        }
-        return Collections.unmodifiableList(items);
-    }
 }
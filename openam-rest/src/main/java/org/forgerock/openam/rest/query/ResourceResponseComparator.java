@@ -0,0 +1,129 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openam.rest.query;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import org.forgerock.json.JsonPointer;
+import org.forgerock.json.JsonValue;
+import org.forgerock.json.resource.ResourceResponse;
+import org.forgerock.json.resource.SortKey;
+
+/**
+ * Orders {@link ResourceResponse}s by the {@link SortKey}s of a query request.
+ *
+ * Fields which are missing, or whose values are not {@link Comparable}, sort as {@code null}, which is before any
+ * other value. Numbers are compared by value regardless of their type.
+ *
+ * @since 14.0.0
+ */
+final class ResourceResponseComparator implements Comparator<ResourceResponse> {
+
+    private final List<SortKey> sortKeys;
+
+    ResourceResponseComparator(List<SortKey> sortKeys) {
+        this.sortKeys = sortKeys;
+    }
+
+    @Override
+    public int compare(ResourceResponse o1, ResourceResponse o2) {
+        int compare = 0;
+        for (SortKey key : sortKeys) {
+            compare = compare(getField(o1, key.getField()), getField(o2, key.getField()), key.isAscendingOrder());
+            if (compare != 0) {
+                break;
+            }
+        }
+        return compare;
+    }
+
+    /**
+     * Compares the sort key values of a resource with sort key values previously extracted by
+     * {@link #getSortValues(ResourceResponse)}.
+     *
+     * @param resource The resource.
+     * @param sortValues The sort key values, in sort key order.
+     * @return A negative integer, zero, or a positive integer as the resource sorts before, with or after the values.
+     */
+    int compare(ResourceResponse resource, List<Object> sortValues) {
+        int compare = 0;
+        for (int i = 0; i < sortKeys.size() && compare == 0; i++) {
+            SortKey key = sortKeys.get(i);
+            compare = compare(getField(resource, key.getField()), asComparable(sortValues.get(i)),
+                    key.isAscendingOrder());
+        }
+        return compare;
+    }
+
+    /**
+     * Extracts the values of the sort key fields of a resource.
+     *
+     * @param resource The resource.
+     * @return The sort key values, in sort key order, with {@code null} for fields that are not comparable.
+     */
+    List<Object> getSortValues(ResourceResponse resource) {
+        List<Object> values = new ArrayList<>(sortKeys.size());
+        for (SortKey key : sortKeys) {
+            values.add(getField(resource, key.getField()));
+        }
+        return values;
+    }
+
+    private int compare(Comparable<Object> first, Comparable<Object> second, boolean ascending) {
+        int result;
+        if (first == null && second == null) {
+            result = 0;
+        } else if (first == null) {
+            result = -1;
+        } else if (second == null) {
+            result = 1;
+        } else if (first instanceof Number && second instanceof Number
+                && first.getClass() != second.getClass()) {
+            result = Double.compare(((Number) first).doubleValue(), ((Number) second).doubleValue());
+        } else {
+            result = first.compareTo(second);
+        }
+
+        if (!ascending) {
+            result = -result;
+        }
+        return result;
+    }
+
+    /**
+     * Gets the comparable field value from a resource.
+     *
+     * @param resource The resource.
+     * @param field The field.
+     * @return The comparable field value or {@code null} if the field is empty or the
+     * field value is not comparable.
+     */
+    private Comparable<Object> getField(ResourceResponse resource, JsonPointer field) {
+        JsonValue value = resource.getContent().get(field);
+        if (value == null || value.isNull()) {
+            return null;
+        }
+        return asComparable(value.getObject());
+    }
+
+    @SuppressWarnings("unchecked")
+    private Comparable<Object> asComparable(Object o) {
+        return o instanceof Comparable ? (Comparable<Object>) o : null;
+    }
+}
@@ -0,0 +1,271 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openam.rest.query;
+
+import static org.forgerock.openam.rest.query.QueryResponsePresentation.REMAINING;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.forgerock.json.JsonException;
+import org.forgerock.json.JsonValue;
+import org.forgerock.json.resource.CountPolicy;
+import org.forgerock.json.resource.QueryRequest;
+import org.forgerock.json.resource.QueryResourceHandler;
+import org.forgerock.json.resource.QueryResponse;
+import org.forgerock.json.resource.ResourceException;
+import org.forgerock.json.resource.ResourceResponse;
+import org.forgerock.json.resource.Responses;
+import org.forgerock.openam.utils.CollectionUtils;
+import org.forgerock.openam.utils.JsonValueBuilder;
+import org.forgerock.openam.utils.StringUtils;
+import org.forgerock.util.encode.Base64url;
+import org.forgerock.util.promise.Promise;
+import org.forgerock.util.promise.Promises;
+
+/**
+ * A {@link QueryResourceHandler} which query backends push their results into, applying the sorting and paging of
+ * the {@link QueryRequest} as the results arrive rather than after they have all been collected.
+ *
+ * <ul>
+ *     <li>Unsorted results are passed straight through to the caller's handler, skipping those outside the requested
+ *     page.</li>
+ *     <li>When both sort keys and a page size are requested, only the best {@code offset + pageSize} results seen so
+ *     far are retained, in a bounded heap.</li>
+ *     <li>When sort keys and a page size are requested along with a paged results cookie, the results are paged by
+ *     cursor: only results sorting after the cursor are considered, and the response carries the cookie for the
+ *     next page. An empty cookie requests the first page, unless a page offset is requested, in which case the
+ *     results are paged by offset. Results with equal sort key values are ordered by resource id in this mode so
+ *     that pages neither overlap nor skip results. A cookie which this handler did not issue is ignored, and the
+ *     results are paged by offset as if no cookie had been sent.</li>
+ *     <li>Sorting without paging has to retain all results, as before.</li>
+ * </ul>
+ *
+ * Once all results have been pushed, {@link #getResponse()} delivers any retained results and returns the query
+ * response, with the result counts described in {@link QueryResponsePresentation#perform}.
+ *
+ * @since 14.0.0
+ */
+public final class StreamingQueryResponseHandler implements QueryResourceHandler {
+
+    private final QueryResourceHandler handler;
+    private final QueryRequest request;
+    private final ResourceResponseComparator comparator;
+    private final int pageSize;
+    private final int pageOffset;
+    private final boolean cursorPaging;
+    private final List<Object> cursor;
+    private final Comparator<RankedResource> rankedComparator;
+    private final PriorityQueue<RankedResource> page;
+    private final List<ResourceResponse> sortBuffer;
+
+    private int total;
+    private int beforeCursor;
+    private int delivered;
+    private long sequence;
+    private boolean handlerComplete;
+    private ResourceResponse last;
+
+    StreamingQueryResponseHandler(QueryResourceHandler handler, QueryRequest request) {
+        this.handler = handler;
+        this.request = request;
+        this.pageSize = Math.max(0, request.getPageSize());
+        this.comparator = CollectionUtils.isEmpty(request.getSortKeys())
+                ? null : new ResourceResponseComparator(request.getSortKeys());
+
+        // An empty cookie only requests cursor paging when no offset is requested, otherwise the offset applies
+        String cookie = request.getPagedResultsCookie();
+        boolean sortedPages = comparator != null && pageSize > 0;
+        List<Object> decoded = sortedPages ? decodeCursor(cookie) : null;
+        this.cursorPaging = sortedPages && cookie != null
+                && (decoded != null || (cookie.isEmpty() && request.getPagedResultsOffset() <= 0));
+        this.cursor = decoded;
+        this.pageOffset = pageSize > 0 && !cursorPaging ? Math.max(0, request.getPagedResultsOffset()) : 0;
+
+        if (comparator != null && pageSize > 0) {
+            this.rankedComparator = new RankedResourceComparator(cursorPaging);
+            this.page = new PriorityQueue<>(pageOffset + pageSize + 1, Collections.reverseOrder(rankedComparator));
+            this.sortBuffer = null;
+        } else if (comparator != null) {
+            this.rankedComparator = null;
+            this.page = null;
+            this.sortBuffer = new ArrayList<>();
+        } else {
+            this.rankedComparator = null;
+            this.page = null;
+            this.sortBuffer = null;
+        }
+    }
+
+    /**
+     * Accepts a result from the query backend.
+     *
+     * @param resource {@inheritDoc}
+     * @return Always {@code true}, as every result is needed for the result counts.
+     */
+    @Override
+    public boolean handleResource(ResourceResponse resource) {
+        total++;
+        if (page != null) {
+            if (cursor != null && compareToCursor(resource) <= 0) {
+                beforeCursor++;
+            } else {
+                page.offer(new RankedResource(resource, sequence++));
+                if (page.size() > pageOffset + pageSize) {
+                    page.poll();
+                }
+            }
+        } else if (sortBuffer != null) {
+            sortBuffer.add(resource);
+        } else {
+            int position = total - 1;
+            if (position >= pageOffset && (pageSize == 0 || position < pageOffset + pageSize)) {
+                deliver(resource);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Delivers any retained results to the caller's handler and returns the query response.
+     *
+     * @return Non null Promise containing the QueryResponse.
+     */
+    public Promise<QueryResponse, ResourceException> getResponse() {
+        if (page != null) {
+            List<RankedResource> ranked = new ArrayList<>(page);
+            Collections.sort(ranked, rankedComparator);
+            for (int i = pageOffset; i < ranked.size(); i++) {
+                deliver(ranked.get(i).resource);
+            }
+        } else if (sortBuffer != null) {
+            try {
+                Collections.sort(sortBuffer, comparator);
+            } catch (NullPointerException e) {
+                // No-op, sorting failed.
+            }
+            for (ResourceResponse resource : sortBuffer) {
+                deliver(resource);
+            }
+        }
+
+        // Results skipped to reach the page offset count as handled, as they do with an unsorted query
+        int remaining = total - beforeCursor - Math.min(pageOffset, total) - delivered;
+        String cookie = cursorPaging && remaining > 0 && last != null ? encodeCursor(last) : null;
+        if ("true".equalsIgnoreCase(request.getAdditionalParameter(REMAINING))) {
+            return Promises.newResultPromise(Responses.newRemainingResultsResponse(cookie, remaining));
+        } else {
+            return Promises.newResultPromise(Responses.newQueryResponse(cookie, CountPolicy.EXACT, total));
+        }
+    }
+
+    private void deliver(ResourceResponse resource) {
+        if (!handlerComplete) {
+            delivered++;
+            last = resource;
+            handlerComplete = !handler.handleResource(resource);
+        }
+    }
+
+    private int compareToCursor(ResourceResponse resource) {
+        int compare = comparator.compare(resource, cursor.subList(0, cursor.size() - 1));
+        if (compare == 0) {
+            compare = compareIds(resource.getId(), (String) cursor.get(cursor.size() - 1));
+        }
+        return compare;
+    }
+
+    private static int compareIds(String first, String second) {
+        if (first == null) {
+            return second == null ? 0 : -1;
+        }
+        return second == null ? 1 : first.compareTo(second);
+    }
+
+    private String encodeCursor(ResourceResponse resource) {
+        List<Object> values = comparator.getSortValues(resource);
+        values.add(resource.getId());
+        try {
+            byte[] json = JsonValueBuilder.getObjectMapper().writeValueAsBytes(values);
+            return Base64url.encode(json);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to encode paged results cookie", e);
+        }
+    }
+
+    /**
+     * Decodes the cursor of a paged results cookie issued by {@link #encodeCursor}.
+     *
+     * @return The sort values and id of the last result of the previous page, or null if the cookie is empty or was
+     * not issued by this handler for the same sort keys.
+     */
+    private List<Object> decodeCursor(String cookie) {
+        if (StringUtils.isEmpty(cookie)) {
+            return null;
+        }
+        try {
+            byte[] json = Base64url.decode(cookie);
+            JsonValue values = json == null
+                    ? null : JsonValueBuilder.toJsonArray(new String(json, StandardCharsets.UTF_8));
+            if (values == null || values.size() != request.getSortKeys().size() + 1
+                    || !(values.get(values.size() - 1).isNull() || values.get(values.size() - 1).isString())) {
+                return null;
+            }
+            return values.asList();
+        } catch (JsonException e) {
+            return null;
+        }
+    }
+
+    /**
+     * A result along with the order it arrived in, so that sorting is stable.
+     */
+    private static final class RankedResource {
+        private final ResourceResponse resource;
+        private final long sequence;
+
+        private RankedResource(ResourceResponse resource, long sequence) {
+            this.resource = resource;
+            this.sequence = sequence;
+        }
+    }
+
+    private final class RankedResourceComparator implements Comparator<RankedResource> {
+        private final boolean orderById;
+
+        private RankedResourceComparator(boolean orderById) {
+            this.orderById = orderById;
+        }
+
+        @Override
+        public int compare(RankedResource o1, RankedResource o2) {
+            int compare = comparator.compare(o1.resource, o2.resource);
+            if (compare == 0 && orderById) {
+                compare = compareIds(o1.resource.getId(), o2.resource.getId());
+            }
+            if (compare == 0) {
+                compare = Long.compare(o1.sequence, o2.sequence);
+            }
+            return compare;
+        }
+    }
+}
@@ -211,6 +211,67 @@ public class QueryResponsePresentationTest {
         assertThat(captor.getAllValues().get(0).getContent().get("place").asString()).isEqualTo("woods");
     }
 
+    @Test
+    public void shouldSortBeforePaging() throws ResourceException {
+        QueryRequest request = makeSortedQueryRequest("^name");
+        given(request.getPageSize()).willReturn(2);
+        given(request.getPagedResultsOffset()).willReturn(1);
+        Promise<QueryResponse, ResourceException> result = QueryResponsePresentation.perform(mockHandler, request,
+                makeResourceResponses("ghj,abc,xyz,def,mno"));
+        assertThat(captor.getAllValues()).hasSize(2);
+        assertThat(extractId(captor.getAllValues(), 0)).isEqualTo("def");
+        assertThat(extractId(captor.getAllValues(), 1)).isEqualTo("ghj");
+        assertThat(result.getOrThrowUninterruptibly().getTotalPagedResults()).isEqualTo(5);
+    }
+
+    @Test
+    public void shouldPageSortedResultsUsingCookie() throws ResourceException {
+        QueryRequest request = makeSortedQueryRequest("^name");
+        given(request.getPageSize()).willReturn(2);
+        given(request.getPagedResultsCookie()).willReturn("");
+
+        QueryResponse firstPage = QueryResponsePresentation.perform(mockHandler, request,
+                makeResourceResponses("ghj,abc,xyz,def,mno")).getOrThrowUninterruptibly();
+        given(request.getPagedResultsCookie()).willReturn(firstPage.getPagedResultsCookie());
+        QueryResponse secondPage = QueryResponsePresentation.perform(mockHandler, request,
+                makeResourceResponses("ghj,abc,xyz,def,mno")).getOrThrowUninterruptibly();
+        given(request.getPagedResultsCookie()).willReturn(secondPage.getPagedResultsCookie());
+        QueryResponse lastPage = QueryResponsePresentation.perform(mockHandler, request,
+                makeResourceResponses("ghj,abc,xyz,def,mno")).getOrThrowUninterruptibly();
+
+        assertThat(captor.getAllValues()).extracting("id").containsExactly("abc", "def", "ghj", "mno", "xyz");
+        assertThat(firstPage.getPagedResultsCookie()).isNotNull();
+        assertThat(lastPage.getPagedResultsCookie()).isNull();
+    }
+
+    @Test
+    public void shouldPageSortedResultsByOffsetWhenCookieIsEmpty() throws ResourceException {
+        QueryRequest request = makeSortedQueryRequest("^name");
+        given(request.getPageSize()).willReturn(2);
+        given(request.getPagedResultsOffset()).willReturn(2);
+        given(request.getPagedResultsCookie()).willReturn("");
+
+        QueryResponse response = QueryResponsePresentation.perform(mockHandler, request,
+                makeResourceResponses("ghj,abc,xyz,def,mno")).getOrThrowUninterruptibly();
+
+        assertThat(captor.getAllValues()).extracting("id").containsExactly("ghj", "mno");
+        assertThat(response.getTotalPagedResults()).isEqualTo(5);
+    }
+
+    @Test
+    public void shouldIgnoreCookieItDidNotIssue() throws ResourceException {
+        QueryRequest request = makeSortedQueryRequest("^name");
+        given(request.getPageSize()).willReturn(2);
+        given(request.getPagedResultsOffset()).willReturn(2);
+        given(request.getPagedResultsCookie()).willReturn("not-a-cookie");
+
+        QueryResponse response = QueryResponsePresentation.perform(mockHandler, request,
+                makeResourceResponses("ghj,abc,xyz,def,mno")).getOrThrowUninterruptibly();
+
+        assertThat(captor.getAllValues()).extracting("id").containsExactly("ghj", "mno");
+        assertThat(response.getPagedResultsCookie()).isNull();
+    }
+
     private static QueryRequest makeEmptyQueryRequest() {
         return mock(QueryRequest.class);
     }
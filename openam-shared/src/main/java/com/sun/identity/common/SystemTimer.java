@@ -52,7 +52,7 @@ public class SystemTimer {
             ShutdownManager shutdownMan = ShutdownManager.getInstance();
             // Don't load the Debug object in static block as it can
             // cause issues when doing a container restart.
-            instance = new TimerPool(TIMER_NAME, 1, false, Debug.getInstance("SystemTimer"));
+            instance = TimingWheelTimerPool.newTimerPool(TIMER_NAME, 1, false, Debug.getInstance("SystemTimer"));
             shutdownMan.addShutdownListener(new ShutdownListener() {
                 public void shutdown() {
                     instance.shutdown();
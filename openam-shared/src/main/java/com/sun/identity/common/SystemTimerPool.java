@@ -73,7 +73,7 @@ public class SystemTimerPool {
 
             // Don't load the Debug object in static block as it can
             // cause issues when doing a container restart.
-            instance = new TimerPool(TIMER_NAME, poolSize, false, Debug.getInstance(TIMER_NAME));
+            instance = TimingWheelTimerPool.newTimerPool(TIMER_NAME, poolSize, false, Debug.getInstance(TIMER_NAME));
 
             try {
                 shutdownMan.addShutdownListener(new ShutdownListener() {
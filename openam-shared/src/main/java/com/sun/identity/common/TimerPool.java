@@ -86,6 +86,18 @@ public class TimerPool implements Triggerable {
             createThreads(poolSize);
         }
     }
+
+    /**
+     * Constructor for TimerPool implementations which schedule and run the tasks themselves, and so override all
+     * of the public methods. No threads are started.
+     *
+     * @param name The name of the TimerPool
+     * @param debug Debug object to send debugging message to.
+     */
+    protected TimerPool(String name, Debug debug) {
+        this.name = name;
+        this.debug = debug;
+    }
     
     /**
      * Creates threads to the TimerPool.
@@ -231,29 +243,10 @@ public class TimerPool implements Triggerable {
                 "The timers have been shuted down!");
         } else {
             if ((task != null) && (time != null)) {
+                if (isScheduledAt(task, time)) {
+                    return;
+                }
                 HeadTaskRunnable head = null;
-                do {
-                    head = task.getHeadTask();
-                    if (head != null) {
-                        if (head.acquireValidLock()) {
-                            try {
-                                if (head == task.getHeadTask()) {
-                                    if (head.scheduledExecutionTime() ==
-                                        time.getTime()) {
-                                        return;
-                                    } else {
-                                        if (!head.isTimedOut()) {
-                                            throw new IllegalStateException(
-                                                "The task has been scheduled!");
-                                        }
-                                    }
-                                }
-                            } finally {
-                                head.releaseLockAndNotify();
-                            }
-                        }
-                    }
-                } while (head != task.getHeadTask());
                 synchronized (taskList) {
                     if((head = (HeadTaskRunnable) taskList.get(time)) == null) {
                         task.setNext(null);
@@ -293,6 +286,42 @@ public class TimerPool implements Triggerable {
         }
     }
     
+    /**
+     * Checks whether the task is already waiting to be run.
+     *
+     * @param task The TaskRunnable to be scheduled
+     * @param time The time to run the TaskRunnable
+     * @return true if the task is already scheduled to run at the time.
+     * @throws IllegalStateException if the task is already scheduled to run at another time.
+     */
+
+    static boolean isScheduledAt(TaskRunnable task, Date time) throws IllegalStateException {
+        HeadTaskRunnable head = null;
+        do {
+            head = task.getHeadTask();
+            if (head != null) {
+                if (head.acquireValidLock()) {
+                    try {
+                        if (head == task.getHeadTask()) {
+                            if (head.scheduledExecutionTime() ==
+                                time.getTime()) {
+                                return true;
+                            } else {
+                                if (!head.isTimedOut()) {
+                                    throw new IllegalStateException(
+                                        "The task has been scheduled!");
+                                }
+                            }
+                        }
+                    } finally {
+                        head.releaseLockAndNotify();
+                    }
+                }
+            }
+        } while (head != task.getHeadTask());
+        return false;
+    }
+
     /**
      * Schedules the TaskRunnable to the TimerPool.
      *
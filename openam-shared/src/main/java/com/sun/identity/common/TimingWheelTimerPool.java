@@ -0,0 +1,465 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package com.sun.identity.common;
+
+import static org.forgerock.openam.utils.Time.currentTimeMillis;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import com.sun.identity.shared.Constants;
+import com.sun.identity.shared.configuration.SystemPropertiesManager;
+import com.sun.identity.shared.debug.Debug;
+
+/**
+ * A {@link TimerPool} which keeps its scheduled tasks in a hierarchical hashed timing wheel rather than a sorted
+ * map, so that scheduling and cancelling a task takes constant time and does not contend on a shared lock.
+ * <p>
+ * Tasks scheduled for the same time still share a {@link HeadTaskRunnable}, which is found through a concurrent map.
+ * New and cancelled heads are handed to a single ticker thread through queues, and the ticker is the only thread
+ * which touches the wheels. Every tick it moves the heads whose time has come to an executor of {@code poolSize}
+ * threads, which runs them exactly like the worker threads of {@link TimerPool} do. Tasks are therefore run up to
+ * one tick (see {@link Constants#TIMING_WHEEL_TICK_MILLIS}) after the time they were scheduled for.
+ * <p>
+ * The wheels have 256 buckets and each covers 256 times the span of the one below
+ * it. Heads due further away than the lowest wheel covers are kept in a higher wheel and cascaded down as the time
+ * gets closer.
+ *
+ * @since 14.0.0
+ */
+public class TimingWheelTimerPool extends TimerPool {
+
+    private static final int WHEEL_BITS = 8;
+    private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+    private static final int LEVELS = 4;
+    private static final int DEFAULT_TICK_MILLIS = 10;
+    private static final long LAG_WARNING_MILLIS = 1000;
+
+    private final String name;
+    private final Debug debug;
+    private final long tickMillis;
+    private final ConcurrentMap<Long, Timeout> timeouts = new ConcurrentHashMap<>();
+    private final Queue<Timeout> added = new ConcurrentLinkedQueue<>();
+    private final Queue<Timeout> cancelled = new ConcurrentLinkedQueue<>();
+    private final ExecutorService executor;
+    private final Thread ticker;
+    private volatile boolean terminated;
+    private volatile long lastTickLag;
+    private volatile long maxTickLag;
+
+    // Only used by the ticker thread
+    private final Bucket[][] wheels = new Bucket[LEVELS][WHEEL_SIZE];
+    private long currentTick;
+    private int placed;
+
+    /**
+     * Returns the timer pool {@link SystemTimer} and {@link SystemTimerPool} should use: a timing wheel if
+     * {@link Constants#TIMING_WHEEL_ENABLED} is set, otherwise a {@link TimerPool}.
+     *
+     * @param name The name of the TimerPool
+     * @param poolSize The number of threads running the tasks
+     * @param daemon Whether the threads of the TimerPool are daemon threads
+     * @param debug Debug object to send debugging message to.
+     * @return A new, started, TimerPool.
+     */
+    static TimerPool newTimerPool(String name, int poolSize, boolean daemon, Debug debug) {
+        if (SystemPropertiesManager.getAsBoolean(Constants.TIMING_WHEEL_ENABLED, false)) {
+            int tickMillis = SystemPropertiesManager.getAsInt(Constants.TIMING_WHEEL_TICK_MILLIS, DEFAULT_TICK_MILLIS);
+            return new TimingWheelTimerPool(name, poolSize, daemon, debug, Math.max(1, tickMillis));
+        }
+        return new TimerPool(name, poolSize, daemon, debug);
+    }
+
+    /**
+     * Constructor of TimingWheelTimerPool.
+     *
+     * @param name The name of the TimerPool
+     * @param poolSize The number of threads running the tasks
+     * @param daemon Whether the threads of the TimerPool are daemon threads
+     * @param debug Debug object to send debugging message to.
+     * @param tickMillis The resolution of the timer, in milliseconds.
+     */
+    public TimingWheelTimerPool(final String name, int poolSize, final boolean daemon, Debug debug,
+            long tickMillis) {
+        super(name, debug);
+        this.name = name;
+        this.debug = debug;
+        this.tickMillis = tickMillis;
+        for (int level = 0; level < LEVELS; level++) {
+            for (int index = 0; index < WHEEL_SIZE; index++) {
+                wheels[level][index] = new Bucket();
+            }
+        }
+        this.currentTick = currentTimeMillis() / tickMillis;
+        this.executor = Executors.newFixedThreadPool(poolSize, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, name);
+                thread.setDaemon(daemon);
+                return thread;
+            }
+        });
+        this.ticker = new Thread(new Ticker(), name + SCHEDULER_SUFFIX);
+        this.ticker.setDaemon(daemon);
+        this.ticker.start();
+    }
+
+    @Override
+    public void schedule(TaskRunnable task, Date time) throws IllegalArgumentException, IllegalStateException {
+        if (terminated) {
+            throw new IllegalStateException("The timers have been shut down!");
+        }
+        if (task == null || time == null) {
+            throw new IllegalArgumentException();
+        }
+        if (isScheduledAt(task, time)) {
+            return;
+        }
+
+        Long key = time.getTime();
+        while (true) {
+            Timeout timeout = timeouts.get(key);
+            if (timeout == null) {
+                task.setNext(null);
+                Timeout newTimeout = new Timeout(key, tickOf(key), new HeadTaskRunnable(this, task, time));
+                timeout = timeouts.putIfAbsent(key, newTimeout);
+                if (timeout == null) {
+                    added.add(newTimeout);
+                    return;
+                }
+            }
+
+            HeadTaskRunnable head = timeout.head;
+            if (head.acquireValidLock()) {
+                try {
+                    // The head may have been cancelled or handed to the executor since it was looked up
+                    if (timeouts.get(key) == timeout) {
+                        task.setHeadTask(head);
+                        TaskRunnable tailTask = head.tail();
+                        task.setPrevious(tailTask);
+                        tailTask.setNext(task);
+                        task.setNext(null);
+                        head.setTail(task);
+                        return;
+                    }
+                } finally {
+                    head.releaseLockAndNotify();
+                }
+            }
+        }
+    }
+
+    /**
+     * Called by a {@link HeadTaskRunnable} when it no longer has any task to run.
+     *
+     * @param time The time the head was scheduled for.
+     */
+    @Override
+    public void trigger(Date time) {
+        Timeout timeout = timeouts.remove(time.getTime());
+        if (timeout != null) {
+            timeout.cancelled = true;
+            cancelled.add(timeout);
+        }
+    }
+
+    /**
+     * Shuts down the TimerPool, waiting for the tasks which are running to complete.
+     */
+    @Override
+    public void shutdown() {
+        synchronized (this) {
+            if (terminated) {
+                return;
+            }
+            terminated = true;
+        }
+        ticker.interrupt();
+        executor.shutdown();
+        try {
+            while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                debug.warning("TimingWheelTimerPool.shutdown() " + name + ": still waiting for tasks to complete");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        timeouts.clear();
+    }
+
+    /**
+     * Returns how late the ticker thread processed the last tick.
+     *
+     * @return The lag of the last tick, in milliseconds.
+     */
+    public long getLastTickLag() {
+        return lastTickLag;
+    }
+
+    /**
+     * Returns the most the ticker thread has been late processing a tick since the pool was created.
+     *
+     * @return The maximum lag of a tick, in milliseconds.
+     */
+    public long getMaxTickLag() {
+        return maxTickLag;
+    }
+
+    /**
+     * Returns the number of distinct times tasks are currently scheduled for.
+     *
+     * @return The number of scheduled times.
+     */
+    public int getScheduledTimeCount() {
+        return timeouts.size();
+    }
+
+    private long tickOf(long time) {
+        return (time + tickMillis - 1) / tickMillis;
+    }
+
+    /**
+     * Processes the ticks up to the current time, and the heads added and cancelled since the last tick.
+     */
+    private void tick() {
+        List<Timeout> due = new ArrayList<>();
+        for (Timeout timeout; (timeout = cancelled.poll()) != null;) {
+            if (timeout.bucket != null) {
+                timeout.bucket.remove(timeout);
+                placed--;
+            }
+        }
+        for (Timeout timeout; (timeout = added.poll()) != null;) {
+            if (!timeout.cancelled) {
+                place(timeout, due);
+            }
+        }
+
+        long now = currentTimeMillis();
+        long nowTick = now / tickMillis;
+        if (nowTick > currentTick) {
+            recordLag(now - (currentTick + 1) * tickMillis);
+        }
+        if (placed == 0) {
+            currentTick = Math.max(currentTick, nowTick);
+        }
+        while (currentTick < nowTick) {
+            long tick = ++currentTick;
+            int level = 0;
+            while (level < LEVELS - 1 && (tick & ((1L << (WHEEL_BITS * (level + 1))) - 1)) == 0) {
+                level++;
+            }
+            // Cascade the higher wheels down before the lowest wheel's bucket for this tick is expired
+            for (; level > 0; level--) {
+                cascade(wheels[level][(int) (tick >>> (WHEEL_BITS * level)) & WHEEL_MASK], due);
+            }
+            cascade(wheels[0][(int) tick & WHEEL_MASK], due);
+        }
+
+        for (Timeout timeout : due) {
+            if (timeouts.remove(timeout.time, timeout)) {
+                try {
+                    executor.execute(new HeadRunner(timeout.head));
+                } catch (RejectedExecutionException e) {
+                    // The pool has been shut down
+                    return;
+                }
+            }
+        }
+    }
+
+    private void place(Timeout timeout, List<Timeout> due) {
+        long deadlineTick = timeout.deadlineTick;
+        if (deadlineTick <= currentTick) {
+            due.add(timeout);
+            return;
+        }
+        int level = 0;
+        while (level < LEVELS - 1
+                && (deadlineTick >>> (WHEEL_BITS * (level + 1))) != (currentTick >>> (WHEEL_BITS * (level + 1)))) {
+            level++;
+        }
+        wheels[level][(int) (deadlineTick >>> (WHEEL_BITS * level)) & WHEEL_MASK].add(timeout);
+        placed++;
+    }
+
+    private void cascade(Bucket bucket, List<Timeout> due) {
+        Timeout timeout = bucket.clear();
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            timeout.next = null;
+            timeout.previous = null;
+            timeout.bucket = null;
+            placed--;
+            place(timeout, due);
+            timeout = next;
+        }
+    }
+
+    private void recordLag(long lag) {
+        lastTickLag = lag;
+        if (lag > maxTickLag) {
+            maxTickLag = lag;
+        }
+        if (lag > LAG_WARNING_MILLIS && debug.messageEnabled()) {
+            debug.message("TimingWheelTimerPool.tick() " + name + ": tick processed " + lag + "ms late");
+        }
+    }
+
+    private final class Ticker implements Runnable {
+
+        @Override
+        public void run() {
+            while (!terminated) {
+                try {
+                    long sleep = (currentTick + 1) * tickMillis - currentTimeMillis();
+                    if (sleep > 0) {
+                        // Sleep no more than a tick so that the clock moving backwards doesn't stall new tasks
+                        Thread.sleep(Math.min(sleep, tickMillis));
+                    }
+                    tick();
+                } catch (InterruptedException e) {
+                    // Shutting down, or to be ignored
+                } catch (RuntimeException e) {
+                    debug.error("TimingWheelTimerPool$Ticker.run() " + name, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs the tasks of a head, in the same way as the worker threads of {@link TimerPool}.
+     */
+    private final class HeadRunner implements Runnable {
+
+        private final HeadTaskRunnable head;
+
+        private HeadRunner(HeadTaskRunnable head) {
+            this.head = head;
+        }
+
+        @Override
+        public void run() {
+            if (!head.acquireValidLock()) {
+                return;
+            }
+            try {
+                head.timeout();
+                TaskRunnable task = head.next();
+                while (task != null) {
+                    TaskRunnable runTask = task;
+                    task = task.next();
+                    // cut the connection before run the task.
+                    runTask.setNext(null);
+                    try {
+                        runTask.run();
+                    } catch (RuntimeException e) {
+                        debug.error("TimingWheelTimerPool$HeadRunner.run() " + name, e);
+                    }
+                    if (runTask.getRunPeriod() >= 0) {
+                        schedule(runTask, new Date(head.scheduledExecutionTime() + runTask.getRunPeriod()));
+                    }
+                }
+                head.expire();
+            } catch (IllegalStateException e) {
+                // Only thrown by schedule if the pool has been shut down already
+                if (debug.messageEnabled()) {
+                    debug.message("TimingWheelTimerPool$HeadRunner.run() " + name, e);
+                }
+            } finally {
+                head.releaseLockAndNotify();
+            }
+        }
+    }
+
+    /**
+     * A head scheduled in the wheels, linked to the other heads of its bucket.
+     */
+    private static final class Timeout {
+
+        private final Long time;
+        private final long deadlineTick;
+        private final HeadTaskRunnable head;
+        private volatile boolean cancelled;
+        private Bucket bucket;
+        private Timeout previous;
+        private Timeout next;
+
+        private Timeout(Long time, long deadlineTick, HeadTaskRunnable head) {
+            this.time = time;
+            this.deadlineTick = deadlineTick;
+            this.head = head;
+        }
+    }
+
+    /**
+     * A doubly linked list of timeouts, so that a cancelled timeout is removed in constant time.
+     */
+    private static final class Bucket {
+
+        private Timeout first;
+        private Timeout last;
+
+        private void add(Timeout timeout) {
+            timeout.bucket = this;
+            timeout.previous = last;
+            timeout.next = null;
+            if (last == null) {
+                first = timeout;
+            } else {
+                last.next = timeout;
+            }
+            last = timeout;
+        }
+
+        private void remove(Timeout timeout) {
+            if (timeout.previous == null) {
+                first = timeout.next;
+            } else {
+                timeout.previous.next = timeout.next;
+            }
+            if (timeout.next == null) {
+                last = timeout.previous;
+            } else {
+                timeout.next.previous = timeout.previous;
+            }
+            timeout.bucket = null;
+            timeout.previous = null;
+            timeout.next = null;
+        }
+
+        /**
+         * Empties the bucket, returning its first timeout which is still linked to the others.
+         */
+        private Timeout clear() {
+            Timeout timeout = first;
+            first = null;
+            last = null;
+            return timeout;
+        }
+    }
+}
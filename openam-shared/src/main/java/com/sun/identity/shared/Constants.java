@@ -348,6 +348,35 @@ public interface Constants {
      */
     String AM_SESSION_MAX_CACHE_SIZE = "org.forgerock.openam.session.service.access.persistence.caching.maxsize";
 
+    /**
+     * Property name for the maximum number of in-flight authentication sessions, zero or less meaning unbounded.
+     */
+    String AUTHENTICATION_SESSION_STORE_MAX_SIZE = "org.forgerock.openam.session.authentication.store.maxSize";
+
+    /**
+     * Property name for what to do with a new authentication session when the authentication session store is full,
+     * either {@code REJECT} or {@code EVICT_NEXT_TO_EXPIRE}.
+     */
+    String AUTHENTICATION_SESSION_STORE_REJECTION_POLICY =
+            "org.forgerock.openam.session.authentication.store.rejectionPolicy";
+
+    /**
+     * Property name for the period, in seconds, at which expired authentication sessions are culled.
+     */
+    String AUTHENTICATION_SESSION_STORE_CULL_PERIOD = "org.forgerock.openam.session.authentication.store.cullPeriod";
+
+    /**
+     * Property name to enable tracking the sessions of each user on this server for session quota checks, so that
+     * the session repository is only queried when a user might exceed their quota.
+     */
+    String SESSION_QUOTA_TRACKING_ENABLED = "org.forgerock.openam.session.quota.tracking.enabled";
+
+    /**
+     * Property name for how long, in seconds, the tracked sessions of a user are trusted before they are reconciled
+     * with the session repository.
+     */
+    String SESSION_QUOTA_TRACKING_RECONCILE_PERIOD = "org.forgerock.openam.session.quota.tracking.reconcilePeriod";
+
     /**
      * Property string for security provider package.
      */
@@ -976,6 +1005,20 @@ public interface Constants {
      */
     static final String SMS_CACHE_TTL = "com.sun.identity.sm.cache.ttl";
 
+    /**
+     * property string for the file the SMS configuration snapshot is written
+     * to and loaded from at startup. The snapshot is disabled when not set.
+     */
+    static final String SMS_SNAPSHOT_FILE = "org.forgerock.openam.sm.snapshot.file";
+
+    /**
+     * property string for the maximum number of entries the SMS configuration
+     * snapshot is reconciled against. The snapshot is discarded when the
+     * services subtree holds more entries. The directory must not apply a
+     * lower size limit to the administrative user. The default is 100000.
+     */
+    static final String SMS_SNAPSHOT_MAX_ENTRIES = "org.forgerock.openam.sm.snapshot.maxEntries";
+
     /**
      * property string to manage the persistent connection to directory
      */
@@ -994,6 +1037,16 @@ public interface Constants {
     static final String SYSTEM_TIMERPOOL_SIZE =
             "com.sun.identity.common.systemtimerpool.size";
 
+    /**
+     * Property to make SystemTimer and SystemTimerPool schedule their tasks in a timing wheel.
+     */
+    String TIMING_WHEEL_ENABLED = "org.forgerock.openam.timerpool.timingwheel.enabled";
+
+    /**
+     * Property to specify the tick of the timing wheel, in milliseconds.
+     */
+    String TIMING_WHEEL_TICK_MILLIS = "org.forgerock.openam.timerpool.timingwheel.tick";
+
     /**
      * property string for Distributed Authentication cluster
      */
@@ -1349,6 +1402,18 @@ public interface Constants {
      */
     public static final String LDAP_HEARTBEAT_TIMEOUT = "org.forgerock.openam.ldap.heartbeat.timeout";
 
+    /**
+     * The minimum size of the LDAP connection pools as a percentage of their maximum size. Pools with a minimum size
+     * below their maximum size grow when a request would otherwise have to wait for a connection, and shrink again
+     * once the extra connections have been idle for {@link #LDAP_POOL_IDLE_TIMEOUT} seconds.
+     */
+    String LDAP_POOL_MIN_SIZE_PERCENT = "org.forgerock.openam.ldap.pool.minSizePercent";
+
+    /**
+     * Idle timeout in seconds after which connections above the minimum size of an LDAP connection pool are closed.
+     */
+    String LDAP_POOL_IDLE_TIMEOUT = "org.forgerock.openam.ldap.pool.idleTimeout";
+
     /**
      * Sets the maximum file upload size - if not set the default will be 750k.
      */
@@ -1374,6 +1439,66 @@ public interface Constants {
      */
     String NOTIFICATIONS_AGENTS_ENABLED = "org.forgerock.openam.notifications.agents.enabled";
 
+    /**
+     * Property to enable the /metrics endpoint, which renders the metrics registry in the Prometheus text format.
+     */
+    String METRICS_ENDPOINT_ENABLED = "org.forgerock.openam.metrics.endpoint.enabled";
+
+    /**
+     * Property to enable the cache of the entitlement decisions made by the server.
+     */
+    String POLICY_DECISION_CACHE_ENABLED = "org.forgerock.openam.entitlement.decisionCache.enabled";
+
+    /**
+     * Property to set the number of entitlement decisions the decision cache can hold.
+     */
+    String POLICY_DECISION_CACHE_MAX_SIZE = "org.forgerock.openam.entitlement.decisionCache.maxSize";
+
+    /**
+     * Property to set how long, in milliseconds, entitlement decisions are cached for at most.
+     */
+    String POLICY_DECISION_CACHE_TTL = "org.forgerock.openam.entitlement.decisionCache.ttl";
+
+    /**
+     * Property to enable publishing audit events from background threads, rather than on the request thread.
+     */
+    String AUDIT_ASYNC_ENABLED = "org.forgerock.openam.audit.async.enabled";
+
+    /**
+     * Property to set the number of audit events which can be queued per topic when publishing asynchronously.
+     */
+    String AUDIT_ASYNC_QUEUE_SIZE = "org.forgerock.openam.audit.async.queueSize";
+
+    /**
+     * Property to set the maximum number of queued audit events published in one go per topic.
+     */
+    String AUDIT_ASYNC_BATCH_SIZE = "org.forgerock.openam.audit.async.batchSize";
+
+    /**
+     * Property to set what happens to audit events published while their topic queue is full: {@code block} waits
+     * for room on the request thread, {@code drop} discards the event.
+     */
+    String AUDIT_ASYNC_OVERFLOW_POLICY = "org.forgerock.openam.audit.async.overflowPolicy";
+
+    /**
+     * Property to set the maximum number of records the database log handler inserts with one JDBC batch. Records
+     * are inserted one at a time when set to 1.
+     */
+    String LOG_DB_BATCH_SIZE = "org.forgerock.openam.log.db.batchSize";
+
+    /**
+     * Property to set the maximum time, in milliseconds, a thread publishing database log records waits for the
+     * records already handed over to the logging thread to be written, while there are more of them than the
+     * maximum DB memory buffer size. Defaults to 5000; publishing threads do not wait when set to 0.
+     */
+    String LOG_DB_MAX_PENDING_WAIT = "org.forgerock.openam.log.db.maxPendingWait";
+
+    /**
+     * Property to set the minimum interval, in milliseconds, between two forced writes of a log file to the storage
+     * device by the file log handler. Log files are left for the operating system to write when set to 0.
+     */
+    String LOG_FILE_SYNC_INTERVAL = "org.forgerock.openam.log.file.syncInterval";
+
     /** Service name for the REST APIs service. */
     String REST_APIS_SERVICE_NAME = "RestApisService";
     
@@ -51,6 +51,18 @@ public final class DebugConstants {
 
     public static final String CONFIG_DEBUG_DIRECTORY = "com.iplanet.services.debug.directory";
 
+    /**
+     * Property key to enable writing debug files from a background thread rather than from the calling thread.
+     */
+    public static final String CONFIG_DEBUG_ASYNC = "org.forgerock.openam.debug.async";
+
+    /**
+     * Property key for the number of debug records which can be waiting to be written in asynchronous mode.
+     */
+    public static final String CONFIG_DEBUG_ASYNC_BUFFER_SIZE = "org.forgerock.openam.debug.async.bufferSize";
+
+    public static final int DEFAULT_DEBUG_ASYNC_BUFFER_SIZE = 8192;
+
     /**
      * Constant string used as property key to look up the debug provider class
      * name.
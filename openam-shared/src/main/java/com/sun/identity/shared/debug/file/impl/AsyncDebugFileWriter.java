@@ -0,0 +1,195 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package com.sun.identity.shared.debug.file.impl;
+
+import com.sun.identity.shared.debug.file.DebugFile;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Writes debug records to their {@link DebugFileImpl} from a single background thread.
+ *
+ * Calling threads only queue the record, which is formatted and written by the writer thread along with the other
+ * records waiting for the same file, so that each batch is flushed to disk once and the log rotation never happens
+ * on a calling thread. The queue is bounded: when it is full, calling threads wait for the writer to catch up rather
+ * than dropping records. Any records still queued when the JVM shuts down are written by a shutdown hook.
+ */
+class AsyncDebugFileWriter {
+
+    private static final int MAX_BATCH_SIZE = 512;
+    private static final long MAX_IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long FULL_BUFFER_WAIT_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private final ConcurrentLinkedQueue<Record> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queueSize = new AtomicInteger();
+    private final AtomicLong queuedCount = new AtomicLong();
+    private final int capacity;
+    private final Thread writerThread;
+
+    private volatile long writtenCount = 0;
+    private volatile boolean writerIdle = false;
+
+    /**
+     * Constructs the writer and starts its thread.
+     *
+     * @param capacity the maximum number of records waiting to be written.
+     */
+    AsyncDebugFileWriter(int capacity) {
+        this.capacity = Math.max(1, capacity);
+        this.writerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeLoop();
+            }
+        }, "DebugFileWriter");
+        writerThread.setDaemon(true);
+        writerThread.start();
+
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                flush(TimeUnit.SECONDS.toMillis(5));
+            }
+        }, "DebugFileWriterShutdown"));
+    }
+
+    /**
+     * Wraps a debug file so that its records are written by this writer.
+     *
+     * @param debugFile the debug file.
+     * @return the asynchronous debug file.
+     */
+    DebugFile wrap(final DebugFileImpl debugFile) {
+        return new DebugFile() {
+            @Override
+            public void writeIt(String prefix, String msg, Throwable th) {
+                append(new Record(debugFile, prefix, msg, th));
+            }
+        };
+    }
+
+    /**
+     * Waits for all records queued so far to be written.
+     *
+     * @param timeoutMillis the maximum time to wait.
+     * @return {@code true} if the records were written within the timeout.
+     */
+    boolean flush(long timeoutMillis) {
+        long target = queuedCount.get();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (writtenCount < target) {
+            if (System.nanoTime() >= deadline) {
+                return false;
+            }
+            LockSupport.unpark(writerThread);
+            LockSupport.parkNanos(FULL_BUFFER_WAIT_NANOS);
+        }
+        return true;
+    }
+
+    private void append(Record record) {
+        while (!reserve()) {
+            LockSupport.unpark(writerThread);
+            LockSupport.parkNanos(FULL_BUFFER_WAIT_NANOS);
+        }
+        queue.offer(record);
+        queuedCount.incrementAndGet();
+        if (writerIdle) {
+            LockSupport.unpark(writerThread);
+        }
+    }
+
+    private boolean reserve() {
+        int size;
+        do {
+            size = queueSize.get();
+            if (size >= capacity) {
+                return false;
+            }
+        } while (!queueSize.compareAndSet(size, size + 1));
+        return true;
+    }
+
+    private void writeLoop() {
+        Map<DebugFileImpl, List<String>> batch = new LinkedHashMap<>();
+        while (true) {
+            int count = 0;
+            Record record;
+            while (count < MAX_BATCH_SIZE && (record = queue.poll()) != null) {
+                queueSize.decrementAndGet();
+                List<String> records = batch.get(record.debugFile);
+                if (records == null) {
+                    records = new ArrayList<>();
+                    batch.put(record.debugFile, records);
+                }
+                records.add(DebugFileImpl.formatRecord(record.prefix, record.msg, record.th));
+                count++;
+            }
+
+            if (count == 0) {
+                writerIdle = true;
+                if (queue.isEmpty()) {
+                    LockSupport.parkNanos(this, MAX_IDLE_NANOS);
+                }
+                writerIdle = false;
+                continue;
+            }
+
+            for (Map.Entry<DebugFileImpl, List<String>> entry : batch.entrySet()) {
+                write(entry.getKey(), entry.getValue());
+            }
+            batch.clear();
+            writtenCount += count;
+        }
+    }
+
+    private void write(DebugFileImpl debugFile, List<String> records) {
+        try {
+            debugFile.writeRecords(records);
+        } catch (IOException e) {
+            StdDebugFile.printError(AsyncDebugFileWriter.class.getSimpleName(),
+                    "Debug file can't be written : " + e.getMessage(), null);
+            for (String record : records) {
+                System.out.println(record);
+            }
+        } catch (RuntimeException e) {
+            StdDebugFile.printError(AsyncDebugFileWriter.class.getSimpleName(), e.getMessage(), e);
+        }
+    }
+
+    private static final class Record {
+        private final DebugFileImpl debugFile;
+        private final String prefix;
+        private final String msg;
+        private final Throwable th;
+
+        private Record(DebugFileImpl debugFile, String prefix, String msg, Throwable th) {
+            this.debugFile = debugFile;
+            this.prefix = prefix;
+            this.msg = msg;
+            this.th = th;
+        }
+    }
+}
@@ -40,6 +40,7 @@ import org.forgerock.openam.utils.IOUtils;
 import org.forgerock.openam.utils.StringUtils;
 import org.forgerock.util.time.TimeService;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
@@ -47,8 +48,11 @@ import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 import java.util.ResourceBundle;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -58,6 +62,10 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
  * - compute its complete name
  * - create log directory
  * - manage the log rotation
+ *
+ * Records are normally written from the calling thread. When the debug files are asynchronous, an
+ * {@link AsyncDebugFileWriter} formats and writes them in batches through {@link #writeRecords(List)}, which means
+ * the rotation also happens on its thread.
  */
 public class DebugFileImpl implements DebugFile {
 
@@ -81,6 +89,10 @@ public class DebugFileImpl implements DebugFile {
 
     private File currentFile;
 
+    private final AtomicLong currentFileSize = new AtomicLong();
+
+    private static final int LINE_SEPARATOR_LENGTH = System.lineSeparator().length();
+
     /**
      * Constructor
      *
@@ -141,7 +153,18 @@ public class DebugFileImpl implements DebugFile {
 
     @Override
     public void writeIt(String prefix, String msg, Throwable th) throws IOException {
+        writeRecords(Collections.singletonList(formatRecord(prefix, msg, th)));
+    }
 
+    /**
+     * Formats a debug record as it is written to the debug file.
+     *
+     * @param prefix Message prefix
+     * @param msg    Message to be recorded.
+     * @param th     the optional throwable whose stack trace is recorded.
+     * @return the record.
+     */
+    static String formatRecord(String prefix, String msg, Throwable th) {
         StringBuilder buf = new StringBuilder();
         buf.append(prefix);
         buf.append('\n');
@@ -154,6 +177,16 @@ public class DebugFileImpl implements DebugFile {
             stackStream.flush();
             buf.append(stBuf.toString());
         }
+        return buf.toString();
+    }
+
+    /**
+     * Writes formatted records to the log file, rotating it first if needed, and flushes them to disk once.
+     *
+     * @param records the records, as formatted by {@link #formatRecord(String, String, Throwable)}.
+     * @throws IOException if the log file could not be opened.
+     */
+    void writeRecords(List<String> records) throws IOException {
 
         if (isConfigChanged() || !isConfigFileInitialized()) {
             initialize();
@@ -166,10 +199,16 @@ public class DebugFileImpl implements DebugFile {
         fileLock.readLock().lock();
         try {
             if (debugWriter != null) {
-                debugWriter.println(buf.toString());
+                for (String record : records) {
+                    debugWriter.println(record);
+                    currentFileSize.addAndGet(record.length() + LINE_SEPARATOR_LENGTH);
+                }
+                debugWriter.flush();
             } else {
-                StdDebugFile.printError(prefix, msg, th);
-            } 
+                for (String record : records) {
+                    StdDebugFile.printError(debugName, record, null);
+                }
+            }
         } finally {
             fileLock.readLock().unlock();
         }
@@ -203,11 +242,10 @@ public class DebugFileImpl implements DebugFile {
         newFileName.append(fileName);
 
         //Set suffix
+        //Only called while holding the write lock, so the date format is never used concurrently
         if (suffixDateFormat != null &&
                 (configuration.getRotationInterval() > 0 || configuration.getRotationFileSizeInByte() > 0)) {
-            synchronized (suffixDateFormat) {
-                newFileName.append(suffixDateFormat.format(new Date(fileCreationTime)));
-            }
+            newFileName.append(suffixDateFormat.format(new Date(fileCreationTime)));
         }
 
         return newFileName.toString();
@@ -260,8 +298,8 @@ public class DebugFileImpl implements DebugFile {
 
             try {
                 this.currentFile = new File(debugFilePath);
-                this.debugWriter = new PrintWriter(new FileWriter(currentFile, true), true);
-                debugWriter = new PrintWriter(new FileWriter(debugFilePath, true), true);
+                this.debugWriter = new PrintWriter(new BufferedWriter(new FileWriter(currentFile, true)));
+                this.currentFileSize.set(currentFile.length());
             } catch (IOException ioex) {
                 close();
                 ResourceBundle bundle = Locale.getInstallResourceBundle("amUtilMsgs");
@@ -274,7 +312,8 @@ public class DebugFileImpl implements DebugFile {
     }
 
     /**
-     * Check if a log rotation is needed depending on the file size
+     * Check if a log rotation is needed depending on the file size. The size is tracked as records are written
+     * rather than read from the file system each time.
      *
      * @return true if the log file need to be rotated
      */
@@ -283,7 +322,7 @@ public class DebugFileImpl implements DebugFile {
         try {
             if (currentFile != null) {
                 return configuration.getRotationFileSizeInByte() != -1
-                    && currentFile.length() >= configuration.getRotationFileSizeInByte();
+                    && currentFileSize.get() >= configuration.getRotationFileSizeInByte();
             }
         } finally {
             fileLock.readLock().unlock();
@@ -11,11 +11,12 @@
  * Header, with the fields enclosed by brackets [] replaced by your own identifying
  * information: "Portions copyright [year] [name of copyright owner]".
  *
- * Copyright 2014-2015 ForgeRock AS.
+ * Copyright 2014-2016 ForgeRock AS.
  */
 package com.sun.identity.shared.debug.file.impl;
 
 
+import com.sun.identity.shared.configuration.SystemPropertiesManager;
 import com.sun.identity.shared.debug.DebugConstants;
 import com.sun.identity.shared.debug.file.DebugConfiguration;
 import com.sun.identity.shared.debug.file.DebugFile;
@@ -29,6 +30,8 @@ import java.util.Map;
  * Manage Debug files controller
  * Keep the following constraint one :
  * - One debugFile instance for One log file
+ * The debug files are written asynchronously, by a single {@link AsyncDebugFileWriter}, when
+ * {@link DebugConstants#CONFIG_DEBUG_ASYNC} is enabled.
  */
 public class DebugFileProviderImpl implements DebugFileProvider {
 
@@ -36,6 +39,8 @@ public class DebugFileProviderImpl implements DebugFileProvider {
 
     private DebugConfiguration configuration;
 
+    private AsyncDebugFileWriter asyncWriter;
+
     /**
      * Default constructor
      */
@@ -49,6 +54,11 @@ public class DebugFileProviderImpl implements DebugFileProvider {
                     "' isn't valid, the default configuration will be used instead: " + e.getMessage(), null);
             this.configuration = DefaultDebugConfiguration.getInstance();
         }
+
+        if (SystemPropertiesManager.getAsBoolean(DebugConstants.CONFIG_DEBUG_ASYNC, false)) {
+            this.asyncWriter = new AsyncDebugFileWriter(SystemPropertiesManager.getAsInt(
+                    DebugConstants.CONFIG_DEBUG_ASYNC_BUFFER_SIZE, DebugConstants.DEFAULT_DEBUG_ASYNC_BUFFER_SIZE));
+        }
     }
 
     /**
@@ -60,7 +70,8 @@ public class DebugFileProviderImpl implements DebugFileProvider {
     public synchronized DebugFile getInstance(String debugName) {
         DebugFile debugFile = debugMap.get(debugName);
         if (debugFile == null) {
-            debugFile = new DebugFileImpl(configuration, debugName);
+            DebugFileImpl debugFileImpl = new DebugFileImpl(configuration, debugName);
+            debugFile = asyncWriter == null ? debugFileImpl : asyncWriter.wrap(debugFileImpl);
             debugMap.put(debugName, debugFile);
         }
         return debugFile;
@@ -28,7 +28,6 @@
  */
 package com.sun.identity.shared.debug.impl;
 
-import static com.sun.identity.shared.debug.DebugConstants.DEBUG_DATE_FORMAT;
 import static org.forgerock.openam.utils.StringUtils.isNotEmpty;
 import static org.forgerock.openam.utils.Time.*;
 
@@ -69,7 +68,27 @@ public class DebugImpl implements IDebug {
     private final String debugName;
     private boolean mergeAllMode = false;
 
-    private DebugLevel debugLevel = DebugLevel.ON;
+    private static final int MESSAGE_LEVEL = DebugLevel.MESSAGE.getLevel();
+    private static final int WARNING_LEVEL = DebugLevel.WARNING.getLevel();
+    private static final int ERROR_LEVEL = DebugLevel.ERROR.getLevel();
+
+    /**
+     * {@link SimpleDateFormat} is not thread safe, so each thread formats the record dates with its own copy of
+     * {@link DebugConstants#DEBUG_DATE_FORMAT} rather than contending for a shared one.
+     */
+    private static final ThreadLocal<SimpleDateFormat> DATE_FORMAT = new ThreadLocal<SimpleDateFormat>() {
+        @Override
+        protected SimpleDateFormat initialValue() {
+            synchronized (DebugConstants.DEBUG_DATE_FORMAT) {
+                return (SimpleDateFormat) DebugConstants.DEBUG_DATE_FORMAT.clone();
+            }
+        }
+    };
+
+    private volatile DebugLevel debugLevel = DebugLevel.ON;
+
+    /** The level of {@link #debugLevel}, so that checking whether a level is enabled is a single field read. */
+    private volatile int level = DebugLevel.ON.getLevel();
 
     private DebugFileProvider debugFileProvider;
     private DebugFile debugFile = null;
@@ -155,6 +174,7 @@ public class DebugImpl implements IDebug {
     public void setDebug(DebugLevel debugLevel) {
 
         this.debugLevel = debugLevel;
+        this.level = debugLevel.getLevel();
     }
 
     /**
@@ -178,7 +198,7 @@ public class DebugImpl implements IDebug {
      * @return <code>true</code> if debug is enabled.
      */
     public boolean messageEnabled() {
-        return this.debugLevel.compareLevel(DebugLevel.MESSAGE) >= 0;
+        return level >= MESSAGE_LEVEL;
     }
 
     /**
@@ -187,7 +207,7 @@ public class DebugImpl implements IDebug {
      * @return <code>true</code> if debug warning is enabled.
      */
     public boolean warningEnabled() {
-        return this.debugLevel.compareLevel(DebugLevel.WARNING) >= 0;
+        return level >= WARNING_LEVEL;
     }
 
     /**
@@ -196,7 +216,7 @@ public class DebugImpl implements IDebug {
      * @return <code>true</code> if debug error is enabled.
      */
     public boolean errorEnabled() {
-        return this.debugLevel.compareLevel(DebugLevel.ERROR) >= 0;
+        return level >= ERROR_LEVEL;
     }
 
     /**
@@ -238,10 +258,7 @@ public class DebugImpl implements IDebug {
     private void record(String msg, Throwable th) {
 
         StringBuilder prefix = new StringBuilder();
-        String dateFormatted;
-        synchronized (DEBUG_DATE_FORMAT) {
-            dateFormatted = DEBUG_DATE_FORMAT.format(newDate());
-        }
+        String dateFormatted = DATE_FORMAT.get().format(newDate());
         prefix.append(debugName)
                 .append(":").append(dateFormatted)
                 .append(": ").append(Thread.currentThread().toString())
@@ -0,0 +1,57 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openam.shared.monitoring.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A monotonically increasing count of events.
+ *
+ * @since 14.0.0
+ */
+public final class Counter {
+
+    private final AtomicLong count = new AtomicLong();
+
+    /**
+     * Counts a single event.
+     */
+    public void increment() {
+        count.incrementAndGet();
+    }
+
+    /**
+     * Counts the given number of events.
+     *
+     * @param events The number of events, must not be negative.
+     */
+    public void add(long events) {
+        if (events < 0) {
+            throw new IllegalArgumentException("Counters can not be decreased");
+        }
+        count.addAndGet(events);
+    }
+
+    /**
+     * Returns the number of events counted so far.
+     *
+     * @return The count.
+     */
+    public long getCount() {
+        return count.get();
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openam.shared.monitoring.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A latency histogram with a fixed memory footprint and lock-free recording.
+ * <p>
+ * Durations are recorded with microsecond resolution into log-linear buckets, in the manner of HDR histograms: every
+ * power of two range is split into four equally sized buckets, so that the recorded values, and the percentiles
+ * computed from them, are accurate to within 25%, from one microsecond up to about three weeks. Longer durations are
+ * counted in the last bucket.
+ *
+ * @since 14.0.0
+ */
+public final class Histogram {
+
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_MAGNITUDE = 40;
+    private static final long MAX_VALUE = (1L << (MAX_MAGNITUDE + 1)) - 1;
+    private static final int BUCKET_COUNT = getBucketIndex(MAX_VALUE) + 1;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a duration.
+     *
+     * @param duration The duration, negative durations are recorded as zero.
+     * @param unit The unit of the duration.
+     */
+    public void record(long duration, TimeUnit unit) {
+        long micros = Math.min(MAX_VALUE, Math.max(0, unit.toMicros(duration)));
+        buckets.incrementAndGet(getBucketIndex(micros));
+        count.incrementAndGet();
+        sum.addAndGet(micros);
+        long current = max.get();
+        while (micros > current && !max.compareAndSet(current, micros)) {
+            current = max.get();
+        }
+    }
+
+    /**
+     * Returns the number of recorded durations.
+     *
+     * @return The number of durations.
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Returns the sum of the recorded durations.
+     *
+     * @param unit The unit the sum should be returned in.
+     * @return The sum of the durations.
+     */
+    public long getSum(TimeUnit unit) {
+        return unit.convert(sum.get(), TimeUnit.MICROSECONDS);
+    }
+
+    /**
+     * Returns the longest recorded duration.
+     *
+     * @param unit The unit the duration should be returned in.
+     * @return The longest duration.
+     */
+    public long getMax(TimeUnit unit) {
+        return unit.convert(max.get(), TimeUnit.MICROSECONDS);
+    }
+
+    /**
+     * Returns the duration at or below which the given percentage of the recorded durations fall.
+     *
+     * @param percentile The percentile, between 0 and 100.
+     * @param unit The unit the duration should be returned in.
+     * @return The upper bound of the bucket holding the percentile, or zero if nothing has been recorded.
+     */
+    public long getValueAtPercentile(double percentile, TimeUnit unit) {
+        long total = count.get();
+        if (total == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(total * Math.min(100, Math.max(0, percentile)) / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += buckets.get(i);
+            if (seen >= target) {
+                return unit.convert(Math.min(max.get(), getUpperBound(i) - 1), TimeUnit.MICROSECONDS);
+            }
+        }
+        return unit.convert(max.get(), TimeUnit.MICROSECONDS);
+    }
+
+    /**
+     * Returns the number of recorded durations shorter than the given power of two number of microseconds.
+     *
+     * @param magnitude The power of two, between 0 and 41.
+     * @return The number of durations shorter than 2<sup>magnitude</sup> microseconds.
+     */
+    long getCountBelow(int magnitude) {
+        long limit = 1L << magnitude;
+        long below = 0;
+        for (int i = 0; i < BUCKET_COUNT && getUpperBound(i) <= limit; i++) {
+            below += buckets.get(i);
+        }
+        return below;
+    }
+
+    private static int getBucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        int shift = magnitude - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return SUB_BUCKETS + shift * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * The values held in a bucket are below its (exclusive) upper bound.
+     */
+    private static long getUpperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index + 1;
+        }
+        int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+        int subBucket = (index - SUB_BUCKETS) % SUB_BUCKETS;
+        return (long) (SUB_BUCKETS + subBucket + 1) << shift;
+    }
+}
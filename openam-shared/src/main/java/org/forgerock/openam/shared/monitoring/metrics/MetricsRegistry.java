@@ -0,0 +1,201 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openam.shared.monitoring.metrics;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.regex.Pattern;
+
+import javax.inject.Singleton;
+
+/**
+ * Holds the metrics the different subsystems register, so that they can all be collected from a single place.
+ * <p>
+ * Metrics are grouped in families sharing the same name, help text and type. The metrics of a family are told apart
+ * by their labels, which are provided as alternating label names and values, for instance
+ * {@code registry.counter("am_cts_token_operations_total", "CTS token operations", "operation", "CREATE")}.
+ * Counters and histograms are created on first use and shared afterwards, so callers do not have to hold on to
+ * them.
+ *
+ * @since 14.0.0
+ */
+@Singleton
+public class MetricsRegistry {
+
+    private static final Pattern NAME_PATTERN = Pattern.compile("[a-zA-Z_:][a-zA-Z0-9_:]*");
+    private static final Pattern LABEL_NAME_PATTERN = Pattern.compile("[a-zA-Z_][a-zA-Z0-9_]*");
+
+    private final ConcurrentNavigableMap<String, MetricFamily> families =
+            new ConcurrentSkipListMap<String, MetricFamily>();
+
+    /**
+     * Returns the counter with the given name and labels, creating it if necessary.
+     *
+     * @param name The name of the metric.
+     * @param help The description of the metric.
+     * @param labels The alternating label names and values of the metric.
+     * @return The counter.
+     * @throws IllegalArgumentException If a metric of another type has been registered under the name, or if the
+     * name or labels are not valid.
+     */
+    public Counter counter(String name, String help, String... labels) {
+        ConcurrentMap<String, Object> metrics = getFamily(name, help, MetricType.COUNTER).metrics;
+        String key = formatLabels(labels);
+        Object counter = metrics.get(key);
+        if (counter == null) {
+            Counter created = new Counter();
+            counter = metrics.putIfAbsent(key, created);
+            if (counter == null) {
+                counter = created;
+            }
+        }
+        return (Counter) counter;
+    }
+
+    /**
+     * Returns the histogram with the given name and labels, creating it if necessary.
+     *
+     * @param name The name of the metric.
+     * @param help The description of the metric.
+     * @param labels The alternating label names and values of the metric.
+     * @return The histogram.
+     * @throws IllegalArgumentException If a metric of another type has been registered under the name, or if the
+     * name or labels are not valid.
+     */
+    public Histogram histogram(String name, String help, String... labels) {
+        ConcurrentMap<String, Object> metrics = getFamily(name, help, MetricType.HISTOGRAM).metrics;
+        String key = formatLabels(labels);
+        Object histogram = metrics.get(key);
+        if (histogram == null) {
+            Histogram created = new Histogram();
+            histogram = metrics.putIfAbsent(key, created);
+            if (histogram == null) {
+                histogram = created;
+            }
+        }
+        return (Histogram) histogram;
+    }
+
+    /**
+     * Registers a gauge under the given name and labels, replacing the gauge registered earlier, if any.
+     *
+     * @param name The name of the metric.
+     * @param help The description of the metric.
+     * @param gauge The gauge.
+     * @param labels The alternating label names and values of the metric.
+     * @throws IllegalArgumentException If a metric of another type has been registered under the name, or if the
+     * name or labels are not valid.
+     */
+    public void gauge(String name, String help, Gauge gauge, String... labels) {
+        getFamily(name, help, MetricType.GAUGE).metrics.put(formatLabels(labels), gauge);
+    }
+
+    /**
+     * Removes the metric with the given name and labels.
+     *
+     * @param name The name of the metric.
+     * @param labels The alternating label names and values of the metric.
+     */
+    public void remove(String name, String... labels) {
+        MetricFamily family = families.get(name);
+        if (family != null) {
+            family.metrics.remove(formatLabels(labels));
+        }
+    }
+
+    /**
+     * Returns the registered metric families, ordered by name.
+     *
+     * @return The metric families.
+     */
+    Collection<MetricFamily> getFamilies() {
+        return families.values();
+    }
+
+    private MetricFamily getFamily(String name, String help, MetricType type) {
+        MetricFamily family = families.get(name);
+        if (family == null) {
+            if (name == null || !NAME_PATTERN.matcher(name).matches()) {
+                throw new IllegalArgumentException("Invalid metric name: " + name);
+            }
+            MetricFamily created = new MetricFamily(name, help, type);
+            family = families.putIfAbsent(name, created);
+            if (family == null) {
+                family = created;
+            }
+        }
+        if (family.type != type) {
+            throw new IllegalArgumentException("Metric " + name + " is a " + family.type + ", not a " + type);
+        }
+        return family;
+    }
+
+    /**
+     * Renders the labels the way they appear in the Prometheus text format, so that the rendered labels can be used
+     * as the key of the metric within its family.
+     */
+    private static String formatLabels(String... labels) {
+        if (labels == null || labels.length == 0) {
+            return "";
+        }
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels must be provided as name and value pairs");
+        }
+        StringBuilder sb = new StringBuilder("{");
+        for (int i = 0; i < labels.length; i += 2) {
+            if (labels[i] == null || !LABEL_NAME_PATTERN.matcher(labels[i]).matches()) {
+                throw new IllegalArgumentException("Invalid label name: " + labels[i]);
+            }
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(labels[i]).append("=\"");
+            String value = String.valueOf(labels[i + 1]);
+            for (int j = 0; j < value.length(); j++) {
+                char c = value.charAt(j);
+                if (c == '\\' || c == '"') {
+                    sb.append('\\').append(c);
+                } else if (c == '\n') {
+                    sb.append("\\n");
+                } else {
+                    sb.append(c);
+                }
+            }
+            sb.append('"');
+        }
+        return sb.append('}').toString();
+    }
+
+    /**
+     * The metrics sharing a name, keyed by their rendered labels.
+     */
+    static final class MetricFamily {
+
+        final String name;
+        final String help;
+        final MetricType type;
+        final ConcurrentNavigableMap<String, Object> metrics = new ConcurrentSkipListMap<String, Object>();
+
+        private MetricFamily(String name, String help, MetricType type) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+        }
+    }
+}
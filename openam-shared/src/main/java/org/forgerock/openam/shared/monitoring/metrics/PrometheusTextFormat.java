@@ -0,0 +1,124 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openam.shared.monitoring.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.forgerock.openam.shared.monitoring.metrics.MetricsRegistry.MetricFamily;
+
+/**
+ * Renders the content of a {@link MetricsRegistry} in the Prometheus text exposition format (version 0.0.4).
+ * <p>
+ * Histograms are rendered with their durations in seconds, and with buckets at every power of two microseconds up to
+ * about a minute.
+ *
+ * @since 14.0.0
+ */
+public final class PrometheusTextFormat {
+
+    /**
+     * The content type of the Prometheus text exposition format.
+     */
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final int MAX_BUCKET_MAGNITUDE = 26;
+    private static final double MICROS_PER_SECOND = TimeUnit.SECONDS.toMicros(1);
+
+    private PrometheusTextFormat() {
+    }
+
+    /**
+     * Writes every metric of the registry.
+     *
+     * @param registry The registry to render.
+     * @param writer The writer to write the metrics to.
+     * @throws IOException If the metrics could not be written.
+     */
+    public static void write(MetricsRegistry registry, Writer writer) throws IOException {
+        for (MetricFamily family : registry.getFamilies()) {
+            if (family.metrics.isEmpty()) {
+                continue;
+            }
+            if (family.help != null) {
+                writer.append("# HELP ").append(family.name).append(' ').append(escapeHelp(family.help)).append('\n');
+            }
+            writer.append("# TYPE ").append(family.name).append(' ')
+                    .append(family.type.name().toLowerCase()).append('\n');
+            for (Map.Entry<String, Object> metric : family.metrics.entrySet()) {
+                switch (family.type) {
+                case COUNTER:
+                    writeSample(writer, family.name, metric.getKey(), Long.toString(((Counter) metric.getValue())
+                            .getCount()));
+                    break;
+                case GAUGE:
+                    writeSample(writer, family.name, metric.getKey(),
+                            formatValue(((Gauge) metric.getValue()).getValue()));
+                    break;
+                case HISTOGRAM:
+                    writeHistogram(writer, family.name, metric.getKey(), (Histogram) metric.getValue());
+                    break;
+                default:
+                    break;
+                }
+            }
+        }
+        writer.flush();
+    }
+
+    private static void writeHistogram(Writer writer, String name, String labels, Histogram histogram)
+            throws IOException {
+        // Read the count first, so that the buckets never exceed it when durations are recorded concurrently
+        long count = histogram.getCount();
+        double sum = histogram.getSum(TimeUnit.MICROSECONDS) / MICROS_PER_SECOND;
+        String bucketName = name + "_bucket";
+        for (int magnitude = 0; magnitude <= MAX_BUCKET_MAGNITUDE; magnitude++) {
+            long below = Math.min(count, histogram.getCountBelow(magnitude));
+            writeSample(writer, bucketName, withLe(labels, formatValue((1L << magnitude) / MICROS_PER_SECOND)),
+                    Long.toString(below));
+        }
+        writeSample(writer, bucketName, withLe(labels, "+Inf"), Long.toString(count));
+        writeSample(writer, name + "_sum", labels, formatValue(sum));
+        writeSample(writer, name + "_count", labels, Long.toString(count));
+    }
+
+    private static void writeSample(Writer writer, String name, String labels, String value) throws IOException {
+        writer.append(name).append(labels).append(' ').append(value).append('\n');
+    }
+
+    private static String withLe(String labels, String le) {
+        if (labels.isEmpty()) {
+            return "{le=\"" + le + "\"}";
+        }
+        return labels.substring(0, labels.length() - 1) + ",le=\"" + le + "\"}";
+    }
+
+    private static String formatValue(double value) {
+        if (Double.isNaN(value)) {
+            return "NaN";
+        } else if (Double.isInfinite(value)) {
+            return value > 0 ? "+Inf" : "-Inf";
+        }
+        return Double.toString(value);
+    }
+
+    private static String escapeHelp(String help) {
+        return help.replace("\\", "\\\\").replace("\n", "\\n");
+    }
+}
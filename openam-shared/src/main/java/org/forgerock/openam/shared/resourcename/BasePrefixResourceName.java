@@ -12,7 +12,7 @@
  * information: "Portions copyright [year] [name of copyright owner]".
  *
  * Copyright 2006-2009 Sun Microsystems Inc.
- * Portions Copyrighted 2011-2015 ForgeRock AS.
+ * Portions Copyrighted 2011-2016 ForgeRock AS.
  */
 
 package org.forgerock.openam.shared.resourcename;
@@ -24,6 +24,8 @@ import java.util.Deque;
 import java.util.Map;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * A generic 'prefix' implementation of BaseResourceName.
@@ -110,6 +112,13 @@ public abstract class BasePrefixResourceName<T, E extends Exception> implements
     private static final int PROTO_DELIMITER_SIZE = PROTO_DELIMITER.length();
     private static final String CURRENT_PATH = ".";
     private static final String PARENT_PATH = "..";
+    private static final int MAX_COMPILED_PATTERNS = 10000;
+
+    /**
+     * Target resource patterns compiled by {@link #compare(String, String, boolean)}, as policy resource patterns
+     * are compared with many request resources but rarely change.
+     */
+    private final ConcurrentMap<String, PrefixResourcePattern> compiledPatterns = new ConcurrentHashMap<>();
 
     /**
      * Constructs a new BasePrefixResourceName instance.
@@ -207,146 +216,85 @@ public abstract class BasePrefixResourceName<T, E extends Exception> implements
             return noMatch;
         }
 
-        /** make them all in lower cases before comapring if we
-         * want to do case insensitive comparison
-         */
-        if (!caseSensitive) {
-            requestResource = requestResource.toLowerCase();
-            targetResource = targetResource.toLowerCase();
-        }
-
-        requestResource = normalizeRequestResource(requestResource);
-        targetResource = normalizeTargetResource(targetResource);
-
-        /**
-         * checks if one level wild card pattern is embedded in wildcard pattern
-         * and wild card pattern is not in the resource, then implies that
-         * resource contains only one level wild card and hence call the
-         * oneLevelWildcardCompare() method.
-         */
-        if (oneLevelWildcardEmbedded && targetResource.indexOf(wildcard) == -1) {
-            if (targetResource.indexOf(oneLevelWildcard) != -1 && wildcardCompare) {
-                debug.message("PrefixResourceName:compare():invoking one level compare");
-                return oneLevelWildcardCompare(requestResource, targetResource, wildcardCompare);
-            }
-        }
-        /** if wild card is embedded or
-         * neither of the wild card patterns are embedded in each other,
-         * different patterns like "abc" and "def".
-         * Then checks if one level wild card pattern exists in resource
-         * if yes, call oneLevelWildcardCompare() method.
-         */
-        if (wildcardEmbedded || !(wildcardEmbedded || oneLevelWildcardEmbedded)) {
-            if (targetResource.indexOf(oneLevelWildcard) != -1 && wildcardCompare) {
-                debug.message("PrefixResourceName:compare():invoking one level compare");
-                return oneLevelWildcardCompare(requestResource, targetResource, wildcardCompare);
-            }
-        }
-
-        int reqBegin = 0; // index pointer for requestResource
-        int reqEnd = 0;   // index pointer for requestResource
-        int tarBegin = 0; // index pointer for targetResource
-        int tarEnd = 0;   // index pointer for targetResource
-        int reqLen = 0;
-        int tarLen = 0;
-        String subString = null;
-
-        reqLen = requestResource.length();
-        tarLen = targetResource.length();
-        tarEnd = targetResource.indexOf(wildcard, tarBegin);
-
-        if (!wildcardCompare || tarEnd == -1) {
-            // non-wildcard comparison
-            // Compare for equality
-            if (requestResource.equals(targetResource)) {
-                return exactMatch;
-            }
+        return compareCompiled(requestResource, compile(targetResource), wildcardCompare);
+    }
 
-            if (targetResource.startsWith(
-                    (requestResource.endsWith(delimiter)) ? requestResource : requestResource + delimiter)) {
-                return subResourceMatch;
-            }
+    /**
+     * Compares a resource with a target resource pattern previously compiled by {@link #compile(String)}, with the
+     * same semantics as {@link #compare(String, String, boolean)}.
+     *
+     * @param requestResource name of the resource which will be compared
+     * @param targetPattern the compiled target resource pattern which will be compared with
+     * @param wildcardCompare flag for wildcard comparison
+     * @return returns <code>ResourceMatch</code> that
+     * specifies if the resources are exact match, or
+     * otherwise.
+     */
+    public T compare(String requestResource, PrefixResourcePattern targetPattern, boolean wildcardCompare) {
 
-            if (requestResource.startsWith(
-                    (targetResource.endsWith(delimiter)) ? targetResource : targetResource + delimiter)) {
-                return superResourceMatch;
-            }
+        if (requestResource == null && targetPattern == null) {
+            return exactMatch;
+        }
 
+        if (requestResource == null || targetPattern == null) {
             return noMatch;
         }
 
-        // now we have to do wildcard comparison
-        // get the sub string prior to the first wildcard char
-        subString = targetResource.substring(tarBegin, tarEnd);
-
-        // checks if the first char in targetResource is the wildcard, i.e.
-        // the substr is null
-        if (tarEnd > tarBegin) {
-            // check if requestResource starts with the substr
-            if (!(requestResource.startsWith(subString))) {
-                if (subString.startsWith(
-                        (requestResource.endsWith(delimiter)) ? requestResource : requestResource + delimiter)) {
-                    return subResourceMatch;
-                }
-                return noMatch;
-            }
+        if (!targetPattern.isCompiledBy(this)) {
+            targetPattern = compile(targetPattern.getPattern());
         }
 
-        // yes, requestResource does start with substr
-        // move the pointers to the next char after the substring
-        // which is already matched
-        reqBegin = tarEnd;
+        return compareCompiled(requestResource, targetPattern, wildcardCompare);
+    }
 
-        if (tarEnd >= tarLen - 1) {
-            return wildcardMatch;
+    private T compareCompiled(String requestResource, PrefixResourcePattern targetPattern, boolean wildcardCompare) {
+        if (!caseSensitive) {
+            requestResource = requestResource.toLowerCase();
         }
+        requestResource = normalizeRequestResource(requestResource);
 
-        tarBegin = tarEnd + 1;
-
-        // if there are more wildcards in the targetResource
-        while ((tarEnd = targetResource.indexOf(wildcard, tarBegin)) != -1) {
-
-            subString = targetResource.substring(tarBegin, tarEnd);
-
-            if (tarEnd > tarBegin) {
-                if ((reqBegin = requestResource.indexOf(subString, reqBegin)) == -1) {
-                    return subResourceMatch;
-                }
-            }
-
-            if (tarEnd >= tarLen - 1) {
-                return wildcardMatch;
+        if (targetPattern.isOneLevel() && wildcardCompare) {
+            if (debug.messageEnabled()) {
+                debug.message("PrefixResourceName:compare():invoking one level compare");
             }
-
-            reqBegin = reqBegin + (tarEnd - tarBegin);
-            tarBegin = tarEnd + 1;
-        }
-
-        // we just pass the last wildcard in targetResource
-        subString = targetResource.substring(tarBegin, tarLen);
-
-        if ((reqEnd = requestResource.lastIndexOf(subString, reqLen - 1)) == -1) {
-            return subResourceMatch;
+            return toMatch(targetPattern.compareOneLevel(requestResource));
         }
+        return toMatch(targetPattern.compare(requestResource, wildcardCompare));
+    }
 
-        if (reqBegin > reqEnd) {
-            return subResourceMatch;
-        }
-
-        reqBegin = reqEnd;
-
-        if ((reqLen - reqBegin) == (tarLen - tarBegin)) {
-            return wildcardMatch;
+    /**
+     * Compiles a target resource pattern, so that it can be compared with request resources through
+     * {@link #compare(String, PrefixResourcePattern, boolean)} without being lower-cased, normalized or searched for
+     * wildcards each time. Patterns are cached, so compiling the same pattern again is cheap.
+     *
+     * @param targetResource the target resource pattern, which must not be null.
+     * @return the compiled pattern.
+     */
+    public PrefixResourcePattern compile(String targetResource) {
+        PrefixResourcePattern compiled = compiledPatterns.get(targetResource);
+        if (compiled == null || !compiled.isCompiledBy(this)) {
+            compiled = new PrefixResourcePattern(this, targetResource);
+            if (compiledPatterns.size() >= MAX_COMPILED_PATTERNS) {
+                compiledPatterns.clear();
+            }
+            compiledPatterns.put(targetResource, compiled);
         }
+        return compiled;
+    }
 
-        reqBegin = reqBegin + (tarLen - tarBegin);
-        subString = requestResource.substring(reqBegin, reqBegin + 1);
-
-        if (subString.equals(delimiter)) {
-            return superResourceMatch;
+    private T toMatch(int match) {
+        switch (match) {
+            case PrefixResourcePattern.EXACT_MATCH:
+                return exactMatch;
+            case PrefixResourcePattern.SUB_RESOURCE_MATCH:
+                return subResourceMatch;
+            case PrefixResourcePattern.SUPER_RESOURCE_MATCH:
+                return superResourceMatch;
+            case PrefixResourcePattern.WILDCARD_MATCH:
+                return wildcardMatch;
+            default:
+                return noMatch;
         }
-
-        return subResourceMatch;
     }
 
     /**
@@ -12,7 +12,7 @@
  * information: "Portions copyright [year] [name of copyright owner]".
  *
  * Copyright 2006-2009 Sun Microsystems Inc.
- * Portions Copyrighted 2011-2015 ForgeRock AS.
+ * Portions Copyrighted 2011-2016 ForgeRock AS.
  */
 
 package org.forgerock.openam.shared.resourcename;
@@ -69,6 +69,20 @@ public abstract class BaseURLResourceName<T, E extends Exception> extends BasePr
     private static final String WILDCARD = "*";
     private static final Pattern ACCEPTABLE_URLS = Pattern.compile("^(http|https)\\**://.*$");
 
+    /**
+     * URL patterns are compared by {@link #compare(String, String, boolean)}, as a wildcard in the host or port is
+     * compared separately from the path.
+     *
+     * @param requestResource name of the resource which will be compared
+     * @param targetPattern the compiled target resource pattern which will be compared with
+     * @param wildcardCompare flag for wildcard comparison
+     * @return the result of comparing the request resource with the pattern.
+     */
+    @Override
+    public T compare(String requestResource, PrefixResourcePattern targetPattern, boolean wildcardCompare) {
+        return compare(requestResource, targetPattern == null ? null : targetPattern.getPattern(), wildcardCompare);
+    }
+
     /**
      * Specific comparison for URLs, where a wildcard in the host/port should not match any of the path.
      * Strings should be canonicalized prior to entering this comparison, else they will be
@@ -0,0 +1,338 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openam.shared.resourcename;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringTokenizer;
+
+/**
+ * A target resource pattern compiled by a {@link BasePrefixResourceName}, so that it can be compared with many
+ * request resources without being lower-cased, normalised, searched for wildcards or tokenised each time.
+ * <p>
+ * The pattern is split up front into the literal parts between its wildcards, and for one level wildcard patterns
+ * into its delimited tokens. Comparing a request resource with it only searches the request resource in place and
+ * does not allocate. Instances are immutable and can be shared between threads.
+ *
+ * @see BasePrefixResourceName#compile(String)
+ * @since 14.0.0
+ */
+public final class PrefixResourcePattern {
+
+    static final int EXACT_MATCH = 0;
+    static final int NO_MATCH = 1;
+    static final int SUB_RESOURCE_MATCH = 2;
+    static final int SUPER_RESOURCE_MATCH = 3;
+    static final int WILDCARD_MATCH = 4;
+
+    private final BasePrefixResourceName<?, ?> owner;
+    private final String pattern;
+    private final String target;
+    private final String delimiter;
+    private final String wildcard;
+    private final String oneLevelWildcard;
+    private final boolean caseSensitive;
+    private final boolean oneLevel;
+
+    /** The index of the first wildcard in the target, or -1 if it has none. */
+    private final int firstWildcard;
+    private final String prefix;
+    private final String[] segments;
+    /** The literal after the last wildcard, or {@code null} if the target ends with a wildcard. */
+    private final String suffix;
+
+    private final Token[] tokens;
+
+    PrefixResourcePattern(BasePrefixResourceName<?, ?> owner, String pattern) {
+        this.owner = owner;
+        this.pattern = pattern;
+        this.delimiter = owner.delimiter;
+        this.wildcard = owner.wildcard;
+        this.oneLevelWildcard = owner.oneLevelWildcard;
+        this.caseSensitive = owner.caseSensitive;
+
+        String normalised = caseSensitive ? pattern : pattern.toLowerCase();
+        this.target = owner.normalizeTargetResource(normalised);
+
+        boolean hasOneLevelWildcard = target.contains(oneLevelWildcard);
+        boolean hasWildcard = target.contains(wildcard);
+        this.oneLevel = hasOneLevelWildcard
+                && ((owner.oneLevelWildcardEmbedded && !hasWildcard)
+                || owner.wildcardEmbedded
+                || !(owner.wildcardEmbedded || owner.oneLevelWildcardEmbedded));
+
+        this.firstWildcard = target.indexOf(wildcard);
+        if (firstWildcard == -1) {
+            this.prefix = null;
+            this.segments = null;
+            this.suffix = null;
+        } else {
+            int targetLength = target.length();
+            List<String> wildcardSegments = new ArrayList<>();
+            boolean endsWithWildcard = firstWildcard >= targetLength - 1;
+            int begin = firstWildcard + 1;
+            if (!endsWithWildcard) {
+                int end;
+                while ((end = target.indexOf(wildcard, begin)) != -1) {
+                    wildcardSegments.add(target.substring(begin, end));
+                    if (end >= targetLength - 1) {
+                        endsWithWildcard = true;
+                        break;
+                    }
+                    begin = end + 1;
+                }
+            }
+            this.prefix = target.substring(0, firstWildcard);
+            this.segments = wildcardSegments.toArray(new String[wildcardSegments.size()]);
+            this.suffix = endsWithWildcard ? null : target.substring(begin, targetLength);
+        }
+
+        if (oneLevel) {
+            StringTokenizer tokenizer = new StringTokenizer(target, delimiter);
+            this.tokens = new Token[tokenizer.countTokens()];
+            for (int i = 0; i < tokens.length; i++) {
+                tokens[i] = new Token(aggregateWildcard(tokenizer.nextToken(), oneLevelWildcard,
+                        owner.oneLevelWildcardLength), oneLevelWildcard, owner.oneLevelWildcardLength);
+            }
+        } else {
+            this.tokens = null;
+        }
+    }
+
+    /**
+     * Returns the pattern as it was given to {@link BasePrefixResourceName#compile(String)}.
+     *
+     * @return the target resource pattern.
+     */
+    public String getPattern() {
+        return pattern;
+    }
+
+    /**
+     * Whether this pattern was compiled by the given resource name with its current configuration.
+     */
+    boolean isCompiledBy(BasePrefixResourceName<?, ?> resourceName) {
+        return owner == resourceName
+                && caseSensitive == resourceName.caseSensitive
+                && delimiter.equals(resourceName.delimiter)
+                && wildcard.equals(resourceName.wildcard)
+                && oneLevelWildcard.equals(resourceName.oneLevelWildcard);
+    }
+
+    /**
+     * Whether the pattern is compared using one level wildcard semantics when wildcards are compared.
+     */
+    boolean isOneLevel() {
+        return oneLevel;
+    }
+
+    /**
+     * Compares a lower-cased (if case insensitive) and normalised request resource with this pattern, with the
+     * semantics of {@link BasePrefixResourceName#compare(String, String, boolean)} for patterns without one level
+     * wildcards.
+     */
+    int compare(String request, boolean wildcardCompare) {
+        if (!wildcardCompare || firstWildcard == -1) {
+            if (request.equals(target)) {
+                return EXACT_MATCH;
+            }
+            if (startsWithResource(target, request)) {
+                return SUB_RESOURCE_MATCH;
+            }
+            if (startsWithResource(request, target)) {
+                return SUPER_RESOURCE_MATCH;
+            }
+            return NO_MATCH;
+        }
+
+        if (firstWildcard > 0 && !request.startsWith(prefix)) {
+            return startsWithResource(prefix, request) ? SUB_RESOURCE_MATCH : NO_MATCH;
+        }
+
+        int requestBegin = firstWildcard;
+        for (String segment : segments) {
+            if (!segment.isEmpty() && (requestBegin = request.indexOf(segment, requestBegin)) == -1) {
+                return SUB_RESOURCE_MATCH;
+            }
+            requestBegin += segment.length();
+        }
+        if (suffix == null) {
+            return WILDCARD_MATCH;
+        }
+
+        int requestLength = request.length();
+        int requestEnd = request.lastIndexOf(suffix, requestLength - 1);
+        if (requestEnd == -1 || requestBegin > requestEnd) {
+            return SUB_RESOURCE_MATCH;
+        }
+        if (requestLength - requestEnd == suffix.length()) {
+            return WILDCARD_MATCH;
+        }
+        requestBegin = requestEnd + suffix.length();
+        if (delimiter.length() == 1 && request.charAt(requestBegin) == delimiter.charAt(0)) {
+            return SUPER_RESOURCE_MATCH;
+        }
+        return SUB_RESOURCE_MATCH;
+    }
+
+    /**
+     * Compares a lower-cased (if case insensitive) and normalised request resource with this one level wildcard
+     * pattern, with the semantics of {@link BasePrefixResourceName#oneLevelWildcardCompare}. The request resource
+     * is walked token by token in place rather than being tokenised.
+     */
+    int compareOneLevel(String request) {
+        boolean wildcardMatched = false;
+        int tokenIndex = 0;
+        int length = request.length();
+        int begin = 0;
+        while (true) {
+            while (begin < length && isDelimiter(request.charAt(begin))) {
+                begin++;
+            }
+            if (begin >= length) {
+                break;
+            }
+            int end = begin;
+            while (end < length && !isDelimiter(request.charAt(end))) {
+                end++;
+            }
+            if (tokenIndex >= tokens.length) {
+                return SUPER_RESOURCE_MATCH;
+            }
+            int match = tokens[tokenIndex++].match(request, begin, end);
+            if (match == NO_MATCH) {
+                return NO_MATCH;
+            }
+            if (match == WILDCARD_MATCH) {
+                wildcardMatched = true;
+            }
+            begin = end;
+        }
+
+        if (tokenIndex < tokens.length) {
+            if (tokenIndex == tokens.length - 1 && tokens[tokenIndex].wildcardOnly) {
+                return WILDCARD_MATCH;
+            }
+            return SUB_RESOURCE_MATCH;
+        }
+        return wildcardMatched ? WILDCARD_MATCH : EXACT_MATCH;
+    }
+
+    private boolean isDelimiter(char c) {
+        return delimiter.indexOf(c) != -1;
+    }
+
+    /**
+     * Equivalent of {@code value.startsWith(resource.endsWith(delimiter) ? resource : resource + delimiter)}.
+     */
+    private boolean startsWithResource(String value, String resource) {
+        return value.startsWith(resource)
+                && (resource.endsWith(delimiter) || value.startsWith(delimiter, resource.length()));
+    }
+
+    /**
+     * Reduces multiple consecutive one level wildcards to one, so "a-*--*-b" becomes "a-*-b".
+     */
+    private static String aggregateWildcard(String token, String oneLevelWildcard, int oneLevelWildcardLength) {
+        StringBuilder aggregated = new StringBuilder(token.length());
+        boolean foundWildcard = false;
+        int i = 0;
+        while (i < token.length()) {
+            if (token.startsWith(oneLevelWildcard, i)) {
+                if (!foundWildcard) {
+                    aggregated.append(token, i, Math.min(i + oneLevelWildcardLength, token.length()));
+                    foundWildcard = true;
+                }
+                i += oneLevelWildcardLength;
+            } else {
+                foundWildcard = false;
+                aggregated.append(token.charAt(i++));
+            }
+        }
+        return aggregated.toString();
+    }
+
+    /**
+     * A delimited token of a one level wildcard pattern.
+     */
+    private static final class Token {
+
+        /** The token if it has no wildcard, otherwise {@code null}. */
+        private final String literal;
+        private final boolean wildcardOnly;
+        private final String[] pieces;
+        /** The literal after the last wildcard, or {@code null} if the token ends with a wildcard. */
+        private final String trailing;
+
+        private Token(String token, String oneLevelWildcard, int oneLevelWildcardLength) {
+            this.wildcardOnly = token.equals(oneLevelWildcard);
+            if (!token.contains(oneLevelWildcard)) {
+                this.literal = token;
+                this.pieces = null;
+                this.trailing = null;
+                return;
+            }
+
+            this.literal = null;
+            List<String> literalPieces = new ArrayList<>();
+            int begin = 0;
+            int wildcardIndex;
+            boolean endsWithWildcard = false;
+            while ((wildcardIndex = token.indexOf(oneLevelWildcard, begin)) != -1) {
+                if (wildcardIndex > begin) {
+                    literalPieces.add(token.substring(begin, wildcardIndex));
+                    begin = wildcardIndex + oneLevelWildcardLength;
+                } else if (token.length() == oneLevelWildcardLength) {
+                    endsWithWildcard = true;
+                    break;
+                } else {
+                    begin += oneLevelWildcardLength;
+                }
+            }
+            this.pieces = literalPieces.toArray(new String[literalPieces.size()]);
+            this.trailing = endsWithWildcard || begin >= token.length() ? null : token.substring(begin);
+        }
+
+        /**
+         * Matches the request token between {@code begin} and {@code end}.
+         */
+        private int match(String request, int begin, int end) {
+            if (literal != null) {
+                return end - begin == literal.length() && request.startsWith(literal, begin)
+                        ? EXACT_MATCH : NO_MATCH;
+            }
+
+            int requestIndex = begin;
+            for (String piece : pieces) {
+                int found = request.indexOf(piece, requestIndex);
+                if (found == -1 || found + piece.length() > end) {
+                    return NO_MATCH;
+                }
+                requestIndex = found + piece.length();
+            }
+            if (trailing == null) {
+                return WILDCARD_MATCH;
+            }
+
+            int found = request.lastIndexOf(trailing, end - trailing.length());
+            if (found < requestIndex) {
+                return NO_MATCH;
+            }
+            return found + trailing.length() >= end ? WILDCARD_MATCH : NO_MATCH;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package com.sun.identity.common;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.util.Date;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.sun.identity.shared.debug.Debug;
+
+public class TimingWheelTimerPoolTest {
+
+    private TimingWheelTimerPool pool;
+
+    @BeforeMethod
+    public void setUp() {
+        pool = new TimingWheelTimerPool("TimingWheelTimerPoolTest", 2, true,
+                Debug.getInstance("TimingWheelTimerPoolTest"), 5);
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Test
+    public void shouldRunTasksScheduledForTheSameTime() throws Exception {
+        Date time = new Date(System.currentTimeMillis() + 50);
+        CountingTask first = new CountingTask(1, -1);
+        CountingTask second = new CountingTask(1, -1);
+
+        pool.schedule(first, time);
+        pool.schedule(second, time);
+
+        assertThat(pool.getScheduledTimeCount()).isEqualTo(1);
+        assertThat(first.await()).isTrue();
+        assertThat(second.await()).isTrue();
+        assertThat(first.ranAt).isGreaterThanOrEqualTo(time.getTime());
+    }
+
+    @Test
+    public void shouldRunTasksScheduledBeyondTheLowestWheel() throws Exception {
+        // 256 ticks of 5ms is 1280ms, so this task is cascaded from the second wheel
+        Date time = new Date(System.currentTimeMillis() + 1500);
+        CountingTask task = new CountingTask(1, -1);
+
+        pool.schedule(task, time);
+
+        assertThat(task.await()).isTrue();
+        assertThat(task.ranAt).isGreaterThanOrEqualTo(time.getTime());
+    }
+
+    @Test
+    public void shouldRunTasksScheduledInThePastImmediately() throws Exception {
+        CountingTask task = new CountingTask(1, -1);
+
+        pool.schedule(task, new Date(System.currentTimeMillis() - 1000));
+
+        assertThat(task.await()).isTrue();
+    }
+
+    @Test
+    public void shouldNotRunCancelledTasks() throws Exception {
+        CountingTask cancelled = new CountingTask(1, -1);
+        CountingTask other = new CountingTask(1, -1);
+        long now = System.currentTimeMillis();
+
+        pool.schedule(cancelled, new Date(now + 50));
+        pool.schedule(other, new Date(now + 100));
+        cancelled.cancel();
+
+        assertThat(other.await()).isTrue();
+        assertThat(cancelled.latch.getCount()).isEqualTo(1);
+        assertThat(pool.getScheduledTimeCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldRescheduleRecurringTasks() throws Exception {
+        CountingTask task = new CountingTask(3, 20);
+
+        pool.schedule(task, new Date(System.currentTimeMillis() + 20));
+
+        assertThat(task.await()).isTrue();
+        task.cancel();
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void shouldRejectTasksOnceShutdown() {
+        pool.shutdown();
+
+        pool.schedule(new CountingTask(1, -1), new Date());
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void shouldRejectTasksAlreadyScheduledForAnotherTime() {
+        CountingTask task = new CountingTask(1, -1);
+        long now = System.currentTimeMillis();
+
+        pool.schedule(task, new Date(now + 10000));
+        pool.schedule(task, new Date(now + 20000));
+    }
+
+    private static final class CountingTask extends GeneralTaskRunnable {
+
+        private final CountDownLatch latch;
+        private final long period;
+        private volatile long ranAt;
+
+        private CountingTask(int runs, long period) {
+            this.latch = new CountDownLatch(runs);
+            this.period = period;
+        }
+
+        private boolean await() throws InterruptedException {
+            return latch.await(10, TimeUnit.SECONDS);
+        }
+
+        @Override
+        public void run() {
+            ranAt = System.currentTimeMillis();
+            latch.countDown();
+        }
+
+        @Override
+        public long getRunPeriod() {
+            return period;
+        }
+
+        @Override
+        public boolean addElement(Object key) {
+            return false;
+        }
+
+        @Override
+        public boolean removeElement(Object key) {
+            return false;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return true;
+        }
+    }
+}
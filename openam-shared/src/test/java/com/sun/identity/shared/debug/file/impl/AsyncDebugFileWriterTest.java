@@ -0,0 +1,85 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package com.sun.identity.shared.debug.file.impl;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import com.sun.identity.shared.debug.DebugTestTemplate;
+import com.sun.identity.shared.debug.file.DebugFile;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.CountDownLatch;
+
+public class AsyncDebugFileWriterTest extends DebugTestTemplate {
+
+    private static final String DEBUG_NAME = "debugTestForAsyncWriter";
+    private static final String MARKER = "Asynchronous record";
+
+    @Test
+    public void shouldWriteEveryRecordFromConcurrentThreadsWhenBufferIsSmall() throws Exception {
+        // Given
+        DebugFileImpl debugFileImpl = new DebugFileImpl(new DebugConfigurationFromProperties(DEBUG_CONFIG_FOR_TEST),
+                DEBUG_NAME);
+        AsyncDebugFileWriter writer = new AsyncDebugFileWriter(4);
+        final DebugFile debugFile = writer.wrap(debugFileImpl);
+        final int threads = 4;
+        final int recordsPerThread = 250;
+        final CountDownLatch done = new CountDownLatch(threads);
+
+        // When
+        for (int i = 0; i < threads; i++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int j = 0; j < recordsPerThread; j++) {
+                            debugFile.writeIt(DEBUG_NAME, MARKER, null);
+                        }
+                    } catch (IOException e) {
+                        throw new IllegalStateException(e);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+        done.await();
+
+        // Then
+        assertTrue(writer.flush(10000));
+        assertEquals(countMarkers(), threads * recordsPerThread);
+    }
+
+    private int countMarkers() throws IOException {
+        int count = 0;
+        File[] files = new File(debugDirectory).listFiles();
+        for (File file : files) {
+            if (file.getName().contains(DEBUG_NAME)) {
+                for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+                    if (line.equals(MARKER)) {
+                        count++;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+}
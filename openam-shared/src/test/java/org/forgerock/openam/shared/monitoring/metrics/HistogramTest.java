@@ -0,0 +1,66 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openam.shared.monitoring.metrics;
+
+import static java.util.concurrent.TimeUnit.*;
+import static org.fest.assertions.Assertions.assertThat;
+
+import org.testng.annotations.Test;
+
+public class HistogramTest {
+
+    @Test
+    public void shouldComputePercentilesWithinBucketPrecision() {
+        Histogram histogram = new Histogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i, MILLISECONDS);
+        }
+
+        assertThat(histogram.getCount()).isEqualTo(100);
+        assertThat(histogram.getSum(MILLISECONDS)).isEqualTo(5050);
+        assertThat(histogram.getMax(MILLISECONDS)).isEqualTo(100);
+        assertThat(histogram.getValueAtPercentile(50, MILLISECONDS)).isGreaterThanOrEqualTo(50).isLessThanOrEqualTo(63);
+        assertThat(histogram.getValueAtPercentile(100, MILLISECONDS)).isEqualTo(100);
+    }
+
+    @Test
+    public void shouldCountDurationsBelowPowersOfTwo() {
+        Histogram histogram = new Histogram();
+        histogram.record(0, MICROSECONDS);
+        histogram.record(3, MICROSECONDS);
+        histogram.record(4, MICROSECONDS);
+        histogram.record(1023, MICROSECONDS);
+        histogram.record(1024, MICROSECONDS);
+
+        assertThat(histogram.getCountBelow(0)).isEqualTo(1);
+        assertThat(histogram.getCountBelow(2)).isEqualTo(2);
+        assertThat(histogram.getCountBelow(3)).isEqualTo(3);
+        assertThat(histogram.getCountBelow(10)).isEqualTo(4);
+        assertThat(histogram.getCountBelow(11)).isEqualTo(5);
+    }
+
+    @Test
+    public void shouldClampOutOfRangeDurations() {
+        Histogram histogram = new Histogram();
+        histogram.record(-1, SECONDS);
+        histogram.record(365, DAYS);
+
+        assertThat(histogram.getCount()).isEqualTo(2);
+        assertThat(histogram.getValueAtPercentile(50, MICROSECONDS)).isEqualTo(0);
+        assertThat(histogram.getCountBelow(41)).isEqualTo(2);
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+
+package org.forgerock.openam.shared.monitoring.metrics;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class PrometheusTextFormatTest {
+
+    private MetricsRegistry registry;
+
+    @BeforeMethod
+    public void setUp() {
+        registry = new MetricsRegistry();
+    }
+
+    @Test
+    public void shouldRenderCountersAndGauges() throws Exception {
+        registry.counter("am_requests_total", "Requests", "outcome", "success").add(3);
+        registry.counter("am_requests_total", "Requests", "outcome", "success").increment();
+        registry.gauge("am_in_use", "Connections in use", new Gauge() {
+            @Override
+            public double getValue() {
+                return 2;
+            }
+        }, "pool", "CTS \"async\"");
+
+        String text = render();
+
+        assertThat(text).contains("# HELP am_requests_total Requests\n# TYPE am_requests_total counter\n"
+                + "am_requests_total{outcome=\"success\"} 4\n");
+        assertThat(text).contains("# TYPE am_in_use gauge\nam_in_use{pool=\"CTS \\\"async\\\"\"} 2.0\n");
+    }
+
+    @Test
+    public void shouldRenderHistogramsInSeconds() throws Exception {
+        registry.histogram("am_duration_seconds", "Durations").record(3, TimeUnit.MICROSECONDS);
+        registry.histogram("am_duration_seconds", "Durations").record(2, TimeUnit.SECONDS);
+
+        String text = render();
+
+        assertThat(text).contains("# TYPE am_duration_seconds histogram\n");
+        assertThat(text).contains("am_duration_seconds_bucket{le=\"1.0E-6\"} 0\n");
+        assertThat(text).contains("am_duration_seconds_bucket{le=\"4.0E-6\"} 1\n");
+        assertThat(text).contains("am_duration_seconds_bucket{le=\"+Inf\"} 2\n");
+        assertThat(text).contains("am_duration_seconds_sum 2.000003\n");
+        assertThat(text).contains("am_duration_seconds_count 2\n");
+    }
+
+    @Test
+    public void shouldNotRenderRemovedMetrics() throws Exception {
+        registry.counter("am_requests_total", "Requests", "outcome", "failure");
+        registry.remove("am_requests_total", "outcome", "failure");
+
+        assertThat(render()).isEmpty();
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void shouldRejectMetricsOfAnotherType() {
+        registry.counter("am_requests_total", "Requests");
+        registry.histogram("am_requests_total", "Requests");
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void shouldRejectInvalidNames() {
+        registry.counter("am-requests", "Requests");
+    }
+
+    private String render() throws Exception {
+        StringWriter writer = new StringWriter();
+        PrometheusTextFormat.write(registry, writer);
+        return writer.toString();
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * The contents of this file are subject to the terms of the Common Development and
+ * Distribution License (the License). You may not use this file except in compliance with the
+ * License.
+ *
+ * You can obtain a copy of the License at legal/CDDLv1.0.txt. See the License for the
+ * specific language governing permission and limitations under the License.
+ *
+ * When distributing Covered Software, include this CDDL Header Notice in each file and include
+ * the License file at legal/CDDLv1.0.txt. If applicable, add the following below the CDDL
+ * Header, with the fields enclosed by brackets [] replaced by your own identifying
+ * information: "Portions copyright [year] [name of copyright owner]".
+ *
+ * Copyright 2016 ForgeRock AS.
+ */
+package org.forgerock.openam.shared.resourcename;
+
+import static com.sun.identity.shared.whitelist.ResourceMatch.*;
+import static org.fest.assertions.Assertions.assertThat;
+
+import com.sun.identity.shared.whitelist.PrefixResourceName;
+import com.sun.identity.shared.whitelist.ResourceMatch;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.util.HashMap;
+
+public class PrefixResourcePatternTest {
+
+    private PrefixResourceName resourceName;
+
+    @BeforeMethod
+    public void setUp() {
+        resourceName = new PrefixResourceName();
+        resourceName.initialize(new HashMap<String, String>());
+    }
+
+    @DataProvider
+    public Object[][] comparisons() {
+        return new Object[][] {
+                {"http://a.com/b", "http://a.com/b", true, EXACT_MATCH},
+                {"http://a.com/b", "http://a.com/b/c", true, SUB_RESOURCE_MATCH},
+                {"http://a.com/b/c", "http://a.com/b", true, SUPER_RESOURCE_MATCH},
+                {"http://a.com/b", "http://x.com/b", true, NO_MATCH},
+                {"http://a.com/b/c", "http://a.com/*", true, WILDCARD_MATCH},
+                {"http://a.com/b/c", "http://a.com/*", false, NO_MATCH},
+                {"http://a.com/b/c.html", "http://a.com/*.html", true, WILDCARD_MATCH},
+                {"http://a.com/b/c.html/d", "http://a.com/*.html", true, SUPER_RESOURCE_MATCH},
+                {"http://a.com/b", "http://a.com/*/c/*", true, SUB_RESOURCE_MATCH},
+                {"http://a.com/b/c", "http://a.com/-*-/c", true, WILDCARD_MATCH},
+                {"http://a.com/b/d/c", "http://a.com/-*-/c", true, NO_MATCH},
+                {"http://a.com/b/c/d", "http://a.com/-*-/c", true, SUPER_RESOURCE_MATCH},
+                {"http://a.com/b", "http://a.com/-*-/-*-", true, WILDCARD_MATCH},
+                {"HTTP://A.COM/B", "http://a.com/b", true, EXACT_MATCH},
+        };
+    }
+
+    @Test(dataProvider = "comparisons")
+    public void compiledPatternShouldMatchLikeStringComparison(String request, String target, boolean wildcard,
+            ResourceMatch expected) {
+        PrefixResourcePattern pattern = resourceName.compile(target);
+
+        assertThat(resourceName.compare(request, pattern, wildcard)).isEqualTo(expected);
+        assertThat(resourceName.compare(request, target, wildcard)).isEqualTo(expected);
+    }
+
+    @Test
+    public void shouldReuseCompiledPatterns() {
+        assertThat(resourceName.compile("http://a.com/*")).isSameAs(resourceName.compile("http://a.com/*"));
+    }
+
+    @Test
+    public void shouldRecompilePatternFromAnotherResourceName() {
+        PrefixResourceName caseSensitiveName = new PrefixResourceName();
+        caseSensitiveName.caseSensitive = true;
+        PrefixResourcePattern pattern = caseSensitiveName.compile("http://a.com/B");
+
+        assertThat(resourceName.compare("http://a.com/b", pattern, true)).isEqualTo(EXACT_MATCH);
+        assertThat(caseSensitiveName.compare("http://a.com/b", pattern, true)).isEqualTo(NO_MATCH);
+    }
+}